@@ -0,0 +1,77 @@
+package todo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import todo.Task;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Disjoint-user write throughput. Each thread owns one user and loops over
+ * add, query and complete, so any loss of scaling comes from state shared
+ * inside TaskManager rather than from the workload itself.
+ *
+ * The main method sweeps 1, 2, 4, ... threads up to the core count and
+ * prints throughput relative to one thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentionBenchmark {
+    private static final AtomicInteger NEXT_USER = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class OwnUser {
+        String username;
+
+        @Setup
+        public void claimUser(StoreState store) {
+            username = "Contention" + NEXT_USER.getAndIncrement();
+            store.manager.getOrCreateUser(username);
+        }
+    }
+
+    @Benchmark
+    public boolean addQueryComplete(StoreState store, OwnUser own) {
+        store.manager.addTask("Contention task", "Contention", own.username);
+        List<Task> pending = store.manager.getIncompleteTasksByUser(own.username);
+        return store.manager.markTaskCompleted(pending.get(0).getId(), own.username);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        double baseline = 0;
+
+        System.out.printf("%-8s %15s %10s%n", "Threads", "ops/sec", "Scaling");
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .include(ContentionBenchmark.class.getSimpleName())
+                    .param("storeSize", "1000")
+                    .param("userCount", "10")
+                    .threads(threads)
+                    .build();
+            RunResult result = new Runner(options).runSingle();
+            double throughput = result.getPrimaryResult().getScore();
+            if (threads == 1) {
+                baseline = throughput;
+            }
+            System.out.printf("%-8d %15.0f %9.2fx%n", threads, throughput, throughput / baseline);
+        }
+    }
+}
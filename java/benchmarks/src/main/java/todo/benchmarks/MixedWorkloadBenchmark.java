@@ -0,0 +1,49 @@
+package todo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a reader/writer mix. Reads are split between getUserTasks
+ * and getIncompleteTasksByUser; writes between addTask and markTaskCompleted.
+ * Vary the thread count with {@code -t}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+@State(Scope.Benchmark)
+public class MixedWorkloadBenchmark {
+    @Param({"50", "90", "99"})
+    public int readPercent;
+
+    @Benchmark
+    public Object mixed(StoreState store) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String user = store.user(random.nextInt());
+        boolean read = random.nextInt(100) < readPercent;
+
+        if (read) {
+            return random.nextBoolean()
+                    ? store.manager.getUserTasks(user)
+                    : store.manager.getIncompleteTasksByUser(user);
+        }
+        if (random.nextBoolean()) {
+            return store.manager.addTask("Mixed workload task", store.category(random.nextInt()), user);
+        }
+        // Ids beyond the seeded range or already completed simply return false
+        return store.manager.markTaskCompleted(1 + random.nextInt(store.storeSize), user);
+    }
+}
@@ -0,0 +1,89 @@
+package todo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import todo.Mutation;
+import todo.TaskLog;
+import todo.TaskManager;
+import todo.TaskStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cold-start latency: the time for a new TaskManager to open a checkpointed
+ * store of storeSize tasks, with its indexes, counts and search index built.
+ * Each fork opens the store once, in a fresh JVM with nothing compiled yet,
+ * so the score is the average over forks of a true first open.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 5, jvmArgsAppend = "-Xmx12g")
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    private static final int SEED_BATCH = 10_000;
+
+    @Param({"100000", "1000000"})
+    public int storeSize;
+
+    @Param({"HEAP", "MAPPED"})
+    public TaskStore.Backend backend;
+
+    private Path directory;
+    private TaskManager opened;
+
+    @Setup(Level.Trial)
+    public void seed() throws IOException {
+        directory = Files.createTempDirectory("todo-jmh-startup");
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL, backend)) {
+            List<Mutation> batch = new ArrayList<>(SEED_BATCH);
+            for (int i = 0; i < storeSize; i++) {
+                batch.add(Mutation.add("Seeded task " + i, "Category" + (i % StoreState.CATEGORY_COUNT), "User" + (i % 1000)));
+                if (batch.size() == SEED_BATCH || i == storeSize - 1) {
+                    manager.applyBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public TaskManager open() {
+        opened = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL, backend);
+        return opened;
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeOpened() {
+        if (opened != null) {
+            opened.close();
+            opened = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package todo.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import todo.TaskLog;
+import todo.TaskManager;
+import todo.TaskStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A TaskManager seeded with storeSize tasks spread round-robin over
+ * userCount users and CATEGORY_COUNT categories. Every task id from 1 to
+ * storeSize exists when a measurement starts.
+ */
+@State(Scope.Benchmark)
+public class StoreState {
+    static final int CATEGORY_COUNT = 16;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int storeSize;
+
+    @Param({"10", "1000"})
+    public int userCount;
+
+    // INTERVAL keeps fsync latency out of the numbers; the log write itself is still measured
+    @Param({"INTERVAL"})
+    public TaskLog.FsyncPolicy fsyncPolicy;
+
+    @Param({"HEAP", "MAPPED"})
+    public TaskStore.Backend backend;
+
+    public TaskManager manager;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void seed() throws IOException {
+        directory = Files.createTempDirectory("todo-jmh");
+        manager = new TaskManager(directory.toString(), fsyncPolicy, backend);
+
+        for (int i = 0; i < storeSize; i++) {
+            manager.addTask("Seeded task " + i, category(i), user(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    public String user(int n) {
+        return "User" + Math.floorMod(n, userCount);
+    }
+
+    public String category(int n) {
+        return "Category" + Math.floorMod(n, CATEGORY_COUNT);
+    }
+}
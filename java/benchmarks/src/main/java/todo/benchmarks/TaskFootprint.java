@@ -0,0 +1,81 @@
+package todo.benchmarks;
+
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+import todo.Task;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the retained heap per task with JOL, for the compact Task and
+ * for a copy of the layout Task had before: its own category and assignee
+ * Strings (as every task read back from the log used to get) and two
+ * LocalDateTime objects.
+ *
+ * Run: java -cp benchmarks/target/benchmarks.jar todo.benchmarks.TaskFootprint [count]
+ */
+public class TaskFootprint {
+    private static final String[] CATEGORIES = {"General", "Simulation", "Work", "Home"};
+    private static final String[] USERS = {"Alice", "Bob", "Charlie"};
+
+    // Field layout of Task before the compact representation
+    static final class PreviousTask {
+        final int id;
+        final String description;
+        final String category;
+        final Task.TaskStatus status;
+        final String assignedUser;
+        final LocalDateTime createdDate;
+        final LocalDateTime completedDate;
+
+        PreviousTask(int id, String description, String category, Task.TaskStatus status, String assignedUser,
+                     LocalDateTime createdDate, LocalDateTime completedDate) {
+            this.id = id;
+            this.description = description;
+            this.category = category;
+            this.status = status;
+            this.assignedUser = assignedUser;
+            this.createdDate = createdDate;
+            this.completedDate = completedDate;
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        System.out.println(VM.current().details());
+        System.out.println(ClassLayout.parseClass(PreviousTask.class).toPrintable());
+        System.out.println(ClassLayout.parseClass(Task.class).toPrintable());
+
+        List<PreviousTask> previous = new ArrayList<>(count);
+        List<Task> compact = new ArrayList<>(count);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 9, 0);
+        for (int i = 1; i <= count; i++) {
+            // Fresh String copies, as decoding a log record produces
+            String description = "Task " + i;
+            String category = new String(CATEGORIES[i % CATEGORIES.length]);
+            String user = new String(USERS[i % USERS.length]);
+            LocalDateTime created = start.plusSeconds(i);
+            LocalDateTime completed = i % 2 == 0 ? created.plusMinutes(5) : null;
+
+            previous.add(new PreviousTask(i, description, category,
+                    completed == null ? Task.TaskStatus.PENDING : Task.TaskStatus.COMPLETED,
+                    user, created, completed));
+            Task task = new Task(i, description, new String(category), new String(user));
+            compact.add(completed == null ? task : task.completed(completed));
+        }
+
+        // The descriptions are shared by both lists, so count them once on their own
+        List<String> descriptions = new ArrayList<>(count);
+        compact.forEach(task -> descriptions.add(task.getDescription()));
+        long descriptionBytes = GraphLayout.parseInstance(descriptions).totalSize();
+        long previousBytes = GraphLayout.parseInstance(previous).totalSize() - descriptionBytes;
+        long compactBytes = GraphLayout.parseInstance(compact).totalSize() - descriptionBytes;
+
+        System.out.printf("%,d tasks, half of them completed, descriptions excluded%n", count);
+        System.out.printf("previous layout: %,d bytes (%.1f per task)%n", previousBytes, (double) previousBytes / count);
+        System.out.printf("compact layout:  %,d bytes (%.1f per task)%n", compactBytes, (double) compactBytes / count);
+    }
+}
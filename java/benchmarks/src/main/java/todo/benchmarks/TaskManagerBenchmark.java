@@ -0,0 +1,100 @@
+package todo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import todo.Task;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single-operation latency of the TaskManager API against a seeded store.
+ * Run with {@code -prof gc} to report gc.alloc.rate.norm per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// The 10M-task stores need a large heap
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class TaskManagerBenchmark {
+
+    /**
+     * Adds one fresh pending task before every invocation so that
+     * markTaskCompleted always measures a successful completion. Each thread
+     * has its own user, so that user never has more than one pending task.
+     */
+    @State(Scope.Thread)
+    public static class PendingTask {
+        private static final AtomicInteger NEXT_USER = new AtomicInteger();
+
+        int id;
+        String user;
+
+        @Setup(Level.Trial)
+        public void claimUser() {
+            user = "Pending" + NEXT_USER.getAndIncrement();
+        }
+
+        @Setup(Level.Invocation)
+        public void addPendingTask(StoreState store) {
+            store.manager.addTask("Pending task", "Pending", user);
+            id = store.manager.getIncompleteTasksByUser(user).get(0).getId();
+        }
+    }
+
+    @Benchmark
+    public boolean addTask(StoreState store) {
+        int n = ThreadLocalRandom.current().nextInt();
+        return store.manager.addTask("Benchmark task", store.category(n), store.user(n));
+    }
+
+    @Benchmark
+    public List<Task> getUserTasks(StoreState store) {
+        return store.manager.getUserTasks(store.user(ThreadLocalRandom.current().nextInt()));
+    }
+
+    @Benchmark
+    public List<Task> filterTasksByCategory(StoreState store) {
+        return store.manager.filterTasksByCategory(store.category(ThreadLocalRandom.current().nextInt()));
+    }
+
+    @Benchmark
+    public List<Task> getIncompleteTasksByUser(StoreState store) {
+        return store.manager.getIncompleteTasksByUser(store.user(ThreadLocalRandom.current().nextInt()));
+    }
+
+    @Benchmark
+    public int countTasks(StoreState store) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return store.manager.query()
+                .user(store.user(random.nextInt()))
+                .category(store.category(random.nextInt()))
+                .status(Task.TaskStatus.PENDING)
+                .count();
+    }
+
+    @Benchmark
+    public boolean markTaskCompleted(StoreState store, PendingTask pending) {
+        return store.manager.markTaskCompleted(pending.id, pending.user);
+    }
+
+    @Benchmark
+    public boolean reassignTask(StoreState store) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int id = 1 + random.nextInt(store.storeSize);
+        String owner = store.manager.getTaskById(id).map(Task::getAssignedUser).orElse(null);
+        return store.manager.reassignTask(id, owner, store.user(random.nextInt()));
+    }
+}
@@ -1,10 +1,22 @@
+package todo;
+
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
 
 public class CollaborativeTodoApp {
+    private static final int PAGE_SIZE = 20;
+    private static final int SEARCH_LIMIT = 20;
+
     private static TaskManager manager;
     private static Scanner scanner;
     private static String currentUsername;
+    // Changes to the current user's tasks, shown before the next menu
+    private static final Queue<TaskEvent> updates = new ConcurrentLinkedQueue<>();
+    // Version of each task in the last list shown, so a change the user picks
+    // from it is rejected if someone else changed the task meanwhile
+    private static final Map<Integer, Integer> shownVersions = new HashMap<>();
 
     public static void main(String[] args) {
         manager = new TaskManager();
@@ -15,8 +27,9 @@ public class CollaborativeTodoApp {
             login();
 
             while (true) {
+                displayUpdates();
                 displayMenu();
-                ConsoleUtils.Result<Integer> optionResult = ConsoleUtils.readIntegerInRange(scanner, "Choose an option: ", 1, 9);
+                ConsoleUtils.Result<Integer> optionResult = ConsoleUtils.readIntegerInRange(scanner, "Choose an option: ", 1, 11);
 
                 if (!optionResult.isSuccess()) {
                     ConsoleUtils.printErrorMessage(optionResult.getErrorMessage());
@@ -32,7 +45,7 @@ public class CollaborativeTodoApp {
                     e.printStackTrace();
                 }
 
-                if (option == 9) {
+                if (option == 11) {
                     ConsoleUtils.printInfoMessage("Exiting application. Goodbye!");
                     break;
                 }
@@ -46,6 +59,7 @@ public class CollaborativeTodoApp {
             if (scanner != null) {
                 scanner.close();
             }
+            manager.close();
         }
     }
 
@@ -54,6 +68,62 @@ public class CollaborativeTodoApp {
         currentUsername = capitalizeString(username);
         User user = manager.getOrCreateUser(currentUsername);
         ConsoleUtils.printSuccessMessage("Welcome, " + user.getUsername() + "!");
+        subscribeToUpdates();
+    }
+
+    private static void subscribeToUpdates() {
+        manager.changes(TaskFilter.all().assignedTo(currentUsername)).subscribe(new Flow.Subscriber<TaskEvent>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(TaskEvent event) {
+                updates.add(event);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                System.err.println("Task updates stopped: " + error.getMessage());
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    private static void displayUpdates() {
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        ConsoleUtils.printHeader("Updates to Your Tasks");
+        TaskEvent event;
+        while ((event = updates.poll()) != null) {
+            Task task = event.getTask();
+            switch (event.getType()) {
+                case ADDED:
+                    ConsoleUtils.printInfoMessage("New task assigned to you: " + task);
+                    break;
+                case REMOVED:
+                    ConsoleUtils.printInfoMessage("Task #" + task.getId() + " was removed");
+                    break;
+                case COMPLETED:
+                    ConsoleUtils.printInfoMessage("Task #" + task.getId() + " was completed");
+                    break;
+                case REASSIGNED:
+                    if (task.getAssignedUser().equalsIgnoreCase(currentUsername)) {
+                        ConsoleUtils.printInfoMessage("Task reassigned to you from "
+                                + event.getPrevious().getAssignedUser() + ": " + task);
+                    } else {
+                        ConsoleUtils.printInfoMessage("Task #" + task.getId() + " was reassigned to "
+                                + task.getAssignedUser());
+                    }
+                    break;
+            }
+        }
     }
 
     private static String capitalizeString(String string) {
@@ -70,7 +140,9 @@ public class CollaborativeTodoApp {
         System.out.println("6. View All Tasks");
         System.out.println("7. Reassign Task");
         System.out.println("8. Simulate Concurrent Users");
-        System.out.println("9. Exit");
+        System.out.println("9. View Metrics");
+        System.out.println("10. Search Tasks");
+        System.out.println("11. Exit");
     }
 
     private static void processMenuOption(int option) {
@@ -100,6 +172,12 @@ public class CollaborativeTodoApp {
                 simulateConcurrentUsers();
                 break;
             case 9:
+                viewMetrics();
+                break;
+            case 10:
+                searchTasks();
+                break;
+            case 11:
                 // Exit is handled in the main loop
                 break;
             default:
@@ -134,15 +212,11 @@ public class CollaborativeTodoApp {
     private static void removeTask() {
         ConsoleUtils.printHeader("Remove Task");
 
-        List<Task> allTasks = manager.getAllTasks();
-
-        if (allTasks.isEmpty()) {
+        if (displayTasks(TaskFilter.all(), "All Tasks") == 0) {
             ConsoleUtils.printInfoMessage("No tasks available to remove.");
             return;
         }
 
-        displayTasks(allTasks, "All Tasks");
-
         ConsoleUtils.Result<Integer> idResult = ConsoleUtils.readInteger(scanner, "Enter Task ID to remove (or 0 to cancel): ");
 
         if (!idResult.isSuccess()) {
@@ -169,15 +243,13 @@ public class CollaborativeTodoApp {
     private static void markTaskAsCompleted() {
         ConsoleUtils.printHeader("Mark Task as Completed");
 
-        List<Task> incompleteTasks = manager.getIncompleteTasksByUser(currentUsername);
+        TaskFilter incompleteTasks = TaskFilter.all().assignedTo(currentUsername).withStatus(Task.TaskStatus.PENDING);
 
-        if (incompleteTasks.isEmpty()) {
+        if (displayTasks(incompleteTasks, "Your Incomplete Tasks") == 0) {
             ConsoleUtils.printInfoMessage("You have no incomplete tasks to mark as completed.");
             return;
         }
 
-        displayTasks(incompleteTasks, "Your Incomplete Tasks");
-
         ConsoleUtils.Result<Integer> idResult = ConsoleUtils.readInteger(scanner, "Enter Task ID to mark as completed (or 0 to cancel): ");
 
         if (!idResult.isSuccess()) {
@@ -192,10 +264,15 @@ public class CollaborativeTodoApp {
             return;
         }
 
-        boolean marked = manager.markTaskCompleted(id, currentUsername);
+        Integer shownVersion = shownVersions.get(id);
+        boolean marked = shownVersion != null
+                ? manager.completeIfVersion(id, currentUsername, shownVersion)
+                : manager.markTaskCompleted(id, currentUsername);
 
         if (marked) {
             ConsoleUtils.printSuccessMessage("Task #" + id + " marked as completed!");
+        } else if (changedSinceShown(id, shownVersion)) {
+            ConsoleUtils.printErrorMessage("Task #" + id + " was changed by someone else since it was listed. Please review it and try again.");
         } else {
             ConsoleUtils.printErrorMessage("Failed to mark task as completed. Task ID may not exist, task may already be completed, or you may not be assigned to this task.");
         }
@@ -204,48 +281,36 @@ public class CollaborativeTodoApp {
     private static void viewMyTasks() {
         ConsoleUtils.printHeader("My Tasks");
 
-        List<Task> userTasks = manager.getUserTasks(currentUsername);
+        TaskFilter userTasks = TaskFilter.all().assignedTo(currentUsername);
 
-        if (userTasks.isEmpty()) {
+        if (displayTasks(userTasks, "Tasks Assigned to You") == 0) {
             ConsoleUtils.printInfoMessage("You don't have any tasks assigned to you.");
         } else {
-            displayTasks(userTasks, "Tasks Assigned to You");
+            // Show summary from the maintained counts
+            TaskSummary summary = manager.getUserSummary(currentUsername);
 
-            // Show summary
-            long completedCount = userTasks.stream()
-                    .filter(task -> task.getStatus() == Task.TaskStatus.COMPLETED)
-                    .count();
-
-            ConsoleUtils.printInfoMessage("Summary: " + completedCount + " completed, " +
-                    (userTasks.size() - completedCount) + " pending");
+            ConsoleUtils.printInfoMessage("Summary: " + summary.getCompletedCount() + " completed, " +
+                    summary.getPendingCount() + " pending");
         }
     }
 
     private static void filterTasksByCategory() {
         ConsoleUtils.printHeader("Filter Tasks by Category");
 
-        displayCategories(manager.getAllCategoriesFromTasks());
+        displayCategories(manager.getCategorySummaries());
 
         String category = ConsoleUtils.readRequiredInput(scanner, "Enter category to filter: ");
 
-        List<Task> filteredTasks = manager.filterTasksByCategory(category);
-
-        if (filteredTasks.isEmpty()) {
+        if (displayTasks(TaskFilter.all().inCategory(category), "Tasks in Category '" + category + "'") == 0) {
             ConsoleUtils.printInfoMessage("No tasks found in category '" + category + "'.");
-        } else {
-            displayTasks(filteredTasks, "Tasks in Category '" + category + "'");
         }
     }
 
     private static void viewAllTasks() {
         ConsoleUtils.printHeader("All Tasks");
 
-        List<Task> allTasks = manager.getAllTasks();
-
-        if (allTasks.isEmpty()) {
+        if (displayTasks(TaskFilter.all(), "All Tasks") == 0) {
             ConsoleUtils.printInfoMessage("There are no tasks in the system.");
-        } else {
-            displayTasks(allTasks, "All Tasks");
         }
     }
 
@@ -253,17 +318,13 @@ public class CollaborativeTodoApp {
         ConsoleUtils.printHeader("Reassign Task");
 
         // First show the user's own tasks
-        List<Task> userTasks = manager.getUserTasks(currentUsername);
+        TaskFilter userTasks = TaskFilter.all().assignedTo(currentUsername);
 
-        if (userTasks.isEmpty()) {
+        if (displayTasks(userTasks, "Tasks You Can Reassign") == 0) {
             ConsoleUtils.printErrorMessage("You don't have any tasks assigned to you to reassign.");
             return;
         }
 
-        // Display all tasks assigned to the current user
-        ConsoleUtils.printInfoMessage("Your current tasks:");
-        displayTasks(userTasks, "Tasks You Can Reassign");
-
         // Ask user to select a task by ID
         ConsoleUtils.Result<Integer> idResult = ConsoleUtils.readInteger(scanner,
                 "Enter Task ID to reassign (or 0 to cancel): ");
@@ -281,9 +342,7 @@ public class CollaborativeTodoApp {
         }
 
         // Verify the task exists and belongs to the current user
-        Optional<Task> taskToReassign = userTasks.stream()
-                .filter(task -> task.getId() == taskId)
-                .findFirst();
+        Optional<Task> taskToReassign = manager.getTaskById(taskId).filter(userTasks::matches);
 
         if (taskToReassign.isEmpty()) {
             ConsoleUtils.printErrorMessage("Task #" + taskId + " is not assigned to you or does not exist.");
@@ -293,16 +352,25 @@ public class CollaborativeTodoApp {
         // Get the new assignee username
         String newAssignee = ConsoleUtils.readRequiredInput(scanner, "Enter username to reassign to: ");
 
-        // Attempt to reassign the task
-        boolean success = manager.reassignTask(taskId, currentUsername, capitalizeString(newAssignee));
+        // Attempt to reassign the task as it was when the user picked it
+        int expectedVersion = shownVersions.getOrDefault(taskId, taskToReassign.get().getVersion());
+        boolean success = manager.reassignIfVersion(taskId, currentUsername, capitalizeString(newAssignee),
+                expectedVersion);
 
         if (success) {
             ConsoleUtils.printSuccessMessage("Task #" + taskId + " successfully reassigned to '" + newAssignee + "'");
+        } else if (changedSinceShown(taskId, expectedVersion)) {
+            ConsoleUtils.printErrorMessage("Task #" + taskId + " was changed by someone else since it was listed. Please review it and try again.");
         } else {
             ConsoleUtils.printErrorMessage("Failed to reassign task #" + taskId);
         }
     }
 
+    private static boolean changedSinceShown(int id, Integer shownVersion) {
+        return shownVersion != null
+                && manager.getTaskById(id).map(task -> task.getVersion() != shownVersion).orElse(false);
+    }
+
     private static void simulateConcurrentUsers() {
         ConsoleUtils.printHeader("Simulating Concurrent Users");
 
@@ -330,10 +398,19 @@ public class CollaborativeTodoApp {
         }
     }
 
-    private static void displayTasks(List<Task> tasks, String title) {
-        ConsoleUtils.printHeader(title + " (" + tasks.size() + " tasks)");
+    private static void searchTasks() {
+        ConsoleUtils.printHeader("Search Tasks");
+
+        String query = ConsoleUtils.readRequiredInput(scanner, "Search for (end a word with * to match its prefix): ");
+        List<Task> results = manager.searchTasks(query, SEARCH_LIMIT);
 
-        for (Task task : tasks) {
+        if (results.isEmpty()) {
+            ConsoleUtils.printInfoMessage("No tasks match '" + query + "'.");
+            return;
+        }
+
+        ConsoleUtils.printHeader("Best " + results.size() + " Matches");
+        for (Task task : results) {
             String statusColor = task.getStatus() == Task.TaskStatus.COMPLETED ?
                     "\u001B[32m" : "\u001B[33m"; // Green for completed, Yellow for pending
 
@@ -341,9 +418,51 @@ public class CollaborativeTodoApp {
         }
     }
 
-    private static void displayCategories(Set<String> categories) {
+    private static void viewMetrics() {
+        ConsoleUtils.printHeader("Metrics");
+        System.out.print(manager.getMetrics().dump());
+    }
+
+    // Shows the matching tasks a page at a time, fetching each page only
+    // when asked for. Returns the number of tasks shown.
+    private static int displayTasks(TaskFilter filter, String title) {
+        shownVersions.clear();
+        TaskPage page = manager.getTasksPage(filter, 0, PAGE_SIZE);
+        if (page.getTasks().isEmpty()) {
+            return 0;
+        }
+
+        ConsoleUtils.printHeader(title);
+        int shown = 0;
+        while (true) {
+            for (Task task : page.getTasks()) {
+                String statusColor = task.getStatus() == Task.TaskStatus.COMPLETED ?
+                        "\u001B[32m" : "\u001B[33m"; // Green for completed, Yellow for pending
+
+                System.out.println(statusColor + task + "\u001B[0m");
+                shownVersions.put(task.getId(), task.getVersion());
+            }
+            shown += page.getTasks().size();
+
+            if (!page.hasMore()) {
+                break;
+            }
+            String answer = ConsoleUtils.readInput(scanner,
+                    shown + " tasks shown. Press Enter for more, or q to stop: ");
+            if (answer.equalsIgnoreCase("q")) {
+                break;
+            }
+            page = manager.getTasksPage(filter, page.getNextCursor(), PAGE_SIZE);
+        }
+        return shown;
+    }
+
+    private static void displayCategories(Map<String, TaskSummary> categories) {
         ConsoleUtils.printHeader("Categories to choose from:" + " (" + categories.size() + " categories)");
 
-        categories.forEach(System.out::println);
+        for (TaskSummary summary : categories.values()) {
+            System.out.println(summary.getName() + " (" + summary.getPendingCount() + " pending, " +
+                    summary.getCompletedCount() + " completed)");
+        }
     }
 }
\ No newline at end of file
@@ -1,3 +1,5 @@
+package todo;
+
 import java.util.Scanner;
 import java.util.function.Predicate;
 
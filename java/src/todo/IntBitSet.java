@@ -0,0 +1,135 @@
+package todo;
+
+import java.util.Arrays;
+
+/**
+ * Growable set of non-negative ints, one bit each, iterated in order with
+ * nextSetBit. Adding or removing a value is O(1) wherever it falls, unlike
+ * IntSortedSet, so it suits dense sets that change in the middle, such as
+ * the ids of completed tasks. and, or and andNot combine whole sets a word
+ * at a time. Not thread-safe.
+ */
+final class IntBitSet {
+    private long[] words = new long[1];
+    private int size;
+
+    IntBitSet() {
+    }
+
+    private IntBitSet(long[] words, int size) {
+        this.words = words;
+        this.size = size;
+    }
+
+    static IntBitSet of(IntSortedSet values) {
+        IntBitSet set = new IntBitSet();
+        if (values != null && !values.isEmpty()) {
+            set.words = new long[(values.get(values.size() - 1) >>> 6) + 1];
+            for (int i = 0; i < values.size(); i++) {
+                set.add(values.get(i));
+            }
+        }
+        return set;
+    }
+
+    IntBitSet copy() {
+        return new IntBitSet(words.clone(), size);
+    }
+
+    /**
+     * Keeps only the values that are also in the other set.
+     */
+    void and(IntBitSet other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= i < other.words.length ? other.words[i] : 0;
+        }
+        recount();
+    }
+
+    void or(IntBitSet other) {
+        if (other.words.length > words.length) {
+            words = Arrays.copyOf(words, other.words.length);
+        }
+        for (int i = 0; i < other.words.length; i++) {
+            words[i] |= other.words[i];
+        }
+        recount();
+    }
+
+    /**
+     * Removes the values that are in the other set.
+     */
+    void andNot(IntBitSet other) {
+        for (int i = 0, end = Math.min(words.length, other.words.length); i < end; i++) {
+            words[i] &= ~other.words[i];
+        }
+        recount();
+    }
+
+    boolean add(int value) {
+        int word = value >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+        }
+        long bit = 1L << value;
+        if ((words[word] & bit) != 0) {
+            return false;
+        }
+        words[word] |= bit;
+        size++;
+        return true;
+    }
+
+    boolean remove(int value) {
+        int word = value >>> 6;
+        long bit = 1L << value;
+        if (word >= words.length || (words[word] & bit) == 0) {
+            return false;
+        }
+        words[word] &= ~bit;
+        size--;
+        return true;
+    }
+
+    boolean contains(int value) {
+        int word = value >>> 6;
+        return word < words.length && (words[word] & (1L << value)) != 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void recount() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        size = count;
+    }
+
+    /**
+     * Returns the smallest value at or above from, or -1 if there is none.
+     */
+    int nextSetBit(int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        int word = from >>> 6;
+        if (word >= words.length) {
+            return -1;
+        }
+        long bits = words[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == words.length) {
+                return -1;
+            }
+            bits = words[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+}
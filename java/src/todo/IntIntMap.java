@@ -0,0 +1,107 @@
+package todo;
+
+/**
+ * Hash map from int keys to non-zero int values, with open addressing and
+ * linear probing over parallel arrays, like IntObjectMap. A key that is not
+ * present reads as 0, and putting 0 removes the key, so neither keys nor
+ * values are ever boxed and memory follows the number of entries, not the
+ * largest key. Not thread-safe.
+ */
+final class IntIntMap {
+    private int[] keys;
+    private int[] values; // 0 marks an empty slot
+    private int size;
+
+    IntIntMap() {
+        this(8);
+    }
+
+    IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int get(int key) {
+        return values[slotOf(key)];
+    }
+
+    /**
+     * Maps the key to the value, or removes it when the value is 0.
+     * Returns the previous value, 0 if there was none.
+     */
+    int put(int key, int value) {
+        int slot = slotOf(key);
+        int previous = values[slot];
+        if (value == 0) {
+            if (previous != 0) {
+                delete(slot);
+            }
+            return previous;
+        }
+
+        values[slot] = value;
+        if (previous == 0) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+        }
+        return previous;
+    }
+
+    // The slot holding the key, or the empty slot where it would go
+    private int slotOf(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (values[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Empties the slot and shifts back later entries of its probe run, so no lookup stops short
+    private void delete(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; values[next] != 0; next = (next + 1) & mask) {
+            int home = mix(keys[next]) & mask;
+            // Move the entry unless its home lies cyclically after the hole, up to where it sits
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        values[hole] = 0;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != 0) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Task ids are consecutive, so spread them before masking
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
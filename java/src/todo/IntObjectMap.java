@@ -0,0 +1,97 @@
+package todo;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from int keys to values, with open addressing and linear
+ * probing over parallel key and value arrays. Lookups and updates of
+ * existing keys never allocate, and keys are never boxed. Null values are
+ * allowed; containsKey tells them apart from absent keys. Not thread-safe.
+ */
+final class IntObjectMap<V> {
+    // Stands in for a null value, so a null slot always means empty
+    private static final Object NULL_VALUE = new Object();
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    IntObjectMap() {
+        this(8);
+    }
+
+    IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean containsKey(int key) {
+        return values[slotOf(key)] != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        Object value = values[slotOf(key)];
+        return value == NULL_VALUE ? null : (V) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        int slot = slotOf(key);
+        Object previous = values[slot];
+        values[slot] = value == null ? NULL_VALUE : value;
+        if (previous != null) {
+            return previous == NULL_VALUE ? null : (V) previous;
+        }
+
+        keys[slot] = key;
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // The slot holding the key, or the empty slot where it would go
+    private int slotOf(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Task ids are consecutive, so spread them before masking
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
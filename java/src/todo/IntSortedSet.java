@@ -0,0 +1,73 @@
+package todo;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of ints backed by a single array. Task ids are allocated in
+ * increasing order, so the common insert is an append; inserts and removals
+ * in the middle shift the tail. Not thread-safe.
+ */
+final class IntSortedSet {
+    private int[] elements;
+    private int size;
+
+    IntSortedSet() {
+        elements = new int[4];
+    }
+
+    boolean add(int value) {
+        // Fast path for the usual append of a new, highest id
+        int position = size > 0 && elements[size - 1] >= value
+                ? Arrays.binarySearch(elements, 0, size, value)
+                : -(size + 1);
+        if (position >= 0) {
+            return false;
+        }
+
+        int insertAt = -(position + 1);
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size + (size >> 1) + 1);
+        }
+        System.arraycopy(elements, insertAt, elements, insertAt + 1, size - insertAt);
+        elements[insertAt] = value;
+        size++;
+        return true;
+    }
+
+    boolean remove(int value) {
+        int position = Arrays.binarySearch(elements, 0, size, value);
+        if (position < 0) {
+            return false;
+        }
+
+        System.arraycopy(elements, position + 1, elements, position, size - position - 1);
+        size--;
+        return true;
+    }
+
+    boolean contains(int value) {
+        return Arrays.binarySearch(elements, 0, size, value) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int get(int index) {
+        return elements[index];
+    }
+
+    // Index of the first element greater than the value, or size() if there is none
+    int indexAfter(int value) {
+        int position = Arrays.binarySearch(elements, 0, size, value);
+        return position >= 0 ? position + 1 : -(position + 1);
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+}
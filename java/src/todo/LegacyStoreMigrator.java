@@ -0,0 +1,115 @@
+package todo;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One-time conversion of the Java-serialized tasks.ser and users.ser files
+ * into the binary format written by TaskCodec. The originals are kept with a
+ * ".migrated" suffix. TaskManager runs this on startup, so an existing data
+ * directory is upgraded the first time the new version opens it.
+ *
+ * Usage: java todo.LegacyStoreMigrator [data-directory]
+ */
+public final class LegacyStoreMigrator {
+    static final String LEGACY_TASKS_FILE = "tasks.ser";
+    static final String LEGACY_USERS_FILE = "users.ser";
+
+    private LegacyStoreMigrator() {
+    }
+
+    public static void migrate(Path directory, Path tasksFile, Path usersFile) throws IOException {
+        Path legacyTasks = directory.resolve(LEGACY_TASKS_FILE);
+        if (Files.exists(legacyTasks) && !SegmentedSnapshot.exists(tasksFile)) {
+            List<Task> tasks = readLegacy(legacyTasks);
+            TaskCodec.writeTasks(tasksFile, tasks);
+            retire(legacyTasks);
+            System.out.println("Migrated " + tasks.size() + " tasks from " + legacyTasks);
+        }
+
+        Path legacyUsers = directory.resolve(LEGACY_USERS_FILE);
+        if (Files.exists(legacyUsers) && !Files.exists(usersFile)) {
+            Map<String, User> users = readLegacy(legacyUsers);
+            TaskCodec.writeUsers(usersFile, users.values());
+            retire(legacyUsers);
+            System.out.println("Migrated " + users.size() + " users from " + legacyUsers);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T readLegacy(Path file) throws IOException {
+        try (ObjectInputStream ois = new LegacyInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return (T) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unreadable legacy file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the classes the old application serialized, which had no
+     * package, into their current equivalents. Task had a different field
+     * layout, so it is read into LegacyTask first.
+     */
+    private static final class LegacyInputStream extends ObjectInputStream {
+        LegacyInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass descriptor = super.readClassDescriptor();
+            switch (descriptor.getName()) {
+                case "Task":
+                case "todo.Task":
+                    return descriptor.getSerialVersionUID() == 1L ? ObjectStreamClass.lookup(LegacyTask.class) : descriptor;
+                case "Task$TaskStatus":
+                    return ObjectStreamClass.lookup(Task.TaskStatus.class);
+                case "User":
+                    return ObjectStreamClass.lookup(User.class);
+                default:
+                    return descriptor;
+            }
+        }
+    }
+
+    // Serialized form of Task before it was made compact
+    private static final class LegacyTask implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private int id;
+        private String description;
+        private String category;
+        private Task.TaskStatus status;
+        private String assignedUser;
+        private LocalDateTime createdDate;
+        private LocalDateTime completedDate;
+
+        @Serial
+        private Object readResolve() {
+            return new Task(id, description, category, assignedUser, createdDate,
+                    status == Task.TaskStatus.COMPLETED ? completedDate : null);
+        }
+    }
+
+    private static void retire(Path file) throws IOException {
+        Files.move(file, file.resolveSibling(file.getFileName() + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : TaskManager.DEFAULT_DATA_DIRECTORY);
+        migrate(directory, directory.resolve(TaskManager.TASKS_FILE), directory.resolve(TaskManager.USERS_FILE));
+    }
+}
@@ -0,0 +1,635 @@
+package todo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Stream;
+
+/**
+ * Load harness that runs many concurrent UserSession-style sessions against
+ * a TaskManager: each session repeatedly picks a user and an operation and
+ * calls TaskManager the way an interactive user would. Users and categories
+ * are drawn from Zipfian distributions, so a few hot users own most tasks.
+ *
+ * Sessions run on virtual threads when the JVM provides them (Java 21+);
+ * otherwise they run on a bounded pool of platform threads. After the
+ * warm-up, every TaskManager call is timed and the report lists throughput
+ * and p50/p99/p99.9 latency per operation.
+ *
+ * With --transport=loopback the sessions go through a TaskServer on
+ * 127.0.0.1 instead, sharing --connections TaskClients round-robin, so the
+ * latencies include the protocol and the network stack. The store is
+ * seeded in-process either way.
+ *
+ * With --shards=N the tasks are spread over N TaskManagers behind a
+ * ShardedTaskService; in loopback mode each shard gets its own TaskServer
+ * and each connection is a router over one TaskClient per shard.
+ *
+ * Usage: java todo.LoadGenerator [--option=value ...]
+ *   --sessions=10000       concurrent sessions
+ *   --users=1000           distinct usernames
+ *   --categories=16        distinct categories
+ *   --skew=0.99            Zipf exponent for users and categories (0 = uniform)
+ *   --mix=add:20,list:35,pending:20,complete:15,reassign:5,category:4,remove:1
+ *   --seed-tasks=10000     tasks created before the run
+ *   --warmup=5             warm-up seconds
+ *   --duration=30          measured seconds
+ *   --think-ms=0           pause between operations of one session
+ *   --platform-threads=N   pool size when virtual threads are unavailable
+ *   --fsync=GROUP_COMMIT   TaskLog.FsyncPolicy
+ *   --backend=HEAP         TaskStore.Backend
+ *   --data-dir=DIR         data directory (default: a temporary directory)
+ *   --transport=local      local (call TaskManager directly) or loopback
+ *   --connections=4        TaskClient connections shared by the sessions in loopback mode
+ *   --shards=1             TaskManagers the tasks are partitioned over, by assignee
+ */
+public class LoadGenerator {
+    public enum Operation {
+        ADD("add", "addTask"),
+        LIST("list", "getUserTasks"),
+        PENDING("pending", "getIncompleteTasksByUser"),
+        COMPLETE("complete", "markTaskCompleted"),
+        REASSIGN("reassign", "reassignTask"),
+        CATEGORY("category", "filterTasksByCategory"),
+        REMOVE("remove", "removeTask");
+
+        private final String option;
+        private final String method;
+
+        Operation(String option, String method) {
+            this.option = option;
+            this.method = method;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+    }
+
+    private final List<TaskManager> shards;
+    private final Options options;
+    private final ZipfDistribution userDistribution;
+    private final ZipfDistribution categoryDistribution;
+    private final OperationMix operationMix;
+    // Swapped for fresh histograms when the warm-up ends
+    private final AtomicReferenceArray<LatencyHistogram> histograms =
+            new AtomicReferenceArray<>(Operation.values().length);
+    // Highest id each shard has handed out; shard i hands out i + 1 and every shards.size() after
+    private final AtomicIntegerArray highestTaskIds;
+    private final AtomicLong failures = new AtomicLong();
+    private volatile boolean running = true;
+
+    public LoadGenerator(TaskManager manager, Options options) {
+        this(Collections.singletonList(manager), options);
+    }
+
+    /**
+     * Runs against the shards through a ShardedTaskService. Each shard must
+     * have been given its place with TaskManager.setShard().
+     */
+    public LoadGenerator(List<TaskManager> shards, Options options) {
+        this.shards = new ArrayList<>(shards);
+        this.options = options;
+        this.userDistribution = new ZipfDistribution(options.users, options.skew);
+        this.categoryDistribution = new ZipfDistribution(options.categories, options.skew);
+        this.operationMix = options.operationMix();
+        this.highestTaskIds = new AtomicIntegerArray(this.shards.size());
+        for (int i = 0; i < this.shards.size(); i++) {
+            // One stride below the shard's first id, so the first add brings it to that id
+            highestTaskIds.set(i, i + 1 - this.shards.size());
+        }
+        resetHistograms();
+    }
+
+    public static class Options {
+        private int sessions = 10_000;
+        private int users = 1000;
+        private int categories = 16;
+        private double skew = 0.99;
+        private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        private int seedTasks = 10_000;
+        private int warmupSeconds = 5;
+        private int durationSeconds = 30;
+        private int thinkMillis;
+        private int platformThreads = 4 * Runtime.getRuntime().availableProcessors();
+        private TaskLog.FsyncPolicy fsyncPolicy = TaskLog.FsyncPolicy.GROUP_COMMIT;
+        private TaskStore.Backend backend = TaskStore.Backend.HEAP;
+        private String dataDirectory;
+        private boolean loopback;
+        private int connections = 4;
+        private int shards = 1;
+
+        public Options() {
+            mix("add:20,list:35,pending:20,complete:15,reassign:5,category:4,remove:1");
+        }
+
+        public Options sessions(int sessions) {
+            this.sessions = sessions;
+            return this;
+        }
+
+        public Options users(int users) {
+            this.users = users;
+            return this;
+        }
+
+        public Options categories(int categories) {
+            this.categories = categories;
+            return this;
+        }
+
+        public Options skew(double skew) {
+            this.skew = skew;
+            return this;
+        }
+
+        /**
+         * Sets the relative weight of each operation, as "name:weight" pairs
+         * separated by commas. Operations not listed are not run.
+         */
+        public Options mix(String weights) {
+            mix.clear();
+            for (String entry : weights.split(",")) {
+                String[] parts = entry.trim().split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Expected name:weight in mix, got " + entry);
+                }
+                mix.put(operationNamed(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+            }
+            return this;
+        }
+
+        public Options seedTasks(int seedTasks) {
+            this.seedTasks = seedTasks;
+            return this;
+        }
+
+        public Options warmupSeconds(int warmupSeconds) {
+            this.warmupSeconds = warmupSeconds;
+            return this;
+        }
+
+        public Options durationSeconds(int durationSeconds) {
+            this.durationSeconds = durationSeconds;
+            return this;
+        }
+
+        public Options thinkMillis(int thinkMillis) {
+            this.thinkMillis = thinkMillis;
+            return this;
+        }
+
+        public Options platformThreads(int platformThreads) {
+            this.platformThreads = platformThreads;
+            return this;
+        }
+
+        public Options fsyncPolicy(TaskLog.FsyncPolicy fsyncPolicy) {
+            this.fsyncPolicy = fsyncPolicy;
+            return this;
+        }
+
+        public Options backend(TaskStore.Backend backend) {
+            this.backend = backend;
+            return this;
+        }
+
+        public Options dataDirectory(String dataDirectory) {
+            this.dataDirectory = dataDirectory;
+            return this;
+        }
+
+        /**
+         * Routes the sessions through a TaskServer on the loopback interface.
+         */
+        public Options loopback(boolean loopback) {
+            this.loopback = loopback;
+            return this;
+        }
+
+        public Options connections(int connections) {
+            this.connections = connections;
+            return this;
+        }
+
+        // Used by main(), which opens this many TaskManagers
+        public Options shards(int shards) {
+            this.shards = shards;
+            return this;
+        }
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Expected --option=value, got " + arg);
+                }
+                String name = arg.substring(2, equals);
+                String value = arg.substring(equals + 1);
+
+                switch (name) {
+                    case "sessions": options.sessions(Integer.parseInt(value)); break;
+                    case "users": options.users(Integer.parseInt(value)); break;
+                    case "categories": options.categories(Integer.parseInt(value)); break;
+                    case "skew": options.skew(Double.parseDouble(value)); break;
+                    case "mix": options.mix(value); break;
+                    case "seed-tasks": options.seedTasks(Integer.parseInt(value)); break;
+                    case "warmup": options.warmupSeconds(Integer.parseInt(value)); break;
+                    case "duration": options.durationSeconds(Integer.parseInt(value)); break;
+                    case "think-ms": options.thinkMillis(Integer.parseInt(value)); break;
+                    case "platform-threads": options.platformThreads(Integer.parseInt(value)); break;
+                    case "fsync": options.fsyncPolicy(TaskLog.FsyncPolicy.valueOf(value.toUpperCase(Locale.ROOT))); break;
+                    case "backend": options.backend(TaskStore.Backend.valueOf(value.toUpperCase(Locale.ROOT))); break;
+                    case "data-dir": options.dataDirectory(value); break;
+                    case "transport": options.loopback(transportIsLoopback(value)); break;
+                    case "connections": options.connections(Integer.parseInt(value)); break;
+                    case "shards": options.shards(Integer.parseInt(value)); break;
+                    default: throw new IllegalArgumentException("Unknown option --" + name);
+                }
+            }
+            return options;
+        }
+
+        OperationMix operationMix() {
+            return new OperationMix(mix);
+        }
+
+        private static boolean transportIsLoopback(String transport) {
+            switch (transport.toLowerCase(Locale.ROOT)) {
+                case "local": return false;
+                case "loopback": return true;
+                default: throw new IllegalArgumentException("Unknown transport '" + transport + "'");
+            }
+        }
+
+        private static Operation operationNamed(String name) {
+            for (Operation operation : Operation.values()) {
+                if (operation.option.equalsIgnoreCase(name)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation '" + name + "' in mix");
+        }
+    }
+
+    /**
+     * Seeds the store, runs the warm-up and the measured phase, and prints
+     * the report. Blocks until every session has stopped.
+     */
+    public void run() throws InterruptedException {
+        seed();
+        if (!options.loopback) {
+            if (shards.size() == 1) {
+                runSessions(new TaskService[] {shards.get(0)});
+                return;
+            }
+            try (ShardedTaskService router = new ShardedTaskService(shards)) {
+                runSessions(new TaskService[] {router});
+            }
+            return;
+        }
+
+        List<TaskServer> servers = new ArrayList<>();
+        List<TaskClient> clients = new ArrayList<>();
+        TaskService[] services = new TaskService[Math.max(1, options.connections)];
+        try {
+            for (TaskManager shard : shards) {
+                servers.add(new TaskServer(shard, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)));
+            }
+            for (int i = 0; i < services.length; i++) {
+                List<TaskClient> connection = new ArrayList<>();
+                for (TaskServer server : servers) {
+                    connection.add(TaskClient.connect(InetAddress.getLoopbackAddress().getHostAddress(),
+                            server.getPort()));
+                }
+                clients.addAll(connection);
+                services[i] = connection.size() == 1 ? connection.get(0) : new ShardedTaskService(connection);
+            }
+            if (servers.size() == 1) {
+                System.out.println("Serving over loopback port " + servers.get(0).getPort() + " with "
+                        + services.length + " client connections");
+            } else {
+                System.out.println("Serving " + servers.size() + " shards over loopback, each with "
+                        + services.length + " client connections");
+            }
+            runSessions(services);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start the loopback server: " + e.getMessage(), e);
+        } finally {
+            for (TaskService service : services) {
+                if (service instanceof ShardedTaskService) {
+                    ((ShardedTaskService) service).close();
+                }
+            }
+            for (TaskClient client : clients) {
+                client.close();
+            }
+            for (TaskServer server : servers) {
+                server.close();
+            }
+        }
+    }
+
+    private void runSessions(TaskService[] services) throws InterruptedException {
+        ExecutorService executor = VirtualThreads.newExecutor();
+        int sessions = options.sessions;
+        if (executor == null) {
+            sessions = Math.min(options.sessions, options.platformThreads);
+            System.out.println("Virtual threads need Java 21 or later; running " + sessions
+                    + " sessions on platform threads instead of " + options.sessions);
+            executor = Executors.newFixedThreadPool(sessions);
+        }
+
+        System.out.println("Running " + sessions + " sessions over " + options.users + " users ("
+                + options.warmupSeconds + " s warm-up, " + options.durationSeconds + " s measured)");
+        for (int i = 0; i < sessions; i++) {
+            TaskService service = services[i % services.length];
+            executor.execute(() -> runSession(service));
+        }
+
+        TimeUnit.SECONDS.sleep(options.warmupSeconds);
+        resetHistograms();
+        failures.set(0);
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(options.durationSeconds);
+        long elapsed = System.nanoTime() - start;
+
+        // Snapshot before the sessions wind down, so the tail is not skewed by stragglers
+        LatencyHistogram[] measured = new LatencyHistogram[histograms.length()];
+        for (int i = 0; i < measured.length; i++) {
+            measured[i] = histograms.getAndSet(i, new LatencyHistogram());
+        }
+        running = false;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        printReport(measured, elapsed);
+    }
+
+    private void seed() {
+        if (options.seedTasks <= 0) {
+            return;
+        }
+
+        List<Mutation.Add> additions = new ArrayList<>(options.seedTasks);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < options.seedTasks; i++) {
+            additions.add(Mutation.add("Seeded task " + i, category(random), user(random)));
+        }
+        // Each shard takes the tasks of the users the router sends to it
+        List<List<Mutation.Add>> byShard = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Mutation.Add addition : additions) {
+            byShard.get(ShardedTaskService.shardOf(addition.getAssignedUser(), shards.size())).add(addition);
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            for (ConsoleUtils.Result<Task> result : shards.get(i).addTasks(byShard.get(i))) {
+                if (result.isSuccess()) {
+                    highestTaskIds.accumulateAndGet(i, result.getValue().getId(), Math::max);
+                }
+            }
+        }
+    }
+
+    private void runSession(TaskService service) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            Operation operation = operationMix.sample(random);
+            try {
+                perform(service, operation, user(random), random);
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+            }
+
+            if (options.thinkMillis > 0) {
+                try {
+                    Thread.sleep(options.thinkMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void perform(TaskService service, Operation operation, String username, ThreadLocalRandom random) {
+        long start = System.nanoTime();
+        switch (operation) {
+            case ADD:
+                if (service.addTask("Load task for " + username, category(random), username)) {
+                    highestTaskIds.addAndGet(ShardedTaskService.shardOf(username, shards.size()), shards.size());
+                }
+                break;
+            case LIST:
+                service.getUserTasks(username);
+                break;
+            case PENDING:
+                service.getIncompleteTasksByUser(username);
+                break;
+            case COMPLETE: {
+                // Like UserSession: look up the user's pending tasks, then complete one
+                List<Task> pending = service.getIncompleteTasksByUser(username);
+                record(Operation.PENDING, start);
+                if (pending.isEmpty()) {
+                    return;
+                }
+                Task task = pending.get(random.nextInt(pending.size()));
+                start = System.nanoTime();
+                service.markTaskCompleted(task.getId(), username);
+                break;
+            }
+            case REASSIGN:
+                service.reassignTask(randomTaskId(random), null, user(random));
+                break;
+            case CATEGORY:
+                service.filterTasksByCategory(category(random));
+                break;
+            case REMOVE:
+                service.removeTask(randomTaskId(random));
+                break;
+        }
+        record(operation, start);
+    }
+
+    private void record(Operation operation, long start) {
+        histograms.get(operation.ordinal()).record(System.nanoTime() - start);
+    }
+
+    /**
+     * Picks uniformly among the ids handed out so far. Each shard hands out
+     * its ids in sequence a stride of shards.size() apart, so counting its
+     * successful adds tracks its highest one.
+     */
+    private int randomTaskId(ThreadLocalRandom random) {
+        int stride = shards.size();
+        int[] counts = new int[stride];
+        int total = 0;
+        for (int shard = 0; shard < stride; shard++) {
+            counts[shard] = Math.max(0, (highestTaskIds.get(shard) - 1 - shard) / stride + 1);
+            total += counts[shard];
+        }
+        if (total == 0) {
+            return 1;
+        }
+
+        int pick = random.nextInt(total);
+        int shard = 0;
+        while (pick >= counts[shard]) {
+            pick -= counts[shard++];
+        }
+        return shard + 1 + pick * stride;
+    }
+
+    private String user(Random random) {
+        return "user" + userDistribution.sample(random);
+    }
+
+    private String category(Random random) {
+        return "category" + categoryDistribution.sample(random);
+    }
+
+    private void resetHistograms() {
+        for (int i = 0; i < histograms.length(); i++) {
+            histograms.set(i, new LatencyHistogram());
+        }
+    }
+
+    private void printReport(LatencyHistogram[] measured, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long totalOps = 0;
+
+        ConsoleUtils.printHeader("Load Report");
+        System.out.printf("%-26s %12s %12s %10s %10s %10s %10s%n",
+                "operation", "ops", "ops/s", "p50 us", "p99 us", "p99.9 us", "max us");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = measured[operation.ordinal()];
+            long count = histogram.count();
+            if (count == 0) {
+                continue;
+            }
+            totalOps += count;
+            System.out.printf("%-26s %12d %12.0f %10.1f %10.1f %10.1f %10.1f%n",
+                    operation.getMethod(), count, count / seconds,
+                    histogram.percentile(50) / 1e3, histogram.percentile(99) / 1e3,
+                    histogram.percentile(99.9) / 1e3, histogram.max() / 1e3);
+        }
+        System.out.printf("%-26s %12d %12.0f%n", "total", totalOps, totalOps / seconds);
+        if (failures.get() > 0) {
+            ConsoleUtils.printWarningMessage(failures.get() + " operations failed with an exception");
+        }
+    }
+
+    /**
+     * Operations drawn in proportion to their weights, by binary search of
+     * the cumulative weights, so even an operation with a tiny share of the
+     * mix is run.
+     */
+    static final class OperationMix {
+        private final Operation[] operations;
+        private final long[] cumulative;
+
+        OperationMix(Map<Operation, Integer> weights) {
+            List<Operation> chosen = new ArrayList<>();
+            List<Long> sums = new ArrayList<>();
+            long total = 0;
+            for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+                if (entry.getValue() > 0) {
+                    total += entry.getValue();
+                    chosen.add(entry.getKey());
+                    sums.add(total);
+                }
+            }
+            if (total <= 0) {
+                throw new IllegalArgumentException("The operation mix needs at least one positive weight");
+            }
+            operations = chosen.toArray(new Operation[0]);
+            cumulative = sums.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        Operation sample(Random random) {
+            // The first operation whose cumulative weight exceeds the draw
+            long draw = (long) (random.nextDouble() * cumulative[cumulative.length - 1]);
+            int index = Arrays.binarySearch(cumulative, draw);
+            return operations[index >= 0 ? index + 1 : -index - 1];
+        }
+    }
+
+    /**
+     * Zipf distribution over 0..n-1: P(k) is proportional to 1 / (k+1)^s.
+     * Sampling is a binary search over the precomputed CDF.
+     */
+    private static final class ZipfDistribution {
+        private final double[] cdf;
+
+        ZipfDistribution(int n, double exponent) {
+            if (n <= 0) {
+                throw new IllegalArgumentException("Distribution needs at least one value");
+            }
+            cdf = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1.0 / Math.pow(k + 1, exponent);
+                cdf[k] = sum;
+            }
+            for (int k = 0; k < n; k++) {
+                cdf[k] /= sum;
+            }
+        }
+
+        int sample(Random random) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble());
+            int value = index >= 0 ? index : -index - 1;
+            return Math.min(value, cdf.length - 1);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Options options = Options.parse(args);
+        Path temporary = null;
+        if (options.dataDirectory == null) {
+            temporary = Files.createTempDirectory("todo-load");
+            options.dataDirectory(temporary.toString());
+        }
+
+        List<TaskManager> shards = new ArrayList<>();
+        try {
+            for (int i = 0; i < options.shards; i++) {
+                String directory = options.shards == 1
+                        ? options.dataDirectory : Paths.get(options.dataDirectory, "shard-" + i).toString();
+                TaskManager shard = new TaskManager(directory, options.fsyncPolicy, options.backend);
+                shards.add(shard);
+                if (options.shards > 1) {
+                    shard.setShard(i, options.shards);
+                }
+            }
+            new LoadGenerator(shards, options).run();
+        } finally {
+            for (TaskManager shard : shards) {
+                shard.close();
+            }
+            if (temporary != null) {
+                deleteRecursively(temporary);
+            }
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package todo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A file mapped into memory in fixed-size chunks that grows on demand.
+ *
+ * Primitive accessors must not straddle a chunk boundary; callers keep
+ * fixed-width records aligned to the chunk size. Byte-array accessors may
+ * span chunks. Callers must serialize growth against all other access.
+ */
+final class MappedFile implements Closeable {
+    private final FileChannel channel;
+    private final int chunkSize;
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+    MappedFile(Path path, int chunkSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.chunkSize = chunkSize;
+        ensureCapacity(Math.max(channel.size(), 1));
+    }
+
+    void ensureCapacity(long bytes) throws IOException {
+        int needed = (int) ((bytes + chunkSize - 1) / chunkSize);
+        if (needed <= chunks.length) {
+            return;
+        }
+
+        MappedByteBuffer[] grown = Arrays.copyOf(chunks, needed);
+        for (int i = chunks.length; i < needed; i++) {
+            // Mapping past the end of the file extends it
+            grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * chunkSize, chunkSize);
+        }
+        chunks = grown;
+    }
+
+    long capacity() {
+        return (long) chunks.length * chunkSize;
+    }
+
+    byte getByte(long position) {
+        return chunk(position).get(offset(position));
+    }
+
+    void putByte(long position, byte value) {
+        chunk(position).put(offset(position), value);
+    }
+
+    int getInt(long position) {
+        return chunk(position).getInt(offset(position));
+    }
+
+    void putInt(long position, int value) {
+        chunk(position).putInt(offset(position), value);
+    }
+
+    long getLong(long position) {
+        return chunk(position).getLong(offset(position));
+    }
+
+    void putLong(long position, long value) {
+        chunk(position).putLong(offset(position), value);
+    }
+
+    void read(long position, byte[] target) {
+        int copied = 0;
+        while (copied < target.length) {
+            int offset = offset(position + copied);
+            int length = Math.min(target.length - copied, chunkSize - offset);
+            chunk(position + copied).get(offset, target, copied, length);
+            copied += length;
+        }
+    }
+
+    void write(long position, byte[] source) {
+        int copied = 0;
+        while (copied < source.length) {
+            int offset = offset(position + copied);
+            int length = Math.min(source.length - copied, chunkSize - offset);
+            chunk(position + copied).put(offset, source, copied, length);
+            copied += length;
+        }
+    }
+
+    void force() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private MappedByteBuffer chunk(long position) {
+        return chunks[(int) (position / chunkSize)];
+    }
+
+    private int offset(long position) {
+        return (int) (position % chunkSize);
+    }
+}
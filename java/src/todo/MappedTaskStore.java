@@ -0,0 +1,684 @@
+package todo;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Off-heap TaskStore for very large stores.
+ *
+ * Each task is a fixed-width 40-byte record in a memory-mapped file, at the
+ * slot given by its id. Categories and usernames are interned into a symbol
+ * table and stored as int ids; descriptions are appended to a second mapped
+ * file and referenced by offset and length. Task objects are materialized
+ * from their record on every read and are detached copies. Opening a store
+ * only maps the files and scans the records to rebuild the compact id
+ * indexes, so startup does not deserialize anything.
+ *
+ * Writers are serialized by a store-wide lock. Space used by the
+ * description of a removed task is not reclaimed. Changes land in the
+ * mapping directly, so TaskManager applies one only after its log record
+ * is on disk (see writesInPlace).
+ */
+public class MappedTaskStore implements TaskStore {
+    static final String RECORDS_FILE = "tasks.records";
+    static final String DESCRIPTIONS_FILE = "tasks.descriptions";
+    static final String SYMBOLS_FILE = "tasks.symbols";
+
+    private static final int MAGIC = 0x54444F4D; // "TDOM"
+    private static final int VERSION = 1;
+    private static final int RECORD_SIZE = 40;
+    private static final int RECORDS_PER_CHUNK = 1 << 20;
+    private static final int DESCRIPTION_CHUNK_SIZE = 64 << 20;
+
+    // Header fields, stored in record slot 0 since task ids start at 1
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_DESCRIPTION_END = 8;
+
+    // Record fields
+    private static final int FLAGS = 0;
+    private static final int CATEGORY = 4;
+    private static final int USER = 8;
+    private static final int CREATED = 12;
+    private static final int COMPLETED = 20;
+    private static final int DESCRIPTION_OFFSET = 28;
+    private static final int DESCRIPTION_LENGTH = 36;
+
+    private static final byte FLAG_LIVE = 1;
+    private static final byte FLAG_COMPLETED = 2;
+    // The flags byte leads the record's first int; its other three bytes hold the
+    // task version less one, so records written before versions read as version 1.
+    // A task's version wraps after 2^24 changes.
+    private static final int VERSION_MASK = 0xFFFFFF;
+
+    private final MappedFile records;
+    private final MappedFile descriptions;
+    private final FileChannel symbolChannel;
+    private final List<String> symbols = new ArrayList<>();
+    private final List<String> symbolKeys = new ArrayList<>();
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+
+    private final Map<String, IntSortedSet> byUser = new HashMap<>();
+    private final Map<String, IntSortedSet> byCategory = new HashMap<>();
+    // Indexed by status ordinal; a bitmap, since completing an old task lands in the middle
+    private final IntBitSet[] byStatus = {new IntBitSet(), new IntBitSet()};
+    private final Map<String, IntSortedSet> byUserAndStatus = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long descriptionEnd;
+    private int maxId;
+    private int size;
+
+    private MappedTaskStore(Path directory) throws IOException {
+        records = new MappedFile(directory.resolve(RECORDS_FILE), RECORD_SIZE * RECORDS_PER_CHUNK);
+        descriptions = new MappedFile(directory.resolve(DESCRIPTIONS_FILE), DESCRIPTION_CHUNK_SIZE);
+        symbolChannel = FileChannel.open(directory.resolve(SYMBOLS_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    public static MappedTaskStore open(Path directory) throws IOException {
+        MappedTaskStore store = new MappedTaskStore(directory);
+        try {
+            store.readHeader();
+            store.loadSymbols();
+            store.rebuildIndexes();
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    @Override
+    public void add(Task task) {
+        lock.writeLock().lock();
+        try {
+            long slot = slot(task.getId());
+            records.ensureCapacity(slot + RECORD_SIZE);
+            if (isLive(slot)) {
+                unindex(task.getId(), slot);
+            } else {
+                size++;
+            }
+
+            byte[] description = task.getDescription().getBytes(StandardCharsets.UTF_8);
+            descriptions.ensureCapacity(descriptionEnd + description.length);
+            descriptions.write(descriptionEnd, description);
+
+            boolean completed = task.getStatus() == Task.TaskStatus.COMPLETED;
+            int flags = FLAG_LIVE | (completed ? FLAG_COMPLETED : 0);
+            records.putInt(slot + FLAGS, flags << 24 | ((task.getVersion() - 1) & VERSION_MASK));
+            records.putInt(slot + CATEGORY, intern(task.getCategory()));
+            records.putInt(slot + USER, intern(task.getAssignedUser()));
+            records.putLong(slot + CREATED, task.getCreatedMillis());
+            records.putLong(slot + COMPLETED, completed ? task.getCompletedMillis() : 0);
+            records.putLong(slot + DESCRIPTION_OFFSET, descriptionEnd);
+            records.putInt(slot + DESCRIPTION_LENGTH, description.length);
+
+            descriptionEnd += description.length;
+            records.putLong(HEADER_DESCRIPTION_END, descriptionEnd);
+            maxId = Math.max(maxId, task.getId());
+            index(task.getId(), slot);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Task remove(int id) {
+        lock.writeLock().lock();
+        try {
+            if (!exists(id)) {
+                return null;
+            }
+            long slot = slot(id);
+            Task task = materialize(id, slot);
+            unindex(id, slot);
+            records.putByte(slot + FLAGS, (byte) 0);
+            size--;
+            return task;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Task get(int id) {
+        lock.readLock().lock();
+        try {
+            return exists(id) ? materialize(id, slot(id)) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Task markCompleted(int id, LocalDateTime completedDate) {
+        lock.writeLock().lock();
+        try {
+            if (!exists(id)) {
+                return null;
+            }
+            long slot = slot(id);
+            unindex(id, slot);
+            records.putByte(slot + FLAGS, (byte) (FLAG_LIVE | FLAG_COMPLETED));
+            records.putLong(slot + COMPLETED, TaskCodec.toEpochMillis(completedDate));
+            nextVersion(slot);
+            index(id, slot);
+            return materialize(id, slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Task reassign(int id, String assignedUser) {
+        lock.writeLock().lock();
+        try {
+            if (!exists(id)) {
+                return null;
+            }
+            long slot = slot(id);
+            unindex(id, slot);
+            records.putInt(slot + USER, intern(assignedUser));
+            nextVersion(slot);
+            index(id, slot);
+            return materialize(id, slot);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> all() {
+        lock.readLock().lock();
+        try {
+            List<Task> all = new ArrayList<>(size);
+            for (int id = 1; id <= maxId; id++) {
+                long slot = slot(id);
+                if (isLive(slot)) {
+                    all.add(materialize(id, slot));
+                }
+            }
+            return all;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int maxId() {
+        lock.readLock().lock();
+        try {
+            return maxId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> findByUser(String username) {
+        return find(byUser, TaskIndex.key(username));
+    }
+
+    @Override
+    public List<Task> findByCategory(String category) {
+        return find(byCategory, TaskIndex.key(category));
+    }
+
+    @Override
+    public List<Task> findByStatus(Task.TaskStatus status) {
+        lock.readLock().lock();
+        try {
+            IntBitSet ids = byStatus[status.ordinal()];
+            List<Task> tasks = new ArrayList<>(ids.size());
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                tasks.add(materialize(id, slot(id)));
+            }
+            return tasks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> findByUserAndStatus(String username, Task.TaskStatus status) {
+        return find(byUserAndStatus, userStatusKey(TaskIndex.key(username), status));
+    }
+
+    @Override
+    public Set<String> categories() {
+        lock.readLock().lock();
+        try {
+            Set<String> categories = new HashSet<>();
+            for (IntSortedSet ids : byCategory.values()) {
+                if (!ids.isEmpty()) {
+                    categories.add(symbols.get(records.getInt(slot(ids.get(0)) + CATEGORY)));
+                }
+            }
+            return categories;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> page(TaskFilter filter, int afterId, int limit) {
+        String userKey = filter.getUsername() == null ? null : TaskIndex.key(filter.getUsername());
+        String categoryKey = filter.getCategory() == null ? null : TaskIndex.key(filter.getCategory());
+        Task.TaskStatus status = filter.getStatus();
+
+        if (afterId == Integer.MAX_VALUE) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            List<Task> page = new ArrayList<>(Math.min(limit, 256));
+            if (userKey == null && categoryKey == null && status == null) {
+                for (int id = Math.max(afterId, 0) + 1; id <= maxId && page.size() < limit; id++) {
+                    long slot = slot(id);
+                    if (isLive(slot)) {
+                        page.add(materialize(id, slot));
+                    }
+                }
+                return page;
+            } else if (userKey == null && categoryKey == null) {
+                IntBitSet ids = byStatus[status.ordinal()];
+                for (int id = ids.nextSetBit(afterId + 1); id >= 0 && page.size() < limit; id = ids.nextSetBit(id + 1)) {
+                    page.add(materialize(id, slot(id)));
+                }
+                return page;
+            }
+
+            IntSortedSet ids = userKey != null && status != null ? byUserAndStatus.get(userStatusKey(userKey, status))
+                    : userKey != null ? byUser.get(userKey)
+                    : byCategory.get(categoryKey);
+            if (ids == null) {
+                return page;
+            }
+            // Check the remaining conditions on the record before decoding it
+            for (int i = ids.indexAfter(afterId); i < ids.size() && page.size() < limit; i++) {
+                int id = ids.get(i);
+                long slot = slot(id);
+                if ((categoryKey == null || categoryKey.equals(symbolKeys.get(records.getInt(slot + CATEGORY))))
+                        && (status == null || status == status(slot))) {
+                    page.add(materialize(id, slot));
+                }
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int count(TaskQuery query) {
+        lock.readLock().lock();
+        try {
+            return evaluate(query).size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> select(TaskQuery query, int afterId, int limit) {
+        if (afterId == Integer.MAX_VALUE) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            return materialize(evaluate(query), afterId, limit, null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Evaluates the query once and materializes the matches a chunk at a
+     * time. Each chunk rechecks its candidates against the current records,
+     * so the result follows the same rules as paging with select().
+     */
+    @Override
+    public Iterator<Task> iterate(TaskQuery query, int afterId) {
+        if (afterId == Integer.MAX_VALUE) {
+            return Collections.emptyIterator();
+        }
+        IntBitSet candidates;
+        lock.readLock().lock();
+        try {
+            candidates = evaluate(query);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new PagingIterator((after, limit) -> {
+            lock.readLock().lock();
+            try {
+                return materialize(candidates, after, limit, query);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }, afterId);
+    }
+
+    @Override
+    public long checkpoint() throws IOException {
+        lock.writeLock().lock();
+        try {
+            descriptions.force();
+            records.force();
+            return 0; // dirty pages go straight from the mapping to disk
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean writesInPlace() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            records.close();
+            descriptions.close();
+            symbolChannel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void readHeader() throws IOException {
+        int magic = records.getInt(HEADER_MAGIC);
+        if (magic == 0) {
+            records.putInt(HEADER_MAGIC, MAGIC);
+            records.putInt(HEADER_VERSION, VERSION);
+            return;
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Not a mapped task store: " + RECORDS_FILE);
+        }
+        int version = records.getInt(HEADER_VERSION);
+        if (version != VERSION) {
+            throw new IOException("Unsupported mapped task store version " + version);
+        }
+        descriptionEnd = records.getLong(HEADER_DESCRIPTION_END);
+    }
+
+    /**
+     * Reads back every intact symbol and drops a torn trailing entry. Symbols
+     * are forced to disk as they are interned, before any record can refer
+     * to them, so no surviving record points at a dropped entry.
+     */
+    private void loadSymbols() throws IOException {
+        long validEnd = 0;
+        long fileSize = symbolChannel.size();
+        symbolChannel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(symbolChannel)));
+
+        try {
+            while (validEnd < fileSize) {
+                int length = in.readInt();
+                if (length < 0 || validEnd + 4 + length > fileSize) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                addSymbol(new String(bytes, StandardCharsets.UTF_8));
+                validEnd += 4 + length;
+            }
+        } catch (EOFException e) {
+            // Torn final entry
+        }
+
+        symbolChannel.truncate(validEnd);
+        symbolChannel.position(validEnd);
+    }
+
+    private void rebuildIndexes() {
+        long slots = records.capacity() / RECORD_SIZE;
+        for (int id = 1; id < slots; id++) {
+            long slot = slot(id);
+            if (!isLive(slot)) {
+                continue;
+            }
+            index(id, slot);
+            maxId = id;
+            size++;
+        }
+    }
+
+    private int intern(String value) throws IOException {
+        Integer id = symbolIds.get(value);
+        if (id != null) {
+            return id;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(4 + bytes.length);
+        entry.putInt(bytes.length).put(bytes).flip();
+        while (entry.hasRemaining()) {
+            symbolChannel.write(entry);
+        }
+        // New users and categories are rare, so paying a force for each is cheap
+        symbolChannel.force(false);
+        return addSymbol(value);
+    }
+
+    private int addSymbol(String value) {
+        int id = symbols.size();
+        symbols.add(value);
+        symbolKeys.add(TaskIndex.key(value));
+        symbolIds.put(value, id);
+        return id;
+    }
+
+    private boolean exists(int id) {
+        return id > 0 && id <= maxId && isLive(slot(id));
+    }
+
+    private boolean isLive(long slot) {
+        return slot + RECORD_SIZE <= records.capacity() && (records.getByte(slot + FLAGS) & FLAG_LIVE) != 0;
+    }
+
+    private static long slot(int id) {
+        return (long) id * RECORD_SIZE;
+    }
+
+    private int version(long slot) {
+        return (records.getInt(slot + FLAGS) & VERSION_MASK) + 1;
+    }
+
+    private void nextVersion(long slot) {
+        int word = records.getInt(slot + FLAGS);
+        records.putInt(slot + FLAGS, (word & ~VERSION_MASK) | ((word + 1) & VERSION_MASK));
+    }
+
+    private Task.TaskStatus status(long slot) {
+        return (records.getByte(slot + FLAGS) & FLAG_COMPLETED) != 0
+                ? Task.TaskStatus.COMPLETED
+                : Task.TaskStatus.PENDING;
+    }
+
+    private Task materialize(int id, long slot) {
+        byte[] description = new byte[records.getInt(slot + DESCRIPTION_LENGTH)];
+        descriptions.read(records.getLong(slot + DESCRIPTION_OFFSET), description);
+
+        long completedMillis = status(slot) == Task.TaskStatus.COMPLETED
+                ? records.getLong(slot + COMPLETED)
+                : Task.NOT_COMPLETED;
+        return new Task(id, new String(description, StandardCharsets.UTF_8),
+                symbols.get(records.getInt(slot + CATEGORY)),
+                symbols.get(records.getInt(slot + USER)),
+                records.getLong(slot + CREATED),
+                completedMillis,
+                version(slot));
+    }
+
+    // Up to limit of the ids above afterId, rechecked against the query if one is given
+    private List<Task> materialize(IntBitSet ids, int afterId, int limit, TaskQuery recheck) {
+        List<Task> page = new ArrayList<>(Math.min(limit, 256));
+        for (int id = ids.nextSetBit(afterId + 1); id >= 0 && page.size() < limit; id = ids.nextSetBit(id + 1)) {
+            long slot = slot(id);
+            if (recheck == null) {
+                page.add(materialize(id, slot));
+            } else if (exists(id)) {
+                Task task = materialize(id, slot);
+                if (recheck.matches(task)) {
+                    page.add(task);
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Ids of the tasks matching the query. A conjunction intersects its
+     * indexed operands first and checks creation times only on what is left.
+     * The caller holds the read lock.
+     */
+    private IntBitSet evaluate(TaskQuery query) {
+        switch (query.getKind()) {
+            case USER:
+                return IntBitSet.of(byUser.get(query.getName()));
+            case CATEGORY:
+                return IntBitSet.of(byCategory.get(query.getName()));
+            case STATUS:
+                return byStatus[query.getStatus().ordinal()].copy();
+            case CREATED_AFTER:
+            case CREATED_BEFORE:
+                return keepCreated(liveIds(), Collections.singletonList(query));
+            case NOT:
+                IntBitSet remaining = liveIds();
+                remaining.andNot(evaluate(query.getOperands().get(0)));
+                return remaining;
+            case OR:
+                IntBitSet union = new IntBitSet();
+                for (TaskQuery operand : query.getOperands()) {
+                    union.or(evaluate(operand));
+                }
+                return union;
+            case AND:
+                IntBitSet ids = null;
+                List<TaskQuery> excluded = new ArrayList<>();
+                List<TaskQuery> checked = new ArrayList<>();
+                for (TaskQuery operand : query.getOperands()) {
+                    if (operand.isCreatedRange()) {
+                        checked.add(operand);
+                    } else if (operand.getKind() == TaskQuery.Kind.NOT) {
+                        excluded.add(operand.getOperands().get(0));
+                    } else if (ids == null) {
+                        ids = evaluate(operand);
+                    } else {
+                        ids.and(evaluate(operand));
+                    }
+                }
+                if (ids == null) {
+                    ids = liveIds();
+                }
+                for (TaskQuery operand : excluded) {
+                    ids.andNot(evaluate(operand));
+                }
+                return checked.isEmpty() ? ids : keepCreated(ids, checked);
+            default:
+                return liveIds();
+        }
+    }
+
+    private IntBitSet liveIds() {
+        IntBitSet ids = byStatus[Task.TaskStatus.PENDING.ordinal()].copy();
+        ids.or(byStatus[Task.TaskStatus.COMPLETED.ordinal()]);
+        return ids;
+    }
+
+    // Removes the ids whose record's creation time fails a condition
+    private IntBitSet keepCreated(IntBitSet ids, List<TaskQuery> conditions) {
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            long created = records.getLong(slot(id) + CREATED);
+            for (TaskQuery condition : conditions) {
+                if (!condition.matchesCreated(created)) {
+                    ids.remove(id);
+                    break;
+                }
+            }
+        }
+        return ids;
+    }
+
+    private <K> List<Task> find(Map<K, IntSortedSet> index, K key) {
+        lock.readLock().lock();
+        try {
+            IntSortedSet ids = index.get(key);
+            if (ids == null) {
+                return new ArrayList<>();
+            }
+            List<Task> tasks = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                int id = ids.get(i);
+                tasks.add(materialize(id, slot(id)));
+            }
+            return tasks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(int id, long slot) {
+        String user = symbolKeys.get(records.getInt(slot + USER));
+        Task.TaskStatus status = status(slot);
+        byUser.computeIfAbsent(user, k -> new IntSortedSet()).add(id);
+        byCategory.computeIfAbsent(symbolKeys.get(records.getInt(slot + CATEGORY)), k -> new IntSortedSet()).add(id);
+        byStatus[status.ordinal()].add(id);
+        byUserAndStatus.computeIfAbsent(userStatusKey(user, status), k -> new IntSortedSet()).add(id);
+    }
+
+    private void unindex(int id, long slot) {
+        String user = symbolKeys.get(records.getInt(slot + USER));
+        Task.TaskStatus status = status(slot);
+        removeFrom(byUser, user, id);
+        removeFrom(byCategory, symbolKeys.get(records.getInt(slot + CATEGORY)), id);
+        byStatus[status.ordinal()].remove(id);
+        removeFrom(byUserAndStatus, userStatusKey(user, status), id);
+    }
+
+    private static String userStatusKey(String user, Task.TaskStatus status) {
+        return user + '\u0000' + status.ordinal();
+    }
+
+    private static <K> void removeFrom(Map<K, IntSortedSet> index, K key, int id) {
+        IntSortedSet ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package todo;
+
+/**
+ * One step of a batch passed to TaskManager.applyBatch. Instances are
+ * immutable and created through the static factories.
+ */
+public abstract class Mutation {
+    public enum Type {
+        ADD,
+        REMOVE,
+        COMPLETE,
+        REASSIGN
+    }
+
+    private final Type type;
+
+    private Mutation(Type type) {
+        this.type = type;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public static Add add(String description, String category, String assignedUser) {
+        return new Add(description, category, assignedUser);
+    }
+
+    public static Remove remove(int id) {
+        return new Remove(id);
+    }
+
+    public static Complete complete(int id, String username) {
+        return new Complete(id, username);
+    }
+
+    /**
+     * A null fromUsername skips the ownership check, as in TaskManager.reassignTask.
+     */
+    public static Reassign reassign(int id, String fromUsername, String toUsername) {
+        return new Reassign(id, fromUsername, toUsername);
+    }
+
+    public static final class Add extends Mutation {
+        private final String description;
+        private final String category;
+        private final String assignedUser;
+
+        private Add(String description, String category, String assignedUser) {
+            super(Type.ADD);
+            this.description = description;
+            this.category = category;
+            this.assignedUser = assignedUser;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public String getAssignedUser() {
+            return assignedUser;
+        }
+
+        @Override
+        public String toString() {
+            return "ADD \"" + description + "\" to " + assignedUser;
+        }
+    }
+
+    public static final class Remove extends Mutation {
+        private final int id;
+
+        private Remove(int id) {
+            super(Type.REMOVE);
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return "REMOVE #" + id;
+        }
+    }
+
+    public static final class Complete extends Mutation {
+        private final int id;
+        private final String username;
+
+        private Complete(int id, String username) {
+            super(Type.COMPLETE);
+            this.id = id;
+            this.username = username;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        @Override
+        public String toString() {
+            return "COMPLETE #" + id + " by " + username;
+        }
+    }
+
+    public static final class Reassign extends Mutation {
+        private final int id;
+        private final String fromUsername;
+        private final String toUsername;
+
+        private Reassign(int id, String fromUsername, String toUsername) {
+            super(Type.REASSIGN);
+            this.id = id;
+            this.fromUsername = fromUsername;
+            this.toUsername = toUsername;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getFromUsername() {
+            return fromUsername;
+        }
+
+        public String getToUsername() {
+            return toUsername;
+        }
+
+        @Override
+        public String toString() {
+            return "REASSIGN #" + id + " to " + toUsername;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package todo;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates a query by pulling pages of CHUNK tasks from a store as it goes,
+ * so nothing is held between pages.
+ */
+final class PagingIterator implements Iterator<Task> {
+    static final int CHUNK = 256;
+
+    /**
+     * Fetches up to limit matching tasks with ids greater than afterId.
+     */
+    interface Pager {
+        List<Task> page(int afterId, int limit);
+    }
+
+    private final Pager pager;
+    private int afterId;
+    private List<Task> chunk = Collections.emptyList();
+    private int position;
+    private boolean exhausted;
+
+    PagingIterator(Pager pager, int afterId) {
+        this.pager = pager;
+        this.afterId = afterId;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (position < chunk.size()) {
+            return true;
+        }
+        if (exhausted) {
+            return false;
+        }
+
+        chunk = pager.page(afterId, CHUNK);
+        position = 0;
+        exhausted = chunk.size() < CHUNK;
+        if (!chunk.isEmpty()) {
+            afterId = chunk.get(chunk.size() - 1).getId();
+        }
+        return !chunk.isEmpty();
+    }
+
+    @Override
+    public Task next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return chunk.get(position++);
+    }
+}
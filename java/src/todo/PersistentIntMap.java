@@ -0,0 +1,494 @@
+package todo;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Immutable map from non-negative int keys to values, iterated in key order.
+ *
+ * It is a 32-way trie on the bits of the key, with each node storing only
+ * its populated children behind a bitmap. put and remove return a new map
+ * that copies the seven nodes on the key's path and shares everything else
+ * with the old one, so keeping old versions around is cheap and a version
+ * can be read from any number of threads without locking.
+ *
+ * The nodes on the last level are 32-bit bitmaps of keys, so the maps also
+ * work as compressed id sets: and, or, andNot and filter combine them node
+ * by node, reuse untouched subtrees, and intersectionSize counts without
+ * building anything.
+ */
+final class PersistentIntMap<V> implements Iterable<V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int TOP_SHIFT = 30; // Keys have 31 bits: 1 at the top level, then 5 per level
+    private static final int LEVELS = TOP_SHIFT / BITS + 1;
+
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(null, 0);
+
+    private static final class Node {
+        final int bitmap;
+        final Object[] children; // Nodes, or values on the last level
+
+        Node(int bitmap, Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        Object child(int bit) {
+            return children[Integer.bitCount(bitmap & (bit - 1))];
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    /**
+     * Builds the map of keys[from..to) to values[from..to) in a single pass
+     * per level, instead of copying a path for every put. The keys must be
+     * non-negative and strictly increasing.
+     */
+    static <V> PersistentIntMap<V> fromSorted(int[] keys, Object[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (keys[i] < 0 || i > from && keys[i] <= keys[i - 1]) {
+                throw new IllegalArgumentException("Keys must be non-negative and increasing at " + keys[i]);
+            }
+            if (values[i] == null) {
+                throw new NullPointerException("Value cannot be null");
+            }
+        }
+        return from == to ? empty() : new PersistentIntMap<>(build(keys, values, from, to, TOP_SHIFT), to - from);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        if (key < 0) {
+            return null;
+        }
+        Node node = root;
+        for (int shift = TOP_SHIFT; node != null; shift -= BITS) {
+            int bit = 1 << ((key >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            if (shift == 0) {
+                return (V) node.child(bit);
+            }
+            node = (Node) node.child(bit);
+        }
+        return null;
+    }
+
+    PersistentIntMap<V> put(int key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Key must not be negative: " + key);
+        }
+        if (value == null) {
+            throw new NullPointerException("Value cannot be null");
+        }
+        int newSize = get(key) == null ? size + 1 : size;
+        return new PersistentIntMap<>(put(root, key, value, TOP_SHIFT), newSize);
+    }
+
+    PersistentIntMap<V> remove(int key) {
+        if (get(key) == null) {
+            return this;
+        }
+        return new PersistentIntMap<>(remove(root, key, TOP_SHIFT), size - 1);
+    }
+
+    /**
+     * Returns the smallest key at or above from, or -1 if there is none.
+     */
+    int ceilingKey(int from) {
+        if (root == null) {
+            return -1;
+        }
+        return ceilingKey(root, Math.max(from, 0), TOP_SHIFT);
+    }
+
+    /**
+     * Returns the largest key, or -1 if the map is empty.
+     */
+    int lastKey() {
+        if (root == null) {
+            return -1;
+        }
+        int key = 0;
+        Node node = root;
+        for (int shift = TOP_SHIFT; ; shift -= BITS) {
+            int digit = 31 - Integer.numberOfLeadingZeros(node.bitmap);
+            key |= digit << shift;
+            if (shift == 0) {
+                return key;
+            }
+            node = (Node) node.children[node.children.length - 1];
+        }
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return valuesFrom(0);
+    }
+
+    /**
+     * Iterates the values whose keys are at or above from, in key order.
+     */
+    Iterator<V> valuesFrom(int from) {
+        return new Iterator<V>() {
+            private int nextKey = ceilingKey(from);
+
+            @Override
+            public boolean hasNext() {
+                return nextKey >= 0;
+            }
+
+            @Override
+            public V next() {
+                if (nextKey < 0) {
+                    throw new NoSuchElementException();
+                }
+                V value = get(nextKey);
+                nextKey = nextKey == Integer.MAX_VALUE ? -1 : ceilingKey(nextKey + 1);
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Entries of this map whose keys are also in the other map.
+     */
+    PersistentIntMap<V> and(PersistentIntMap<?> other) {
+        if (root == null || other.root == null) {
+            return empty();
+        }
+        return of(and(root, other.root, TOP_SHIFT));
+    }
+
+    /**
+     * Entries of either map; for keys in both, the value from this one.
+     */
+    PersistentIntMap<V> or(PersistentIntMap<V> other) {
+        return of(or(root, other.root, TOP_SHIFT));
+    }
+
+    /**
+     * Entries of this map whose keys are not in the other map.
+     */
+    PersistentIntMap<V> andNot(PersistentIntMap<?> other) {
+        if (root == null || other.root == null) {
+            return this;
+        }
+        return of(andNot(root, other.root, TOP_SHIFT));
+    }
+
+    PersistentIntMap<V> filter(Predicate<? super V> predicate) {
+        if (root == null) {
+            return this;
+        }
+        return of(filter(root, predicate, TOP_SHIFT));
+    }
+
+    /**
+     * Counts the keys present in every included map and in no excluded map,
+     * walking only the nodes they share. Nothing is allocated per key.
+     */
+    static int intersectionSize(PersistentIntMap<?>[] include, PersistentIntMap<?>[] exclude) {
+        if (include.length == 0) {
+            throw new IllegalArgumentException("At least one map must be included");
+        }
+        Node[][] included = new Node[LEVELS][include.length];
+        Node[][] excluded = new Node[LEVELS][exclude.length];
+        for (int i = 0; i < include.length; i++) {
+            if (include[i].root == null) {
+                return 0;
+            }
+            included[0][i] = include[i].root;
+        }
+        int excludedCount = 0;
+        for (PersistentIntMap<?> map : exclude) {
+            if (map.root != null) {
+                excluded[0][excludedCount++] = map.root;
+            }
+        }
+        return intersectionSize(included, include.length, excluded, excludedCount, 0, TOP_SHIFT);
+    }
+
+    private PersistentIntMap<V> of(Node root) {
+        return root == this.root ? this : new PersistentIntMap<>(root, countKeys(root, TOP_SHIFT));
+    }
+
+    private static int countKeys(Node node, int shift) {
+        if (node == null) {
+            return 0;
+        }
+        if (shift == 0) {
+            return Integer.bitCount(node.bitmap);
+        }
+        int count = 0;
+        for (Object child : node.children) {
+            count += countKeys((Node) child, shift - BITS);
+        }
+        return count;
+    }
+
+    private static int intersectionSize(Node[][] included, int includedCount, Node[][] excluded, int excludedCount,
+                                        int level, int shift) {
+        int mask = -1;
+        for (int i = 0; i < includedCount; i++) {
+            mask &= included[level][i].bitmap;
+        }
+        if (shift == 0) {
+            for (int i = 0; i < excludedCount; i++) {
+                mask &= ~excluded[level][i].bitmap;
+            }
+            return Integer.bitCount(mask);
+        }
+
+        int count = 0;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            int bit = Integer.lowestOneBit(bits);
+            for (int i = 0; i < includedCount; i++) {
+                included[level + 1][i] = (Node) included[level][i].child(bit);
+            }
+            // An excluded map without this child excludes nothing below it
+            int childExcluded = 0;
+            for (int i = 0; i < excludedCount; i++) {
+                if ((excluded[level][i].bitmap & bit) != 0) {
+                    excluded[level + 1][childExcluded++] = (Node) excluded[level][i].child(bit);
+                }
+            }
+            count += intersectionSize(included, includedCount, excluded, childExcluded, level + 1, shift - BITS);
+        }
+        return count;
+    }
+
+    private static Node and(Node a, Node b, int shift) {
+        int mask = a.bitmap & b.bitmap;
+        if (shift == 0) {
+            return restrict(a, mask);
+        }
+        Object[] children = new Object[Integer.bitCount(mask)];
+        int bitmap = 0;
+        int count = 0;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            int bit = Integer.lowestOneBit(bits);
+            Node child = and((Node) a.child(bit), (Node) b.child(bit), shift - BITS);
+            if (child != null) {
+                children[count++] = child;
+                bitmap |= bit;
+            }
+        }
+        return rebuild(a, bitmap, children, count);
+    }
+
+    private static Node or(Node a, Node b, int shift) {
+        if (a == null || a == b) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        int mask = a.bitmap | b.bitmap;
+        Object[] children = new Object[Integer.bitCount(mask)];
+        int count = 0;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            int bit = Integer.lowestOneBit(bits);
+            Object fromA = (a.bitmap & bit) != 0 ? a.child(bit) : null;
+            Object fromB = (b.bitmap & bit) != 0 ? b.child(bit) : null;
+            children[count++] = shift == 0
+                    ? (fromA != null ? fromA : fromB)
+                    : or((Node) fromA, (Node) fromB, shift - BITS);
+        }
+        return rebuild(a, mask, children, count);
+    }
+
+    private static Node andNot(Node a, Node b, int shift) {
+        if (shift == 0) {
+            return restrict(a, a.bitmap & ~b.bitmap);
+        }
+        Object[] children = new Object[a.children.length];
+        int bitmap = 0;
+        int count = 0;
+        for (int bits = a.bitmap; bits != 0; bits &= bits - 1) {
+            int bit = Integer.lowestOneBit(bits);
+            Node child = (Node) a.child(bit);
+            if ((b.bitmap & bit) != 0) {
+                child = andNot(child, (Node) b.child(bit), shift - BITS);
+            }
+            if (child != null) {
+                children[count++] = child;
+                bitmap |= bit;
+            }
+        }
+        return rebuild(a, bitmap, children, count);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Node filter(Node node, Predicate<? super V> predicate, int shift) {
+        if (shift == 0) {
+            int mask = 0;
+            for (int bits = node.bitmap; bits != 0; bits &= bits - 1) {
+                int bit = Integer.lowestOneBit(bits);
+                if (predicate.test((V) node.child(bit))) {
+                    mask |= bit;
+                }
+            }
+            return restrict(node, mask);
+        }
+        Object[] children = new Object[node.children.length];
+        int bitmap = 0;
+        int count = 0;
+        for (int bits = node.bitmap; bits != 0; bits &= bits - 1) {
+            int bit = Integer.lowestOneBit(bits);
+            Node child = filter((Node) node.child(bit), predicate, shift - BITS);
+            if (child != null) {
+                children[count++] = child;
+                bitmap |= bit;
+            }
+        }
+        return rebuild(node, bitmap, children, count);
+    }
+
+    // The entries of a last-level node whose bits are in the mask
+    private static Node restrict(Node node, int mask) {
+        if (mask == node.bitmap) {
+            return node;
+        }
+        if (mask == 0) {
+            return null;
+        }
+        Object[] children = new Object[Integer.bitCount(mask)];
+        int count = 0;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            children[count++] = node.child(Integer.lowestOneBit(bits));
+        }
+        return new Node(mask, children);
+    }
+
+    // A node with the given children, or the original when nothing changed
+    private static Node rebuild(Node original, int bitmap, Object[] children, int count) {
+        if (count == 0) {
+            return null;
+        }
+        if (bitmap == original.bitmap && Arrays.equals(children, 0, count, original.children, 0, count)) {
+            return original;
+        }
+        return new Node(bitmap, count == children.length ? children : Arrays.copyOf(children, count));
+    }
+
+    // keys[from..to) all share the digits above shift
+    private static Node build(int[] keys, Object[] values, int from, int to, int shift) {
+        int bitmap = 0;
+        for (int i = from; i < to; i++) {
+            bitmap |= 1 << ((keys[i] >>> shift) & MASK);
+        }
+        if (shift == 0) {
+            return new Node(bitmap, Arrays.copyOfRange(values, from, to));
+        }
+
+        Object[] children = new Object[Integer.bitCount(bitmap)];
+        int child = 0;
+        int start = from;
+        for (int i = from + 1; i <= to; i++) {
+            if (i == to || ((keys[i] ^ keys[start]) >>> shift) != 0) {
+                children[child++] = build(keys, values, start, i, shift - BITS);
+                start = i;
+            }
+        }
+        return new Node(bitmap, children);
+    }
+
+    private static Node put(Node node, int key, Object value, int shift) {
+        int bit = 1 << ((key >>> shift) & MASK);
+        int bitmap = node == null ? 0 : node.bitmap;
+        int index = Integer.bitCount(bitmap & (bit - 1));
+
+        if ((bitmap & bit) != 0) {
+            Object[] children = node.children.clone();
+            children[index] = shift == 0 ? value : put((Node) children[index], key, value, shift - BITS);
+            return new Node(bitmap, children);
+        }
+
+        int count = Integer.bitCount(bitmap);
+        Object[] children = new Object[count + 1];
+        if (node != null) {
+            System.arraycopy(node.children, 0, children, 0, index);
+            System.arraycopy(node.children, index, children, index + 1, count - index);
+        }
+        children[index] = shift == 0 ? value : put(null, key, value, shift - BITS);
+        return new Node(bitmap | bit, children);
+    }
+
+    // The key must be present. Returns null once the node has no children left.
+    private static Node remove(Node node, int key, int shift) {
+        int bit = 1 << ((key >>> shift) & MASK);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Node child = shift == 0 ? null : remove((Node) node.children[index], key, shift - BITS);
+
+        if (child != null) {
+            Object[] children = node.children.clone();
+            children[index] = child;
+            return new Node(node.bitmap, children);
+        }
+        if (node.bitmap == bit) {
+            return null;
+        }
+
+        Object[] children = new Object[node.children.length - 1];
+        System.arraycopy(node.children, 0, children, 0, index);
+        System.arraycopy(node.children, index + 1, children, index, children.length - index);
+        return new Node(node.bitmap & ~bit, children);
+    }
+
+    private static int ceilingKey(Node node, int from, int shift) {
+        int digit = (from >>> shift) & MASK;
+        int bit = 1 << digit;
+
+        // First look under the child on from's own path
+        if ((node.bitmap & bit) != 0) {
+            if (shift == 0) {
+                return from;
+            }
+            int found = ceilingKey((Node) node.child(bit), from, shift - BITS);
+            if (found >= 0) {
+                return found;
+            }
+        }
+
+        // Otherwise take the smallest key under the next populated child
+        int higher = node.bitmap & -(bit << 1);
+        if (higher == 0) {
+            return -1;
+        }
+        int prefix = shift + BITS > TOP_SHIFT ? 0 : from & -(1 << (shift + BITS));
+        int nextBit = Integer.lowestOneBit(higher);
+        int key = prefix | Integer.numberOfTrailingZeros(nextBit) << shift;
+        Object child = node.child(nextBit);
+        for (int childShift = shift - BITS; childShift >= 0; childShift -= BITS) {
+            Node next = (Node) child;
+            key |= Integer.numberOfTrailingZeros(next.bitmap) << childShift;
+            child = next.children[0];
+        }
+        return key;
+    }
+}
@@ -0,0 +1,164 @@
+package todo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Task snapshot split into segments of SEGMENT_SIZE consecutive ids, so a
+ * checkpoint only rewrites the segments that changed since the last one.
+ *
+ * Each segment is a TaskCodec tasks file named after its segment number and
+ * the generation that wrote it. The manifest lists the current generation of
+ * every segment; a checkpoint writes the new segment files first and then
+ * swaps the manifest atomically, so a crash leaves either the old or the new
+ * snapshot. Segment files the manifest no longer lists are deleted.
+ */
+final class SegmentedSnapshot {
+    static final int SEGMENT_SIZE = 4096;
+    static final String MANIFEST_FILE = "tasks.manifest";
+    static final String SEGMENT_DIRECTORY = "tasks.segments";
+
+    private final Path legacyFile;
+    private final Path manifestFile;
+    private final Path segmentDirectory;
+    private final NavigableMap<Integer, Long> segments;
+    private long generation;
+
+    /**
+     * Opens the snapshot stored next to the given single-file snapshot, which
+     * is only read if no manifest has been written yet.
+     */
+    SegmentedSnapshot(Path legacyFile) throws IOException {
+        this.legacyFile = legacyFile;
+        this.manifestFile = legacyFile.resolveSibling(MANIFEST_FILE);
+        this.segmentDirectory = legacyFile.resolveSibling(SEGMENT_DIRECTORY);
+        this.segments = Files.exists(manifestFile) ? TaskCodec.readManifest(manifestFile) : new TreeMap<>();
+
+        for (long segmentGeneration : segments.values()) {
+            generation = Math.max(generation, segmentGeneration);
+        }
+        deleteUnlisted();
+    }
+
+    static int segmentOf(int id) {
+        return Math.floorDiv(id, SEGMENT_SIZE);
+    }
+
+    static boolean exists(Path legacyFile) {
+        return Files.exists(legacyFile.resolveSibling(MANIFEST_FILE)) || Files.exists(legacyFile);
+    }
+
+    /**
+     * True when the tasks come from a single-file snapshot that has not been
+     * split into segments yet.
+     */
+    boolean isLegacy() {
+        return !Files.exists(manifestFile) && Files.exists(legacyFile);
+    }
+
+    /**
+     * Reads every task, in id order. Segments are independent files, so
+     * they are decoded in parallel on the common fork-join pool.
+     */
+    List<Task> readAll() throws IOException {
+        if (isLegacy()) {
+            List<Task> tasks = TaskCodec.readTasks(legacyFile);
+            tasks.sort(Comparator.comparingInt(Task::getId));
+            return tasks;
+        }
+
+        List<List<Task>> decoded;
+        try {
+            decoded = new ArrayList<>(segments.entrySet()).parallelStream()
+                    .map(segment -> {
+                        try {
+                            return TaskCodec.readTasks(segmentFile(segment.getKey(), segment.getValue()));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        int count = 0;
+        for (List<Task> segment : decoded) {
+            count += segment.size();
+        }
+        List<Task> tasks = new ArrayList<>(count);
+        for (List<Task> segment : decoded) {
+            tasks.addAll(segment);
+        }
+        return tasks;
+    }
+
+    /**
+     * Replaces the given segments with their new contents; an empty list
+     * drops the segment. Segments not mentioned are left untouched.
+     * Returns the number of bytes written.
+     */
+    long write(Map<Integer, List<Task>> changed) throws IOException {
+        if (changed.isEmpty()) {
+            return 0;
+        }
+
+        Files.createDirectories(segmentDirectory);
+        long next = generation + 1;
+        NavigableMap<Integer, Long> updated = new TreeMap<>(segments);
+        List<Path> superseded = new ArrayList<>();
+        long bytes = 0;
+
+        for (Map.Entry<Integer, List<Task>> segment : changed.entrySet()) {
+            Long previous = segment.getValue().isEmpty()
+                    ? updated.remove(segment.getKey())
+                    : updated.put(segment.getKey(), next);
+            if (!segment.getValue().isEmpty()) {
+                bytes += TaskCodec.writeTasks(segmentFile(segment.getKey(), next), segment.getValue());
+            }
+            if (previous != null) {
+                superseded.add(segmentFile(segment.getKey(), previous));
+            }
+        }
+
+        // The manifest swap is the commit point of the checkpoint
+        bytes += TaskCodec.writeManifest(manifestFile, updated);
+        segments.clear();
+        segments.putAll(updated);
+        generation = next;
+
+        for (Path file : superseded) {
+            Files.deleteIfExists(file);
+        }
+        Files.deleteIfExists(legacyFile);
+        return bytes;
+    }
+
+    private Path segmentFile(int segment, long segmentGeneration) {
+        return segmentDirectory.resolve(segment + "-" + segmentGeneration + ".dat");
+    }
+
+    // Leftovers of a checkpoint that crashed before its manifest swap
+    private void deleteUnlisted() throws IOException {
+        if (!Files.isDirectory(segmentDirectory)) {
+            return;
+        }
+
+        Set<Path> listed = new HashSet<>();
+        for (Map.Entry<Integer, Long> segment : segments.entrySet()) {
+            listed.add(segmentFile(segment.getKey(), segment.getValue()));
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(segmentDirectory)) {
+            for (Path file : files) {
+                if (!listed.contains(file)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package todo;
+
+/**
+ * A TaskService that numbers every change it makes in one sequence, so a
+ * subscription to all tasks can resume after any point of it: a single
+ * store, a replica of one, or a TaskClient connected to either.
+ * ShardedTaskService is not one, since each shard numbers its changes on
+ * its own.
+ */
+public interface SequencedTaskService extends TaskService {
+    // Sequence of the last change made, to resume any subscription after
+    long getChangeSequence();
+
+    // One sequence covers every user's tasks
+    @Override
+    default long getChangeSequence(String username) {
+        return getChangeSequence();
+    }
+}
@@ -0,0 +1,464 @@
+package todo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * TaskService that partitions tasks by assignee over several TaskShards:
+ * a task lives on the shard its assigned user's case-folded name hashes
+ * to. The shards may be TaskManagers in this process or TaskClients
+ * connected to TaskServers elsewhere, started with --shard and --shards so
+ * each hands out its own ids.
+ *
+ * Operations on one user's tasks go to that user's shard alone.
+ * Cross-user queries run on every shard at once and merge the results:
+ * category filters and pages in the order they would have on one store,
+ * searches by interleaving each shard's ranking, since relevance scores
+ * are only comparable within a shard. Removals also go to every shard.
+ *
+ * A task keeps its id when it moves. Reassigning it to a user of another
+ * shard is a two-phase handoff. The prepare phase reassigns it on its own
+ * shard, which durably marks it as leaving: a task on the wrong shard for
+ * its assignee is always a handoff in progress. The commit phase imports
+ * it on the new shard, then removes it from the old one. If the import
+ * fails, the reassignment is undone; if the router stops in between, the
+ * next router to start finishes the handoff (see recover()). Until then a
+ * task may briefly be on two shards; merged results keep the copy on the
+ * assignee's shard.
+ *
+ * Mutations and handoffs of one task are serialized within a router, so
+ * run one router per set of shards, or in-process routers that share it.
+ * changes() needs a user filter, since each shard numbers its changes on
+ * its own, so the router is not a SequencedTaskService; subscribe to each
+ * shard for every change.
+ */
+public class ShardedTaskService implements TaskService, AutoCloseable {
+    // Must be a power of two
+    private static final int LOCK_STRIPES = 64;
+    private static final int RECOVERY_PAGE = 1000;
+    // Expected version of an unconditional reassignment; real versions start at 1
+    private static final int ANY_VERSION = 0;
+    private static final Comparator<Task> BY_ID = Comparator.comparingInt(Task::getId);
+    private static final Comparator<Task> BY_CREATED_DATE =
+            Comparator.comparingLong(Task::getCreatedMillis).thenComparingInt(Task::getId);
+
+    private final List<TaskShard> shards;
+    private final Lock[] taskLocks = new Lock[LOCK_STRIPES];
+    private final ExecutorService executor;
+
+    /**
+     * Routes over the shards, which must be listed in the same order on
+     * every start. Makes each shard hand out ids above every id already in
+     * use, then finishes any handoff left half done.
+     */
+    public ShardedTaskService(List<? extends TaskShard> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.shards = new ArrayList<>(shards);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            taskLocks[i] = new ReentrantLock();
+        }
+        ExecutorService virtualThreads = VirtualThreads.newExecutor();
+        this.executor = virtualThreads != null ? virtualThreads : Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "task-router");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // A task that moved keeps an id from its first shard's range, which
+        // that shard no longer holds and must not hand out again
+        int highest = 0;
+        for (int id : scatter(TaskShard::getHighestTaskId)) {
+            highest = Math.max(highest, id);
+        }
+        int reserved = highest;
+        scatter(shard -> {
+            shard.reserveTaskIds(reserved);
+            return null;
+        });
+
+        int finished = recover();
+        if (finished > 0) {
+            System.out.println("Finished " + finished + " interrupted task handoffs");
+        }
+    }
+
+    // Shard holding the user's tasks
+    static int shardOf(String username, int shardCount) {
+        return username == null ? 0 : Math.floorMod(TaskIndex.key(username).hashCode(), shardCount);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public User getOrCreateUser(String username) {
+        return shardFor(username).getOrCreateUser(username);
+    }
+
+    @Override
+    public boolean addTask(String description, String category, String assignedUser) {
+        return shardFor(assignedUser).addTask(description, category, assignedUser);
+    }
+
+    // Every shard is asked, so a copy left by an interrupted handoff goes too
+    @Override
+    public boolean removeTask(int id) {
+        Lock taskLock = lockFor(id);
+        taskLock.lock();
+        try {
+            boolean removed = false;
+            for (boolean shardRemoved : scatter(shard -> shard.removeTask(id))) {
+                removed |= shardRemoved;
+            }
+            return removed;
+        } finally {
+            taskLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean markTaskCompleted(int id, String username) {
+        Lock taskLock = lockFor(id);
+        taskLock.lock();
+        try {
+            return shardFor(username).markTaskCompleted(id, username);
+        } finally {
+            taskLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean completeIfVersion(int id, String username, int expectedVersion) {
+        Lock taskLock = lockFor(id);
+        taskLock.lock();
+        try {
+            return shardFor(username).completeIfVersion(id, username, expectedVersion);
+        } finally {
+            taskLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean reassignTask(int id, String fromUsername, String toUsername) {
+        return reassign(id, fromUsername, toUsername, ANY_VERSION);
+    }
+
+    // A task moved to another shard keeps its version, so the check holds across the handoff
+    @Override
+    public boolean reassignIfVersion(int id, String fromUsername, String toUsername, int expectedVersion) {
+        return reassign(id, fromUsername, toUsername, expectedVersion);
+    }
+
+    private boolean reassign(int id, String fromUsername, String toUsername, int expectedVersion) {
+        if (toUsername == null || toUsername.trim().isEmpty()) {
+            return false;
+        }
+
+        Lock taskLock = lockFor(id);
+        taskLock.lock();
+        try {
+            int source = fromUsername != null ? shardOf(fromUsername, shards.size()) : locate(id);
+            int target = shardOf(toUsername, shards.size());
+            if (source < 0) {
+                return false;
+            }
+            if (source == target) {
+                return reassignOn(shards.get(source), id, fromUsername, toUsername, expectedVersion);
+            }
+            return handOff(id, source, target, fromUsername, toUsername, expectedVersion);
+        } finally {
+            taskLock.unlock();
+        }
+    }
+
+    // Moves the task between shards in two phases; the task's lock is held
+    private boolean handOff(int id, int source, int target, String fromUsername, String toUsername,
+                            int expectedVersion) {
+        TaskShard from = shards.get(source);
+        TaskShard to = shards.get(target);
+        Optional<Task> owned = from.getTaskById(id);
+        if (!owned.isPresent()) {
+            return false;
+        }
+
+        // Prepare: once reassigned on its old shard, the task is marked as leaving
+        if (!reassignOn(from, id, fromUsername, toUsername, expectedVersion)) {
+            return false;
+        }
+        Optional<Task> leaving = from.getTaskById(id);
+        if (!leaving.isPresent()) {
+            return false; // Removed by another router in between
+        }
+
+        // Commit: the new shard takes the task first, so it is never on neither
+        try {
+            if (!to.importTask(leaving.get())) {
+                throw new IllegalStateException("Shard " + target + " could not store task #" + id);
+            }
+        } catch (RuntimeException e) {
+            try {
+                from.reassignTask(id, toUsername, owned.get().getAssignedUser());
+            } catch (RuntimeException abort) {
+                System.err.println("Error undoing handoff of task #" + id + ", left for recovery: "
+                        + abort.getMessage());
+            }
+            throw e;
+        }
+
+        try {
+            from.removeTask(id);
+        } catch (RuntimeException e) {
+            System.err.println("Error removing task #" + id + " from shard " + source + " after its handoff,"
+                    + " left for recovery: " + e.getMessage());
+        }
+        return true;
+    }
+
+    private static boolean reassignOn(TaskShard shard, int id, String fromUsername, String toUsername,
+                                      int expectedVersion) {
+        return expectedVersion == ANY_VERSION
+                ? shard.reassignTask(id, fromUsername, toUsername)
+                : shard.reassignIfVersion(id, fromUsername, toUsername, expectedVersion);
+    }
+
+    /**
+     * Finishes every handoff that was interrupted: each task on a shard
+     * other than its assignee's is imported there, unless it already is,
+     * and removed from where it was. Only users whose tasks a shard should
+     * not hold are read. Returns the number of tasks moved.
+     */
+    public int recover() {
+        int moved = 0;
+        for (int source = 0; source < shards.size(); source++) {
+            TaskShard shard = shards.get(source);
+            for (String username : shard.getAssignees()) {
+                int target = shardOf(username, shards.size());
+                if (target == source) {
+                    continue;
+                }
+
+                TaskFilter filter = TaskFilter.all().assignedTo(username);
+                TaskPage page = shard.getTasksPage(filter, TaskPage.Cursor.first(TaskPage.Order.ID), RECOVERY_PAGE);
+                while (true) {
+                    for (Task task : page.getTasks()) {
+                        Lock taskLock = lockFor(task.getId());
+                        taskLock.lock();
+                        try {
+                            if (shards.get(target).importTask(task) && shard.removeTask(task.getId())) {
+                                moved++;
+                            }
+                        } finally {
+                            taskLock.unlock();
+                        }
+                    }
+                    if (!page.hasMore()) {
+                        break;
+                    }
+                    page = shard.getTasksPage(filter, page.getNextCursor(), RECOVERY_PAGE);
+                }
+            }
+        }
+        return moved;
+    }
+
+    // Tries the shard that handed out the id first, where a task that never moved still is
+    @Override
+    public Optional<Task> getTaskById(int id) {
+        Optional<Task> task = shards.get(Math.floorMod(id - 1, shards.size())).getTaskById(id);
+        if (task.isPresent() || shards.size() == 1) {
+            return task;
+        }
+
+        List<List<Task>> found = scatter(shard -> shard.getTaskById(id).map(List::of).orElse(List.of()));
+        List<Task> merged = merge(found, BY_ID);
+        return merged.isEmpty() ? Optional.empty() : Optional.of(merged.get(0));
+    }
+
+    // Index of a shard holding the task, or -1
+    private int locate(int id) {
+        Optional<Task> task = getTaskById(id);
+        return task.isPresent() ? shardOf(task.get().getAssignedUser(), shards.size()) : -1;
+    }
+
+    @Override
+    public List<Task> getUserTasks(String username) {
+        return shardFor(username).getUserTasks(username);
+    }
+
+    @Override
+    public List<Task> getIncompleteTasksByUser(String username) {
+        return shardFor(username).getIncompleteTasksByUser(username);
+    }
+
+    @Override
+    public List<Task> filterTasksByCategory(String category) {
+        return merge(scatter(shard -> shard.filterTasksByCategory(category)), BY_ID);
+    }
+
+    @Override
+    public Set<String> getAllCategoriesFromTasks() {
+        Set<String> categories = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        for (Set<String> shardCategories : scatter(TaskShard::getAllCategoriesFromTasks)) {
+            categories.addAll(shardCategories);
+        }
+        return categories;
+    }
+
+    /**
+     * Pages of one user's tasks come from that user's shard. Otherwise each
+     * shard returns its first limit tasks after the cursor and the earliest
+     * limit of them make the page, which is the page a single store would
+     * return.
+     */
+    @Override
+    public TaskPage getTasksPage(TaskFilter filter, TaskPage.Cursor cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive");
+        }
+        TaskFilter effective = filter == null ? TaskFilter.all() : filter;
+        TaskPage.Cursor start = cursor == null ? TaskPage.Cursor.first(TaskPage.Order.ID) : cursor;
+        if (effective.getUsername() != null) {
+            return shardFor(effective.getUsername()).getTasksPage(effective, start, limit);
+        }
+
+        List<TaskPage> pages = scatter(shard -> shard.getTasksPage(effective, start, limit));
+        List<List<Task>> found = new ArrayList<>(pages.size());
+        boolean more = false;
+        for (TaskPage page : pages) {
+            found.add(page.getTasks());
+            more |= page.hasMore();
+        }
+
+        TaskPage.Order order = start.getOrder();
+        List<Task> merged = merge(found, order == TaskPage.Order.ID ? BY_ID : BY_CREATED_DATE);
+        if (merged.size() > limit) {
+            merged = new ArrayList<>(merged.subList(0, limit));
+            more = true;
+        }
+        return new TaskPage(merged, more && !merged.isEmpty()
+                ? TaskPage.Cursor.after(order, merged.get(merged.size() - 1)) : null);
+    }
+
+    @Override
+    public TaskSummary getUserSummary(String username) {
+        return shardFor(username).getUserSummary(username);
+    }
+
+    // Takes each shard's best match in turn, then each one's second best, and so on
+    @Override
+    public List<Task> searchTasks(String query, int limit) {
+        List<List<Task>> ranked = scatter(shard -> shard.searchTasks(query, limit));
+        Map<Integer, Task> result = new LinkedHashMap<>();
+        for (int rank = 0; result.size() < limit; rank++) {
+            boolean any = false;
+            for (List<Task> shardRanking : ranked) {
+                if (rank < shardRanking.size() && result.size() < limit) {
+                    Task task = shardRanking.get(rank);
+                    result.putIfAbsent(task.getId(), task);
+                    any = true;
+                }
+            }
+            if (!any) {
+                break;
+            }
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    /**
+     * Publishes the changes to one user's tasks, from that user's shard;
+     * sequences are that shard's, see getChangeSequence(String). A task
+     * moved to the user arrives as ADDED, and one moved away as REASSIGNED.
+     */
+    @Override
+    public Flow.Publisher<TaskEvent> changes(TaskFilter filter, long afterSequence) {
+        if (filter == null || filter.getUsername() == null) {
+            throw new IllegalArgumentException(
+                    "Shards number their changes separately; subscribe with a user filter or to each shard");
+        }
+        return shardFor(filter.getUsername()).changes(filter, afterSequence);
+    }
+
+    // Sequence of the last change on the shard holding the user's tasks
+    @Override
+    public long getChangeSequence(String username) {
+        return shardFor(username).getChangeSequence();
+    }
+
+    /**
+     * Stops the threads that query shards in parallel. Does not close the
+     * shards.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private TaskShard shardFor(String username) {
+        return shards.get(shardOf(username, shards.size()));
+    }
+
+    private Lock lockFor(int id) {
+        return taskLocks[id & (LOCK_STRIPES - 1)];
+    }
+
+    // Runs the call on every shard at once, the last one on this thread, and returns the results in shard order
+    private <T> List<T> scatter(Function<TaskShard, T> call) {
+        List<CompletableFuture<T>> pending = new ArrayList<>(shards.size() - 1);
+        for (TaskShard shard : shards.subList(0, shards.size() - 1)) {
+            pending.add(CompletableFuture.supplyAsync(() -> call.apply(shard), executor));
+        }
+        T last = call.apply(shards.get(shards.size() - 1));
+
+        List<T> results = new ArrayList<>(shards.size());
+        for (CompletableFuture<T> future : pending) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        results.add(last);
+        return results;
+    }
+
+    /**
+     * Combines the tasks found on each shard, in shard order, into one list
+     * in the given order. A task found on two shards, midway through a
+     * handoff, is kept once, preferring the copy on its assignee's shard.
+     */
+    private List<Task> merge(List<List<Task>> found, Comparator<Task> order) {
+        Map<Integer, Task> byId = new HashMap<>();
+        for (int shard = 0; shard < found.size(); shard++) {
+            for (Task task : found.get(shard)) {
+                if (!byId.containsKey(task.getId()) || shardOf(task.getAssignedUser(), shards.size()) == shard) {
+                    byId.put(task.getId(), task);
+                }
+            }
+        }
+        List<Task> merged = new ArrayList<>(byId.values());
+        merged.sort(order);
+        return merged;
+    }
+}
@@ -0,0 +1,34 @@
+package todo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Table of canonical String instances for task categories and assignees.
+ * A few names are repeated across millions of tasks, and every task read
+ * from the log or a snapshot would otherwise hold its own copies.
+ *
+ * Entries are never removed; the table holds one entry per distinct
+ * spelling ever seen, which stays small for names chosen by people.
+ */
+final class Symbols {
+    private static final ConcurrentMap<String, String> TABLE = new ConcurrentHashMap<>();
+
+    private Symbols() {
+    }
+
+    static String intern(String value) {
+        String canonical = TABLE.get(value);
+        if (canonical == null) {
+            canonical = TABLE.putIfAbsent(value, value);
+            if (canonical == null) {
+                canonical = value;
+            }
+        }
+        return canonical;
+    }
+
+    static int size() {
+        return TABLE.size();
+    }
+}
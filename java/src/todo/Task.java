@@ -0,0 +1,174 @@
+package todo;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+
+/**
+ * Immutable task value. Completing or reassigning a task creates a new
+ * version with the same id, so a task read from the manager never changes
+ * under the reader. The version number counts those changes from 1, and
+ * the conditional mutations on TaskService use it to reject a write based
+ * on a copy that has since changed.
+ *
+ * Tasks are kept compact, since a store may hold millions of them: the
+ * category and assignee are shared instances from the Symbols table, the
+ * dates are epoch milliseconds (wall-clock time read as UTC, as TaskCodec
+ * stores them) and the status is implied by whether there is a completed
+ * time. LocalDateTime values are created only when asked for.
+ */
+public final class Task implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 2L;
+    // completedMillis of a pending task
+    static final long NOT_COMPLETED = Long.MIN_VALUE;
+
+    private final int id;
+    private final String description;
+    private final String category;
+    private final String assignedUser;
+    private final long createdMillis;
+    private final long completedMillis;
+    private final int version;
+
+    public enum TaskStatus {
+        PENDING("Pending"),
+        COMPLETED("Completed");
+        
+        private final String displayName;
+        
+        TaskStatus(String displayName) {
+            this.displayName = displayName;
+        }
+        
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    public Task(int id, String description, String category, String assignedUser) {
+        this(id, description, category, assignedUser, LocalDateTime.now());
+    }
+
+    // Used when rebuilding a task from the write-ahead log
+    Task(int id, String description, String category, String assignedUser, LocalDateTime createdDate) {
+        this(id, description, category, assignedUser, createdDate, null);
+    }
+
+    // Used when reading a stored task; a completed date marks it completed
+    Task(int id, String description, String category, String assignedUser, LocalDateTime createdDate,
+         LocalDateTime completedDate) {
+        this(id, description, category, assignedUser,
+                TaskCodec.toEpochMillis(Objects.requireNonNull(createdDate, "Created date cannot be null")),
+                completedDate == null ? NOT_COMPLETED : TaskCodec.toEpochMillis(completedDate));
+    }
+
+    // Used by the stores, which keep the epoch millis; NOT_COMPLETED for a pending task
+    Task(int id, String description, String category, String assignedUser, long createdMillis,
+         long completedMillis) {
+        this(id, description, category, assignedUser, createdMillis, completedMillis, 1);
+    }
+
+    Task(int id, String description, String category, String assignedUser, long createdMillis,
+         long completedMillis, int version) {
+        this.id = id;
+        this.description = Objects.requireNonNull(description, "Description cannot be null");
+        this.category = Symbols.intern(Objects.requireNonNull(category, "Category cannot be null"));
+        this.assignedUser = Symbols.intern(Objects.requireNonNull(assignedUser, "Assigned user cannot be null"));
+        this.createdMillis = createdMillis;
+        this.completedMillis = completedMillis;
+        this.version = version;
+    }
+
+    // Returns this task completed now
+    public Task completed() {
+        return completed(LocalDateTime.now());
+    }
+
+    public Task completed(LocalDateTime completedDate) {
+        return new Task(id, description, category, assignedUser, createdMillis,
+                TaskCodec.toEpochMillis(Objects.requireNonNull(completedDate, "Completed date cannot be null")),
+                version + 1);
+    }
+
+    public Task withAssignedUser(String assignedUser) {
+        return new Task(id, description, category, assignedUser, createdMillis, completedMillis, version + 1);
+    }
+
+    // The same task at the given version, for copies that keep their source's version
+    Task withVersion(int version) {
+        return new Task(id, description, category, assignedUser, createdMillis, completedMillis, version);
+    }
+
+    @Override
+    public String toString() {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        String dateInfo = " (Created: " + getCreatedDate().format(formatter);
+        
+        if (getStatus() == TaskStatus.COMPLETED) {
+            dateInfo += ", Completed: " + getCompletedDate().format(formatter);
+        }
+        dateInfo += ")";
+        
+        return id + ". [" + getStatus().getDisplayName() + "] " + description + 
+               " (Category: " + category + ") - Assigned to: " + assignedUser + dateInfo;
+    }
+    
+    public int getId() {
+        return id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+    
+    public String getCategory() {
+        return category;
+    }
+
+    public TaskStatus getStatus() {
+        return completedMillis == NOT_COMPLETED ? TaskStatus.PENDING : TaskStatus.COMPLETED;
+    }
+    
+    public String getAssignedUser() {
+        return assignedUser;
+    }
+
+    public LocalDateTime getCreatedDate() {
+        return TaskCodec.fromEpochMillis(createdMillis);
+    }
+
+    // Null while the task is pending
+    public LocalDateTime getCompletedDate() {
+        return completedMillis == NOT_COMPLETED ? null : TaskCodec.fromEpochMillis(completedMillis);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    // Only meaningful for a completed task
+    long getCompletedMillis() {
+        return completedMillis;
+    }
+    
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Task task = (Task) o;
+        return id == task.id;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
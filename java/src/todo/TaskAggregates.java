@@ -0,0 +1,152 @@
+package todo;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Per-assignee and per-category task counts, kept up to date by
+ * TaskManager as each mutation is applied, so a summary is a map lookup
+ * instead of a pass over the tasks.
+ *
+ * Each count is an immutable TaskSummary replaced with compute(), so a
+ * reader never sees the pending count of one version with the completed
+ * count of another. A name whose pending and completed counts both drop
+ * to zero is removed, which makes the category map the live set of
+ * categories. A name whose counts merely sum to zero is kept, since one
+ * count may be negative until the other half of a change is applied.
+ */
+final class TaskAggregates {
+    private static final int BUILD_CHUNK = 16_384;
+
+    // Keyed by case-folded name
+    private final ConcurrentMap<String, TaskSummary> byUser = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TaskSummary> byCategory = new ConcurrentHashMap<>();
+
+    /**
+     * Counts the tasks, which should be in id order. Chunks are counted in
+     * parallel into private maps that are then merged in order, so there is
+     * no contention on the few hot names, and each name keeps the spelling
+     * of its lowest-id task.
+     */
+    static TaskAggregates of(List<Task> tasks) {
+        int chunks = (tasks.size() + BUILD_CHUNK - 1) / BUILD_CHUNK;
+        List<TaskAggregates> partials = IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    TaskAggregates partial = new TaskAggregates();
+                    int end = Math.min(tasks.size(), (chunk + 1) * BUILD_CHUNK);
+                    for (Task task : tasks.subList(chunk * BUILD_CHUNK, end)) {
+                        partial.added(task);
+                    }
+                    return partial;
+                })
+                .collect(Collectors.toList());
+
+        TaskAggregates aggregates = new TaskAggregates();
+        for (TaskAggregates partial : partials) {
+            merge(aggregates.byUser, partial.byUser);
+            merge(aggregates.byCategory, partial.byCategory);
+        }
+        return aggregates;
+    }
+
+    void added(Task task) {
+        replaced(null, task);
+    }
+
+    void removed(Task task) {
+        replaced(task, null);
+    }
+
+    /**
+     * Moves the counts of previous to current; either may be null.
+     */
+    void replaced(Task previous, Task current) {
+        move(byUser, previous == null ? null : previous.getAssignedUser(),
+                current == null ? null : current.getAssignedUser(), previous, current);
+        move(byCategory, previous == null ? null : previous.getCategory(),
+                current == null ? null : current.getCategory(), previous, current);
+    }
+
+    TaskSummary user(String username) {
+        return summary(byUser, username);
+    }
+
+    TaskSummary category(String category) {
+        return summary(byCategory, category);
+    }
+
+    /**
+     * Returns the summary of every category that has tasks, keyed by its
+     * spelling and sorted case-insensitively.
+     */
+    Map<String, TaskSummary> categories() {
+        Map<String, TaskSummary> categories = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (TaskSummary summary : byCategory.values()) {
+            categories.put(summary.getName(), summary);
+        }
+        return categories;
+    }
+
+    // Spelling of every user that has tasks
+    Set<String> users() {
+        Set<String> users = new HashSet<>();
+        for (TaskSummary summary : byUser.values()) {
+            users.add(summary.getName());
+        }
+        return users;
+    }
+
+    private static void merge(ConcurrentMap<String, TaskSummary> into, ConcurrentMap<String, TaskSummary> counts) {
+        for (Map.Entry<String, TaskSummary> entry : counts.entrySet()) {
+            TaskSummary counted = entry.getValue();
+            into.merge(entry.getKey(), counted,
+                    (summary, more) -> summary.plus(more.getPendingCount(), more.getCompletedCount()));
+        }
+    }
+
+    private static TaskSummary summary(ConcurrentMap<String, TaskSummary> counts, String name) {
+        TaskSummary summary = counts.get(TaskIndex.key(name));
+        return summary != null ? summary : new TaskSummary(name, 0, 0);
+    }
+
+    private static void move(ConcurrentMap<String, TaskSummary> counts, String from, String to,
+                             Task previous, Task current) {
+        if (from != null && to != null && TaskIndex.key(from).equals(TaskIndex.key(to))) {
+            adjust(counts, to, pending(current) - pending(previous), completed(current) - completed(previous));
+            return;
+        }
+        if (to != null) {
+            adjust(counts, to, pending(current), completed(current));
+        }
+        if (from != null) {
+            adjust(counts, from, -pending(previous), -completed(previous));
+        }
+    }
+
+    private static void adjust(ConcurrentMap<String, TaskSummary> counts, String name,
+                               int pendingDelta, int completedDelta) {
+        if (pendingDelta == 0 && completedDelta == 0) {
+            return;
+        }
+        counts.compute(TaskIndex.key(name), (key, summary) -> {
+            TaskSummary next = (summary != null ? summary : new TaskSummary(name, 0, 0))
+                    .plus(pendingDelta, completedDelta);
+            return next.getPendingCount() == 0 && next.getCompletedCount() == 0 ? null : next;
+        });
+    }
+
+    private static int pending(Task task) {
+        return task != null && task.getStatus() == Task.TaskStatus.PENDING ? 1 : 0;
+    }
+
+    private static int completed(Task task) {
+        return task != null && task.getStatus() == Task.TaskStatus.COMPLETED ? 1 : 0;
+    }
+}
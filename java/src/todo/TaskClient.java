@@ -0,0 +1,492 @@
+package todo;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TaskService that forwards every call to a TaskServer over one TCP
+ * connection.
+ *
+ * A client is safe to share between threads and is meant to be reused:
+ * calls from any number of threads are pipelined over the connection
+ * without waiting for earlier responses, and a reader thread completes
+ * each call when the response with its request id arrives. The Async
+ * variants return at once; the blocking methods wait for the response.
+ * The server runs pipelined requests concurrently, so a caller that needs
+ * one request to see the effect of another waits for the first response
+ * before sending the second.
+ *
+ * An error raised by the server is thrown as an IllegalStateException with
+ * its message, or an UnsupportedOperationException when the served service
+ * does not offer the operation; a broken connection fails every
+ * outstanding call with an UncheckedIOException.
+ *
+ * As a TaskShard, a client lets a ShardedTaskService route to a shard
+ * served by another process.
+ *
+ * changes() subscriptions are forwarded to the server, which sends events
+ * only as the subscriber requests them. Their signals run on the reader
+ * thread, so a subscriber that does slow work per event should hand it
+ * off to another thread rather than hold up the connection.
+ */
+public class TaskClient implements TaskShard, AutoCloseable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    @FunctionalInterface
+    private interface Encoder {
+        void write(TaskProtocol.FrameWriter out);
+    }
+
+    @FunctionalInterface
+    private interface Decoder<T> {
+        T read(TaskProtocol.FrameReader in) throws IOException;
+    }
+
+    // A request waiting for its response
+    private static final class Call<T> {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Decoder<T> decoder;
+
+        Call(Decoder<T> decoder) {
+            this.decoder = decoder;
+        }
+
+        void complete(byte status, byte[] payload) {
+            try {
+                TaskProtocol.FrameReader in = new TaskProtocol.FrameReader(payload);
+                if (status == TaskProtocol.STATUS_OK) {
+                    future.complete(decoder.read(in));
+                } else if (status == TaskProtocol.STATUS_UNSUPPORTED) {
+                    future.completeExceptionally(
+                            new UnsupportedOperationException("Task server error: " + in.readString()));
+                } else {
+                    future.completeExceptionally(new IllegalStateException("Task server error: " + in.readString()));
+                }
+            } catch (IOException e) {
+                future.completeExceptionally(new UncheckedIOException(e));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e); // A malformed task in the response
+            }
+        }
+    }
+
+    private final Socket socket;
+    private final OutputStream output;
+    private final DataInputStream input;
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final Map<Integer, Call<?>> calls = new ConcurrentHashMap<>();
+    private final Map<Integer, EventStream> streams = new ConcurrentHashMap<>();
+    // Set once the connection breaks; later calls fail at once
+    private volatile IOException failure;
+
+    private TaskClient(Socket socket) throws IOException {
+        this.socket = socket;
+        this.output = socket.getOutputStream();
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), READ_BUFFER_SIZE));
+        Thread reader = new Thread(this::readResponses, "task-client-" + socket.getLocalPort());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public static TaskClient connect(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port));
+            return new TaskClient(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public User getOrCreateUser(String username) {
+        return await(call(TaskProtocol.Opcode.GET_OR_CREATE_USER, out -> out.writeString(username),
+                in -> new User(in.readString())));
+    }
+
+    @Override
+    public boolean addTask(String description, String category, String assignedUser) {
+        return await(addTaskAsync(description, category, assignedUser));
+    }
+
+    public CompletableFuture<Boolean> addTaskAsync(String description, String category, String assignedUser) {
+        return call(TaskProtocol.Opcode.ADD_TASK,
+                out -> out.writeString(description).writeString(category).writeString(assignedUser),
+                TaskProtocol.FrameReader::readBoolean);
+    }
+
+    @Override
+    public boolean removeTask(int id) {
+        return await(removeTaskAsync(id));
+    }
+
+    public CompletableFuture<Boolean> removeTaskAsync(int id) {
+        return call(TaskProtocol.Opcode.REMOVE_TASK, out -> out.writeInt(id), TaskProtocol.FrameReader::readBoolean);
+    }
+
+    @Override
+    public boolean markTaskCompleted(int id, String username) {
+        return await(markTaskCompletedAsync(id, username));
+    }
+
+    public CompletableFuture<Boolean> markTaskCompletedAsync(int id, String username) {
+        return call(TaskProtocol.Opcode.MARK_TASK_COMPLETED, out -> out.writeInt(id).writeString(username),
+                TaskProtocol.FrameReader::readBoolean);
+    }
+
+    @Override
+    public boolean reassignTask(int id, String fromUsername, String toUsername) {
+        return await(reassignTaskAsync(id, fromUsername, toUsername));
+    }
+
+    public CompletableFuture<Boolean> reassignTaskAsync(int id, String fromUsername, String toUsername) {
+        return call(TaskProtocol.Opcode.REASSIGN_TASK,
+                out -> out.writeInt(id).writeString(fromUsername).writeString(toUsername),
+                TaskProtocol.FrameReader::readBoolean);
+    }
+
+    @Override
+    public boolean completeIfVersion(int id, String username, int expectedVersion) {
+        return await(completeIfVersionAsync(id, username, expectedVersion));
+    }
+
+    public CompletableFuture<Boolean> completeIfVersionAsync(int id, String username, int expectedVersion) {
+        return call(TaskProtocol.Opcode.COMPLETE_IF_VERSION,
+                out -> out.writeInt(id).writeString(username).writeInt(expectedVersion),
+                TaskProtocol.FrameReader::readBoolean);
+    }
+
+    @Override
+    public boolean reassignIfVersion(int id, String fromUsername, String toUsername, int expectedVersion) {
+        return await(reassignIfVersionAsync(id, fromUsername, toUsername, expectedVersion));
+    }
+
+    public CompletableFuture<Boolean> reassignIfVersionAsync(int id, String fromUsername, String toUsername,
+                                                             int expectedVersion) {
+        return call(TaskProtocol.Opcode.REASSIGN_IF_VERSION,
+                out -> out.writeInt(id).writeString(fromUsername).writeString(toUsername).writeInt(expectedVersion),
+                TaskProtocol.FrameReader::readBoolean);
+    }
+
+    @Override
+    public Optional<Task> getTaskById(int id) {
+        return await(call(TaskProtocol.Opcode.GET_TASK_BY_ID, out -> out.writeInt(id),
+                TaskProtocol.FrameReader::readOptionalTask));
+    }
+
+    @Override
+    public List<Task> getUserTasks(String username) {
+        return await(getUserTasksAsync(username));
+    }
+
+    public CompletableFuture<List<Task>> getUserTasksAsync(String username) {
+        return call(TaskProtocol.Opcode.GET_USER_TASKS, out -> out.writeString(username),
+                TaskProtocol.FrameReader::readTasks);
+    }
+
+    @Override
+    public List<Task> getIncompleteTasksByUser(String username) {
+        return await(getIncompleteTasksByUserAsync(username));
+    }
+
+    public CompletableFuture<List<Task>> getIncompleteTasksByUserAsync(String username) {
+        return call(TaskProtocol.Opcode.GET_INCOMPLETE_TASKS_BY_USER, out -> out.writeString(username),
+                TaskProtocol.FrameReader::readTasks);
+    }
+
+    @Override
+    public List<Task> filterTasksByCategory(String category) {
+        return await(call(TaskProtocol.Opcode.FILTER_TASKS_BY_CATEGORY, out -> out.writeString(category),
+                TaskProtocol.FrameReader::readTasks));
+    }
+
+    @Override
+    public Set<String> getAllCategoriesFromTasks() {
+        return await(call(TaskProtocol.Opcode.GET_ALL_CATEGORIES, out -> { },
+                TaskProtocol.FrameReader::readStrings));
+    }
+
+    @Override
+    public TaskPage getTasksPage(TaskFilter filter, TaskPage.Cursor cursor, int limit) {
+        TaskFilter effective = filter == null ? TaskFilter.all() : filter;
+        TaskPage.Cursor start = cursor == null ? TaskPage.Cursor.first(TaskPage.Order.ID) : cursor;
+        return await(call(TaskProtocol.Opcode.GET_TASKS_PAGE,
+                out -> out.writeFilter(effective).writeCursor(start).writeInt(limit),
+                TaskProtocol.FrameReader::readPage));
+    }
+
+    @Override
+    public TaskSummary getUserSummary(String username) {
+        return await(call(TaskProtocol.Opcode.GET_USER_SUMMARY, out -> out.writeString(username),
+                TaskProtocol.FrameReader::readSummary));
+    }
+
+    @Override
+    public List<Task> searchTasks(String query, int limit) {
+        return await(call(TaskProtocol.Opcode.SEARCH_TASKS, out -> out.writeString(query).writeInt(limit),
+                TaskProtocol.FrameReader::readTasks));
+    }
+
+    @Override
+    public long getChangeSequence() {
+        return await(call(TaskProtocol.Opcode.GET_CHANGE_SEQUENCE, out -> { }, TaskProtocol.FrameReader::readLong));
+    }
+
+    // Asked of the server, which may serve a router that numbers changes per shard
+    @Override
+    public long getChangeSequence(String username) {
+        return await(call(TaskProtocol.Opcode.GET_USER_CHANGE_SEQUENCE, out -> out.writeString(username),
+                TaskProtocol.FrameReader::readLong));
+    }
+
+    @Override
+    public boolean importTask(Task task) {
+        return await(call(TaskProtocol.Opcode.IMPORT_TASK, out -> out.writeTask(task),
+                TaskProtocol.FrameReader::readBoolean));
+    }
+
+    @Override
+    public int getHighestTaskId() {
+        return await(call(TaskProtocol.Opcode.GET_HIGHEST_TASK_ID, out -> { }, TaskProtocol.FrameReader::readInt));
+    }
+
+    @Override
+    public void reserveTaskIds(int throughId) {
+        await(call(TaskProtocol.Opcode.RESERVE_TASK_IDS, out -> out.writeInt(throughId), in -> null));
+    }
+
+    @Override
+    public Set<String> getAssignees() {
+        return await(call(TaskProtocol.Opcode.GET_ASSIGNEES, out -> { }, TaskProtocol.FrameReader::readStrings));
+    }
+
+    /**
+     * Upper bound, in milliseconds, on how far the server's data trails its
+     * primary when it serves a TaskReplica; 0 for a primary.
+     */
+    public long getStalenessMillis() {
+        return await(call(TaskProtocol.Opcode.GET_STALENESS, out -> { }, TaskProtocol.FrameReader::readLong));
+    }
+
+    @Override
+    public Flow.Publisher<TaskEvent> changes(TaskFilter filter, long afterSequence) {
+        TaskFilter effective = filter == null ? TaskFilter.all() : filter;
+        return subscriber -> new EventStream(Objects.requireNonNull(subscriber, "Subscriber cannot be null"))
+                .start(effective, afterSequence);
+    }
+
+    /**
+     * Client end of a change subscription, keyed by the id of its SUBSCRIBE
+     * request. Whoever removes it from the streams map sends the terminal
+     * signal, so the subscriber gets exactly one.
+     */
+    private final class EventStream implements Flow.Subscription {
+        private final Flow.Subscriber<? super TaskEvent> subscriber;
+        private final int requestId = nextRequestId.incrementAndGet();
+        // Demand requested before the SUBSCRIBE frame is sent; guarded by this
+        private long pendingDemand;
+        private boolean started;
+        private volatile boolean done;
+
+        EventStream(Flow.Subscriber<? super TaskEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start(TaskFilter filter, long afterSequence) {
+            subscriber.onSubscribe(this);
+            synchronized (this) {
+                if (done) {
+                    return; // Cancelled from onSubscribe
+                }
+                streams.put(requestId, this);
+                // Checked after registering, as in call()
+                if (failure != null) {
+                    end(new UncheckedIOException(failure));
+                    return;
+                }
+                started = true;
+                send(new TaskProtocol.FrameWriter(requestId, (byte) TaskProtocol.Opcode.SUBSCRIBE.ordinal())
+                        .writeFilter(filter).writeLong(afterSequence));
+                if (pendingDemand != 0) {
+                    sendRequest(pendingDemand);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (done) {
+                return;
+            }
+            if (started) {
+                sendRequest(n);
+            } else {
+                // A non-positive request is passed on so the server reports it
+                pendingDemand = n <= 0 || pendingDemand + n < 0 ? n : pendingDemand + n;
+            }
+        }
+
+        @Override
+        public synchronized void cancel() {
+            done = true;
+            if (streams.remove(requestId) != null && started) {
+                send(new TaskProtocol.FrameWriter(requestId,
+                        (byte) TaskProtocol.Opcode.CANCEL_SUBSCRIPTION.ordinal()).writeInt(requestId));
+            }
+        }
+
+        private void sendRequest(long n) {
+            send(new TaskProtocol.FrameWriter(requestId, (byte) TaskProtocol.Opcode.REQUEST_EVENTS.ordinal())
+                    .writeInt(requestId).writeLong(n));
+        }
+
+        // Runs on the reader thread
+        void receive(byte status, byte[] payload) {
+            TaskProtocol.FrameReader in = new TaskProtocol.FrameReader(payload);
+            try {
+                if (status == TaskProtocol.STATUS_EVENT) {
+                    if (!done) {
+                        subscriber.onNext(in.readEvent());
+                    }
+                } else if (status == TaskProtocol.STATUS_COMPLETE) {
+                    if (streams.remove(requestId) != null) {
+                        done = true;
+                        subscriber.onComplete();
+                    }
+                } else {
+                    end(new IllegalStateException("Task server error: " + in.readString()));
+                }
+            } catch (IOException | RuntimeException e) {
+                cancel();
+                subscriber.onError(e instanceof IOException ? new UncheckedIOException((IOException) e) : e);
+            }
+        }
+
+        void end(Throwable error) {
+            if (streams.remove(requestId) != null) {
+                done = true;
+                subscriber.onError(error);
+            }
+        }
+    }
+
+    // Writes a frame that gets no response; a failed write closes the client, failing everything waiting
+    private void send(TaskProtocol.FrameWriter frame) {
+        try {
+            write(frame.toBuffer());
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    private void write(ByteBuffer frame) throws IOException {
+        synchronized (output) {
+            output.write(frame.array(), 0, frame.limit());
+        }
+    }
+
+    private <T> CompletableFuture<T> call(TaskProtocol.Opcode opcode, Encoder encoder, Decoder<T> decoder) {
+        int requestId = nextRequestId.incrementAndGet();
+        Call<T> call = new Call<>(decoder);
+        try {
+            TaskProtocol.FrameWriter frame = new TaskProtocol.FrameWriter(requestId, (byte) opcode.ordinal());
+            encoder.write(frame);
+            ByteBuffer bytes = frame.toBuffer();
+
+            calls.put(requestId, call);
+            // Checked after registering: fail() sets the failure before failing the registered calls
+            if (failure != null) {
+                throw failure;
+            }
+            write(bytes);
+        } catch (IOException e) {
+            calls.remove(requestId);
+            call.future.completeExceptionally(new UncheckedIOException(e));
+        }
+        return call.future;
+    }
+
+    private void readResponses() {
+        try {
+            while (true) {
+                int length = input.readInt() - (TaskProtocol.HEADER_SIZE - Integer.BYTES);
+                if (length < 0 || length > TaskProtocol.MAX_FRAME) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                int requestId = input.readInt();
+                byte status = input.readByte();
+                byte[] payload = new byte[length];
+                input.readFully(payload);
+
+                Call<?> call = calls.remove(requestId);
+                if (call != null) {
+                    call.complete(status, payload);
+                } else {
+                    EventStream stream = streams.get(requestId);
+                    if (stream != null) {
+                        stream.receive(status, payload);
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            fail(new IOException("Connection closed by the task server"));
+        } catch (IOException e) {
+            fail(socket.isClosed() ? new IOException("Client is closed") : e);
+        }
+    }
+
+    private void fail(IOException cause) {
+        failure = cause;
+        for (Integer requestId : calls.keySet()) {
+            Call<?> call = calls.remove(requestId);
+            if (call != null) {
+                call.future.completeExceptionally(new UncheckedIOException(cause));
+            }
+        }
+        for (EventStream stream : streams.values()) {
+            stream.end(new UncheckedIOException(cause));
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the connection; calls still waiting and open subscriptions fail.
+     */
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing task client: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package todo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Versioned binary format for the task and user snapshot files.
+ *
+ * Tasks file: magic, version, a string table holding every distinct category
+ * and username, then one record per task: varint id, description, varint
+ * category and user references into the table, a status byte, the
+ * created/completed times as varint epoch millis and, since version 2, a
+ * varint task version; tasks read from a version 1 file are at version 1.
+ * Users file: magic, version and one string per user. Manifest: magic,
+ * version and one (segment, generation) pair of varints per segment of a
+ * SegmentedSnapshot.
+ *
+ * Files are streamed through a FileChannel with a direct buffer, so
+ * neither side ever holds the whole file in memory.
+ */
+public final class TaskCodec {
+    private static final int TASKS_MAGIC = 0x54444F54; // "TDOT"
+    private static final int USERS_MAGIC = 0x54444F55; // "TDOU"
+    private static final int MANIFEST_MAGIC = 0x54444F53; // "TDOS"
+    private static final byte VERSION = 1;
+    private static final byte TASKS_VERSION = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private TaskCodec() {
+    }
+
+    public static long writeTasks(Path target, Collection<Task> tasks) throws IOException {
+        Map<String, Integer> stringIds = new LinkedHashMap<>();
+        for (Task task : tasks) {
+            stringIds.putIfAbsent(task.getCategory(), stringIds.size());
+            stringIds.putIfAbsent(task.getAssignedUser(), stringIds.size());
+        }
+
+        return writeAtomically(target, out -> {
+            out.writeInt(TASKS_MAGIC);
+            out.writeByte(TASKS_VERSION);
+
+            out.writeVarInt(stringIds.size());
+            for (String value : stringIds.keySet()) {
+                out.writeString(value);
+            }
+
+            out.writeVarInt(tasks.size());
+            for (Task task : tasks) {
+                out.writeVarInt(task.getId());
+                out.writeString(task.getDescription());
+                out.writeVarInt(stringIds.get(task.getCategory()));
+                out.writeVarInt(stringIds.get(task.getAssignedUser()));
+                out.writeByte((byte) task.getStatus().ordinal());
+                out.writeVarLong(task.getCreatedMillis());
+                if (task.getStatus() == Task.TaskStatus.COMPLETED) {
+                    out.writeVarLong(task.getCompletedMillis());
+                }
+                out.writeVarInt(task.getVersion());
+            }
+        });
+    }
+
+    public static List<Task> readTasks(Path source) throws IOException {
+        try (Decoder in = new Decoder(source)) {
+            byte version = checkHeader(in, TASKS_MAGIC, TASKS_VERSION, source);
+
+            String[] strings = new String[in.readCount()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readString();
+            }
+
+            int count = in.readCount();
+            List<Task> tasks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int id = in.readVarInt();
+                String description = in.readString();
+                String category = lookup(strings, in.readVarInt(), source);
+                String assignedUser = lookup(strings, in.readVarInt(), source);
+                byte status = in.readByte();
+
+                long createdMillis = in.readVarLong();
+                long completedMillis = status == Task.TaskStatus.COMPLETED.ordinal()
+                        ? in.readVarLong()
+                        : Task.NOT_COMPLETED;
+                int taskVersion = version >= 2 ? in.readVarInt() : 1;
+                tasks.add(new Task(id, description, category, assignedUser, createdMillis, completedMillis,
+                        taskVersion));
+            }
+            return tasks;
+        }
+    }
+
+    private static String lookup(String[] strings, int stringId, Path source) throws IOException {
+        if (stringId < 0 || stringId >= strings.length) {
+            throw new IOException("String id " + (stringId & 0xFFFFFFFFL) + " out of range in " + source);
+        }
+        return strings[stringId];
+    }
+
+    public static long writeUsers(Path target, Collection<User> users) throws IOException {
+        return writeAtomically(target, out -> {
+            out.writeInt(USERS_MAGIC);
+            out.writeByte(VERSION);
+            out.writeVarInt(users.size());
+            for (User user : users) {
+                out.writeString(user.getUsername());
+            }
+        });
+    }
+
+    public static List<User> readUsers(Path source) throws IOException {
+        try (Decoder in = new Decoder(source)) {
+            checkHeader(in, USERS_MAGIC, VERSION, source);
+
+            int count = in.readCount();
+            List<User> users = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                users.add(new User(in.readString()));
+            }
+            return users;
+        }
+    }
+
+    public static long writeManifest(Path target, NavigableMap<Integer, Long> segments) throws IOException {
+        return writeAtomically(target, out -> {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeByte(VERSION);
+            out.writeVarInt(segments.size());
+            for (Map.Entry<Integer, Long> segment : segments.entrySet()) {
+                out.writeVarInt(segment.getKey());
+                out.writeVarLong(segment.getValue());
+            }
+        });
+    }
+
+    public static NavigableMap<Integer, Long> readManifest(Path source) throws IOException {
+        try (Decoder in = new Decoder(source)) {
+            checkHeader(in, MANIFEST_MAGIC, VERSION, source);
+
+            int count = in.readVarInt();
+            NavigableMap<Integer, Long> segments = new TreeMap<>();
+            for (int i = 0; i < count; i++) {
+                segments.put(in.readVarInt(), in.readVarLong());
+            }
+            return segments;
+        }
+    }
+
+    static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static LocalDateTime fromEpochMillis(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    // Accepts every version from 1 up to the current one and returns the file's
+    private static byte checkHeader(Decoder in, int magic, byte currentVersion, Path source) throws IOException {
+        if (in.readInt() != magic) {
+            throw new IOException("Not a task store file: " + source);
+        }
+        byte version = in.readByte();
+        if (version < 1 || version > currentVersion) {
+            throw new IOException("Unsupported file version " + version + " in " + source);
+        }
+        return version;
+    }
+
+    private interface Body {
+        void write(Encoder out) throws IOException;
+    }
+
+    /**
+     * Writes to a temporary file, forces it to disk and atomically swaps it
+     * in, so a crash mid-write never leaves a truncated file behind. The
+     * directory is forced after the swap, so once this returns the new file
+     * survives a crash and the log it replaces can be reset.
+     * Returns the size of the file written.
+     */
+    private static long writeAtomically(Path target, Body body) throws IOException {
+        Path tempFile = target.resolveSibling(target.getFileName() + ".tmp");
+        try (Encoder out = new Encoder(tempFile)) {
+            body.write(out);
+        }
+        long size = Files.size(tempFile);
+        Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(target.toAbsolutePath().getParent());
+        return size;
+    }
+
+    // Makes the renames in a directory durable; until then a crash can bring back the old entry
+    private static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static final class Encoder implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Encoder(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void writeByte(byte value) throws IOException {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void writeVarInt(int value) throws IOException {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            if (bytes.length > buffer.capacity()) {
+                flush();
+                write(ByteBuffer.wrap(bytes));
+            } else {
+                ensure(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            write(buffer);
+            buffer.clear();
+        }
+
+        private void write(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private static final class Decoder implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Decoder(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            buffer.flip(); // start empty
+        }
+
+        byte readByte() throws IOException {
+            require(1);
+            return buffer.get();
+        }
+
+        int readInt() throws IOException {
+            require(4);
+            return buffer.getInt();
+        }
+
+        int readVarInt() throws IOException {
+            long value = readVarLong();
+            if (value > 0xFFFFFFFFL) {
+                throw new IOException("Malformed varint");
+            }
+            return (int) value;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        // A count of entries that each take at least one byte, so one past the end of the file is corrupt
+        int readCount() throws IOException {
+            int count = readVarInt();
+            if (count < 0 || count > remaining()) {
+                throw new IOException("Count " + (count & 0xFFFFFFFFL) + " exceeds the rest of the file");
+            }
+            return count;
+        }
+
+        String readString() throws IOException {
+            int length = readVarInt();
+            if (length < 0 || length > remaining()) {
+                throw new IOException("String length " + (length & 0xFFFFFFFFL) + " exceeds the rest of the file");
+            }
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                if (!buffer.hasRemaining()) {
+                    fill();
+                }
+                int chunk = Math.min(buffer.remaining(), length - offset);
+                buffer.get(bytes, offset, chunk);
+                offset += chunk;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private long remaining() throws IOException {
+            return buffer.remaining() + channel.size() - channel.position();
+        }
+
+        private void require(int bytes) throws IOException {
+            while (buffer.remaining() < bytes) {
+                fill();
+            }
+        }
+
+        private void fill() throws IOException {
+            buffer.compact();
+            int read = channel.read(buffer);
+            buffer.flip();
+            if (read < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
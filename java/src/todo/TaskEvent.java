@@ -0,0 +1,57 @@
+package todo;
+
+/**
+ * One change to the store, as published by TaskManager.changes(). Events
+ * carry increasing sequence numbers in the order the changes became
+ * visible, so a subscriber that remembers the last sequence it saw can
+ * resume from there.
+ */
+public final class TaskEvent {
+    public enum Type {
+        ADDED, REMOVED, COMPLETED, REASSIGNED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final Task task;
+    private final Task previous;
+
+    TaskEvent(long sequence, Type type, Task task, Task previous) {
+        this.sequence = sequence;
+        this.type = type;
+        this.task = task;
+        this.previous = previous;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The task after the change; for REMOVED, the task that was removed.
+     */
+    public Task getTask() {
+        return task;
+    }
+
+    /**
+     * The task before a COMPLETED or REASSIGNED change; null otherwise.
+     */
+    public Task getPrevious() {
+        return previous;
+    }
+
+    // A change concerns a filter if the task matches it before or after
+    boolean matches(TaskFilter filter) {
+        return filter.matches(task) || previous != null && filter.matches(previous);
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + type + " " + task;
+    }
+}
@@ -0,0 +1,353 @@
+package todo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sequence-numbered stream of the changes TaskManager applies, behind
+ * TaskManager.changes().
+ *
+ * TaskManager publishes each change, adds included, while it still holds
+ * the task's lock stripe, and a batch while it holds the exclusive lock,
+ * so the events of one task come in the order they were applied. The last
+ * HISTORY events stay in a ring, which is how a subscription resumes after
+ * a sequence number: it reads the ring from there on, then switches to
+ * live delivery, where publish() appends matching events to its buffer.
+ * Live subscriptions with a user filter are indexed by that user, so an
+ * event only visits the subscribers it can concern.
+ *
+ * Publishing never blocks on a subscriber. A subscription whose buffer is
+ * full when another event arrives fails with an IllegalStateException; the
+ * subscriber can resubscribe after the last sequence it received, and the
+ * ring replays what it missed. Resuming from a sequence the ring no longer
+ * holds, or from one past the last assigned, fails the same way, and the
+ * subscriber must re-read its tasks.
+ * Signals are delivered on the feed's own daemon threads, one at a time per
+ * subscription.
+ */
+final class TaskFeed implements AutoCloseable {
+    static final int HISTORY = 1 << 16; // Must be a power of two
+    static final int DEFAULT_BUFFER = 1024;
+    private static final int MASK = HISTORY - 1;
+    private static final int MAX_BATCH = 256; // Events handed over per lock acquisition
+    private static final int MAX_SCAN = 4096; // Ring slots read per lock acquisition
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TaskEvent[] history = new TaskEvent[HISTORY];
+    private final long firstSequence;
+    private long sequence; // Last sequence assigned
+    private final Map<String, List<Subscription>> byUser = new HashMap<>();
+    private final List<Subscription> anyUser = new ArrayList<>();
+    private final List<Subscription> all = new ArrayList<>();
+    private boolean closed;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "task-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    TaskFeed() {
+        // Sequences start from the clock, so one saved in an earlier run is
+        // always older than the ring and resuming from it reports a gap
+        // instead of skipping events
+        firstSequence = System.currentTimeMillis() * 1000;
+        sequence = firstSequence;
+    }
+
+    /**
+     * Sequence of the last change published; subscribing after it delivers
+     * only changes from now on.
+     */
+    long sequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void publish(TaskEvent.Type type, Task task, Task previous) {
+        lock.lock();
+        try {
+            TaskEvent event = new TaskEvent(++sequence, type, task, previous);
+            history[(int) (event.getSequence() & MASK)] = event;
+            if (all.isEmpty()) {
+                return;
+            }
+
+            offer(anyUser, event);
+            String user = TaskIndex.key(task.getAssignedUser());
+            offer(byUser.get(user), event);
+            if (previous != null && !user.equals(TaskIndex.key(previous.getAssignedUser()))) {
+                offer(byUser.get(TaskIndex.key(previous.getAssignedUser())), event);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Flow.Publisher<TaskEvent> publisher(TaskFilter filter, long afterSequence, int bufferSize) {
+        Objects.requireNonNull(filter, "Filter cannot be null");
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        return subscriber -> subscribe(Objects.requireNonNull(subscriber, "Subscriber cannot be null"),
+                filter, afterSequence, bufferSize);
+    }
+
+    private void subscribe(Flow.Subscriber<? super TaskEvent> subscriber, TaskFilter filter, long afterSequence,
+                           int bufferSize) {
+        Subscription subscription = new Subscription(subscriber, filter, afterSequence + 1, bufferSize);
+        lock.lock();
+        try {
+            if (closed) {
+                subscription.completing = true;
+            } else {
+                all.add(subscription);
+            }
+        } finally {
+            lock.unlock();
+        }
+        subscriber.onSubscribe(subscription);
+        subscription.schedule();
+    }
+
+    // Appends the event to the buffers of the live subscriptions it concerns; lock held
+    private void offer(List<Subscription> subscriptions, TaskEvent event) {
+        if (subscriptions == null) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            if (event.getSequence() < subscription.next || !event.matches(subscription.filter)) {
+                continue;
+            }
+            if (subscription.terminal != null || subscription.completing) {
+                continue; // Removed by its next drain
+            }
+            if (subscription.buffer.size() >= subscription.bufferSize) {
+                subscription.fail(new IllegalStateException("Subscriber fell more than " + subscription.bufferSize
+                        + " events behind; resubscribe after the last sequence received"));
+            } else {
+                subscription.buffer.add(event);
+            }
+            subscription.schedule();
+        }
+    }
+
+    private long oldestRetained() {
+        return Math.max(firstSequence + 1, sequence - HISTORY + 1);
+    }
+
+    /**
+     * Completes every subscription and stops the delivery threads once they
+     * have signalled.
+     */
+    @Override
+    public void close() {
+        List<Subscription> open;
+        lock.lock();
+        try {
+            closed = true;
+            open = new ArrayList<>(all);
+            for (Subscription subscription : open) {
+                subscription.completing = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Subscription subscription : open) {
+            subscription.schedule();
+        }
+        executor.shutdown();
+    }
+
+    private final class Subscription implements Flow.Subscription {
+        final Flow.Subscriber<? super TaskEvent> subscriber;
+        final TaskFilter filter;
+        final String user; // Folded username filter, or null
+        final int bufferSize;
+        final AtomicLong demand = new AtomicLong();
+        final AtomicInteger pendingDrains = new AtomicInteger();
+        // Guarded by the feed lock
+        long next; // Lowest sequence still to deliver
+        boolean live;
+        final ArrayDeque<TaskEvent> buffer = new ArrayDeque<>();
+        Throwable terminal; // Set to end with onError
+        boolean completing; // Set to end with onComplete
+        boolean cancelled;
+
+        Subscription(Flow.Subscriber<? super TaskEvent> subscriber, TaskFilter filter, long next, int bufferSize) {
+            this.subscriber = subscriber;
+            this.filter = filter;
+            this.user = filter.getUsername() == null ? null : TaskIndex.key(filter.getUsername());
+            this.next = next;
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                lock.lock();
+                try {
+                    fail(new IllegalArgumentException("Request must be positive, got " + n));
+                } finally {
+                    lock.unlock();
+                }
+            } else {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                unregister();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Ends the subscription after the signals already handed over; lock held
+        void fail(Throwable cause) {
+            if (terminal == null) {
+                terminal = cause;
+                buffer.clear();
+            }
+        }
+
+        void schedule() {
+            if (pendingDrains.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    drain(); // Feed closed after the last subscriber was completed
+                }
+            }
+        }
+
+        // Runs on one feed thread at a time, so signals never overlap
+        private void drain() {
+            int missed = 1;
+            List<TaskEvent> batch = new ArrayList<>();
+            while (true) {
+                Throwable end = null;
+                boolean complete = false;
+                boolean progress;
+                lock.lock();
+                try {
+                    if (cancelled) {
+                        return;
+                    }
+                    long wanted = Math.min(demand.get(), MAX_BATCH);
+                    progress = live ? take(batch, wanted) : replay(batch, wanted);
+                    if (terminal != null || completing) {
+                        end = terminal;
+                        complete = terminal == null;
+                        cancelled = true;
+                        unregister();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                try {
+                    for (TaskEvent event : batch) {
+                        subscriber.onNext(event);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Change subscriber failed, cancelling it: " + e);
+                    cancel();
+                    return;
+                }
+                demand.addAndGet(-batch.size());
+                batch.clear();
+                if (complete) {
+                    subscriber.onComplete();
+                    return;
+                }
+                if (end != null) {
+                    subscriber.onError(end);
+                    return;
+                }
+                if (!progress) {
+                    missed = pendingDrains.addAndGet(-missed);
+                    if (missed == 0) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private boolean take(List<TaskEvent> batch, long wanted) {
+            while (batch.size() < wanted && !buffer.isEmpty()) {
+                batch.add(buffer.poll());
+            }
+            return !batch.isEmpty();
+        }
+
+        // Reads the ring from next on; switches to live delivery at the end of it
+        private boolean replay(List<TaskEvent> batch, long wanted) {
+            if (terminal != null || wanted == 0) {
+                return false;
+            }
+            // A sequence ahead of the feed comes from another run, which the clock no longer orders before this one
+            if (next < oldestRetained() || next > sequence + 1) {
+                fail(new IllegalStateException("Events after sequence " + (next - 1)
+                        + " are no longer retained; re-read the tasks and subscribe again"));
+                return false;
+            }
+
+            int scanned = 0;
+            while (batch.size() < wanted && next <= sequence && scanned++ < MAX_SCAN) {
+                TaskEvent event = history[(int) (next++ & MASK)];
+                if (event.matches(filter)) {
+                    batch.add(event);
+                }
+            }
+            if (next > sequence) {
+                live = true;
+                register();
+            }
+            return scanned > 0;
+        }
+
+        private void register() {
+            if (user == null) {
+                anyUser.add(this);
+            } else {
+                byUser.computeIfAbsent(user, key -> new ArrayList<>()).add(this);
+            }
+        }
+
+        private void unregister() {
+            all.remove(this);
+            if (!live) {
+                return;
+            }
+            live = false;
+            if (user == null) {
+                anyUser.remove(this);
+            } else {
+                List<Subscription> subscriptions = byUser.get(user);
+                if (subscriptions != null && subscriptions.remove(this) && subscriptions.isEmpty()) {
+                    byUser.remove(user);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package todo;
+
+import java.util.Objects;
+
+/**
+ * Condition on a task's assignee, category and status, for the paged and
+ * streaming queries. Unset fields match anything; names are compared
+ * case-insensitively. Instances are immutable, each setter returns a copy:
+ *
+ *     TaskFilter.all().assignedTo("alice").withStatus(Task.TaskStatus.PENDING)
+ */
+public final class TaskFilter {
+    private static final TaskFilter ALL = new TaskFilter(null, null, null);
+
+    private final String username;
+    private final String category;
+    private final Task.TaskStatus status;
+
+    private TaskFilter(String username, String category, Task.TaskStatus status) {
+        this.username = username;
+        this.category = category;
+        this.status = status;
+    }
+
+    public static TaskFilter all() {
+        return ALL;
+    }
+
+    public TaskFilter assignedTo(String username) {
+        return new TaskFilter(Objects.requireNonNull(username, "Username cannot be null"), category, status);
+    }
+
+    public TaskFilter inCategory(String category) {
+        return new TaskFilter(username, Objects.requireNonNull(category, "Category cannot be null"), status);
+    }
+
+    public TaskFilter withStatus(Task.TaskStatus status) {
+        return new TaskFilter(username, category, Objects.requireNonNull(status, "Status cannot be null"));
+    }
+
+    // Null when the filter does not restrict the field
+    public String getUsername() {
+        return username;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public Task.TaskStatus getStatus() {
+        return status;
+    }
+
+    public boolean matches(Task task) {
+        return (username == null || username.equalsIgnoreCase(task.getAssignedUser()))
+                && (category == null || category.equalsIgnoreCase(task.getCategory()))
+                && (status == null || status == task.getStatus());
+    }
+
+    @Override
+    public String toString() {
+        return "TaskFilter{user=" + username + ", category=" + category + ", status=" + status + '}';
+    }
+}
@@ -0,0 +1,681 @@
+package todo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Heap-backed TaskStore with a primary id index and secondary indexes on
+ * assignee, category, status and (assignee, status).
+ *
+ * All indexes live in one immutable State built from PersistentIntMaps.
+ * A mutation builds the next State, sharing everything it did not touch
+ * with the current one, and publishes it with a compare-and-set, retrying
+ * if another mutation published first. Readers take the current State and
+ * never lock, and every read sees a single point in time, even a stream
+ * that is consumed while writers carry on. Inside applyAtomically the
+ * mutations build on a private State that is published once at the end,
+ * so a batch appears to readers all at once.
+ *
+ * Name keys are case-folded so lookups match the case-insensitive semantics
+ * of the original list scans, and each folded name gets a small int id that
+ * keys the secondary indexes. The buckets double as compressed id sets for
+ * TaskQuery: its conditions are combined with the PersistentIntMap set
+ * operations, and counts are taken with intersectionSize.
+ *
+ * Every mutation marks the SegmentedSnapshot segment of its task dirty,
+ * and a checkpoint rewrites only the dirty segments.
+ */
+public class TaskIndex implements TaskStore {
+    // Enough 64-bit words for one bit per segment of the whole int id range
+    private static final int DIRTY_WORDS = (SegmentedSnapshot.segmentOf(Integer.MAX_VALUE) >>> 6) + 1;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.EMPTY);
+    // The State an applyAtomically call is building, and the thread running it
+    private State staged;
+    private Thread stagingThread;
+    // Ids of case-folded user and category names; entries are never removed
+    private final ConcurrentMap<String, Integer> nameIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextNameId = new AtomicInteger();
+    // One bit per segment changed since the last checkpoint
+    private final AtomicLongArray dirtySegments = new AtomicLongArray(DIRTY_WORDS);
+    private final SegmentedSnapshot snapshot;
+
+    private TaskIndex(SegmentedSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Opens the store saved next to the given snapshot file, or an empty
+     * store if there is none yet. A single-file snapshot written by an older
+     * version is split into segments by the first checkpoint.
+     *
+     * The segments are decoded in parallel, and the indexes are then built
+     * in bulk on the common fork-join pool, rather than by one put per task.
+     */
+    public static TaskIndex load(Path snapshotFile) throws IOException {
+        TaskIndex index = new TaskIndex(new SegmentedSnapshot(snapshotFile));
+        List<Task> tasks = index.snapshot.readAll();
+        index.state.set(index.build(tasks.toArray(new Task[0])));
+        if (index.snapshot.isLegacy()) {
+            for (Task task : tasks) {
+                index.markDirty(task.getId());
+            }
+        }
+        return index;
+    }
+
+    public static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public void add(Task task) {
+        markDirty(task.getId());
+        int user = nameId(task.getAssignedUser());
+        int category = nameId(task.getCategory());
+        while (true) {
+            State current = current();
+            Task previous = current.byId.get(task.getId());
+            State next = previous == null ? current : current.without(previous, this);
+            if (publish(current, next.with(task, user, category))) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Task remove(int id) {
+        while (true) {
+            State current = current();
+            Task task = current.byId.get(id);
+            if (task == null) {
+                return null;
+            }
+            if (publish(current, current.without(task, this))) {
+                markDirty(id);
+                return task;
+            }
+        }
+    }
+
+    @Override
+    public Task get(int id) {
+        return current().byId.get(id);
+    }
+
+    @Override
+    public Task markCompleted(int id, LocalDateTime completedDate) {
+        while (true) {
+            State current = current();
+            Task task = current.byId.get(id);
+            if (task == null) {
+                return null;
+            }
+            Task completed = task.completed(completedDate);
+            if (publish(current, current.replace(task, completed, this))) {
+                markDirty(id);
+                return completed;
+            }
+        }
+    }
+
+    @Override
+    public Task reassign(int id, String assignedUser) {
+        nameId(assignedUser);
+        while (true) {
+            State current = current();
+            Task task = current.byId.get(id);
+            if (task == null) {
+                return null;
+            }
+            Task reassigned = task.withAssignedUser(assignedUser);
+            if (publish(current, current.replace(task, reassigned, this))) {
+                markDirty(id);
+                return reassigned;
+            }
+        }
+    }
+
+    @Override
+    public List<Task> all() {
+        return copyOf(state.get().byId);
+    }
+
+    @Override
+    public int size() {
+        return state.get().byId.size();
+    }
+
+    @Override
+    public int maxId() {
+        return Math.max(state.get().byId.lastKey(), 0);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return state.get().byId.isEmpty();
+    }
+
+    @Override
+    public List<Task> findByUser(String username) {
+        return copyOf(state.get().byUser.get(existingNameId(username)));
+    }
+
+    @Override
+    public List<Task> findByCategory(String category) {
+        return copyOf(state.get().byCategory.get(existingNameId(category)));
+    }
+
+    @Override
+    public List<Task> findByStatus(Task.TaskStatus status) {
+        return copyOf(state.get().byStatus.get(status.ordinal()));
+    }
+
+    @Override
+    public List<Task> findByUserAndStatus(String username, Task.TaskStatus status) {
+        return copyOf(state.get().byUserAndStatus.get(userStatusKey(existingNameId(username), status)));
+    }
+
+    /**
+     * Returns the distinct categories in their original spelling, taken from
+     * the lowest-id task of each case-folded bucket.
+     */
+    @Override
+    public Set<String> categories() {
+        Set<String> categories = new HashSet<>();
+        for (PersistentIntMap<Task> bucket : state.get().byCategory) {
+            categories.add(bucket.iterator().next().getCategory());
+        }
+        return categories;
+    }
+
+    @Override
+    public List<Task> page(TaskFilter filter, int afterId, int limit) {
+        Iterator<Task> matches = iterate(filter, afterId);
+        List<Task> page = new ArrayList<>(Math.min(limit, 256));
+        while (page.size() < limit && matches.hasNext()) {
+            page.add(matches.next());
+        }
+        return page;
+    }
+
+    /**
+     * Iterates the State current at the call, so the result is a
+     * point-in-time view however long the caller takes to consume it.
+     */
+    @Override
+    public Iterator<Task> iterate(TaskFilter filter, int afterId) {
+        PersistentIntMap<Task> candidates = candidates(state.get(), filter);
+        if (candidates == null || afterId == Integer.MAX_VALUE) {
+            return Collections.emptyIterator();
+        }
+
+        return matching(candidates.valuesFrom(afterId + 1), filter::matches);
+    }
+
+    @Override
+    public int count(TaskQuery query) {
+        return conjunction(state.get(), query).size();
+    }
+
+    @Override
+    public List<Task> select(TaskQuery query, int afterId, int limit) {
+        Iterator<Task> matches = iterate(query, afterId);
+        List<Task> page = new ArrayList<>(Math.min(limit, 256));
+        while (page.size() < limit && matches.hasNext()) {
+            page.add(matches.next());
+        }
+        return page;
+    }
+
+    /**
+     * Iterates the State current at the call, like iterate(TaskFilter, int).
+     */
+    @Override
+    public Iterator<Task> iterate(TaskQuery query, int afterId) {
+        if (afterId == Integer.MAX_VALUE) {
+            return Collections.emptyIterator();
+        }
+        return conjunction(state.get(), query).iterator(afterId);
+    }
+
+    // The tasks from the iterator that meet the condition
+    private static Iterator<Task> matching(Iterator<Task> tasks, Predicate<Task> condition) {
+        return new Iterator<Task>() {
+            private Task next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Task next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Task task = next;
+                next = advance();
+                return task;
+            }
+
+            private Task advance() {
+                while (tasks.hasNext()) {
+                    Task task = tasks.next();
+                    if (condition.test(task)) {
+                        return task;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public long checkpoint() throws IOException {
+        Map<Integer, List<Task>> changed = new TreeMap<>();
+        long[] taken = new long[DIRTY_WORDS];
+        for (int word = 0; word < DIRTY_WORDS; word++) {
+            if (dirtySegments.get(word) != 0) {
+                // Unmark before reading, so a concurrent mutation marks it again
+                taken[word] = dirtySegments.getAndSet(word, 0);
+            }
+        }
+
+        PersistentIntMap<Task> byId = state.get().byId;
+        for (int word = 0; word < DIRTY_WORDS; word++) {
+            for (long bits = taken[word]; bits != 0; bits &= bits - 1) {
+                int segment = (word << 6) + Long.numberOfTrailingZeros(bits);
+                changed.put(segment, segmentTasks(byId, segment));
+            }
+        }
+
+        try {
+            return snapshot.write(changed);
+        } catch (IOException e) {
+            for (int segment : changed.keySet()) {
+                markSegmentDirty(segment);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Publishes the changes with one compare-and-set, so no reader sees a
+     * State with only some of them.
+     */
+    @Override
+    public void applyAtomically(Runnable changes) {
+        staged = state.get();
+        stagingThread = Thread.currentThread();
+        try {
+            changes.run();
+        } finally {
+            // The caller keeps other writers out, so nothing has published since.
+            // Whatever was applied before a failure is published too, like the log has it
+            state.set(staged);
+            stagingThread = null;
+            staged = null;
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // The State mutations build on: the staged one on the thread applying a batch
+    private State current() {
+        return stagingThread == Thread.currentThread() ? staged : state.get();
+    }
+
+    private boolean publish(State current, State next) {
+        if (stagingThread == Thread.currentThread()) {
+            staged = next;
+            return true;
+        }
+        return state.compareAndSet(current, next);
+    }
+
+    private void markDirty(int id) {
+        markSegmentDirty(SegmentedSnapshot.segmentOf(id));
+    }
+
+    private void markSegmentDirty(int segment) {
+        int word = segment >>> 6;
+        long bit = 1L << segment;
+        // Most mutations hit a segment that is already marked; skip the write then
+        if ((dirtySegments.get(word) & bit) == 0) {
+            dirtySegments.accumulateAndGet(word, bit, (current, mark) -> current | mark);
+        }
+    }
+
+    private static List<Task> segmentTasks(PersistentIntMap<Task> byId, int segment) {
+        List<Task> tasks = new ArrayList<>();
+        int end = (segment + 1) * SegmentedSnapshot.SEGMENT_SIZE;
+        Iterator<Task> iterator = byId.valuesFrom(segment * SegmentedSnapshot.SEGMENT_SIZE);
+        while (iterator.hasNext()) {
+            Task task = iterator.next();
+            if (task.getId() >= end) {
+                break;
+            }
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    // The narrowest index covering the filter, or null if nothing can match
+    private PersistentIntMap<Task> candidates(State current, TaskFilter filter) {
+        Task.TaskStatus status = filter.getStatus();
+        if (filter.getUsername() != null) {
+            int user = existingNameId(filter.getUsername());
+            return status != null
+                    ? current.byUserAndStatus.get(userStatusKey(user, status))
+                    : current.byUser.get(user);
+        } else if (filter.getCategory() != null) {
+            return current.byCategory.get(existingNameId(filter.getCategory()));
+        } else if (status != null) {
+            return current.byStatus.get(status.ordinal());
+        }
+        return current.byId;
+    }
+
+    /**
+     * Splits the operands of a top-level AND into id sets to intersect, id
+     * sets to subtract and creation time conditions. Operands that are
+     * themselves combinations become one id set via evaluate().
+     */
+    private Conjunction conjunction(State current, TaskQuery query) {
+        Conjunction terms = new Conjunction();
+        List<TaskQuery> operands = query.getKind() == TaskQuery.Kind.AND
+                ? query.getOperands()
+                : Collections.singletonList(query);
+        for (TaskQuery operand : operands) {
+            if (operand.isIndexed()) {
+                terms.included.add(idSet(current, operand));
+            } else if (operand.getKind() == TaskQuery.Kind.NOT && operand.getOperands().get(0).isIndexed()) {
+                terms.excluded.add(idSet(current, operand.getOperands().get(0)));
+            } else if (operand.isCreatedRange()) {
+                terms.checked.add(operand);
+            } else {
+                terms.included.add(evaluate(current, operand));
+            }
+        }
+        if (terms.included.isEmpty()) {
+            terms.included.add(current.byId);
+        }
+        // The smallest set drives iteration
+        terms.included.sort(Comparator.comparingInt(PersistentIntMap::size));
+        return terms;
+    }
+
+    // The tasks matching the query, as one id set
+    private PersistentIntMap<Task> evaluate(State current, TaskQuery query) {
+        switch (query.getKind()) {
+            case CREATED_AFTER:
+            case CREATED_BEFORE:
+                return current.byId.filter(query::matches);
+            case NOT:
+                return current.byId.andNot(evaluate(current, query.getOperands().get(0)));
+            case OR:
+                PersistentIntMap<Task> union = PersistentIntMap.empty();
+                for (TaskQuery operand : query.getOperands()) {
+                    union = union.or(evaluate(current, operand));
+                }
+                return union;
+            case AND:
+                return conjunction(current, query).evaluate();
+            default:
+                return idSet(current, query);
+        }
+    }
+
+    // The bucket of an indexed condition, empty if no task meets it
+    private PersistentIntMap<Task> idSet(State current, TaskQuery condition) {
+        PersistentIntMap<Task> bucket;
+        switch (condition.getKind()) {
+            case USER:
+                bucket = current.byUser.get(existingNameId(condition.getName()));
+                break;
+            case CATEGORY:
+                bucket = current.byCategory.get(existingNameId(condition.getName()));
+                break;
+            case STATUS:
+                bucket = current.byStatus.get(condition.getStatus().ordinal());
+                break;
+            default:
+                bucket = current.byId;
+        }
+        return bucket == null ? PersistentIntMap.empty() : bucket;
+    }
+
+    // The State holding the tasks, which must be in id order with no duplicates
+    private State build(Task[] tasks) {
+        int count = tasks.length;
+        int[] ids = new int[count];
+        int[] users = new int[count];
+        int[] categories = new int[count];
+        int[] statuses = new int[count];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            ids[i] = tasks[i].getId();
+            users[i] = nameId(tasks[i].getAssignedUser());
+            categories[i] = nameId(tasks[i].getCategory());
+            statuses[i] = tasks[i].getStatus().ordinal();
+        });
+
+        int names = nextNameId.get();
+        int statusCount = Task.TaskStatus.values().length;
+        int[] userStatuses = new int[count];
+        for (int i = 0; i < count; i++) {
+            userStatuses[i] = users[i] * statusCount + statuses[i];
+        }
+
+        ForkJoinTask<PersistentIntMap<PersistentIntMap<Task>>> byUser =
+                ForkJoinTask.adapt(() -> group(tasks, ids, users, names)).fork();
+        ForkJoinTask<PersistentIntMap<PersistentIntMap<Task>>> byCategory =
+                ForkJoinTask.adapt(() -> group(tasks, ids, categories, names)).fork();
+        ForkJoinTask<PersistentIntMap<PersistentIntMap<Task>>> byStatus =
+                ForkJoinTask.adapt(() -> group(tasks, ids, statuses, statusCount)).fork();
+        ForkJoinTask<PersistentIntMap<PersistentIntMap<Task>>> byUserAndStatus =
+                ForkJoinTask.adapt(() -> group(tasks, ids, userStatuses, names * statusCount)).fork();
+        PersistentIntMap<Task> byId = PersistentIntMap.fromSorted(ids, tasks, 0, count);
+        return new State(byId, byUser.join(), byCategory.join(), byStatus.join(), byUserAndStatus.join());
+    }
+
+    // Buckets of the tasks by key, for keys in [0, keyCount); empty buckets are left out
+    private static PersistentIntMap<PersistentIntMap<Task>> group(Task[] tasks, int[] ids, int[] keys, int keyCount) {
+        // Counting sort by key, stable so each bucket stays in id order
+        int[] starts = new int[keyCount + 1];
+        for (int key : keys) {
+            starts[key + 1]++;
+        }
+        for (int key = 0; key < keyCount; key++) {
+            starts[key + 1] += starts[key];
+        }
+        int[] groupedIds = new int[tasks.length];
+        Task[] grouped = new Task[tasks.length];
+        int[] next = Arrays.copyOf(starts, keyCount);
+        for (int i = 0; i < tasks.length; i++) {
+            int at = next[keys[i]]++;
+            groupedIds[at] = ids[i];
+            grouped[at] = tasks[i];
+        }
+
+        int[] bucketKeys = IntStream.range(0, keyCount).filter(key -> starts[key] < starts[key + 1]).toArray();
+        Object[] buckets = new Object[bucketKeys.length];
+        IntStream.range(0, bucketKeys.length).parallel().forEach(i -> buckets[i] = PersistentIntMap.fromSorted(
+                groupedIds, grouped, starts[bucketKeys[i]], starts[bucketKeys[i] + 1]));
+        return PersistentIntMap.fromSorted(bucketKeys, buckets, 0, bucketKeys.length);
+    }
+
+    private int nameId(String name) {
+        String key = key(name);
+        Integer id = nameIds.get(key);
+        if (id == null) {
+            id = nameIds.computeIfAbsent(key, k -> nextNameId.getAndIncrement());
+        }
+        return id;
+    }
+
+    // -1 for a name that was never stored, which matches no bucket
+    private int existingNameId(String name) {
+        Integer id = nameIds.get(key(name));
+        return id == null ? -1 : id;
+    }
+
+    private static int userStatusKey(int user, Task.TaskStatus status) {
+        return user < 0 ? -1 : user * Task.TaskStatus.values().length + status.ordinal();
+    }
+
+    private static List<Task> copyOf(PersistentIntMap<Task> bucket) {
+        List<Task> tasks = new ArrayList<>(bucket == null ? 0 : bucket.size());
+        if (bucket != null) {
+            for (Task task : bucket) {
+                tasks.add(task);
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Tasks in every included set and in no excluded set that meet every
+     * checked condition. included is never empty.
+     */
+    private static final class Conjunction {
+        final List<PersistentIntMap<Task>> included = new ArrayList<>();
+        final List<PersistentIntMap<Task>> excluded = new ArrayList<>();
+        final List<TaskQuery> checked = new ArrayList<>();
+
+        int size() {
+            if (checked.isEmpty()) {
+                return PersistentIntMap.intersectionSize(
+                        included.toArray(new PersistentIntMap<?>[0]), excluded.toArray(new PersistentIntMap<?>[0]));
+            }
+            int count = 0;
+            for (Iterator<Task> matches = iterator(0); matches.hasNext(); matches.next()) {
+                count++;
+            }
+            return count;
+        }
+
+        Iterator<Task> iterator(int afterId) {
+            return matching(included.get(0).valuesFrom(afterId + 1), this::accepts);
+        }
+
+        PersistentIntMap<Task> evaluate() {
+            PersistentIntMap<Task> result = included.get(0);
+            for (int i = 1; i < included.size(); i++) {
+                result = result.and(included.get(i));
+            }
+            for (PersistentIntMap<Task> set : excluded) {
+                result = result.andNot(set);
+            }
+            return checked.isEmpty() ? result : result.filter(this::meetsChecked);
+        }
+
+        // Whether a task of the first included set matches
+        private boolean accepts(Task task) {
+            int id = task.getId();
+            for (int i = 1; i < included.size(); i++) {
+                if (included.get(i).get(id) == null) {
+                    return false;
+                }
+            }
+            for (PersistentIntMap<Task> set : excluded) {
+                if (set.get(id) != null) {
+                    return false;
+                }
+            }
+            return meetsChecked(task);
+        }
+
+        private boolean meetsChecked(Task task) {
+            for (TaskQuery condition : checked) {
+                if (!condition.matches(task)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * One immutable version of every index. Buckets are keyed by name id
+     * (or status ordinal) and hold their tasks keyed by task id. Empty
+     * buckets are dropped.
+     */
+    private static final class State {
+        static final State EMPTY = new State(PersistentIntMap.empty(), PersistentIntMap.empty(),
+                PersistentIntMap.empty(), PersistentIntMap.empty(), PersistentIntMap.empty());
+
+        final PersistentIntMap<Task> byId;
+        final PersistentIntMap<PersistentIntMap<Task>> byUser;
+        final PersistentIntMap<PersistentIntMap<Task>> byCategory;
+        final PersistentIntMap<PersistentIntMap<Task>> byStatus;
+        final PersistentIntMap<PersistentIntMap<Task>> byUserAndStatus;
+
+        State(PersistentIntMap<Task> byId,
+              PersistentIntMap<PersistentIntMap<Task>> byUser,
+              PersistentIntMap<PersistentIntMap<Task>> byCategory,
+              PersistentIntMap<PersistentIntMap<Task>> byStatus,
+              PersistentIntMap<PersistentIntMap<Task>> byUserAndStatus) {
+            this.byId = byId;
+            this.byUser = byUser;
+            this.byCategory = byCategory;
+            this.byStatus = byStatus;
+            this.byUserAndStatus = byUserAndStatus;
+        }
+
+        State with(Task task, int user, int category) {
+            return new State(byId.put(task.getId(), task),
+                    put(byUser, user, task),
+                    put(byCategory, category, task),
+                    put(byStatus, task.getStatus().ordinal(), task),
+                    put(byUserAndStatus, userStatusKey(user, task.getStatus()), task));
+        }
+
+        State without(Task task, TaskIndex names) {
+            int user = names.existingNameId(task.getAssignedUser());
+            int id = task.getId();
+            return new State(byId.remove(id),
+                    remove(byUser, user, id),
+                    remove(byCategory, names.existingNameId(task.getCategory()), id),
+                    remove(byStatus, task.getStatus().ordinal(), id),
+                    remove(byUserAndStatus, userStatusKey(user, task.getStatus()), id));
+        }
+
+        // Both names of the new version must already have ids
+        State replace(Task previous, Task task, TaskIndex names) {
+            return without(previous, names).with(task,
+                    names.existingNameId(task.getAssignedUser()), names.existingNameId(task.getCategory()));
+        }
+
+        private static PersistentIntMap<PersistentIntMap<Task>> put(
+                PersistentIntMap<PersistentIntMap<Task>> index, int key, Task task) {
+            PersistentIntMap<Task> bucket = index.get(key);
+            if (bucket == null) {
+                bucket = PersistentIntMap.empty();
+            }
+            return index.put(key, bucket.put(task.getId(), task));
+        }
+
+        private static PersistentIntMap<PersistentIntMap<Task>> remove(
+                PersistentIntMap<PersistentIntMap<Task>> index, int key, int id) {
+            PersistentIntMap<Task> bucket = index.get(key);
+            if (bucket == null) {
+                return index;
+            }
+            PersistentIntMap<Task> remaining = bucket.remove(id);
+            return remaining.isEmpty() ? index.remove(key) : index.put(key, remaining);
+        }
+    }
+}
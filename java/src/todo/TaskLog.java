@@ -0,0 +1,633 @@
+package todo;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of task mutations.
+ *
+ * Every record is framed as [length][crc32][payload] so a torn write at the
+ * end of the file is detected and discarded on replay.
+ *
+ * Appends only encode the record and put it on a bounded queue; a dedicated
+ * writer thread drains the queue, writes whatever has accumulated with one
+ * gathering write and forces it according to the FsyncPolicy. Callers pick
+ * whether to wait: awaitDurable blocks, whenDurable returns a future, and
+ * ignoring the returned position is fire-and-forget. A full queue blocks
+ * appenders until the writer catches up.
+ */
+public class TaskLog implements Closeable {
+    public enum FsyncPolicy {
+        PER_OPERATION,  // force the log after every record
+        GROUP_COMMIT,   // force once per group of records drained together
+        INTERVAL        // force periodically; callers never wait for the disk
+    }
+
+    public interface Handler {
+        void onAdd(int id, String description, String category, String assignedUser, LocalDateTime createdDate);
+
+        void onRemove(int id);
+
+        // version is the task's version after the change, or 0 in records
+        // written before versions were logged
+        void onComplete(int id, LocalDateTime completedDate, int version);
+
+        void onReassign(int id, String assignedUser, int version);
+
+        void onCreateUser(String username);
+
+        // A whole task, version included, replacing any task with its id
+        void onRestore(Task task);
+    }
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_COMPLETE = 3;
+    private static final byte OP_REASSIGN = 4;
+    private static final byte OP_BATCH = 5;
+    private static final byte OP_CREATE_USER = 6;
+    private static final byte OP_RESTORE = 7;
+    // Set on the op of a COMPLETE or REASSIGN record that ends with the task's new version
+    private static final byte VERSIONED = 0x40;
+    // Set on an op whose strings are an int byte count and UTF-8 rather
+    // than writeUTF's form, which cannot hold more than 65,535 bytes
+    private static final byte LONG_STRINGS = 0x20;
+    // Large enough for bulk imports, small enough to reject a garbage length
+    private static final int MAX_RECORD_SIZE = 64 << 20;
+    private static final int QUEUE_CAPACITY = 16 * 1024;
+    // Queued in place of a record to make the writer force immediately
+    private static final byte[] SYNC_REQUEST = new byte[0];
+
+    private final Path path;
+    private final FileChannel channel;
+    private final FsyncPolicy fsyncPolicy;
+    private final long syncIntervalMillis;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // Futures keyed by the position they wait for; waiters on the same position share one
+    private final NavigableMap<Long, CompletableFuture<Void>> waiters = new TreeMap<>();
+    private final Thread writer;
+    private final TaskMetrics metrics;
+
+    // Positions are logical byte counts that keep growing across resets, so a
+    // caller waiting on a record that was compacted away still returns.
+    private long appendedPosition;
+    // Advanced only by the writer thread once replay has run
+    private volatile long writtenPosition;
+    private volatile long syncedPosition;
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private int recordCount;
+
+    public TaskLog(Path path, FsyncPolicy fsyncPolicy, long syncIntervalMillis) throws IOException {
+        this(path, fsyncPolicy, syncIntervalMillis, new TaskMetrics());
+    }
+
+    /**
+     * Records every group write and every sync in the metrics' logWrite and
+     * logSync timers.
+     */
+    public TaskLog(Path path, FsyncPolicy fsyncPolicy, long syncIntervalMillis, TaskMetrics metrics) throws IOException {
+        this.path = path;
+        this.metrics = metrics;
+        this.fsyncPolicy = fsyncPolicy;
+        this.syncIntervalMillis = syncIntervalMillis;
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        writer = new Thread(this::runWriter, "task-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Feeds every intact record to the handler in append order and truncates
+     * whatever trails the last intact record. Must be called before appending.
+     */
+    public synchronized int replay(Handler handler) throws IOException {
+        CRC32 crc = new CRC32();
+        long validEnd = 0;
+        int replayed = 0;
+        channel.position(0);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+
+        while (true) {
+            byte[] payload;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+
+            try {
+                replayed += apply(new DataInputStream(new ByteArrayInputStream(payload)), handler);
+            } catch (EOFException e) {
+                // The checksum matched, so this is not a torn write
+                throw new IOException("Malformed log record at offset " + validEnd + " of " + path, e);
+            }
+            validEnd += 8 + payload.length;
+        }
+
+        if (validEnd < channel.size()) {
+            System.err.println("Discarding " + (channel.size() - validEnd) + " trailing bytes from " + path);
+            channel.truncate(validEnd);
+        }
+        channel.position(validEnd);
+        appendedPosition = validEnd;
+        writtenPosition = validEnd;
+        syncedPosition = validEnd;
+        recordCount = replayed;
+        return replayed;
+    }
+
+    public long appendAdd(Task task) throws IOException {
+        Encoder encoder = new Encoder();
+        writeAdd(encoder.out, task);
+        return enqueue(encoder.frame(), 1);
+    }
+
+    public long appendRemove(int id) throws IOException {
+        Encoder encoder = new Encoder();
+        writeRemove(encoder.out, id);
+        return enqueue(encoder.frame(), 1);
+    }
+
+    /**
+     * Appends a completion that leaves the task at the given version. Replay
+     * hands the version back, so a change the store already holds can be
+     * told apart from one it still needs.
+     */
+    public long appendComplete(int id, LocalDateTime completedDate, int version) throws IOException {
+        Encoder encoder = new Encoder();
+        writeComplete(encoder.out, id, completedDate, version);
+        return enqueue(encoder.frame(), 1);
+    }
+
+    // Like appendComplete, the version is the task's after the reassignment
+    public long appendReassign(int id, String assignedUser, int version) throws IOException {
+        Encoder encoder = new Encoder();
+        writeReassign(encoder.out, id, assignedUser, version);
+        return enqueue(encoder.frame(), 1);
+    }
+
+    /**
+     * Appends a task exactly as given, completion and version included, for
+     * tasks copied in from another store rather than created here.
+     */
+    public long appendRestore(Task task) throws IOException {
+        Encoder encoder = new Encoder();
+        writeRestore(encoder.out, task);
+        return enqueue(encoder.frame(), 1);
+    }
+
+    public long appendCreateUser(String username) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.out.writeByte(OP_CREATE_USER | LONG_STRINGS);
+        writeString(encoder.out, username);
+        return enqueue(encoder.frame(), 1);
+    }
+
+    /**
+     * Appends every record of the batch as a single CRC-framed record, so
+     * replay sees either the whole batch or none of it.
+     */
+    public long appendBatch(Batch batch) throws IOException {
+        if (batch.size == 0) {
+            synchronized (this) {
+                return appendedPosition;
+            }
+        }
+        if (batch.buffer.size() + 5 > MAX_RECORD_SIZE) {
+            throw new IOException("Batch of " + batch.size + " records exceeds the maximum log record size");
+        }
+
+        Encoder encoder = new Encoder();
+        encoder.out.writeByte(OP_BATCH);
+        encoder.out.writeInt(batch.size);
+        batch.buffer.writeTo(encoder.out);
+        return enqueue(encoder.frame(), batch.size);
+    }
+
+    /**
+     * Blocks until the record ending at the given position is on disk. Under
+     * INTERVAL the log only promises periodic durability, so this returns at once.
+     */
+    public void awaitDurable(long position) throws IOException {
+        if (fsyncPolicy == FsyncPolicy.INTERVAL || syncedPosition >= position) {
+            return;
+        }
+        await(whenDurable(position));
+    }
+
+    /**
+     * Blocks until the record ending at the given position is on disk under
+     * any policy; under INTERVAL it asks the writer to force early.
+     */
+    public void sync(long position) throws IOException {
+        if (syncedPosition >= position) {
+            return;
+        }
+        CompletableFuture<Void> durable = whenDurable(position);
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            requestSync();
+        }
+        await(durable);
+    }
+
+    /**
+     * Completes once the record ending at the given position has been forced
+     * to disk, on the writer thread, so dependent stages should be cheap.
+     */
+    public CompletableFuture<Void> whenDurable(long position) {
+        if (syncedPosition >= position) {
+            return CompletableFuture.completedFuture(null);
+        }
+        synchronized (waiters) {
+            if (failure != null) {
+                return CompletableFuture.failedFuture(failure);
+            }
+            if (syncedPosition >= position) {
+                return CompletableFuture.completedFuture(null); // forced while we took the lock
+            }
+            return waiters.computeIfAbsent(position, p -> new CompletableFuture<>());
+        }
+    }
+
+    /**
+     * Empties the log once its records are covered by a durable snapshot.
+     * Records still queued are written and forced first. Callers must keep
+     * other threads from appending until this returns.
+     */
+    public synchronized void reset() throws IOException {
+        requestSync();
+        await(whenDurable(appendedPosition));
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        recordCount = 0;
+    }
+
+    /**
+     * Number of mutations logged since the last reset; a batch counts each of its records.
+     */
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    // Position to wait for to see everything appended so far on disk
+    public synchronized long getAppendedPosition() {
+        return appendedPosition;
+    }
+
+    // Position up to which every record has been forced to disk
+    public long getSyncedPosition() {
+        return syncedPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            requestSync();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private synchronized long enqueue(byte[] frame, int records) throws IOException {
+        if (closed) {
+            throw new IOException("Task log is closed");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        try {
+            queue.put(frame);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while appending to the task log");
+        }
+        appendedPosition += frame.length;
+        recordCount += records;
+        return appendedPosition;
+    }
+
+    private void requestSync() throws IOException {
+        try {
+            queue.put(SYNC_REQUEST);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while syncing the task log");
+        }
+    }
+
+    private static void await(CompletableFuture<Void> durable) throws IOException {
+        try {
+            durable.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the task log");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Writer thread: drains whatever is queued, writes it in one gathering
+     * write and forces as the policy asks. Exits after a close once the
+     * queue is empty.
+     */
+    private void runWriter() {
+        List<byte[]> group = new ArrayList<>();
+        long lastSync = System.nanoTime();
+
+        while (true) {
+            try {
+                byte[] first = queue.poll(syncIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    group.add(first);
+                    // Per-operation durability forces each record on its own
+                    if (fsyncPolicy != FsyncPolicy.PER_OPERATION) {
+                        queue.drainTo(group);
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            boolean syncRequested = false;
+            try {
+                if (failure == null && !group.isEmpty()) {
+                    long start = System.nanoTime();
+                    long bytes = write(group);
+                    writtenPosition += bytes;
+                    metrics.logWrite().record(System.nanoTime() - start, bytes);
+                }
+                for (byte[] frame : group) {
+                    syncRequested |= frame == SYNC_REQUEST;
+                }
+
+                boolean due = fsyncPolicy != FsyncPolicy.INTERVAL
+                        || System.nanoTime() - lastSync >= TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+                if (failure == null && writtenPosition > syncedPosition && (due || syncRequested)) {
+                    long start = System.nanoTime();
+                    channel.force(false);
+                    lastSync = System.nanoTime();
+                    metrics.logSync().record(lastSync - start);
+                }
+                if (failure == null && (due || syncRequested)) {
+                    syncedPosition = writtenPosition;
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing task log: " + e.getMessage());
+                failure = e;
+            }
+            group.clear();
+
+            completeWaiters();
+            if (closed && syncRequested && queue.isEmpty()) {
+                break;
+            }
+        }
+    }
+
+    private long write(List<byte[]> group) throws IOException {
+        ByteBuffer[] frames = new ByteBuffer[group.size()];
+        long bytes = 0;
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = ByteBuffer.wrap(group.get(i));
+            bytes += frames[i].remaining();
+        }
+
+        long written = 0;
+        while (written < bytes) {
+            written += channel.write(frames);
+        }
+        return bytes;
+    }
+
+    private void completeWaiters() {
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        synchronized (waiters) {
+            Map<Long, CompletableFuture<Void>> covered =
+                    failure != null ? waiters : waiters.headMap(syncedPosition, true);
+            done.addAll(covered.values());
+            covered.clear();
+        }
+        for (CompletableFuture<Void> future : done) {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(null);
+            }
+        }
+    }
+
+    private static void writeAdd(DataOutputStream out, Task task) throws IOException {
+        out.writeByte(OP_ADD | LONG_STRINGS);
+        out.writeInt(task.getId());
+        writeString(out, task.getDescription());
+        writeString(out, task.getCategory());
+        writeString(out, task.getAssignedUser());
+        out.writeLong(task.getCreatedMillis());
+    }
+
+    private static void writeRestore(DataOutputStream out, Task task) throws IOException {
+        out.writeByte(OP_RESTORE | LONG_STRINGS);
+        out.writeInt(task.getId());
+        writeString(out, task.getDescription());
+        writeString(out, task.getCategory());
+        writeString(out, task.getAssignedUser());
+        out.writeLong(task.getCreatedMillis());
+        out.writeLong(task.getCompletedMillis());
+        out.writeInt(task.getVersion());
+    }
+
+    private static void writeRemove(DataOutputStream out, int id) throws IOException {
+        out.writeByte(OP_REMOVE);
+        out.writeInt(id);
+    }
+
+    private static void writeComplete(DataOutputStream out, int id, LocalDateTime completedDate, int version)
+            throws IOException {
+        out.writeByte(OP_COMPLETE | VERSIONED);
+        out.writeInt(id);
+        out.writeLong(TaskCodec.toEpochMillis(completedDate));
+        out.writeInt(version);
+    }
+
+    private static void writeReassign(DataOutputStream out, int id, String assignedUser, int version)
+            throws IOException {
+        out.writeByte(OP_REASSIGN | VERSIONED | LONG_STRINGS);
+        out.writeInt(id);
+        writeString(out, assignedUser);
+        out.writeInt(version);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, boolean longStrings) throws IOException {
+        if (!longStrings) {
+            return in.readUTF();
+        }
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid string length " + length + " in log record");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Returns the number of mutations the record carried
+    private static int apply(DataInputStream in, Handler handler) throws IOException {
+        byte op = in.readByte();
+        if (op == OP_BATCH) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                apply(in, handler);
+            }
+            return count;
+        }
+        boolean versioned = (op & VERSIONED) != 0;
+        boolean longStrings = (op & LONG_STRINGS) != 0;
+        int type = op & ~(VERSIONED | LONG_STRINGS);
+        if ((versioned && type != OP_COMPLETE && type != OP_REASSIGN)
+                || (longStrings && (type == OP_REMOVE || type == OP_COMPLETE))) {
+            throw new IOException("Unknown log record type: " + op);
+        }
+        if (type == OP_CREATE_USER) {
+            handler.onCreateUser(readString(in, longStrings));
+            return 1;
+        }
+
+        int id = in.readInt();
+        switch (type) {
+            case OP_ADD:
+                handler.onAdd(id, readString(in, longStrings), readString(in, longStrings),
+                        readString(in, longStrings), TaskCodec.fromEpochMillis(in.readLong()));
+                break;
+            case OP_REMOVE:
+                handler.onRemove(id);
+                break;
+            case OP_COMPLETE:
+                LocalDateTime completedDate = TaskCodec.fromEpochMillis(in.readLong());
+                handler.onComplete(id, completedDate, versioned ? in.readInt() : 0);
+                break;
+            case OP_REASSIGN:
+                String assignedUser = readString(in, longStrings);
+                handler.onReassign(id, assignedUser, versioned ? in.readInt() : 0);
+                break;
+            case OP_RESTORE:
+                handler.onRestore(new Task(id, readString(in, longStrings), readString(in, longStrings),
+                        readString(in, longStrings), in.readLong(), in.readLong(), in.readInt()));
+                break;
+            default:
+                throw new IOException("Unknown log record type: " + op);
+        }
+        return 1;
+    }
+
+    // Builds one framed record on the calling thread, outside any lock
+    private static final class Encoder {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(128);
+        private final DataOutputStream out = new DataOutputStream(buffer);
+
+        byte[] frame() {
+            byte[] payload = buffer.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            byte[] frame = new byte[8 + payload.length];
+            ByteBuffer.wrap(frame).putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            return frame;
+        }
+    }
+
+    /**
+     * Records collected off the log's lock and appended together by
+     * appendBatch. Not thread-safe.
+     */
+    public static final class Batch {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+        private final DataOutputStream out = new DataOutputStream(buffer);
+        private int size;
+
+        public void add(Task task) throws IOException {
+            writeAdd(out, task);
+            size++;
+        }
+
+        public void remove(int id) throws IOException {
+            writeRemove(out, id);
+            size++;
+        }
+
+        public void complete(int id, LocalDateTime completedDate, int version) throws IOException {
+            writeComplete(out, id, completedDate, version);
+            size++;
+        }
+
+        public void reassign(int id, String assignedUser, int version) throws IOException {
+            writeReassign(out, id, assignedUser, version);
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+}
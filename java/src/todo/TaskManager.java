@@ -0,0 +1,1260 @@
+package todo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class TaskManager implements TaskShard, AutoCloseable {
+    static final String DEFAULT_DATA_DIRECTORY = "java/src/data";
+    static final String TASKS_FILE = "tasks.dat";
+    static final String USERS_FILE = "users.dat";
+    // Number of log records before the log is folded into a new snapshot
+    private static final int SNAPSHOT_THRESHOLD = 10_000;
+    private static final long SYNC_INTERVAL_MILLIS = 100;
+    // Must be a power of two; mutations of the same task id share a stripe
+    private static final int LOCK_STRIPES = 64;
+    // Log position returned by a mutation that was refused
+    private static final long REJECTED = -1;
+    // Expected version of an unconditional mutation; real versions start at 1
+    private static final int ANY_VERSION = 0;
+    private static final Comparator<Task> BY_CREATED_DATE =
+            Comparator.comparingLong(Task::getCreatedMillis).thenComparingInt(Task::getId);
+
+    private final TaskStore tasks;
+    private final UserRegistry users;
+    private final AtomicInteger taskCounter = new AtomicInteger(1);
+    // New ids step by the shard count, so shards of one ShardedTaskService never share an id
+    private volatile int idStride = 1;
+    private volatile int idShard;
+    private final Path tasksFile;
+    private final TaskLog taskLog;
+    private final Lock[] taskLocks = new Lock[LOCK_STRIPES];
+    // Mutations hold the shared side; compaction holds the exclusive side so
+    // the snapshot it writes matches the log it truncates
+    private final ReadWriteLock compactionLock = new ReentrantReadWriteLock();
+    private final TaskMetrics metrics = new TaskMetrics();
+    private final TaskAggregates aggregates;
+    private final TaskSearchIndex searchIndex;
+    private final TaskFeed feed = new TaskFeed();
+
+    public TaskManager() {
+        this(DEFAULT_DATA_DIRECTORY, TaskLog.FsyncPolicy.GROUP_COMMIT);
+    }
+
+    public TaskManager(String dataDirectory, TaskLog.FsyncPolicy fsyncPolicy) {
+        this(dataDirectory, fsyncPolicy, TaskStore.Backend.HEAP);
+    }
+
+    public TaskManager(String dataDirectory, TaskLog.FsyncPolicy fsyncPolicy, TaskStore.Backend backend) {
+        Path directory = Paths.get(dataDirectory);
+        this.tasksFile = directory.resolve(TASKS_FILE);
+        Path usersFile = directory.resolve(USERS_FILE);
+
+        try {
+            Files.createDirectories(directory);
+            LegacyStoreMigrator.migrate(directory, tasksFile, usersFile);
+            this.taskLog = new TaskLog(directory.resolve("tasks.log"), fsyncPolicy, SYNC_INTERVAL_MILLIS, metrics);
+            this.tasks = openStore(directory, backend);
+            this.users = UserRegistry.load(usersFile, taskLog);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open task store: " + e.getMessage(), e);
+        }
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            taskLocks[i] = new ReentrantLock();
+        }
+
+        try {
+            replayLog();
+        } catch (IOException | RuntimeException e) {
+            // Serving what was replayed so far would let the next compaction
+            // checkpoint it and truncate the records that were never applied
+            try {
+                taskLog.close();
+                tasks.close();
+            } catch (IOException closing) {
+                e.addSuppressed(closing);
+            }
+            throw new IllegalStateException("Unable to replay task log: " + e.getMessage(), e);
+        }
+        // Counts and the search index are not persisted; derive both from the
+        // store at once, each in parallel chunks on the common fork-join pool
+        List<Task> loaded = tasks.all();
+        ForkJoinTask<TaskAggregates> counting = ForkJoinTask.adapt(() -> TaskAggregates.of(loaded)).fork();
+        searchIndex = TaskSearchIndex.build(loaded);
+        aggregates = counting.join();
+
+        // Start after the highest task ID to ensure new IDs don't conflict
+        taskCounter.set(tasks.maxId() + 1);
+
+        metrics.bindSizes(tasks::size, users::size, taskLog::getRecordCount);
+        metrics.register(directory.toAbsolutePath().normalize().toString());
+    }
+
+    /**
+     * Makes this manager shard index of count: from now on it hands out
+     * only ids that leave a remainder of index when one less is divided by
+     * count, above every id it holds. Call it before any task is added,
+     * with the same values on every start.
+     */
+    public void setShard(int index, int count) {
+        if (count <= 0 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Shard " + index + " of " + count + " is out of range");
+        }
+        idShard = index;
+        idStride = count;
+        taskCounter.set(nextIdAbove(Math.max(tasks.maxId(), taskCounter.get() - 1)));
+    }
+
+    // Lowest id above the given one that this shard may hand out
+    private int nextIdAbove(int id) {
+        int next = id + 1;
+        int offset = Math.floorMod(next - 1 - idShard, idStride);
+        return offset == 0 ? next : next + idStride - offset;
+    }
+
+    public TaskMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the user registered under the name in any case, creating it
+     * if needed. Existing users are found without taking any lock.
+     */
+    public User getOrCreateUser(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+
+        long start = System.nanoTime();
+        try {
+            User user = users.find(username);
+            if (user != null) {
+                return user;
+            }
+
+            // Creation is logged, so it must not slip between a compaction's snapshot and its log reset
+            long acquired = lockShared(null);
+            try {
+                return users.getOrCreate(username);
+            } finally {
+                unlockShared(null, acquired);
+            }
+        } finally {
+            metrics.operation(TaskMetrics.Operation.GET_OR_CREATE_USER).recordSince(start);
+        }
+    }
+
+    public boolean addTask(String description, String category, String assignedUser) {
+        long start = System.nanoTime();
+        try {
+            return afterMutation(applyAdd(description, category, assignedUser));
+        } finally {
+            metrics.operation(TaskMetrics.Operation.ADD_TASK).recordSince(start);
+        }
+    }
+
+    /**
+     * The Async variants return as soon as the change is applied in memory
+     * and queued for the log. The future completes with the same value the
+     * blocking variant returns, once the change is on disk.
+     */
+    public CompletableFuture<Boolean> addTaskAsync(String description, String category, String assignedUser) {
+        return afterMutationAsync(applyAdd(description, category, assignedUser));
+    }
+
+    public boolean removeTask(int id) {
+        long start = System.nanoTime();
+        try {
+            return afterMutation(applyRemove(id));
+        } finally {
+            metrics.operation(TaskMetrics.Operation.REMOVE_TASK).recordSince(start);
+        }
+    }
+
+    public CompletableFuture<Boolean> removeTaskAsync(int id) {
+        return afterMutationAsync(applyRemove(id));
+    }
+
+    public boolean markTaskCompleted(int id, String username) {
+        long start = System.nanoTime();
+        try {
+            return afterMutation(applyComplete(id, username, ANY_VERSION));
+        } finally {
+            metrics.operation(TaskMetrics.Operation.MARK_TASK_COMPLETED).recordSince(start);
+        }
+    }
+
+    public CompletableFuture<Boolean> markTaskCompletedAsync(int id, String username) {
+        return afterMutationAsync(applyComplete(id, username, ANY_VERSION));
+    }
+
+    /**
+     * Optimistic variants of markTaskCompleted and reassignTask: the change is
+     * applied only if the task is still at the version the caller read, and
+     * rejected if anyone changed it since. The check and the change happen
+     * under the task's lock stripe, like every other mutation of the task.
+     */
+    public boolean completeIfVersion(int id, String username, int expectedVersion) {
+        long start = System.nanoTime();
+        try {
+            return afterMutation(applyComplete(id, username, expectedVersion));
+        } finally {
+            metrics.operation(TaskMetrics.Operation.COMPLETE_IF_VERSION).recordSince(start);
+        }
+    }
+
+    public CompletableFuture<Boolean> completeIfVersionAsync(int id, String username, int expectedVersion) {
+        return afterMutationAsync(applyComplete(id, username, expectedVersion));
+    }
+
+    public boolean reassignTask(int id, String fromUsername, String toUsername) {
+        long start = System.nanoTime();
+        try {
+            return afterMutation(applyReassign(id, fromUsername, toUsername, ANY_VERSION));
+        } finally {
+            metrics.operation(TaskMetrics.Operation.REASSIGN_TASK).recordSince(start);
+        }
+    }
+
+    public CompletableFuture<Boolean> reassignTaskAsync(int id, String fromUsername, String toUsername) {
+        return afterMutationAsync(applyReassign(id, fromUsername, toUsername, ANY_VERSION));
+    }
+
+    public boolean reassignIfVersion(int id, String fromUsername, String toUsername, int expectedVersion) {
+        long start = System.nanoTime();
+        try {
+            return afterMutation(applyReassign(id, fromUsername, toUsername, expectedVersion));
+        } finally {
+            metrics.operation(TaskMetrics.Operation.REASSIGN_IF_VERSION).recordSince(start);
+        }
+    }
+
+    public CompletableFuture<Boolean> reassignIfVersionAsync(int id, String fromUsername, String toUsername,
+                                                             int expectedVersion) {
+        return afterMutationAsync(applyReassign(id, fromUsername, toUsername, expectedVersion));
+    }
+
+    private long applyAdd(String description, String category, String assignedUser) {
+        if (description == null || description.trim().isEmpty()) {
+            return REJECTED;
+        }
+
+        if (category == null || category.trim().isEmpty()) {
+            category = "General";
+        }
+
+        User user = getOrCreateUser(assignedUser);
+        long logPosition;
+        int id = taskCounter.getAndAdd(idStride);
+        Lock taskLock = lockFor(id);
+
+        long acquired = lockShared(taskLock);
+        try {
+            Task task = new Task(id, description, category, user.getUsername());
+            logPosition = taskLog.appendAdd(task);
+            syncLogBeforeStore(logPosition);
+            tasks.add(task);
+            aggregates.added(task);
+            searchIndex.add(task);
+            feed.publish(TaskEvent.Type.ADDED, task, null);
+        } catch (Exception e) {
+            System.err.println("Error adding task: " + e.getMessage());
+            return REJECTED;
+        } finally {
+            unlockShared(taskLock, acquired);
+        }
+
+        return logPosition;
+    }
+
+    private long applyRemove(int id) {
+        long logPosition;
+        Lock taskLock = lockFor(id);
+
+        long acquired = lockShared(taskLock);
+        try {
+            if (tasks.get(id) == null) {
+                return REJECTED;
+            }
+            logPosition = taskLog.appendRemove(id);
+            syncLogBeforeStore(logPosition);
+            Task removed = tasks.remove(id);
+            aggregates.removed(removed);
+            searchIndex.remove(removed);
+            feed.publish(TaskEvent.Type.REMOVED, removed, null);
+        } catch (IOException e) {
+            System.err.println("Error removing task: " + e.getMessage());
+            return REJECTED;
+        } finally {
+            unlockShared(taskLock, acquired);
+        }
+
+        return logPosition;
+    }
+
+    private long applyComplete(int id, String username, int expectedVersion) {
+        long logPosition;
+        Lock taskLock = lockFor(id);
+
+        long acquired = lockShared(taskLock);
+        try {
+            Task task = tasks.get(id);
+
+            if (task == null) {
+                return REJECTED;
+            }
+
+            // Check if the user is allowed to mark this task as completed
+            if (!task.getAssignedUser().equalsIgnoreCase(username)) {
+                return REJECTED;
+            }
+
+            if (task.getStatus() == Task.TaskStatus.COMPLETED) {
+                return REJECTED; // Already completed
+            }
+
+            if (isStale(task, expectedVersion)) {
+                return REJECTED; // Changed since the caller read it
+            }
+
+            LocalDateTime completedDate = LocalDateTime.now();
+            logPosition = taskLog.appendComplete(id, completedDate, task.getVersion() + 1);
+            syncLogBeforeStore(logPosition);
+            Task completed = tasks.markCompleted(id, completedDate);
+            aggregates.replaced(task, completed);
+            feed.publish(TaskEvent.Type.COMPLETED, completed, task);
+        } catch (IOException e) {
+            System.err.println("Error completing task: " + e.getMessage());
+            return REJECTED;
+        } finally {
+            unlockShared(taskLock, acquired);
+        }
+
+        return logPosition;
+    }
+
+    private long applyReassign(int id, String fromUsername, String toUsername, int expectedVersion) {
+        if (toUsername == null || toUsername.trim().isEmpty()) {
+            return REJECTED;
+        }
+
+        // First, ensure the target user exists (or create it)
+        User targetUser = getOrCreateUser(toUsername);
+        long logPosition;
+        Lock taskLock = lockFor(id);
+
+        long acquired = lockShared(taskLock);
+        try {
+            // Find the task by ID
+            Task task = tasks.get(id);
+
+            if (task == null) {
+                return REJECTED; // Task doesn't exist
+            }
+
+            // Verify that the current user owns this task
+            if (fromUsername != null && !task.getAssignedUser().equalsIgnoreCase(fromUsername)) {
+                return REJECTED; // Not authorized to reassign this task
+            }
+
+            if (isStale(task, expectedVersion)) {
+                return REJECTED; // Changed since the caller read it
+            }
+
+            // Log the reassignment before applying it
+            logPosition = taskLog.appendReassign(id, targetUser.getUsername(), task.getVersion() + 1);
+            syncLogBeforeStore(logPosition);
+            Task reassigned = tasks.reassign(id, targetUser.getUsername());
+            aggregates.replaced(task, reassigned);
+            feed.publish(TaskEvent.Type.REASSIGNED, reassigned, task);
+        } catch (Exception e) {
+            System.err.println("Error reassigning task: " + e.getMessage());
+            return REJECTED;
+        } finally {
+            unlockShared(taskLock, acquired);
+        }
+
+        return logPosition;
+    }
+
+    private static boolean isStale(Task task, int expectedVersion) {
+        return expectedVersion != ANY_VERSION && task.getVersion() != expectedVersion;
+    }
+
+    public boolean importTask(Task task) {
+        long start = System.nanoTime();
+        try {
+            return afterMutation(applyImport(task));
+        } finally {
+            metrics.operation(TaskMetrics.Operation.IMPORT_TASK).recordSince(start);
+        }
+    }
+
+    private long applyImport(Task task) {
+        User user = getOrCreateUser(task.getAssignedUser());
+        Task imported = task.withAssignedUser(user.getUsername()).withVersion(task.getVersion());
+        long logPosition;
+        Lock taskLock = lockFor(imported.getId());
+
+        long acquired = lockShared(taskLock);
+        try {
+            if (tasks.get(imported.getId()) != null) {
+                return taskLog.getAppendedPosition(); // Already handed over
+            }
+
+            // Logged whole, so replay restores its completion and version too
+            logPosition = taskLog.appendRestore(imported);
+            syncLogBeforeStore(logPosition);
+            tasks.add(imported);
+            aggregates.added(imported);
+            searchIndex.add(imported);
+            feed.publish(TaskEvent.Type.ADDED, imported, null);
+            taskCounter.accumulateAndGet(nextIdAbove(imported.getId()), Math::max);
+        } catch (IOException e) {
+            System.err.println("Error importing task: " + e.getMessage());
+            return REJECTED;
+        } finally {
+            unlockShared(taskLock, acquired);
+        }
+
+        return logPosition;
+    }
+
+    /**
+     * Stores the task exactly as given, replacing any task with its id,
+     * unless the stored task is at a later version. TaskReplica applies its
+     * primary's changes through this, and an event replayed after a fresh
+     * copy of the task must not take it back to an earlier state.
+     */
+    boolean putTask(Task task) {
+        return afterMutation(applyPut(task));
+    }
+
+    private long applyPut(Task task) {
+        User user = getOrCreateUser(task.getAssignedUser());
+        Task put = task.withAssignedUser(user.getUsername()).withVersion(task.getVersion());
+        long logPosition;
+        Lock taskLock = lockFor(put.getId());
+
+        long acquired = lockShared(taskLock);
+        try {
+            Task previous = tasks.get(put.getId());
+            if (previous != null && (previous.getVersion() > put.getVersion() || sameState(previous, put))) {
+                return taskLog.getAppendedPosition();
+            }
+
+            // Logged whole, so replay replaces the task with this copy, version included
+            logPosition = taskLog.appendRestore(put);
+            syncLogBeforeStore(logPosition);
+
+            if (previous != null) {
+                tasks.remove(previous.getId());
+                searchIndex.remove(previous);
+            }
+            tasks.add(put);
+            aggregates.replaced(previous, put);
+            searchIndex.add(put);
+            TaskEvent.Type type = previous == null ? TaskEvent.Type.ADDED
+                    : previous.getStatus() != put.getStatus() ? TaskEvent.Type.COMPLETED
+                    : TaskEvent.Type.REASSIGNED;
+            feed.publish(type, put, previous);
+            taskCounter.accumulateAndGet(nextIdAbove(put.getId()), Math::max);
+        } catch (IOException e) {
+            System.err.println("Error storing task: " + e.getMessage());
+            return REJECTED;
+        } finally {
+            unlockShared(taskLock, acquired);
+        }
+
+        return logPosition;
+    }
+
+    private static boolean sameState(Task a, Task b) {
+        return a.getDescription().equals(b.getDescription()) && a.getCategory().equals(b.getCategory())
+                && a.getAssignedUser().equals(b.getAssignedUser()) && a.getCreatedMillis() == b.getCreatedMillis()
+                && a.getCompletedMillis() == b.getCompletedMillis() && a.getVersion() == b.getVersion();
+    }
+
+    public int getHighestTaskId() {
+        return Math.max(tasks.maxId(), taskCounter.get() - idStride);
+    }
+
+    public void reserveTaskIds(int throughId) {
+        taskCounter.accumulateAndGet(nextIdAbove(throughId), Math::max);
+    }
+
+    public Set<String> getAssignees() {
+        return aggregates.users();
+    }
+
+    public List<ConsoleUtils.Result<Task>> addTasks(Collection<Mutation.Add> additions) {
+        return applyBatch(new ArrayList<>(additions));
+    }
+
+    public List<ConsoleUtils.Result<Task>> removeTasks(int... ids) {
+        List<Mutation> batch = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            batch.add(Mutation.remove(id));
+        }
+        return applyBatch(batch);
+    }
+
+    /**
+     * Removes every task whose id is between fromId and toId inclusive, as
+     * one batch. Ids with no task are skipped.
+     */
+    public List<ConsoleUtils.Result<Task>> removeTaskRange(int fromId, int toId) {
+        List<Mutation> batch = new ArrayList<>();
+        Iterator<Task> inRange = tasks.iterate(TaskFilter.all(), Math.max(fromId, 1) - 1);
+        while (inRange.hasNext()) {
+            int id = inRange.next().getId();
+            if (id > toId) {
+                break;
+            }
+            batch.add(Mutation.remove(id));
+        }
+        return applyBatch(batch);
+    }
+
+    public List<ConsoleUtils.Result<Task>> completeTasks(String username, int... ids) {
+        List<Mutation> batch = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            batch.add(Mutation.complete(id, username));
+        }
+        return applyBatch(batch);
+    }
+
+    /**
+     * Applies the mutations in order as one unit: either every mutation is
+     * valid and all of them are applied, or none is. The batch takes the
+     * exclusive lock once, is written to the log as a single record and waits
+     * for one sync. Results line up with the input; a successful result holds
+     * the affected task (the removed task for REMOVE). Readers of tasks see
+     * the whole batch appear at once; summaries, search and the change feed
+     * take its mutations one at a time.
+     */
+    public List<ConsoleUtils.Result<Task>> applyBatch(List<? extends Mutation> mutations) {
+        long start = System.nanoTime();
+        List<ConsoleUtils.Result<Task>> results = new ArrayList<>(mutations.size());
+        afterMutation(applyBatch(mutations, results));
+        metrics.operation(TaskMetrics.Operation.APPLY_BATCH).recordSince(start);
+        return results;
+    }
+
+    /**
+     * Same as applyBatch, but returns once the batch is applied in memory.
+     * The future completes when the batch is on disk.
+     */
+    public CompletableFuture<List<ConsoleUtils.Result<Task>>> applyBatchAsync(List<? extends Mutation> mutations) {
+        List<ConsoleUtils.Result<Task>> results = new ArrayList<>(mutations.size());
+        return afterMutationAsync(applyBatch(mutations, results)).thenApply(applied -> results);
+    }
+
+    private long applyBatch(List<? extends Mutation> mutations, List<ConsoleUtils.Result<Task>> results) {
+        long logPosition;
+
+        // The exclusive side keeps every other writer and compaction out for the whole batch
+        long waitStart = System.nanoTime();
+        compactionLock.writeLock().lock();
+        long acquired = System.nanoTime();
+        metrics.exclusiveLockWait().record(acquired - waitStart);
+        try {
+            String error = validateBatch(mutations, results);
+            if (error != null) {
+                rejectBatch(results, error);
+                return REJECTED;
+            }
+
+            Map<String, String> usernames = resolveBatchUsers(mutations);
+            LocalDateTime now = LocalDateTime.now();
+            TaskLog.Batch batch = new TaskLog.Batch();
+            Task[] added = new Task[mutations.size()];
+            // Versions of the tasks changed earlier in the batch
+            IntIntMap versions = new IntIntMap(mutations.size());
+
+            for (int i = 0; i < mutations.size(); i++) {
+                Mutation mutation = mutations.get(i);
+                switch (mutation.getType()) {
+                    case ADD:
+                        Mutation.Add add = (Mutation.Add) mutation;
+                        String category = add.getCategory() == null || add.getCategory().trim().isEmpty()
+                                ? "General" : add.getCategory();
+                        added[i] = new Task(taskCounter.getAndAdd(idStride), add.getDescription(), category,
+                                usernames.get(add.getAssignedUser()), now);
+                        batch.add(added[i]);
+                        break;
+                    case REMOVE:
+                        batch.remove(((Mutation.Remove) mutation).getId());
+                        break;
+                    case COMPLETE:
+                        int completedId = ((Mutation.Complete) mutation).getId();
+                        batch.complete(completedId, now, nextVersion(versions, completedId));
+                        break;
+                    case REASSIGN:
+                        Mutation.Reassign reassign = (Mutation.Reassign) mutation;
+                        batch.reassign(reassign.getId(), usernames.get(reassign.getToUsername()),
+                                nextVersion(versions, reassign.getId()));
+                        break;
+                }
+            }
+
+            // Log the whole batch before any of it becomes visible
+            logPosition = taskLog.appendBatch(batch);
+            syncLogBeforeStore(logPosition);
+
+            results.clear();
+            Task[] previous = new Task[mutations.size()];
+            // Readers of the store see the whole batch at once
+            tasks.applyAtomically(() -> {
+                for (int i = 0; i < mutations.size(); i++) {
+                    Mutation mutation = mutations.get(i);
+                    Task task;
+                    switch (mutation.getType()) {
+                        case ADD:
+                            task = added[i];
+                            tasks.add(task);
+                            aggregates.added(task);
+                            searchIndex.add(task);
+                            break;
+                        case REMOVE:
+                            task = tasks.remove(((Mutation.Remove) mutation).getId());
+                            aggregates.removed(task);
+                            searchIndex.remove(task);
+                            break;
+                        case COMPLETE:
+                            int completedId = ((Mutation.Complete) mutation).getId();
+                            previous[i] = tasks.get(completedId);
+                            task = tasks.markCompleted(completedId, now);
+                            aggregates.replaced(previous[i], task);
+                            break;
+                        default:
+                            Mutation.Reassign reassign = (Mutation.Reassign) mutation;
+                            previous[i] = tasks.get(reassign.getId());
+                            task = tasks.reassign(reassign.getId(), usernames.get(reassign.getToUsername()));
+                            aggregates.replaced(previous[i], task);
+                            break;
+                    }
+                    results.add(ConsoleUtils.Result.success(task));
+                }
+            });
+
+            // Published once the batch is visible, so a subscriber can read what it is told of
+            for (int i = 0; i < mutations.size(); i++) {
+                feed.publish(eventType(mutations.get(i).getType()), results.get(i).getValue(), previous[i]);
+            }
+        } catch (IOException e) {
+            System.err.println("Error applying batch: " + e.getMessage());
+            results.clear();
+            for (int i = 0; i < mutations.size(); i++) {
+                results.add(ConsoleUtils.Result.error("Batch not applied: " + e.getMessage()));
+            }
+            return REJECTED;
+        } finally {
+            compactionLock.writeLock().unlock();
+            metrics.exclusiveLockHold().recordSince(acquired);
+        }
+
+        return logPosition;
+    }
+
+    // The version a change leaves the task at, counting earlier changes of the batch
+    private int nextVersion(IntIntMap versions, int id) {
+        int current = versions.get(id);
+        int next = (current != 0 ? current : tasks.get(id).getVersion()) + 1;
+        versions.put(id, next);
+        return next;
+    }
+
+    private static TaskEvent.Type eventType(Mutation.Type type) {
+        switch (type) {
+            case ADD:
+                return TaskEvent.Type.ADDED;
+            case REMOVE:
+                return TaskEvent.Type.REMOVED;
+            case COMPLETE:
+                return TaskEvent.Type.COMPLETED;
+            default:
+                return TaskEvent.Type.REASSIGNED;
+        }
+    }
+
+    /**
+     * Checks each mutation against the store as the earlier mutations of the
+     * batch would leave it. Fills in one result per mutation and returns the
+     * first error, or null if the whole batch is valid.
+     */
+    private String validateBatch(List<? extends Mutation> mutations, List<ConsoleUtils.Result<Task>> results) {
+        // Owner and status of tasks touched earlier in the batch; a null value means removed
+        IntObjectMap<Task> staged = new IntObjectMap<>(mutations.size());
+        String firstError = null;
+
+        for (int i = 0; i < mutations.size(); i++) {
+            Mutation mutation = mutations.get(i);
+            String error = null;
+
+            if (mutation.getType() == Mutation.Type.ADD) {
+                Mutation.Add add = (Mutation.Add) mutation;
+                if (add.getDescription() == null || add.getDescription().trim().isEmpty()) {
+                    error = "Description cannot be empty";
+                } else if (add.getAssignedUser() == null || add.getAssignedUser().trim().isEmpty()) {
+                    error = "Username cannot be null or empty";
+                }
+            } else {
+                int id = idOf(mutation);
+                Task task = staged.containsKey(id) ? staged.get(id) : tasks.get(id);
+
+                if (task == null) {
+                    error = "Task #" + id + " not found";
+                } else if (mutation.getType() == Mutation.Type.REMOVE) {
+                    staged.put(id, null);
+                } else if (mutation.getType() == Mutation.Type.COMPLETE) {
+                    Mutation.Complete complete = (Mutation.Complete) mutation;
+                    if (!task.getAssignedUser().equalsIgnoreCase(complete.getUsername())) {
+                        error = "Task #" + id + " is not assigned to " + complete.getUsername();
+                    } else if (task.getStatus() == Task.TaskStatus.COMPLETED) {
+                        error = "Task #" + id + " is already completed";
+                    } else {
+                        staged.put(id, task.completed());
+                    }
+                } else {
+                    Mutation.Reassign reassign = (Mutation.Reassign) mutation;
+                    if (reassign.getToUsername() == null || reassign.getToUsername().trim().isEmpty()) {
+                        error = "Username cannot be null or empty";
+                    } else if (reassign.getFromUsername() != null
+                            && !task.getAssignedUser().equalsIgnoreCase(reassign.getFromUsername())) {
+                        error = "Task #" + id + " is not assigned to " + reassign.getFromUsername();
+                    } else {
+                        staged.put(id, task.withAssignedUser(reassign.getToUsername()));
+                    }
+                }
+            }
+
+            if (error != null) {
+                results.add(ConsoleUtils.Result.error(error));
+                if (firstError == null) {
+                    firstError = "Mutation " + (i + 1) + " (" + mutation + "): " + error;
+                }
+            } else {
+                results.add(ConsoleUtils.Result.success(null));
+            }
+        }
+        return firstError;
+    }
+
+    private static int idOf(Mutation mutation) {
+        switch (mutation.getType()) {
+            case REMOVE:
+                return ((Mutation.Remove) mutation).getId();
+            case COMPLETE:
+                return ((Mutation.Complete) mutation).getId();
+            case REASSIGN:
+                return ((Mutation.Reassign) mutation).getId();
+            default:
+                throw new IllegalArgumentException("Mutation has no task id: " + mutation);
+        }
+    }
+
+    // Valid mutations of a rejected batch report why they were not applied
+    private static void rejectBatch(List<ConsoleUtils.Result<Task>> results, String error) {
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).isSuccess()) {
+                results.set(i, ConsoleUtils.Result.error("Batch rejected: " + error));
+            }
+        }
+    }
+
+    // Creates every user the batch assigns tasks to and maps each requested
+    // name to the registered username
+    private Map<String, String> resolveBatchUsers(List<? extends Mutation> mutations) {
+        Map<String, String> usernames = new HashMap<>();
+
+        for (Mutation mutation : mutations) {
+            String username;
+            if (mutation.getType() == Mutation.Type.ADD) {
+                username = ((Mutation.Add) mutation).getAssignedUser();
+            } else if (mutation.getType() == Mutation.Type.REASSIGN) {
+                username = ((Mutation.Reassign) mutation).getToUsername();
+            } else {
+                continue;
+            }
+
+            if (!usernames.containsKey(username)) {
+                usernames.put(username, users.getOrCreate(username).getUsername());
+            }
+        }
+        return usernames;
+    }
+
+    public List<Task> getUserTasks(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long start = System.nanoTime();
+        List<Task> result = tasks.findByUser(username);
+        metrics.operation(TaskMetrics.Operation.GET_USER_TASKS).recordSince(start);
+        return result;
+    }
+
+    public List<Task> filterTasksByCategory(String category) {
+        if (category == null || category.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long start = System.nanoTime();
+        List<Task> result = tasks.findByCategory(category);
+        metrics.operation(TaskMetrics.Operation.FILTER_TASKS_BY_CATEGORY).recordSince(start);
+        return result;
+    }
+
+    public Set<String> getAllCategoriesFromTasks() {
+        long start = System.nanoTime();
+        Set<String> result = new HashSet<>(aggregates.categories().keySet());
+        metrics.operation(TaskMetrics.Operation.GET_ALL_CATEGORIES).recordSince(start);
+        return result;
+    }
+
+    /**
+     * Returns up to limit tasks whose descriptions contain any of the words
+     * in the query, best match first. Matching ignores case and punctuation,
+     * and a word ending in '*' matches any word starting with the rest.
+     */
+    public List<Task> searchTasks(String query, int limit) {
+        if (query == null || query.trim().isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        long start = System.nanoTime();
+        List<Task> result = new ArrayList<>();
+        for (int id : searchIndex.search(query, limit)) {
+            Task task = tasks.get(id);
+            if (task != null) { // Removed since the search
+                result.add(task);
+            }
+        }
+        metrics.operation(TaskMetrics.Operation.SEARCH_TASKS).recordSince(start);
+        return result;
+    }
+
+    /**
+     * Publishes every change to a task matching the filter before or after
+     * the change, starting with the first change after afterSequence. Pass
+     * the sequence of the last event received to resume without missing or
+     * repeating a change; the last 65,536 changes are kept for this.
+     *
+     * Events come in the order the changes became visible to queries, which
+     * is before a blocking mutation returns but may be before it is synced.
+     * A subscriber more than 1024 events behind its requests, or resuming
+     * from a sequence that is no longer kept, receives an
+     * IllegalStateException through onError.
+     */
+    public Flow.Publisher<TaskEvent> changes(TaskFilter filter, long afterSequence) {
+        return feed.publisher(filter == null ? TaskFilter.all() : filter, afterSequence, TaskFeed.DEFAULT_BUFFER);
+    }
+
+    /**
+     * Publishes the changes to tasks matching the filter from now on.
+     */
+    public Flow.Publisher<TaskEvent> changes(TaskFilter filter) {
+        return changes(filter, getChangeSequence());
+    }
+
+    /**
+     * Sequence number of the last change published. Read it before running
+     * a query and subscribe after it to keep the result current; a change
+     * the query already saw may be delivered again, which is harmless since
+     * each event carries the resulting task.
+     */
+    public long getChangeSequence() {
+        return feed.sequence();
+    }
+
+    /**
+     * Returns the pending and completed counts of the user's tasks. The
+     * counts are maintained as tasks change, so this does not read any task.
+     */
+    public TaskSummary getUserSummary(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            return new TaskSummary(username, 0, 0);
+        }
+
+        long start = System.nanoTime();
+        TaskSummary result = aggregates.user(username);
+        metrics.operation(TaskMetrics.Operation.GET_USER_SUMMARY).recordSince(start);
+        return result;
+    }
+
+    public TaskSummary getCategorySummary(String category) {
+        if (category == null || category.trim().isEmpty()) {
+            return new TaskSummary(category, 0, 0);
+        }
+
+        long start = System.nanoTime();
+        TaskSummary result = aggregates.category(category);
+        metrics.operation(TaskMetrics.Operation.GET_CATEGORY_SUMMARY).recordSince(start);
+        return result;
+    }
+
+    // Every category that has tasks, keyed by its spelling and sorted case-insensitively
+    public Map<String, TaskSummary> getCategorySummaries() {
+        long start = System.nanoTime();
+        Map<String, TaskSummary> result = aggregates.categories();
+        metrics.operation(TaskMetrics.Operation.GET_CATEGORY_SUMMARIES).recordSince(start);
+        return result;
+    }
+
+    public List<Task> getTasksByStatus(Task.TaskStatus status) {
+        long start = System.nanoTime();
+        List<Task> result = tasks.findByStatus(status);
+        metrics.operation(TaskMetrics.Operation.GET_TASKS_BY_STATUS).recordSince(start);
+        return result;
+    }
+
+    /**
+     * Returns up to limit tasks matching the filter, in the order of the
+     * cursor. Start with TaskPage.Cursor.first(order) and pass each page's
+     * next cursor to get the page after it.
+     */
+    public TaskPage getTasksPage(TaskFilter filter, TaskPage.Cursor cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive");
+        }
+
+        long start = System.nanoTime();
+        TaskPage page = cursor.getOrder() == TaskPage.Order.ID
+                ? pageById(filter, cursor.getAfterId(), limit)
+                : pageByCreatedDate(filter, cursor, limit);
+        metrics.operation(TaskMetrics.Operation.GET_TASKS_PAGE).recordSince(start);
+        return page;
+    }
+
+    // Up to limit tasks with ids greater than afterId, in id order
+    public TaskPage getTasksPage(TaskFilter filter, int afterId, int limit) {
+        return getTasksPage(filter, TaskPage.Cursor.afterId(afterId), limit);
+    }
+
+    /**
+     * Streams the tasks matching the filter in id order, without ever
+     * blocking writers. The heap store streams from the snapshot current
+     * when the stream was created. The mapped store reads a chunk at a time
+     * as the stream is consumed and may reflect mutations made in between,
+     * but never returns a task twice.
+     */
+    public Stream<Task> streamTasks(TaskFilter filter) {
+        return streamTasks(filter, 0);
+    }
+
+    public Stream<Task> streamTasks(TaskFilter filter, int afterId) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterateTasks(filter, afterId),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    public Iterator<Task> iterateTasks(TaskFilter filter, int afterId) {
+        return tasks.iterate(filter, afterId);
+    }
+
+    /**
+     * Starts a query bound to this manager, to be narrowed and then run with
+     * count(), list(), page() or stream():
+     *
+     *     manager.query().user("Bob").status(Task.TaskStatus.PENDING).count()
+     */
+    public TaskQuery query() {
+        return TaskQuery.all(this);
+    }
+
+    /**
+     * Counts the tasks matching the query from the id sets alone; no task
+     * is read unless the query has creation time conditions.
+     */
+    public int countTasks(TaskQuery query) {
+        long start = System.nanoTime();
+        int count = tasks.count(query);
+        metrics.operation(TaskMetrics.Operation.COUNT_TASKS).recordSince(start);
+        return count;
+    }
+
+    public List<Task> findTasks(TaskQuery query) {
+        long start = System.nanoTime();
+        List<Task> result = tasks.select(query, 0, Integer.MAX_VALUE);
+        metrics.operation(TaskMetrics.Operation.FIND_TASKS).recordSince(start);
+        return result;
+    }
+
+    // Up to limit matching tasks with ids greater than afterId, in id order
+    public TaskPage findTasksPage(TaskQuery query, int afterId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive");
+        }
+
+        long start = System.nanoTime();
+        List<Task> found = tasks.select(query, afterId, Math.min(limit, Integer.MAX_VALUE - 1) + 1);
+        metrics.operation(TaskMetrics.Operation.FIND_TASKS).recordSince(start);
+        return toPage(found, limit, TaskPage.Order.ID);
+    }
+
+    // Streams the matching tasks in id order, with the semantics of streamTasks(TaskFilter)
+    public Stream<Task> streamTasks(TaskQuery query) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(tasks.iterate(query, 0),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    private TaskPage pageById(TaskFilter filter, int afterId, int limit) {
+        // One task past the limit tells whether there is another page
+        List<Task> found = tasks.page(filter, afterId, Math.min(limit, Integer.MAX_VALUE - 1) + 1);
+        return toPage(found, limit, TaskPage.Order.ID);
+    }
+
+    // There is no index in creation order, so this walks every match and
+    // keeps the earliest limit + 1 after the cursor in a bounded heap: time
+    // grows with the number of matches, memory only with the page size
+    private TaskPage pageByCreatedDate(TaskFilter filter, TaskPage.Cursor cursor, int limit) {
+        int keep = Math.min(limit, Integer.MAX_VALUE - 1) + 1;
+        PriorityQueue<Task> earliest = new PriorityQueue<>(BY_CREATED_DATE.reversed());
+        Iterator<Task> matches = iterateTasks(filter, 0);
+        while (matches.hasNext()) {
+            Task task = matches.next();
+            if (cursor.precedes(task)) {
+                earliest.add(task);
+                if (earliest.size() > keep) {
+                    earliest.poll(); // Drop the latest
+                }
+            }
+        }
+
+        List<Task> found = new ArrayList<>(earliest);
+        found.sort(BY_CREATED_DATE);
+        return toPage(found, limit, TaskPage.Order.CREATED_DATE);
+    }
+
+    private static TaskPage toPage(List<Task> found, int limit, TaskPage.Order order) {
+        if (found.size() <= limit) {
+            return new TaskPage(found, null);
+        }
+        List<Task> page = new ArrayList<>(found.subList(0, limit));
+        return new TaskPage(page, TaskPage.Cursor.after(order, page.get(limit - 1)));
+    }
+
+    private boolean saveTasks() {
+        long start = System.nanoTime();
+        try {
+            long bytes = tasks.checkpoint() + users.checkpoint();
+            metrics.checkpoint().record(System.nanoTime() - start, bytes);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving tasks: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private TaskStore openStore(Path directory, TaskStore.Backend backend) throws IOException {
+        if (backend == TaskStore.Backend.HEAP) {
+            return TaskIndex.load(tasksFile);
+        }
+
+        // A directory switching to the mapped backend brings its heap snapshot along once
+        boolean created = !Files.exists(directory.resolve(MappedTaskStore.RECORDS_FILE));
+        MappedTaskStore store = MappedTaskStore.open(directory);
+        if (created && SegmentedSnapshot.exists(tasksFile)) {
+            for (Task task : TaskIndex.load(tasksFile).all()) {
+                store.add(task);
+            }
+            store.checkpoint();
+        }
+        return store;
+    }
+
+    /**
+     * Replays the write-ahead log on top of the last checkpoint. Replay is
+     * idempotent, so records already folded into the checkpoint by an
+     * interrupted compaction, or already written in place by the mapped
+     * store, are harmless: a completion or reassignment is skipped when the
+     * task is already at the version it logged. A record that cannot be
+     * applied fails the replay.
+     */
+    private void replayLog() throws IOException {
+        taskLog.replay(new TaskLog.Handler() {
+            @Override
+            public void onAdd(int id, String description, String category, String assignedUser,
+                              LocalDateTime createdDate) {
+                tasks.add(new Task(id, description, category, assignedUser, createdDate));
+            }
+
+            @Override
+            public void onRemove(int id) {
+                tasks.remove(id);
+            }
+
+            @Override
+            public void onComplete(int id, LocalDateTime completedDate, int version) {
+                if (!alreadyApplied(id, version)) {
+                    tasks.markCompleted(id, completedDate);
+                }
+            }
+
+            @Override
+            public void onReassign(int id, String assignedUser, int version) {
+                if (!alreadyApplied(id, version)) {
+                    tasks.reassign(id, assignedUser);
+                }
+            }
+
+            // Records from before versions were logged carry none and are always applied
+            private boolean alreadyApplied(int id, int version) {
+                Task task = tasks.get(id);
+                return task != null && version != ANY_VERSION && task.getVersion() >= version;
+            }
+
+            @Override
+            public void onCreateUser(String username) {
+                users.restore(username);
+            }
+
+            @Override
+            public void onRestore(Task task) {
+                tasks.remove(task.getId());
+                tasks.add(task);
+            }
+        });
+    }
+
+    // A store that writes its files in place must not get ahead of the log:
+    // a crash could leave a change on disk that the log never received
+    private void syncLogBeforeStore(long logPosition) throws IOException {
+        if (tasks.writesInPlace()) {
+            taskLog.sync(logPosition);
+        }
+    }
+
+    private Lock lockFor(int id) {
+        return taskLocks[id & (LOCK_STRIPES - 1)];
+    }
+
+    // Takes the shared side of the compaction lock, then the task's stripe if
+    // there is one, and returns the time the locks were acquired
+    private long lockShared(Lock taskLock) {
+        long start = System.nanoTime();
+        compactionLock.readLock().lock();
+        if (taskLock != null) {
+            taskLock.lock();
+        }
+        long acquired = System.nanoTime();
+        metrics.sharedLockWait().record(acquired - start);
+        return acquired;
+    }
+
+    private void unlockShared(Lock taskLock, long acquired) {
+        if (taskLock != null) {
+            taskLock.unlock();
+        }
+        compactionLock.readLock().unlock();
+        metrics.sharedLockHold().recordSince(acquired);
+    }
+
+    // Runs after the mutation's locks are released, so concurrent writers can
+    // share one fsync and a compaction can take the exclusive lock
+    private boolean afterMutation(long logPosition) {
+        if (logPosition == REJECTED) {
+            return false;
+        }
+
+        try {
+            taskLog.awaitDurable(logPosition);
+        } catch (IOException e) {
+            System.err.println("Error syncing task log: " + e.getMessage());
+        }
+
+        compactIfNeeded();
+        return true;
+    }
+
+    // Fire-and-forget callers drop the future; it fails if the log cannot be written
+    private CompletableFuture<Boolean> afterMutationAsync(long logPosition) {
+        if (logPosition == REJECTED) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        compactIfNeeded();
+        return taskLog.whenDurable(logPosition).thenApply(durable -> true);
+    }
+
+    // Both stores checkpoint only what changed since the last checkpoint, so
+    // a fixed threshold keeps snapshot cost per mutation independent of the
+    // store size and bounds the log replayed at startup
+    private boolean compactionDue() {
+        return taskLog.getRecordCount() >= SNAPSHOT_THRESHOLD;
+    }
+
+    private void compactIfNeeded() {
+        if (!compactionDue() || !compactionLock.writeLock().tryLock()) {
+            return; // Below threshold, or another thread is already compacting
+        }
+
+        long acquired = System.nanoTime();
+        try {
+            if (compactionDue() && saveTasks()) {
+                taskLog.reset();
+            }
+        } catch (IOException e) {
+            System.err.println("Error truncating task log: " + e.getMessage());
+        } finally {
+            compactionLock.writeLock().unlock();
+            metrics.exclusiveLockHold().recordSince(acquired);
+        }
+    }
+
+    public List<Task> getAllTasks() {
+        long start = System.nanoTime();
+        List<Task> result = tasks.all();
+        metrics.operation(TaskMetrics.Operation.GET_ALL_TASKS).recordSince(start);
+        return result;
+    }
+
+    public List<Task> getIncompleteTasks() {
+        return tasks.findByStatus(Task.TaskStatus.PENDING);
+    }
+
+    public Optional<Task> getTaskById(int id) {
+        long start = System.nanoTime();
+        Task task = tasks.get(id);
+        metrics.operation(TaskMetrics.Operation.GET_TASK_BY_ID).recordSince(start);
+        return Optional.ofNullable(task);
+    }
+
+    public List<Task> getIncompleteTasksByUser(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long start = System.nanoTime();
+        List<Task> result = tasks.findByUserAndStatus(username, Task.TaskStatus.PENDING);
+        metrics.operation(TaskMetrics.Operation.GET_INCOMPLETE_TASKS_BY_USER).recordSince(start);
+        return result;
+    }
+
+    @Override
+    public void close() {
+        metrics.unregister();
+        feed.close();
+        try {
+            taskLog.close();
+            tasks.close();
+        } catch (IOException e) {
+            System.err.println("Error closing task store: " + e.getMessage());
+        }
+    }
+}
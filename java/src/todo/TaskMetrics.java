@@ -0,0 +1,290 @@
+package todo;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for a TaskManager: one timer per public
+ * operation, wait and hold times of its locks, log writes and syncs,
+ * checkpoints, and gauges for the store sizes.
+ *
+ * Recording is a LongAdder increment plus a histogram increment and never
+ * allocates, so metrics stay on in production. They can be read through
+ * JMX (one MXBean per timer and one for the sizes, under the "todo" domain)
+ * or as text from dump().
+ */
+public class TaskMetrics {
+    public enum Operation {
+        GET_OR_CREATE_USER("getOrCreateUser"),
+        ADD_TASK("addTask"),
+        REMOVE_TASK("removeTask"),
+        MARK_TASK_COMPLETED("markTaskCompleted"),
+        REASSIGN_TASK("reassignTask"),
+        COMPLETE_IF_VERSION("completeIfVersion"),
+        REASSIGN_IF_VERSION("reassignIfVersion"),
+        IMPORT_TASK("importTask"),
+        APPLY_BATCH("applyBatch"),
+        GET_USER_TASKS("getUserTasks"),
+        FILTER_TASKS_BY_CATEGORY("filterTasksByCategory"),
+        GET_ALL_CATEGORIES("getAllCategoriesFromTasks"),
+        GET_TASKS_BY_STATUS("getTasksByStatus"),
+        GET_INCOMPLETE_TASKS_BY_USER("getIncompleteTasksByUser"),
+        GET_ALL_TASKS("getAllTasks"),
+        GET_TASK_BY_ID("getTaskById"),
+        GET_TASKS_PAGE("getTasksPage"),
+        COUNT_TASKS("countTasks"),
+        FIND_TASKS("findTasks"),
+        GET_USER_SUMMARY("getUserSummary"),
+        GET_CATEGORY_SUMMARY("getCategorySummary"),
+        GET_CATEGORY_SUMMARIES("getCategorySummaries"),
+        SEARCH_TASKS("searchTasks");
+
+        private final String method;
+
+        Operation(String method) {
+            this.method = method;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+    }
+
+    public interface TimerMXBean {
+        long getCount();
+
+        long getBytes();
+
+        double getMeanMicros();
+
+        double getP50Micros();
+
+        double getP99Micros();
+
+        double getP999Micros();
+
+        double getMaxMicros();
+    }
+
+    public interface SizesMXBean {
+        int getTaskCount();
+
+        int getUserCount();
+
+        int getLogRecordCount();
+    }
+
+    /**
+     * Number of events, total bytes they moved (if any) and a histogram of
+     * their durations in nanoseconds.
+     */
+    public static class Timer implements TimerMXBean {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Timer(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void record(long nanos) {
+            count.increment();
+            latency.record(nanos);
+        }
+
+        public void record(long nanos, long byteCount) {
+            record(nanos);
+            bytes.add(byteCount);
+        }
+
+        // Records the time elapsed since a System.nanoTime() reading
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            return latency.mean() / 1e3;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return latency.percentile(50) / 1e3;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return latency.percentile(99) / 1e3;
+        }
+
+        @Override
+        public double getP999Micros() {
+            return latency.percentile(99.9) / 1e3;
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return latency.max() / 1e3;
+        }
+    }
+
+    private final Timer[] operations = new Timer[Operation.values().length];
+    private final Timer sharedLockWait = new Timer("lock.shared.wait");
+    private final Timer sharedLockHold = new Timer("lock.shared.hold");
+    private final Timer exclusiveLockWait = new Timer("lock.exclusive.wait");
+    private final Timer exclusiveLockHold = new Timer("lock.exclusive.hold");
+    private final Timer logWrite = new Timer("persist.log.write");
+    private final Timer logSync = new Timer("persist.log.sync");
+    private final Timer checkpoint = new Timer("persist.checkpoint");
+    private final List<ObjectName> registered = new ArrayList<>();
+    private volatile IntSupplier taskCount = () -> 0;
+    private volatile IntSupplier userCount = () -> 0;
+    private volatile IntSupplier logRecordCount = () -> 0;
+
+    public TaskMetrics() {
+        for (Operation operation : Operation.values()) {
+            operations[operation.ordinal()] = new Timer(operation.getMethod());
+        }
+    }
+
+    public Timer operation(Operation operation) {
+        return operations[operation.ordinal()];
+    }
+
+    // Mutations of single tasks: the shared side of the compaction lock plus a task stripe
+    public Timer sharedLockWait() {
+        return sharedLockWait;
+    }
+
+    public Timer sharedLockHold() {
+        return sharedLockHold;
+    }
+
+    // Batches and compaction: the exclusive side of the compaction lock
+    public Timer exclusiveLockWait() {
+        return exclusiveLockWait;
+    }
+
+    public Timer exclusiveLockHold() {
+        return exclusiveLockHold;
+    }
+
+    public Timer logWrite() {
+        return logWrite;
+    }
+
+    public Timer logSync() {
+        return logSync;
+    }
+
+    public Timer checkpoint() {
+        return checkpoint;
+    }
+
+    void bindSizes(IntSupplier taskCount, IntSupplier userCount, IntSupplier logRecordCount) {
+        this.taskCount = taskCount;
+        this.userCount = userCount;
+        this.logRecordCount = logRecordCount;
+    }
+
+    /**
+     * Registers every timer and the size gauges with the platform MBean
+     * server, as todo:type=TaskManager,store=&lt;store&gt;,name=&lt;timer&gt;.
+     * Failures are reported and otherwise ignored.
+     */
+    public synchronized void register(String store) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String prefix = "todo:type=TaskManager,store=" + ObjectName.quote(store) + ",name=";
+        try {
+            for (Timer timer : timers()) {
+                ObjectName name = new ObjectName(prefix + ObjectName.quote(timer.getName()));
+                server.registerMBean(timer, name);
+                registered.add(name);
+            }
+            ObjectName sizes = new ObjectName(prefix + "sizes");
+            server.registerMBean(new Sizes(), sizes);
+            registered.add(sizes);
+        } catch (JMException e) {
+            System.err.println("Error registering metrics: " + e.getMessage());
+        }
+    }
+
+    public synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                System.err.println("Error unregistering metrics: " + e.getMessage());
+            }
+        }
+        registered.clear();
+    }
+
+    /**
+     * Renders every timer with at least one event, then the store sizes.
+     */
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%-28s %10s %12s %10s %10s %10s %10s %10s%n",
+                "name", "count", "bytes", "mean us", "p50 us", "p99 us", "p99.9 us", "max us"));
+        for (Timer timer : timers()) {
+            long count = timer.getCount();
+            if (count == 0) {
+                continue;
+            }
+            out.append(String.format(Locale.ROOT, "%-28s %10d %12d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    timer.getName(), count, timer.getBytes(), timer.getMeanMicros(), timer.getP50Micros(),
+                    timer.getP99Micros(), timer.getP999Micros(), timer.getMaxMicros()));
+        }
+        out.append(String.format(Locale.ROOT, "tasks=%d users=%d logRecords=%d%n",
+                taskCount.getAsInt(), userCount.getAsInt(), logRecordCount.getAsInt()));
+        return out.toString();
+    }
+
+    private List<Timer> timers() {
+        List<Timer> timers = new ArrayList<>(List.of(operations));
+        timers.addAll(List.of(sharedLockWait, sharedLockHold, exclusiveLockWait, exclusiveLockHold,
+                logWrite, logSync, checkpoint));
+        return timers;
+    }
+
+    private class Sizes implements SizesMXBean {
+        @Override
+        public int getTaskCount() {
+            return taskCount.getAsInt();
+        }
+
+        @Override
+        public int getUserCount() {
+            return userCount.getAsInt();
+        }
+
+        @Override
+        public int getLogRecordCount() {
+            return logRecordCount.getAsInt();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package todo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One page of a query result, plus the cursor that continues after it.
+ *
+ * Cursors are positions in the sort order rather than offsets, so a page
+ * never repeats or skips a task because earlier tasks were added or removed
+ * between requests.
+ */
+public final class TaskPage {
+    public enum Order {
+        ID,           // ascending task id
+        CREATED_DATE  // ascending creation time, ties broken by id
+    }
+
+    /**
+     * Position in a sort order: the page starts with the first task after it.
+     */
+    public static final class Cursor {
+        private final Order order;
+        private final int afterId;
+        private final long afterCreated; // Epoch millis; Long.MIN_VALUE in ID order and at the start
+
+        private Cursor(Order order, int afterId, long afterCreated) {
+            this.order = order;
+            this.afterId = afterId;
+            this.afterCreated = afterCreated;
+        }
+
+        public static Cursor first(Order order) {
+            return new Cursor(Objects.requireNonNull(order, "Order cannot be null"), 0, Long.MIN_VALUE);
+        }
+
+        public static Cursor afterId(int id) {
+            return new Cursor(Order.ID, id, Long.MIN_VALUE);
+        }
+
+        // A cursor rebuilt from its fields, as sent over the network
+        static Cursor of(Order order, int afterId, long afterCreated) {
+            return new Cursor(Objects.requireNonNull(order, "Order cannot be null"), afterId, afterCreated);
+        }
+
+        // The cursor that continues after the given task
+        static Cursor after(Order order, Task task) {
+            return new Cursor(order, task.getId(), order == Order.CREATED_DATE ? task.getCreatedMillis() : Long.MIN_VALUE);
+        }
+
+        public Order getOrder() {
+            return order;
+        }
+
+        public int getAfterId() {
+            return afterId;
+        }
+
+        long getAfterCreated() {
+            return afterCreated;
+        }
+
+        // Whether the task sorts after this position
+        boolean precedes(Task task) {
+            if (order == Order.ID) {
+                return task.getId() > afterId;
+            }
+            if (afterCreated == Long.MIN_VALUE) {
+                return true; // Start of the order
+            }
+            int byCreated = Long.compare(task.getCreatedMillis(), afterCreated);
+            return byCreated > 0 || byCreated == 0 && task.getId() > afterId;
+        }
+    }
+
+    private final List<Task> tasks;
+    private final Cursor next;
+
+    TaskPage(List<Task> tasks, Cursor next) {
+        this.tasks = Collections.unmodifiableList(tasks);
+        this.next = next;
+    }
+
+    public List<Task> getTasks() {
+        return tasks;
+    }
+
+    public boolean hasMore() {
+        return next != null;
+    }
+
+    /**
+     * Returns the cursor for the following page, or null on the last page.
+     */
+    public Cursor getNextCursor() {
+        return next;
+    }
+}
@@ -0,0 +1,324 @@
+package todo;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Binary request/response protocol between TaskClient and TaskServer.
+ *
+ * Every message is a frame: an int length counting the bytes after it, an
+ * int request id, one byte holding the opcode (requests) or the status
+ * (responses), then the payload. Integers are big-endian, strings are an
+ * int byte count followed by UTF-8 (-1 for null) and tasks carry their
+ * epoch millis and version like the stores do. The response to a request
+ * repeats its id, which lets a client pipeline requests and match the
+ * responses in whatever order they come back.
+ *
+ * A SUBSCRIBE request is answered with a stream of EVENT frames carrying
+ * its id, ended by a COMPLETE or ERROR frame. The server sends only as many
+ * events as the client has asked for with REQUEST_EVENTS frames; those and
+ * CANCEL_SUBSCRIPTION get no response.
+ */
+final class TaskProtocol {
+    static final int HEADER_SIZE = 9;      // length, request id, opcode/status
+    static final int MAX_FRAME = 64 << 20; // Largest payload either side accepts
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;       // Payload is the error message
+    static final byte STATUS_EVENT = 2;       // One event of a subscription
+    static final byte STATUS_COMPLETE = 3;    // End of a subscription
+    static final byte STATUS_UNSUPPORTED = 4; // The service does not offer the operation; payload as ERROR
+
+    /**
+     * One opcode per TaskService operation; the code is the ordinal.
+     */
+    enum Opcode {
+        GET_OR_CREATE_USER, ADD_TASK, REMOVE_TASK, MARK_TASK_COMPLETED, REASSIGN_TASK, GET_TASK_BY_ID,
+        GET_USER_TASKS, GET_INCOMPLETE_TASKS_BY_USER, FILTER_TASKS_BY_CATEGORY, GET_ALL_CATEGORIES,
+        GET_TASKS_PAGE, GET_USER_SUMMARY, SEARCH_TASKS, GET_CHANGE_SEQUENCE, SUBSCRIBE, REQUEST_EVENTS,
+        CANCEL_SUBSCRIPTION, IMPORT_TASK, GET_HIGHEST_TASK_ID, RESERVE_TASK_IDS, GET_ASSIGNEES,
+        GET_STALENESS, COMPLETE_IF_VERSION, REASSIGN_IF_VERSION, GET_USER_CHANGE_SEQUENCE;
+
+        private static final Opcode[] VALUES = values();
+
+        static Opcode of(byte code) throws IOException {
+            if (code < 0 || code >= VALUES.length) {
+                throw new IOException("Unknown opcode " + code);
+            }
+            return VALUES[code];
+        }
+    }
+
+    private static final Task.TaskStatus[] STATUSES = Task.TaskStatus.values();
+    private static final TaskPage.Order[] ORDERS = TaskPage.Order.values();
+    private static final TaskEvent.Type[] EVENT_TYPES = TaskEvent.Type.values();
+
+    private TaskProtocol() {
+    }
+
+    // Decodes an enum sent as its ordinal, rejecting a code out of range
+    private static <E extends Enum<E>> E of(E[] values, byte code) throws IOException {
+        if (code < 0 || code >= values.length) {
+            throw new IOException("Unknown " + values[0].getDeclaringClass().getSimpleName() + " code " + code);
+        }
+        return values[code];
+    }
+
+    /**
+     * Builds one frame; the header is filled in by toBuffer().
+     */
+    static final class FrameWriter {
+        private ByteBuffer out = ByteBuffer.allocate(256);
+
+        FrameWriter(int requestId, byte code) {
+            out.putInt(0).putInt(requestId).put(code);
+        }
+
+        FrameWriter writeInt(int value) {
+            ensure(Integer.BYTES).putInt(value);
+            return this;
+        }
+
+        FrameWriter writeLong(long value) {
+            ensure(Long.BYTES).putLong(value);
+            return this;
+        }
+
+        FrameWriter writeBoolean(boolean value) {
+            ensure(1).put((byte) (value ? 1 : 0));
+            return this;
+        }
+
+        FrameWriter writeString(String value) {
+            if (value == null) {
+                return writeInt(-1);
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            ensure(Integer.BYTES + utf8.length).putInt(utf8.length).put(utf8);
+            return this;
+        }
+
+        FrameWriter writeTask(Task task) {
+            writeInt(task.getId());
+            writeString(task.getDescription());
+            writeString(task.getCategory());
+            writeString(task.getAssignedUser());
+            ensure(2 * Long.BYTES).putLong(task.getCreatedMillis()).putLong(task.getCompletedMillis());
+            writeInt(task.getVersion());
+            return this;
+        }
+
+        FrameWriter writeTasks(Collection<Task> tasks) {
+            writeInt(tasks.size());
+            for (Task task : tasks) {
+                writeTask(task);
+            }
+            return this;
+        }
+
+        FrameWriter writeOptionalTask(Optional<Task> task) {
+            writeBoolean(task.isPresent());
+            if (task.isPresent()) {
+                writeTask(task.get());
+            }
+            return this;
+        }
+
+        FrameWriter writeStrings(Collection<String> values) {
+            writeInt(values.size());
+            for (String value : values) {
+                writeString(value);
+            }
+            return this;
+        }
+
+        FrameWriter writeFilter(TaskFilter filter) {
+            writeString(filter.getUsername());
+            writeString(filter.getCategory());
+            ensure(1).put((byte) (filter.getStatus() == null ? -1 : filter.getStatus().ordinal()));
+            return this;
+        }
+
+        FrameWriter writeCursor(TaskPage.Cursor cursor) {
+            ensure(1 + Integer.BYTES + Long.BYTES)
+                    .put((byte) cursor.getOrder().ordinal())
+                    .putInt(cursor.getAfterId())
+                    .putLong(cursor.getAfterCreated());
+            return this;
+        }
+
+        FrameWriter writePage(TaskPage page) {
+            writeTasks(page.getTasks());
+            writeBoolean(page.hasMore());
+            if (page.hasMore()) {
+                writeCursor(page.getNextCursor());
+            }
+            return this;
+        }
+
+        FrameWriter writeEvent(TaskEvent event) {
+            ensure(Long.BYTES + 1).putLong(event.getSequence()).put((byte) event.getType().ordinal());
+            writeTask(event.getTask());
+            writeBoolean(event.getPrevious() != null);
+            if (event.getPrevious() != null) {
+                writeTask(event.getPrevious());
+            }
+            return this;
+        }
+
+        FrameWriter writeSummary(TaskSummary summary) {
+            writeString(summary.getName());
+            ensure(2 * Integer.BYTES).putInt(summary.getPendingCount()).putInt(summary.getCompletedCount());
+            return this;
+        }
+
+        /**
+         * Returns the finished frame, ready to be written to a channel.
+         */
+        ByteBuffer toBuffer() throws IOException {
+            int payload = out.position() - HEADER_SIZE;
+            if (payload > MAX_FRAME) {
+                throw new IOException("Frame of " + payload + " bytes exceeds the limit of " + MAX_FRAME);
+            }
+            out.putInt(0, out.position() - Integer.BYTES);
+            return out.flip();
+        }
+
+        // Grows the buffer, at least doubling it, to fit the given number of bytes more
+        private ByteBuffer ensure(int bytes) {
+            if (out.remaining() < bytes) {
+                int capacity = Math.max(out.capacity() * 2, out.position() + bytes);
+                out = ByteBuffer.allocate(capacity).put(out.flip());
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Reads the payload of one frame. A payload that ends early fails with
+     * an IOException.
+     */
+    static final class FrameReader {
+        private final ByteBuffer in;
+
+        FrameReader(byte[] payload) {
+            this.in = ByteBuffer.wrap(payload);
+        }
+
+        int readInt() throws IOException {
+            try {
+                return in.getInt();
+            } catch (BufferUnderflowException e) {
+                throw truncated();
+            }
+        }
+
+        long readLong() throws IOException {
+            try {
+                return in.getLong();
+            } catch (BufferUnderflowException e) {
+                throw truncated();
+            }
+        }
+
+        byte readByte() throws IOException {
+            try {
+                return in.get();
+            } catch (BufferUnderflowException e) {
+                throw truncated();
+            }
+        }
+
+        boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            if (length > in.remaining()) {
+                throw truncated();
+            }
+            String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+
+        Task readTask() throws IOException {
+            return new Task(readInt(), readString(), readString(), readString(), readLong(), readLong(), readInt());
+        }
+
+        List<Task> readTasks() throws IOException {
+            int count = readInt();
+            List<Task> tasks = new ArrayList<>(Math.min(count, in.remaining()));
+            for (int i = 0; i < count; i++) {
+                tasks.add(readTask());
+            }
+            return tasks;
+        }
+
+        Optional<Task> readOptionalTask() throws IOException {
+            return readBoolean() ? Optional.of(readTask()) : Optional.empty();
+        }
+
+        Set<String> readStrings() throws IOException {
+            int count = readInt();
+            Set<String> values = new LinkedHashSet<>();
+            for (int i = 0; i < count; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        TaskFilter readFilter() throws IOException {
+            TaskFilter filter = TaskFilter.all();
+            String username = readString();
+            String category = readString();
+            byte status = readByte();
+            if (username != null) {
+                filter = filter.assignedTo(username);
+            }
+            if (category != null) {
+                filter = filter.inCategory(category);
+            }
+            if (status >= 0) {
+                filter = filter.withStatus(of(STATUSES, status));
+            }
+            return filter;
+        }
+
+        TaskPage.Cursor readCursor() throws IOException {
+            return TaskPage.Cursor.of(of(ORDERS, readByte()), readInt(), readLong());
+        }
+
+        TaskPage readPage() throws IOException {
+            List<Task> tasks = readTasks();
+            return new TaskPage(tasks, readBoolean() ? readCursor() : null);
+        }
+
+        TaskEvent readEvent() throws IOException {
+            long sequence = readLong();
+            TaskEvent.Type type = of(EVENT_TYPES, readByte());
+            Task task = readTask();
+            return new TaskEvent(sequence, type, task, readBoolean() ? readTask() : null);
+        }
+
+        TaskSummary readSummary() throws IOException {
+            return new TaskSummary(readString(), readInt(), readInt());
+        }
+
+        private static IOException truncated() {
+            return new IOException("Frame payload ends early");
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package todo;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Boolean combination of conditions on assignee, category, status and
+ * creation time. The stores answer it from their per-value id sets, so
+ * counting does not touch a single Task. Instances are immutable and each
+ * method returns a new query:
+ *
+ *     manager.query().user("Bob").category("Work").status(Task.TaskStatus.PENDING).count()
+ *
+ * A query obtained from TaskManager.query() can run itself with count(),
+ * list(), page() and stream(). Queries built with where() are unbound and
+ * serve as operands of and(), or() and andNot(); the result keeps the
+ * binding of the query the method is called on. Names are compared
+ * case-insensitively.
+ */
+public final class TaskQuery {
+    enum Kind {
+        ALL, USER, CATEGORY, STATUS, // Sets of ids kept by the stores
+        CREATED_AFTER, CREATED_BEFORE, // Checked on each candidate task
+        AND, OR, NOT
+    }
+
+    private static final TaskQuery ALL = new TaskQuery(Kind.ALL, null, null, 0, Collections.emptyList(), null);
+
+    private final Kind kind;
+    private final String name;
+    private final Task.TaskStatus status;
+    private final long millis;
+    private final List<TaskQuery> operands;
+    private final TaskManager manager; // Null for unbound queries
+
+    private TaskQuery(Kind kind, String name, Task.TaskStatus status, long millis, List<TaskQuery> operands,
+                      TaskManager manager) {
+        this.kind = kind;
+        this.name = name;
+        this.status = status;
+        this.millis = millis;
+        this.operands = operands;
+        this.manager = manager;
+    }
+
+    /**
+     * An unbound query matching every task, to start operands of and(), or()
+     * and andNot().
+     */
+    public static TaskQuery where() {
+        return ALL;
+    }
+
+    static TaskQuery all(TaskManager manager) {
+        return new TaskQuery(Kind.ALL, null, null, 0, Collections.emptyList(), manager);
+    }
+
+    public TaskQuery user(String username) {
+        return and(leaf(Kind.USER, Objects.requireNonNull(username, "Username cannot be null"), null, 0));
+    }
+
+    public TaskQuery category(String category) {
+        return and(leaf(Kind.CATEGORY, Objects.requireNonNull(category, "Category cannot be null"), null, 0));
+    }
+
+    public TaskQuery status(Task.TaskStatus status) {
+        return and(leaf(Kind.STATUS, null, Objects.requireNonNull(status, "Status cannot be null"), 0));
+    }
+
+    /**
+     * Tasks created strictly after the given time.
+     */
+    public TaskQuery createdAfter(LocalDateTime time) {
+        return and(leaf(Kind.CREATED_AFTER, null, null, toMillis(time)));
+    }
+
+    /**
+     * Tasks created strictly before the given time.
+     */
+    public TaskQuery createdBefore(LocalDateTime time) {
+        return and(leaf(Kind.CREATED_BEFORE, null, null, toMillis(time)));
+    }
+
+    public TaskQuery and(TaskQuery other) {
+        Objects.requireNonNull(other, "Query cannot be null");
+        if (other.kind == Kind.ALL) {
+            return this;
+        }
+        if (kind == Kind.ALL) {
+            return other.bind(manager);
+        }
+        List<TaskQuery> combined = new ArrayList<>();
+        addOperands(combined, this, Kind.AND);
+        addOperands(combined, other, Kind.AND);
+        return new TaskQuery(Kind.AND, null, null, 0, Collections.unmodifiableList(combined), manager);
+    }
+
+    public TaskQuery or(TaskQuery other) {
+        Objects.requireNonNull(other, "Query cannot be null");
+        if (kind == Kind.ALL || other.kind == Kind.ALL) {
+            return all(manager);
+        }
+        List<TaskQuery> combined = new ArrayList<>();
+        addOperands(combined, this, Kind.OR);
+        addOperands(combined, other, Kind.OR);
+        return new TaskQuery(Kind.OR, null, null, 0, Collections.unmodifiableList(combined), manager);
+    }
+
+    public TaskQuery not() {
+        if (kind == Kind.NOT) {
+            return operands.get(0).bind(manager);
+        }
+        return new TaskQuery(Kind.NOT, null, null, 0, Collections.singletonList(this), manager);
+    }
+
+    public TaskQuery andNot(TaskQuery other) {
+        return and(other.not());
+    }
+
+    /**
+     * Number of matching tasks.
+     */
+    public int count() {
+        return bound().countTasks(this);
+    }
+
+    /**
+     * All matching tasks in id order.
+     */
+    public List<Task> list() {
+        return bound().findTasks(this);
+    }
+
+    /**
+     * Up to limit matching tasks with ids greater than afterId, in id order.
+     */
+    public TaskPage page(int afterId, int limit) {
+        return bound().findTasksPage(this, afterId, limit);
+    }
+
+    /**
+     * Matching tasks in id order, fetched lazily as the stream is consumed.
+     */
+    public Stream<Task> stream() {
+        return bound().streamTasks(this);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    // Folded name of a USER or CATEGORY condition
+    String getName() {
+        return name;
+    }
+
+    Task.TaskStatus getStatus() {
+        return status;
+    }
+
+    List<TaskQuery> getOperands() {
+        return operands;
+    }
+
+    // Whether the query is a single condition on a set of ids the stores keep
+    boolean isIndexed() {
+        return kind == Kind.ALL || kind == Kind.USER || kind == Kind.CATEGORY || kind == Kind.STATUS;
+    }
+
+    boolean isCreatedRange() {
+        return kind == Kind.CREATED_AFTER || kind == Kind.CREATED_BEFORE;
+    }
+
+    /**
+     * Evaluates the query on a single task; the stores use it for the
+     * creation time conditions.
+     */
+    boolean matches(Task task) {
+        switch (kind) {
+            case ALL:
+                return true;
+            case USER:
+                return name.equals(TaskIndex.key(task.getAssignedUser()));
+            case CATEGORY:
+                return name.equals(TaskIndex.key(task.getCategory()));
+            case STATUS:
+                return status == task.getStatus();
+            case CREATED_AFTER:
+            case CREATED_BEFORE:
+                return matchesCreated(task.getCreatedMillis());
+            case AND:
+                for (TaskQuery operand : operands) {
+                    if (!operand.matches(task)) {
+                        return false;
+                    }
+                }
+                return true;
+            case OR:
+                for (TaskQuery operand : operands) {
+                    if (operand.matches(task)) {
+                        return true;
+                    }
+                }
+                return false;
+            case NOT:
+                return !operands.get(0).matches(task);
+            default:
+                throw new IllegalStateException("Unknown query kind: " + kind);
+        }
+    }
+
+    // Whether a creation time meets a CREATED_AFTER or CREATED_BEFORE condition
+    boolean matchesCreated(long createdMillis) {
+        return kind == Kind.CREATED_AFTER ? createdMillis > millis : createdMillis < millis;
+    }
+
+    private TaskQuery leaf(Kind leafKind, String leafName, Task.TaskStatus leafStatus, long leafMillis) {
+        return new TaskQuery(leafKind, leafName == null ? null : TaskIndex.key(leafName), leafStatus, leafMillis,
+                Collections.emptyList(), manager);
+    }
+
+    private TaskQuery bind(TaskManager target) {
+        return target == manager ? this : new TaskQuery(kind, name, status, millis, operands, target);
+    }
+
+    private TaskManager bound() {
+        if (manager == null) {
+            throw new IllegalStateException("Query is not bound to a TaskManager; start it with TaskManager.query()");
+        }
+        return manager;
+    }
+
+    // Flattens nested operations of the same kind
+    private static void addOperands(List<TaskQuery> combined, TaskQuery query, Kind kind) {
+        if (query.kind == kind) {
+            combined.addAll(query.operands);
+        } else {
+            combined.add(query);
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return TaskCodec.toEpochMillis(Objects.requireNonNull(time, "Time cannot be null"));
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case ALL:
+                return "all";
+            case USER:
+                return "user=" + name;
+            case CATEGORY:
+                return "category=" + name;
+            case STATUS:
+                return "status=" + status;
+            case CREATED_AFTER:
+                return "created>" + TaskCodec.fromEpochMillis(millis);
+            case CREATED_BEFORE:
+                return "created<" + TaskCodec.fromEpochMillis(millis);
+            case NOT:
+                return "not(" + operands.get(0) + ")";
+            default:
+                List<String> parts = new ArrayList<>();
+                for (TaskQuery operand : operands) {
+                    parts.add(operand.toString());
+                }
+                return kind.name().toLowerCase(Locale.ROOT) + parts;
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package todo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only copy of a primary TaskService, kept current by applying the
+ * primary's change feed to a local TaskManager and serving every query
+ * from there. Writes go to the primary; the replica refuses them.
+ *
+ * On start, and whenever the feed cannot be resumed, the replica copies
+ * the primary: it notes the primary's change sequence, pages through
+ * every task, drops any local task the primary no longer has, then
+ * subscribes after the noted sequence. Changes made during the copy are
+ * delivered again afterwards, which is harmless since each event carries
+ * the resulting task. A replica that falls behind, loses its connection or
+ * sees its subscription fail resubscribes after the last event it applied,
+ * so the primary replays only what it missed. If that subscription fails
+ * before delivering anything, the primary's history no longer reaches
+ * back far enough, or the primary restarted, and the replica copies it
+ * again.
+ *
+ * The replica copies its primary on every start, so its store does not
+ * need to be durable: open it with FsyncPolicy.INTERVAL so applying a
+ * change never waits for the disk.
+ *
+ * Every PROBE_INTERVAL_MILLIS the replica reads the primary's current
+ * sequence. Once it has applied that far, it holds every change the
+ * primary made before the read, which bounds its staleness; see
+ * getStalenessMillis(). Queries fail with an IllegalStateException while
+ * the replica is further behind than its bound, for example when the
+ * primary is unreachable.
+ *
+ * Users are replicated with their tasks; a user with no tasks exists only
+ * on the primary.
+ *
+ * The primary must number all its changes in one sequence. A server that
+ * routes to shards does not, and a replica of one stops at once rather
+ * than retrying.
+ */
+public class TaskReplica implements SequencedTaskService, AutoCloseable {
+    static final long PROBE_INTERVAL_MILLIS = 100;
+    private static final int SNAPSHOT_PAGE = 1000;
+    private static final int REQUEST_BATCH = 256; // Events requested at a time; at most two batches are in flight
+    private static final long RETRY_MILLIS = 1000;
+
+    // Opens a connection to the primary and closes it again
+    interface Connector {
+        SequencedTaskService open() throws IOException;
+
+        void close(SequencedTaskService primary);
+    }
+
+    private final Connector connector;
+    private final TaskManager store;
+    private final long maxStalenessMillis;
+    private final Thread replicator;
+    private volatile boolean running = true;
+    // Owned by the replicator thread
+    private SequencedTaskService primary;
+    private Stream stream;
+    private long appliedSequence;
+    private boolean synced;
+    private long probeMillis;
+    private long probeSequence = Long.MAX_VALUE;
+    // Time before which every change of the primary is applied; 0 until the first copy
+    private volatile long currentAsOf;
+    private volatile long appliedCount;
+
+    private TaskReplica(Connector connector, TaskManager store, long maxStalenessMillis) {
+        this.connector = connector;
+        this.store = Objects.requireNonNull(store, "Store cannot be null");
+        this.maxStalenessMillis = maxStalenessMillis;
+        replicator = new Thread(this::replicate, "task-replica");
+        replicator.setDaemon(true);
+        replicator.start();
+    }
+
+    /**
+     * Replicates the TaskServer at host:port into store, reconnecting
+     * whenever the connection breaks. A bound of 0 or less serves queries
+     * however stale the replica is.
+     */
+    public static TaskReplica connect(String host, int port, TaskManager store, long maxStalenessMillis) {
+        return new TaskReplica(new Connector() {
+            @Override
+            public SequencedTaskService open() throws IOException {
+                return TaskClient.connect(host, port);
+            }
+
+            @Override
+            public void close(SequencedTaskService primary) {
+                ((TaskClient) primary).close();
+            }
+        }, store, maxStalenessMillis);
+    }
+
+    // Replicates a primary in this process, which stays open when the replica closes
+    public static TaskReplica of(SequencedTaskService primary, TaskManager store, long maxStalenessMillis) {
+        Objects.requireNonNull(primary, "Primary cannot be null");
+        return new TaskReplica(new Connector() {
+            @Override
+            public SequencedTaskService open() {
+                return primary;
+            }
+
+            @Override
+            public void close(SequencedTaskService service) {
+            }
+        }, store, maxStalenessMillis);
+    }
+
+    /**
+     * Upper bound on how old the replica's data is, in milliseconds: every
+     * change the primary made more than this long ago has been applied.
+     * Long.MAX_VALUE until the first copy completes.
+     */
+    public long getStalenessMillis() {
+        long asOf = currentAsOf;
+        return asOf == 0 ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - asOf);
+    }
+
+    // Changes applied since the replica started, including those of copies
+    public long getAppliedCount() {
+        return appliedCount;
+    }
+
+    private void replicate() {
+        while (running) {
+            try {
+                if (primary == null) {
+                    primary = connector.open();
+                }
+                if (!synced) {
+                    copyPrimary();
+                }
+                follow();
+            } catch (UnsupportedOperationException e) {
+                // A router, whose changes no one sequence numbers; retrying will not help
+                System.err.println("Replication stopped: " + e.getMessage());
+                running = false;
+            } catch (IOException | RuntimeException e) {
+                if (!running) {
+                    break;
+                }
+                System.err.println("Replication interrupted, retrying: " + e.getMessage());
+                disconnect();
+                pause(RETRY_MILLIS);
+            }
+        }
+        disconnect();
+    }
+
+    // Copies every task of the primary and notes the sequence to resume after
+    private void copyPrimary() {
+        long startMillis = System.currentTimeMillis();
+        long sequence = primary.getChangeSequence();
+        IntBitSet copied = new IntBitSet();
+        TaskPage.Cursor cursor = TaskPage.Cursor.first(TaskPage.Order.ID);
+        while (cursor != null && running) {
+            TaskPage page = primary.getTasksPage(TaskFilter.all(), cursor, SNAPSHOT_PAGE);
+            for (Task task : page.getTasks()) {
+                store.putTask(task);
+                copied.add(task.getId());
+                appliedCount++;
+            }
+            cursor = page.getNextCursor();
+        }
+        if (cursor != null) {
+            return; // Closed midway
+        }
+
+        List<Integer> dropped = new ArrayList<>();
+        Iterator<Task> local = store.iterateTasks(TaskFilter.all(), 0);
+        while (local.hasNext()) {
+            int id = local.next().getId();
+            if (!copied.contains(id)) {
+                dropped.add(id);
+            }
+        }
+        for (int id : dropped) {
+            store.removeTask(id);
+        }
+
+        appliedSequence = sequence;
+        synced = true;
+        currentAsOf = startMillis;
+        System.out.println("Replica copied " + copied.size() + " tasks from the primary");
+    }
+
+    // Applies the feed until it ends; returns to resubscribe, or throws to reconnect
+    private void follow() {
+        stream = new Stream();
+        primary.changes(TaskFilter.all(), appliedSequence).subscribe(stream);
+        probeSequence = Long.MAX_VALUE;
+        int sinceRequest = 0;
+
+        while (running) {
+            probe();
+            TaskEvent event = take(stream);
+            if (event != null) {
+                apply(event);
+                if (++sinceRequest == REQUEST_BATCH) {
+                    stream.request(REQUEST_BATCH);
+                    sinceRequest = 0;
+                }
+            } else if (stream.ended) {
+                Throwable failure = stream.failure;
+                boolean delivered = stream.delivered;
+                stream = null;
+                if (failure != null && !(failure instanceof IllegalStateException)) {
+                    throw failure instanceof RuntimeException
+                            ? (RuntimeException) failure : new IllegalStateException(failure);
+                }
+                if (!delivered) {
+                    if (failure != null) {
+                        synced = false; // The primary no longer holds the events after ours
+                    } else {
+                        pause(RETRY_MILLIS); // Completed: the primary is shutting down
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    private TaskEvent take(Stream current) {
+        try {
+            return current.events.poll(PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+            return null;
+        }
+    }
+
+    private void apply(TaskEvent event) {
+        if (event.getSequence() <= appliedSequence) {
+            return; // Replayed after a resubscription
+        }
+        if (event.getType() == TaskEvent.Type.REMOVED) {
+            store.removeTask(event.getTask().getId());
+        } else {
+            store.putTask(event.getTask());
+        }
+        appliedSequence = event.getSequence();
+        appliedCount++;
+    }
+
+    // Reads the primary's sequence every interval, and advances the staleness bound once it is applied
+    private void probe() {
+        long now = System.currentTimeMillis();
+        if (probeSequence != Long.MAX_VALUE && appliedSequence >= probeSequence) {
+            currentAsOf = Math.max(currentAsOf, probeMillis);
+            probeSequence = Long.MAX_VALUE;
+        }
+        if (probeSequence == Long.MAX_VALUE && now - probeMillis >= PROBE_INTERVAL_MILLIS) {
+            probeMillis = now;
+            probeSequence = primary.getChangeSequence();
+            if (appliedSequence >= probeSequence) {
+                currentAsOf = Math.max(currentAsOf, probeMillis);
+                probeSequence = Long.MAX_VALUE;
+            }
+        }
+    }
+
+    // The next attempt opens a new connection and resumes after the last event applied
+    private void disconnect() {
+        if (stream != null) {
+            stream.cancel();
+            stream = null;
+        }
+        if (primary != null) {
+            connector.close(primary);
+            primary = null;
+        }
+    }
+
+    private void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    /**
+     * One subscription to the primary's feed. Signals may arrive on any
+     * thread; the replicator takes the events from the queue in order.
+     */
+    private static final class Stream implements Flow.Subscriber<TaskEvent> {
+        final BlockingQueue<TaskEvent> events = new LinkedBlockingQueue<>();
+        private Flow.Subscription subscription;
+        private boolean cancelled;
+        volatile boolean delivered;
+        volatile Throwable failure;
+        volatile boolean ended;
+
+        @Override
+        public synchronized void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(2 * REQUEST_BATCH);
+            }
+        }
+
+        @Override
+        public void onNext(TaskEvent event) {
+            delivered = true;
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            failure = error;
+            ended = true;
+        }
+
+        @Override
+        public void onComplete() {
+            ended = true;
+        }
+
+        synchronized void request(long n) {
+            if (subscription != null && !cancelled) {
+                subscription.request(n);
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    private void checkCurrent() {
+        long staleness = getStalenessMillis();
+        if (maxStalenessMillis > 0 && staleness > maxStalenessMillis) {
+            throw new IllegalStateException("Replica is " + (staleness == Long.MAX_VALUE ? "not yet copied"
+                    : "up to " + staleness + " ms behind its primary") + ", over its " + maxStalenessMillis
+                    + " ms bound");
+        }
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Replicas are read-only; send writes to the primary");
+    }
+
+    @Override
+    public User getOrCreateUser(String username) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean addTask(String description, String category, String assignedUser) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean removeTask(int id) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean markTaskCompleted(int id, String username) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean reassignTask(int id, String fromUsername, String toUsername) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean completeIfVersion(int id, String username, int expectedVersion) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean reassignIfVersion(int id, String fromUsername, String toUsername, int expectedVersion) {
+        throw readOnly();
+    }
+
+    @Override
+    public Optional<Task> getTaskById(int id) {
+        checkCurrent();
+        return store.getTaskById(id);
+    }
+
+    @Override
+    public List<Task> getUserTasks(String username) {
+        checkCurrent();
+        return store.getUserTasks(username);
+    }
+
+    @Override
+    public List<Task> getIncompleteTasksByUser(String username) {
+        checkCurrent();
+        return store.getIncompleteTasksByUser(username);
+    }
+
+    @Override
+    public List<Task> filterTasksByCategory(String category) {
+        checkCurrent();
+        return store.filterTasksByCategory(category);
+    }
+
+    @Override
+    public Set<String> getAllCategoriesFromTasks() {
+        checkCurrent();
+        return store.getAllCategoriesFromTasks();
+    }
+
+    @Override
+    public TaskPage getTasksPage(TaskFilter filter, TaskPage.Cursor cursor, int limit) {
+        checkCurrent();
+        return store.getTasksPage(filter, cursor, limit);
+    }
+
+    @Override
+    public TaskSummary getUserSummary(String username) {
+        checkCurrent();
+        return store.getUserSummary(username);
+    }
+
+    @Override
+    public List<Task> searchTasks(String query, int limit) {
+        checkCurrent();
+        return store.searchTasks(query, limit);
+    }
+
+    /**
+     * Publishes the changes as this replica applies them, numbered by the
+     * replica; a copy of the primary shows up as changes too.
+     */
+    @Override
+    public Flow.Publisher<TaskEvent> changes(TaskFilter filter, long afterSequence) {
+        return store.changes(filter, afterSequence);
+    }
+
+    @Override
+    public long getChangeSequence() {
+        return store.getChangeSequence();
+    }
+
+    /**
+     * Stops replicating and closes the connection to the primary. Does not
+     * close the store.
+     */
+    @Override
+    public void close() {
+        running = false;
+        replicator.interrupt();
+        try {
+            replicator.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
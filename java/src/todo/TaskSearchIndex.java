@@ -0,0 +1,302 @@
+package todo;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Inverted index over task descriptions, behind TaskManager.searchTasks.
+ *
+ * Descriptions are split into lowercase runs of letters and digits. Each
+ * term maps to the ids of the tasks containing it, in id order, with the
+ * number of occurrences, and matches are ranked by BM25. A query term
+ * ending in '*' matches every term with that prefix.
+ *
+ * The index lives in memory only. build() recreates it from the store at
+ * startup, tokenizing chunks of tasks in parallel, and TaskManager keeps
+ * it current as tasks are added and removed; nothing else changes a
+ * description. Guarded by a read-write lock.
+ */
+final class TaskSearchIndex {
+    private static final double K1 = 1.2;  // BM25 term frequency saturation
+    private static final double B = 0.75;  // BM25 length normalization
+    private static final int BUILD_CHUNK = 16_384;
+
+    /**
+     * Ids of the tasks containing one term, ascending, with the number of
+     * times the term occurs in each.
+     */
+    private static final class Postings {
+        int[] ids = new int[2];
+        int[] counts = new int[2];
+        int size;
+
+        void add(int id, int count) {
+            // Fast path for the usual append of a new, highest id
+            int position = size > 0 && ids[size - 1] >= id
+                    ? Arrays.binarySearch(ids, 0, size, id)
+                    : -(size + 1);
+            if (position >= 0) {
+                counts[position] = count;
+                return;
+            }
+
+            int insertAt = -(position + 1);
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+                counts = Arrays.copyOf(counts, ids.length);
+            }
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            System.arraycopy(counts, insertAt, counts, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            counts[insertAt] = count;
+            size++;
+        }
+
+        void remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+                System.arraycopy(counts, position + 1, counts, position, size - position - 1);
+                size--;
+            }
+        }
+
+        // Appends postings whose ids are all above this one's
+        void append(Postings other) {
+            if (size + other.size > ids.length) {
+                ids = Arrays.copyOf(ids, size + other.size);
+                counts = Arrays.copyOf(counts, ids.length);
+            }
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            System.arraycopy(other.counts, 0, counts, size, other.size);
+            size += other.size;
+        }
+    }
+
+    /**
+     * Scores accumulated for one query, in a dense array indexed through a
+     * map from task id to position, so nothing is boxed.
+     */
+    private static final class Scores {
+        final IntIntMap positions = new IntIntMap(); // Task id to 1 + its position
+        int[] ids = new int[16];
+        double[] values = new double[16];
+        int size;
+
+        void add(int id, double score) {
+            int position = positions.get(id) - 1;
+            if (position < 0) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                    values = Arrays.copyOf(values, ids.length);
+                }
+                position = size++;
+                positions.put(id, position + 1);
+                ids[position] = id;
+            }
+            values[position] += score;
+        }
+    }
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    // Number of terms in each indexed description, by task id; absent if not indexed
+    private IntIntMap lengths = new IntIntMap();
+    private int documents;
+    private long totalLength;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Indexes the tasks, which must be in id order. Chunks of tasks are
+     * tokenized on the common fork-join pool into hash maps, whose postings
+     * are then appended chunk by chunk, which keeps every postings list
+     * sorted. The terms are sorted once at the end.
+     */
+    static TaskSearchIndex build(List<Task> tasks) {
+        TaskSearchIndex index = new TaskSearchIndex();
+        if (tasks.isEmpty()) {
+            return index;
+        }
+        // Chunks cover disjoint positions, so they can share the lengths array
+        int[] lengths = new int[tasks.size()];
+        int chunks = (tasks.size() + BUILD_CHUNK - 1) / BUILD_CHUNK;
+        List<Map<String, Postings>> partials = IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    Map<String, Postings> partial = new HashMap<>();
+                    int end = Math.min(tasks.size(), (chunk + 1) * BUILD_CHUNK);
+                    for (int i = chunk * BUILD_CHUNK; i < end; i++) {
+                        lengths[i] = addPostings(partial, tasks.get(i));
+                    }
+                    return partial;
+                })
+                .collect(Collectors.toList());
+
+        Map<String, Postings> merged = new HashMap<>();
+        for (Map<String, Postings> partial : partials) {
+            for (Map.Entry<String, Postings> entry : partial.entrySet()) {
+                merged.merge(entry.getKey(), entry.getValue(), (postings, more) -> {
+                    postings.append(more);
+                    return postings;
+                });
+            }
+        }
+        index.terms.putAll(merged);
+        index.lengths = new IntIntMap(tasks.size());
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] > 0) {
+                index.lengths.put(tasks.get(i).getId(), lengths[i]);
+                index.documents++;
+                index.totalLength += lengths[i];
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Indexes a task. A task whose id is already indexed is skipped, since
+     * the description of an id never changes.
+     */
+    void add(Task task) {
+        lock.writeLock().lock();
+        try {
+            if (lengths.get(task.getId()) == 0) {
+                index(task);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(Task task) {
+        lock.writeLock().lock();
+        try {
+            unindex(task);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of up to limit tasks matching any of the query's
+     * terms, best match first; ties go to the lower id.
+     */
+    int[] search(String query, int limit) {
+        Scores scores = new Scores();
+        lock.readLock().lock();
+        try {
+            if (documents == 0) {
+                return new int[0];
+            }
+            double averageLength = (double) totalLength / documents;
+            for (String word : query.trim().split("\\s+")) {
+                boolean prefix = word.endsWith("*");
+                for (String term : tokenize(prefix ? word.substring(0, word.length() - 1) : word)) {
+                    Collection<Postings> matches = prefix
+                            ? terms.subMap(term, true, term + Character.MAX_VALUE, true).values()
+                            : Collections.singletonList(terms.get(term));
+                    for (Postings postings : matches) {
+                        if (postings != null) {
+                            score(postings, averageLength, scores);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Keep the positions of the best limit matches in a heap whose head is the worst of them
+        Comparator<Integer> ranking = Comparator.<Integer>comparingDouble(position -> -scores.values[position])
+                .thenComparingInt(position -> scores.ids[position]);
+        PriorityQueue<Integer> best = new PriorityQueue<>(ranking.reversed());
+        for (int position = 0; position < scores.size; position++) {
+            best.add(position);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<Integer> ranked = new ArrayList<>(best);
+        ranked.sort(ranking);
+        int[] ids = new int[ranked.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = scores.ids[ranked.get(i)];
+        }
+        return ids;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private void score(Postings postings, double averageLength, Scores scores) {
+        double idf = Math.log(1 + (documents - postings.size + 0.5) / (postings.size + 0.5));
+        for (int i = 0; i < postings.size; i++) {
+            int id = postings.ids[i];
+            int count = postings.counts[i];
+            double norm = K1 * (1 - B + B * lengths.get(id) / averageLength);
+            scores.add(id, idf * count * (K1 + 1) / (count + norm));
+        }
+    }
+
+    private void index(Task task) {
+        int length = addPostings(terms, task);
+        if (length == 0) {
+            return;
+        }
+
+        lengths.put(task.getId(), length);
+        documents++;
+        totalLength += length;
+    }
+
+    // Adds the task to the postings of each of its terms; returns its number of terms
+    private static int addPostings(Map<String, Postings> terms, Task task) {
+        List<String> tokens = tokenize(task.getDescription());
+        // Sorting puts repeats of a term next to each other
+        Collections.sort(tokens);
+        for (int i = 0; i < tokens.size(); ) {
+            String term = tokens.get(i);
+            int end = i + 1;
+            while (end < tokens.size() && tokens.get(end).equals(term)) {
+                end++;
+            }
+            terms.computeIfAbsent(term, key -> new Postings()).add(task.getId(), end - i);
+            i = end;
+        }
+        return tokens.size();
+    }
+
+    // Removes the postings of the task's description, if it was indexed
+    private void unindex(Task task) {
+        int id = task.getId();
+        int length = lengths.get(id);
+        if (length == 0) {
+            return;
+        }
+        for (String term : new HashSet<>(tokenize(task.getDescription()))) {
+            Postings postings = terms.get(term);
+            if (postings != null) {
+                postings.remove(id);
+                if (postings.size == 0) {
+                    terms.remove(term);
+                }
+            }
+        }
+        lengths.put(id, 0);
+        documents--;
+        totalLength -= length;
+    }
+}
@@ -0,0 +1,666 @@
+package todo;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves a TaskService, normally a TaskManager, to TaskClients over TCP.
+ *
+ * A single selector thread accepts connections, reads request frames and
+ * writes responses, and never blocks on a socket. Each request runs on the
+ * worker executor, on virtual threads when the JVM provides them, so a
+ * request waiting for a group commit does not hold up the others on its
+ * connection. Responses go back in the order they finish, tagged with the
+ * request id; the selector thread writes as many as the socket accepts in
+ * one gathering write and waits for OP_WRITE to send the rest.
+ *
+ * A connection with MAX_IN_FLIGHT requests running is not read again until
+ * half of them have answered, which pushes back on a client that
+ * pipelines faster than the store keeps up.
+ *
+ * A SUBSCRIBE request subscribes to service.changes() and forwards the
+ * events as the client requests them. REQUEST_EVENTS and
+ * CANCEL_SUBSCRIPTION frames are handled on the selector thread as they are
+ * read, so they always reach a subscription in the order they were sent.
+ * An operation the service does not offer, such as the change sequence of
+ * every task on a router, is answered with an UNSUPPORTED frame.
+ *
+ * Usage: java todo.TaskServer [--option=value ...]
+ *   --host=0.0.0.0         address to listen on
+ *   --port=7070            port to listen on
+ *   --data-dir=DIR         data directory (default: java/src/data)
+ *   --fsync=GROUP_COMMIT   TaskLog.FsyncPolicy
+ *   --backend=HEAP         TaskStore.Backend
+ *   --shard=0 --shards=1   serve shard 0 of 1: hand out only that shard's ids
+ *   --route=HOST:PORT,...  serve a ShardedTaskService over the shard servers
+ *                          listed in shard order, instead of a data directory
+ *   --replica-of=HOST:PORT serve a read-only TaskReplica of that server,
+ *                          kept in the data directory (fsync INTERVAL by default)
+ *   --max-staleness-ms=5000  replica queries fail while it is further behind
+ */
+public class TaskServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 7070;
+    private static final int MAX_IN_FLIGHT = 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_GATHER = 64; // Responses per write call
+    // Request id and opcode, the header bytes after the length
+    private static final int FRAME_PREFIX = TaskProtocol.HEADER_SIZE - Integer.BYTES;
+
+    private final TaskService service;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    // Connections with responses waiting for the selector thread to write them
+    private final Queue<Connection> flushQueue = new ConcurrentLinkedQueue<>();
+    private final Thread selectorThread;
+    private volatile boolean running = true;
+
+    /**
+     * Starts serving on the address; port 0 picks a free port, see getPort().
+     */
+    public TaskServer(TaskService service, InetSocketAddress address) throws IOException {
+        this.service = Objects.requireNonNull(service, "Service cannot be null");
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+
+        ExecutorService virtualThreads = VirtualThreads.newExecutor();
+        this.workers = virtualThreads != null
+                ? virtualThreads
+                : Executors.newFixedThreadPool(4 * Runtime.getRuntime().availableProcessors());
+
+        selectorThread = new Thread(this::selectLoop, "task-server");
+        selectorThread.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * State of one client connection. The input buffer and the interest ops
+     * belong to the selector thread; workers only append responses.
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+        final AtomicBoolean flushQueued = new AtomicBoolean();
+        final AtomicInteger inFlight = new AtomicInteger();
+        // Change subscriptions by the id of their SUBSCRIBE request
+        final Map<Integer, EventStream> streams = new ConcurrentHashMap<>();
+        boolean readPaused;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    private void selectLoop() {
+        while (running) {
+            try {
+                selector.select();
+                Connection ready;
+                while ((ready = flushQueue.poll()) != null) {
+                    if (ready.key.isValid()) {
+                        flushSafely(ready);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(connection);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // Only this client's connection is lost, never the selector thread
+                        closeConnection(connection, e);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Task server error: " + e.getMessage());
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                System.err.println("Error closing connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    // Hands every complete frame in the input buffer to the workers
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.input) < 0) {
+            closeConnection(connection, null);
+            return;
+        }
+
+        ByteBuffer input = connection.input;
+        input.flip();
+        while (input.remaining() >= Integer.BYTES) {
+            int length = frameLength(input.getInt(input.position()));
+            if (input.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            input.getInt();
+            int requestId = input.getInt();
+            byte opcode = input.get();
+            byte[] payload = new byte[length - FRAME_PREFIX];
+            input.get(payload);
+            dispatch(connection, requestId, opcode, payload);
+        }
+        input.compact();
+
+        // Grow to fit a frame larger than the buffer, and shrink again once it is read
+        if (input.position() >= Integer.BYTES) {
+            int needed = Integer.BYTES + frameLength(input.getInt(0));
+            if (needed > input.capacity()) {
+                input.flip();
+                connection.input = ByteBuffer.allocate(needed).put(input);
+            }
+        } else if (input.capacity() > READ_BUFFER_SIZE) {
+            input.flip();
+            connection.input = ByteBuffer.allocate(READ_BUFFER_SIZE).put(input);
+        }
+    }
+
+    private static int frameLength(int length) throws IOException {
+        if (length < FRAME_PREFIX || length - FRAME_PREFIX > TaskProtocol.MAX_FRAME) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    private void dispatch(Connection connection, int requestId, byte opcode, byte[] payload) throws IOException {
+        TaskProtocol.Opcode operation = TaskProtocol.Opcode.of(opcode);
+        if (operation == TaskProtocol.Opcode.SUBSCRIBE) {
+            subscribe(connection, requestId, new TaskProtocol.FrameReader(payload));
+            return;
+        }
+        if (operation == TaskProtocol.Opcode.REQUEST_EVENTS || operation == TaskProtocol.Opcode.CANCEL_SUBSCRIPTION) {
+            TaskProtocol.FrameReader in = new TaskProtocol.FrameReader(payload);
+            EventStream stream = connection.streams.get(in.readInt());
+            if (stream != null) {
+                if (operation == TaskProtocol.Opcode.REQUEST_EVENTS) {
+                    stream.request(in.readLong());
+                } else {
+                    stream.cancel();
+                }
+            }
+            return;
+        }
+
+        if (connection.inFlight.incrementAndGet() >= MAX_IN_FLIGHT && !connection.readPaused) {
+            connection.readPaused = true;
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        }
+        try {
+            workers.execute(() -> respond(connection, requestId, opcode, payload));
+        } catch (RejectedExecutionException e) {
+            connection.inFlight.decrementAndGet(); // Shutting down
+        }
+    }
+
+    // Runs on a worker: performs the request and queues its response
+    private void respond(Connection connection, int requestId, byte opcode, byte[] payload) {
+        ByteBuffer response;
+        try {
+            TaskProtocol.FrameWriter out = new TaskProtocol.FrameWriter(requestId, TaskProtocol.STATUS_OK);
+            handle(TaskProtocol.Opcode.of(opcode), new TaskProtocol.FrameReader(payload), out);
+            response = out.toBuffer();
+        } catch (IOException | RuntimeException e) {
+            response = errorResponse(requestId, e);
+        }
+
+        connection.inFlight.decrementAndGet();
+        send(connection, response);
+    }
+
+    // Queues a frame for the selector thread to write
+    private void send(Connection connection, ByteBuffer frame) {
+        connection.responses.add(frame);
+        if (connection.flushQueued.compareAndSet(false, true)) {
+            flushQueue.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    private static ByteBuffer errorResponse(int requestId, Throwable error) {
+        String message = error.getMessage() != null ? error.getMessage() : error.toString();
+        byte status = error instanceof UnsupportedOperationException
+                ? TaskProtocol.STATUS_UNSUPPORTED : TaskProtocol.STATUS_ERROR;
+        try {
+            return new TaskProtocol.FrameWriter(requestId, status).writeString(message).toBuffer();
+        } catch (IOException e) {
+            throw new AssertionError(e); // In-memory frame well under the limit
+        }
+    }
+
+    private void handle(TaskProtocol.Opcode opcode, TaskProtocol.FrameReader in, TaskProtocol.FrameWriter out)
+            throws IOException {
+        switch (opcode) {
+            case GET_OR_CREATE_USER:
+                out.writeString(service.getOrCreateUser(in.readString()).getUsername());
+                break;
+            case ADD_TASK:
+                out.writeBoolean(service.addTask(in.readString(), in.readString(), in.readString()));
+                break;
+            case REMOVE_TASK:
+                out.writeBoolean(service.removeTask(in.readInt()));
+                break;
+            case MARK_TASK_COMPLETED:
+                out.writeBoolean(service.markTaskCompleted(in.readInt(), in.readString()));
+                break;
+            case REASSIGN_TASK:
+                out.writeBoolean(service.reassignTask(in.readInt(), in.readString(), in.readString()));
+                break;
+            case COMPLETE_IF_VERSION:
+                out.writeBoolean(service.completeIfVersion(in.readInt(), in.readString(), in.readInt()));
+                break;
+            case REASSIGN_IF_VERSION:
+                out.writeBoolean(service.reassignIfVersion(in.readInt(), in.readString(), in.readString(),
+                        in.readInt()));
+                break;
+            case GET_TASK_BY_ID:
+                out.writeOptionalTask(service.getTaskById(in.readInt()));
+                break;
+            case GET_USER_TASKS:
+                out.writeTasks(service.getUserTasks(in.readString()));
+                break;
+            case GET_INCOMPLETE_TASKS_BY_USER:
+                out.writeTasks(service.getIncompleteTasksByUser(in.readString()));
+                break;
+            case FILTER_TASKS_BY_CATEGORY:
+                out.writeTasks(service.filterTasksByCategory(in.readString()));
+                break;
+            case GET_ALL_CATEGORIES:
+                out.writeStrings(service.getAllCategoriesFromTasks());
+                break;
+            case GET_TASKS_PAGE:
+                out.writePage(service.getTasksPage(in.readFilter(), in.readCursor(), in.readInt()));
+                break;
+            case GET_USER_SUMMARY:
+                out.writeSummary(service.getUserSummary(in.readString()));
+                break;
+            case SEARCH_TASKS:
+                out.writeTasks(service.searchTasks(in.readString(), in.readInt()));
+                break;
+            case GET_CHANGE_SEQUENCE:
+                out.writeLong(sequenced().getChangeSequence());
+                break;
+            case GET_USER_CHANGE_SEQUENCE:
+                out.writeLong(service.getChangeSequence(in.readString()));
+                break;
+            case IMPORT_TASK:
+                out.writeBoolean(shard().importTask(in.readTask()));
+                break;
+            case GET_HIGHEST_TASK_ID:
+                out.writeInt(shard().getHighestTaskId());
+                break;
+            case RESERVE_TASK_IDS:
+                shard().reserveTaskIds(in.readInt());
+                break;
+            case GET_ASSIGNEES:
+                out.writeStrings(shard().getAssignees());
+                break;
+            case GET_STALENESS:
+                out.writeLong(service instanceof TaskReplica ? ((TaskReplica) service).getStalenessMillis() : 0);
+                break;
+            default:
+                throw new IOException("Unsupported opcode " + opcode);
+        }
+    }
+
+    private TaskShard shard() {
+        if (!(service instanceof TaskShard)) {
+            throw new UnsupportedOperationException("This server does not serve a shard");
+        }
+        return (TaskShard) service;
+    }
+
+    private SequencedTaskService sequenced() {
+        if (!(service instanceof SequencedTaskService)) {
+            throw new UnsupportedOperationException(
+                    "This server numbers changes per user; ask for a user's change sequence");
+        }
+        return (SequencedTaskService) service;
+    }
+
+    // Registers the stream before the subscription starts, so REQUEST_EVENTS frames read after it find it
+    private void subscribe(Connection connection, int requestId, TaskProtocol.FrameReader in) throws IOException {
+        TaskFilter filter = in.readFilter();
+        long afterSequence = in.readLong();
+        EventStream stream = new EventStream(connection, requestId);
+        connection.streams.put(requestId, stream);
+        try {
+            workers.execute(() -> {
+                try {
+                    service.changes(filter, afterSequence).subscribe(stream);
+                } catch (RuntimeException e) {
+                    stream.onError(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            connection.streams.remove(requestId); // Shutting down
+        }
+    }
+
+    /**
+     * Forwards one change subscription to its client. Requests and
+     * cancellations that arrive before the subscription starts are held
+     * until it does.
+     */
+    private final class EventStream implements Flow.Subscriber<TaskEvent> {
+        private final Connection connection;
+        private final int requestId;
+        private Flow.Subscription subscription;
+        private long pendingDemand;
+        private boolean cancelled;
+
+        EventStream(Connection connection, int requestId) {
+            this.connection = connection;
+            this.requestId = requestId;
+        }
+
+        synchronized void request(long n) {
+            if (subscription != null) {
+                subscription.request(n);
+            } else {
+                // A non-positive request is passed on so the subscription reports it
+                pendingDemand = n <= 0 || pendingDemand + n < 0 ? n : pendingDemand + n;
+            }
+        }
+
+        synchronized void cancel() {
+            connection.streams.remove(requestId);
+            cancelled = true;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        @Override
+        public synchronized void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else if (pendingDemand != 0) {
+                subscription.request(pendingDemand);
+            }
+        }
+
+        @Override
+        public void onNext(TaskEvent event) {
+            try {
+                send(connection, new TaskProtocol.FrameWriter(requestId, TaskProtocol.STATUS_EVENT)
+                        .writeEvent(event).toBuffer());
+            } catch (IOException e) {
+                cancel();
+                send(connection, errorResponse(requestId, e));
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            connection.streams.remove(requestId);
+            send(connection, errorResponse(requestId, error));
+        }
+
+        @Override
+        public void onComplete() {
+            connection.streams.remove(requestId);
+            try {
+                send(connection, new TaskProtocol.FrameWriter(requestId, TaskProtocol.STATUS_COMPLETE).toBuffer());
+            } catch (IOException e) {
+                throw new AssertionError(e); // Empty frame
+            }
+        }
+    }
+
+    private void flushSafely(Connection connection) {
+        try {
+            flush(connection);
+        } catch (IOException | RuntimeException e) {
+            closeConnection(connection, e);
+        }
+    }
+
+    // Writes queued responses until the socket is full; selector thread only
+    private void flush(Connection connection) throws IOException {
+        // Cleared first, so a response queued during the write schedules another flush
+        connection.flushQueued.set(false);
+
+        if (connection.readPaused && connection.inFlight.get() < MAX_IN_FLIGHT / 2) {
+            connection.readPaused = false;
+            connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_READ);
+        }
+
+        while (!connection.responses.isEmpty()) {
+            int count = 0;
+            for (ByteBuffer response : connection.responses) {
+                connection.gather[count++] = response;
+                if (count == MAX_GATHER) {
+                    break;
+                }
+            }
+            connection.channel.write(connection.gather, 0, count);
+            for (int i = 0; i < count && !connection.gather[i].hasRemaining(); i++) {
+                connection.responses.poll();
+            }
+            boolean full = connection.gather[count - 1].hasRemaining();
+            Arrays.fill(connection.gather, 0, count, null);
+            if (full) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    // A null cause is an orderly close by the client
+    private void closeConnection(Connection connection, Exception cause) {
+        if (cause != null) {
+            System.err.println("Closing connection: " + cause.getMessage());
+        }
+        connection.key.cancel();
+        for (EventStream stream : connection.streams.values()) {
+            stream.cancel();
+        }
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops accepting, closes every connection and waits briefly for the
+     * requests already running. Does not close the service.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+            workers.shutdown();
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing task server: " + e.getMessage());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = "0.0.0.0";
+        int port = DEFAULT_PORT;
+        String dataDirectory = TaskManager.DEFAULT_DATA_DIRECTORY;
+        TaskLog.FsyncPolicy fsyncPolicy = null;
+        TaskStore.Backend backend = TaskStore.Backend.HEAP;
+        int shard = 0;
+        int shardCount = 1;
+        String route = null;
+        String replicaOf = null;
+        long maxStalenessMillis = 5000;
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --option=value, got " + arg);
+            }
+            String name = arg.substring(2, equals);
+            String value = arg.substring(equals + 1);
+
+            switch (name) {
+                case "host": host = value; break;
+                case "port": port = Integer.parseInt(value); break;
+                case "data-dir": dataDirectory = value; break;
+                case "fsync": fsyncPolicy = TaskLog.FsyncPolicy.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                case "backend": backend = TaskStore.Backend.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                case "shard": shard = Integer.parseInt(value); break;
+                case "shards": shardCount = Integer.parseInt(value); break;
+                case "route": route = value; break;
+                case "replica-of": replicaOf = value; break;
+                case "max-staleness-ms": maxStalenessMillis = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+
+        if (route != null) {
+            serveRouter(host, port, route);
+            return;
+        }
+
+        if (replicaOf != null) {
+            serveReplica(host, port, replicaOf, new TaskManager(dataDirectory,
+                    fsyncPolicy != null ? fsyncPolicy : TaskLog.FsyncPolicy.INTERVAL, backend), maxStalenessMillis);
+            return;
+        }
+
+        TaskManager manager = new TaskManager(dataDirectory,
+                fsyncPolicy != null ? fsyncPolicy : TaskLog.FsyncPolicy.GROUP_COMMIT, backend);
+        if (shardCount > 1) {
+            manager.setShard(shard, shardCount);
+        }
+        TaskServer server = new TaskServer(manager, new InetSocketAddress(host, port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            manager.close();
+        }));
+        System.out.println("Serving tasks from " + dataDirectory
+                + (shardCount > 1 ? " as shard " + shard + " of " + shardCount : "")
+                + " on " + host + ":" + server.getPort());
+        server.selectorThread.join();
+    }
+
+    private static void serveRouter(String host, int port, String route) throws IOException, InterruptedException {
+        List<TaskClient> clients = new ArrayList<>();
+        for (String address : route.split(",")) {
+            InetSocketAddress shard = parseAddress(address);
+            clients.add(TaskClient.connect(shard.getHostString(), shard.getPort()));
+        }
+
+        ShardedTaskService router = new ShardedTaskService(clients);
+        TaskServer server = new TaskServer(router, new InetSocketAddress(host, port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            router.close();
+            for (TaskClient client : clients) {
+                client.close();
+            }
+        }));
+        System.out.println("Routing tasks over " + clients.size() + " shards on " + host + ":" + server.getPort());
+        server.selectorThread.join();
+    }
+
+    private static void serveReplica(String host, int port, String primaryAddress, TaskManager store,
+                                     long maxStalenessMillis) throws IOException, InterruptedException {
+        InetSocketAddress primary = parseAddress(primaryAddress);
+        TaskReplica replica = TaskReplica.connect(primary.getHostString(), primary.getPort(), store,
+                maxStalenessMillis);
+        TaskServer server = new TaskServer(replica, new InetSocketAddress(host, port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            replica.close();
+            store.close();
+        }));
+        System.out.println("Serving a replica of " + primaryAddress + " on " + host + ":" + server.getPort());
+        server.selectorThread.join();
+    }
+
+    private static InetSocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected HOST:PORT, got " + address);
+        }
+        return InetSocketAddress.createUnresolved(address.substring(0, colon),
+                Integer.parseInt(address.substring(colon + 1)));
+    }
+}
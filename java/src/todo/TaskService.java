@@ -0,0 +1,56 @@
+package todo;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Flow;
+
+/**
+ * The task operations a user session needs, served in-process by
+ * TaskManager and over the network by TaskClient, which forwards each call
+ * to a TaskServer. Code written against this interface runs unchanged
+ * against either.
+ */
+public interface TaskService {
+    User getOrCreateUser(String username);
+
+    boolean addTask(String description, String category, String assignedUser);
+
+    boolean removeTask(int id);
+
+    boolean markTaskCompleted(int id, String username);
+
+    boolean reassignTask(int id, String fromUsername, String toUsername);
+
+    // As markTaskCompleted and reassignTask, but rejected unless the task is
+    // still at the version the caller read (see Task.getVersion)
+    boolean completeIfVersion(int id, String username, int expectedVersion);
+
+    boolean reassignIfVersion(int id, String fromUsername, String toUsername, int expectedVersion);
+
+    Optional<Task> getTaskById(int id);
+
+    List<Task> getUserTasks(String username);
+
+    List<Task> getIncompleteTasksByUser(String username);
+
+    List<Task> filterTasksByCategory(String category);
+
+    Set<String> getAllCategoriesFromTasks();
+
+    TaskPage getTasksPage(TaskFilter filter, TaskPage.Cursor cursor, int limit);
+
+    TaskSummary getUserSummary(String username);
+
+    List<Task> searchTasks(String query, int limit);
+
+    /**
+     * Publishes the changes to the tasks the filter selects that come after
+     * afterSequence, a value of getChangeSequence(username) for the
+     * filter's user. A filter without a user needs a SequencedTaskService.
+     */
+    Flow.Publisher<TaskEvent> changes(TaskFilter filter, long afterSequence);
+
+    // Sequence of the last change to the user's tasks, to subscribe to them after
+    long getChangeSequence(String username);
+}
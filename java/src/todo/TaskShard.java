@@ -0,0 +1,29 @@
+package todo;
+
+import java.util.Set;
+
+/**
+ * A TaskService that ShardedTaskService can use as one of its shards:
+ * besides the user operations, it takes in tasks moved from other shards
+ * under their existing ids and exposes what the router needs to keep ids
+ * unique. Served in-process by TaskManager and over the network by
+ * TaskClient.
+ */
+public interface TaskShard extends SequencedTaskService {
+    /**
+     * Stores the task under its own id, completion state and creation date,
+     * as a task handed over by another shard. Returns true once the task is
+     * stored, including when a task with that id already was, so a handoff
+     * can be retried.
+     */
+    boolean importTask(Task task);
+
+    // Highest task id this shard holds or has handed out
+    int getHighestTaskId();
+
+    // Makes every id handed out from now on greater than throughId
+    void reserveTaskIds(int throughId);
+
+    // Spelling of every user that has tasks on this shard
+    Set<String> getAssignees();
+}
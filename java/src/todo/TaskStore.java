@@ -0,0 +1,132 @@
+package todo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Storage backend behind TaskManager.
+ *
+ * Reads may run concurrently with each other and with mutations. Mutations of
+ * a single task are serialized by the caller; mutations of different tasks
+ * may arrive in parallel. Name lookups are case-insensitive and every list
+ * result is a detached copy ordered by task id. Tasks are immutable values.
+ */
+public interface TaskStore extends Closeable {
+    enum Backend {
+        HEAP,   // Task objects on the heap, persisted as a segmented TaskCodec snapshot
+        MAPPED  // fixed-width records in memory-mapped files
+    }
+
+    /**
+     * Adds the task, replacing any task already stored under the same id.
+     */
+    void add(Task task);
+
+    Task remove(int id);
+
+    Task get(int id);
+
+    /**
+     * Replaces the task with a completed version and returns that version,
+     * or null if there is no task with the id.
+     */
+    Task markCompleted(int id, LocalDateTime completedDate);
+
+    /**
+     * Replaces the task with a version assigned to the user and returns that
+     * version, or null if there is no task with the id.
+     */
+    Task reassign(int id, String assignedUser);
+
+    List<Task> all();
+
+    int size();
+
+    /**
+     * Returns the highest task id currently stored, or 0 if the store is empty.
+     */
+    int maxId();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    List<Task> findByUser(String username);
+
+    List<Task> findByCategory(String category);
+
+    List<Task> findByStatus(Task.TaskStatus status);
+
+    List<Task> findByUserAndStatus(String username, Task.TaskStatus status);
+
+    Set<String> categories();
+
+    /**
+     * Returns up to limit tasks matching the filter whose ids are greater
+     * than afterId, in id order. Nothing is held between calls, so a caller
+     * paging through a large result sees mutations made in between, but
+     * never sees a task twice.
+     */
+    List<Task> page(TaskFilter filter, int afterId, int limit);
+
+    /**
+     * Iterates the tasks matching the filter with ids greater than afterId,
+     * in id order. By default the tasks are fetched with page() a chunk at a
+     * time as the iterator advances.
+     */
+    default Iterator<Task> iterate(TaskFilter filter, int afterId) {
+        return new PagingIterator((after, limit) -> page(filter, after, limit), afterId);
+    }
+
+    /**
+     * Returns the number of tasks matching the query. Conditions on
+     * assignee, category and status are combined on the stores' id sets
+     * without reading any task.
+     */
+    int count(TaskQuery query);
+
+    /**
+     * Returns up to limit tasks matching the query whose ids are greater than
+     * afterId, in id order, with the same paging semantics as page().
+     */
+    List<Task> select(TaskQuery query, int afterId, int limit);
+
+    /**
+     * Iterates the tasks matching the query with ids greater than afterId, in
+     * id order, by default a chunk of select() at a time.
+     */
+    default Iterator<Task> iterate(TaskQuery query, int afterId) {
+        return new PagingIterator((after, limit) -> select(query, after, limit), afterId);
+    }
+
+    /**
+     * Makes the current contents durable, after which the write-ahead log
+     * records that produced them can be discarded. Returns the number of
+     * bytes written to files, not counting pages flushed from a mapping.
+     */
+    long checkpoint() throws IOException;
+
+    /**
+     * Runs the changes, made through this store's mutation methods on the
+     * calling thread, as one unit that readers on other threads see all of
+     * or none of. The caller keeps every other mutation out while they run.
+     * By default each change becomes visible as it is made.
+     */
+    default void applyAtomically(Runnable changes) {
+        changes.run();
+    }
+
+    /**
+     * Whether mutations change the store's files in place, where the OS may
+     * write them back at any moment. Such a store must only be given a
+     * change once its log record is on disk, since replay cannot undo a
+     * change the log lost.
+     */
+    default boolean writesInPlace() {
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+package todo;
+
+/**
+ * Pending and completed task counts for one assignee or category.
+ */
+public final class TaskSummary {
+    private final String name;
+    private final int pendingCount;
+    private final int completedCount;
+
+    TaskSummary(String name, int pendingCount, int completedCount) {
+        this.name = name;
+        this.pendingCount = pendingCount;
+        this.completedCount = completedCount;
+    }
+
+    // The spelling of the first task counted under the case-folded name
+    public String getName() {
+        return name;
+    }
+
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    public int getCompletedCount() {
+        return completedCount;
+    }
+
+    public int getTotalCount() {
+        return pendingCount + completedCount;
+    }
+
+    TaskSummary plus(int pendingDelta, int completedDelta) {
+        return new TaskSummary(name, pendingCount + pendingDelta, completedCount + completedDelta);
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + pendingCount + " pending, " + completedCount + " completed";
+    }
+}
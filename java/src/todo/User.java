@@ -1,5 +1,8 @@
+package todo;
+
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.Locale;
 import java.util.Objects;
 
 public class User implements Serializable {
@@ -21,16 +24,17 @@ public class User implements Serializable {
         return username;
     }
 
+    // Usernames are case-insensitive; equals and hashCode both use the folded name
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         User user = (User) o;
-        return username.equalsIgnoreCase(user.username);
+        return username.toLowerCase(Locale.ROOT).equals(user.username.toLowerCase(Locale.ROOT));
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(username);
+        return username.toLowerCase(Locale.ROOT).hashCode();
     }
 }
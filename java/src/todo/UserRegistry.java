@@ -0,0 +1,99 @@
+package todo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registered users, keyed by their case-folded name so that "Bob" and "bob"
+ * are the same user. The first spelling registered is kept as the username.
+ *
+ * Creating a user appends one record to the task log instead of rewriting
+ * the user file, so new users are batched to disk with the rest of the log.
+ * The full list is written to the users file only when the log is compacted.
+ */
+public class UserRegistry {
+    private final ConcurrentMap<String, User> users = new ConcurrentHashMap<>();
+    private final Path snapshotFile;
+    private final TaskLog log;
+
+    private UserRegistry(Path snapshotFile, TaskLog log) {
+        this.snapshotFile = snapshotFile;
+        this.log = log;
+    }
+
+    /**
+     * Opens the registry saved in the users file. Users created since the
+     * last compaction are restored while the task log is replayed.
+     */
+    public static UserRegistry load(Path snapshotFile, TaskLog log) throws IOException {
+        UserRegistry registry = new UserRegistry(snapshotFile, log);
+        if (Files.exists(snapshotFile)) {
+            for (User user : TaskCodec.readUsers(snapshotFile)) {
+                registry.restore(user.getUsername());
+            }
+        }
+        return registry;
+    }
+
+    public User find(String username) {
+        return users.get(TaskIndex.key(username));
+    }
+
+    /**
+     * Returns the user registered under the name in any case, registering
+     * it first if there is none. The creation record is queued on the log
+     * without waiting for it to reach the disk.
+     */
+    public User getOrCreate(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+
+        String key = TaskIndex.key(username);
+        User user = users.get(key);
+        if (user != null) {
+            return user;
+        }
+
+        User created = new User(username);
+        user = users.putIfAbsent(key, created);
+        if (user != null) {
+            return user; // Another thread created the user first
+        }
+
+        try {
+            log.appendCreateUser(username);
+        } catch (IOException e) {
+            System.err.println("Error saving user: " + e.getMessage());
+        }
+        return created;
+    }
+
+    // Re-registers a user read back from disk without logging it again
+    void restore(String username) {
+        users.putIfAbsent(TaskIndex.key(username), new User(username));
+    }
+
+    public Collection<User> all() {
+        return new ArrayList<>(users.values());
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * Writes every registered user to the users file, so the creation
+     * records in the log can be discarded. Returns the file size.
+     */
+    public long checkpoint() throws IOException {
+        List<User> snapshot = new ArrayList<>(users.values());
+        return TaskCodec.writeUsers(snapshotFile, snapshot);
+    }
+}
@@ -1,3 +1,5 @@
+package todo;
+
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
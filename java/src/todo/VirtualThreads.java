@@ -0,0 +1,28 @@
+package todo;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors that start a virtual thread per task where the runtime has them.
+ * Executors.newVirtualThreadPerTaskExecutor exists from Java 21; the build
+ * targets 17, so it is looked up reflectively.
+ */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns a new virtual-thread-per-task executor, or null on a runtime
+     * without virtual threads, in which case callers pick their own fallback.
+     */
+    static ExecutorService newExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntBitSetTest {
+    @Test
+    void matchesATreeSetThroughAddsAndRemovals() {
+        IntBitSet set = new IntBitSet();
+        NavigableSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(13);
+        for (int i = 0; i < 100_000; i++) {
+            // Values on both sides of 64-bit word boundaries, in a range that keeps the set growing
+            int value = random.nextBoolean() ? random.nextInt(5000) : 64 * random.nextInt(200) + 63 * random.nextInt(2);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        assertEquals(new ArrayList<>(expected), values(set));
+        for (int from = -1; from < 13_000; from += 7) {
+            Integer next = expected.ceiling(Math.max(from, 0));
+            assertEquals(next == null ? -1 : next, set.nextSetBit(from));
+        }
+        assertFalse(set.remove(1 << 20));
+        assertFalse(set.contains(1 << 20));
+    }
+
+    @Test
+    void combinesSetsOfDifferentLengths() {
+        Random random = new Random(29);
+        for (int round = 0; round < 100; round++) {
+            NavigableSet<Integer> a = randomValues(random, 1 + random.nextInt(2000));
+            NavigableSet<Integer> b = randomValues(random, 1 + random.nextInt(2000));
+            IntBitSet setA = bitSet(a);
+            IntBitSet setB = bitSet(b);
+
+            NavigableSet<Integer> and = new TreeSet<>(a);
+            and.retainAll(b);
+            IntBitSet result = setA.copy();
+            result.and(setB);
+            assertEquals(new ArrayList<>(and), values(result));
+            assertEquals(and.size(), result.size());
+
+            NavigableSet<Integer> or = new TreeSet<>(a);
+            or.addAll(b);
+            result = setA.copy();
+            result.or(setB);
+            assertEquals(new ArrayList<>(or), values(result));
+            assertEquals(or.size(), result.size());
+
+            NavigableSet<Integer> andNot = new TreeSet<>(a);
+            andNot.removeAll(b);
+            result = setA.copy();
+            result.andNot(setB);
+            assertEquals(new ArrayList<>(andNot), values(result));
+            assertEquals(andNot.size(), result.size());
+
+            // The copies left the original alone
+            assertEquals(new ArrayList<>(a), values(setA));
+        }
+    }
+
+    @Test
+    void buildsFromASortedSet() {
+        IntSortedSet sorted = new IntSortedSet();
+        for (int value : new int[]{0, 63, 64, 1000, 4095}) {
+            sorted.add(value);
+        }
+        IntBitSet set = IntBitSet.of(sorted);
+        assertEquals(List.of(0, 63, 64, 1000, 4095), values(set));
+        assertEquals(5, set.size());
+        assertTrue(IntBitSet.of(new IntSortedSet()).isEmpty());
+        assertTrue(IntBitSet.of(null).isEmpty());
+        assertEquals(-1, new IntBitSet().nextSetBit(0));
+    }
+
+    private static NavigableSet<Integer> randomValues(Random random, int range) {
+        NavigableSet<Integer> values = new TreeSet<>();
+        for (int i = random.nextInt(300); i > 0; i--) {
+            values.add(random.nextInt(range));
+        }
+        return values;
+    }
+
+    private static IntBitSet bitSet(NavigableSet<Integer> values) {
+        IntBitSet set = new IntBitSet();
+        for (int value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    private static List<Integer> values(IntBitSet set) {
+        List<Integer> values = new ArrayList<>();
+        for (int value = set.nextSetBit(0); value >= 0; value = set.nextSetBit(value + 1)) {
+            values.add(value);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,42 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntIntMapTest {
+    @Test
+    void matchesAHashMapThroughPutsAndRemovals() {
+        IntIntMap map = new IntIntMap();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            // A small key range keeps probe runs long and removals frequent
+            int key = random.nextInt(2000) * (random.nextBoolean() ? 1 : 1 << 20);
+            int value = random.nextInt(3) == 0 ? 0 : 1 + random.nextInt(100);
+            Integer previous = value == 0 ? expected.remove(key) : expected.put(key, value);
+            assertEquals(previous == null ? 0 : previous, map.put(key, value));
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = 0; key < 2000; key++) {
+            assertEquals(expected.getOrDefault(key, 0), map.get(key));
+            assertEquals(expected.getOrDefault(key << 20, 0), map.get(key << 20));
+        }
+    }
+
+    @Test
+    void absentKeysReadAsZero() {
+        IntIntMap map = new IntIntMap();
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.get(Integer.MAX_VALUE));
+        assertEquals(0, map.put(Integer.MAX_VALUE, 5));
+        assertEquals(5, map.get(Integer.MAX_VALUE));
+        assertEquals(5, map.put(Integer.MAX_VALUE, 0));
+        assertEquals(0, map.put(Integer.MAX_VALUE, 0));
+        assertTrue(map.isEmpty());
+    }
+}
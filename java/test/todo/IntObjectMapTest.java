@@ -0,0 +1,56 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntObjectMapTest {
+    @Test
+    void matchesAHashMapThroughGrowth() {
+        // Sized small, so the map rehashes many times along the way
+        IntObjectMap<String> map = new IntObjectMap<>(1);
+        Map<Integer, String> expected = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 100_000; i++) {
+            // Consecutive ids, as tasks get them, and keys that collide after masking
+            int key = random.nextBoolean() ? random.nextInt(20_000) : random.nextInt(500) << 16;
+            String value = random.nextInt(10) == 0 ? null : "v" + i;
+            assertEquals(expected.get(key), map.put(key, value));
+            expected.put(key, value);
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = 0; key < 20_000; key++) {
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            assertEquals(expected.get(key), map.get(key));
+        }
+        for (int high = 0; high < 500; high++) {
+            assertEquals(expected.get(high << 16), map.get(high << 16));
+        }
+    }
+
+    @Test
+    void nullValuesAreToldApartFromAbsentKeys() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        assertNull(map.put(Integer.MIN_VALUE, null));
+        assertTrue(map.containsKey(Integer.MIN_VALUE));
+        assertNull(map.get(Integer.MIN_VALUE));
+        assertFalse(map.containsKey(0));
+        assertEquals(1, map.size());
+
+        assertNull(map.put(Integer.MIN_VALUE, "set"));
+        assertEquals("set", map.put(Integer.MIN_VALUE, null));
+        assertEquals(1, map.size());
+
+        map.put(-1, "negative");
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(Integer.MIN_VALUE));
+        assertFalse(map.containsKey(-1));
+        assertNull(map.put(-1, "again"));
+        assertEquals("again", map.get(-1));
+    }
+}
@@ -0,0 +1,66 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntSortedSetTest {
+    @Test
+    void matchesATreeSetThroughAppendsInsertsAndRemovals() {
+        IntSortedSet set = new IntSortedSet();
+        NavigableSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(19);
+        int next = 0;
+        for (int i = 0; i < 50_000; i++) {
+            int value;
+            switch (random.nextInt(4)) {
+                case 0 -> value = next++; // The usual append of a new, highest id
+                case 1 -> value = random.nextInt(next + 1) - 50;
+                default -> value = random.nextInt(next + 1);
+            }
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+
+        List<Integer> inOrder = new ArrayList<>();
+        for (int i = 0; i < set.size(); i++) {
+            inOrder.add(set.get(i));
+        }
+        assertEquals(new ArrayList<>(expected), inOrder);
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), set.toArray());
+
+        for (int value = -60; value <= next + 1; value += 3) {
+            assertEquals(expected.contains(value), set.contains(value));
+            assertEquals(expected.headSet(value, true).size(), set.indexAfter(value));
+        }
+    }
+
+    @Test
+    void removesAtBothEnds() {
+        IntSortedSet set = new IntSortedSet();
+        assertTrue(set.isEmpty());
+        assertFalse(set.remove(1));
+        assertEquals(0, set.indexAfter(Integer.MAX_VALUE));
+
+        for (int value : new int[]{5, 1, 9, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+            assertTrue(set.add(value));
+        }
+        assertFalse(set.add(9));
+        assertTrue(set.remove(Integer.MIN_VALUE));
+        assertTrue(set.remove(Integer.MAX_VALUE));
+        assertArrayEquals(new int[]{1, 5, 9}, set.toArray());
+        assertEquals(1, set.indexAfter(1));
+        assertEquals(2, set.indexAfter(6));
+        assertEquals(3, set.indexAfter(9));
+    }
+}
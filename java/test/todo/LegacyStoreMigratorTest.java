@@ -0,0 +1,92 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LegacyStoreMigratorTest {
+    /*
+     * Written by the original, unpackaged Task and User classes: an ArrayList
+     * of three tasks, the second completed, and a HashMap of three users.
+     * Carol has no tasks, so only users.ser knows about her.
+     */
+    private static final String TASKS_SER = ""
+            + "rO0ABXNyABNqYXZhLnV0aWwuQXJyYXlMaXN0eIHSHZnHYZ0DAAFJAARzaXpleHAAAAADdwQAAAADc3IABFRhc2sAAAAAAAAA"
+            + "AQIAB0kAAmlkTAAMYXNzaWduZWRVc2VydAASTGphdmEvbGFuZy9TdHJpbmc7TAAIY2F0ZWdvcnlxAH4AA0wADWNvbXBsZXRl"
+            + "ZERhdGV0ABlMamF2YS90aW1lL0xvY2FsRGF0ZVRpbWU7TAALY3JlYXRlZERhdGVxAH4ABEwAC2Rlc2NyaXB0aW9ucQB+AANM"
+            + "AAZzdGF0dXN0ABFMVGFzayRUYXNrU3RhdHVzO3hwAAAAAXQABUFsaWNldAAEV29ya3BzcgANamF2YS50aW1lLlNlcpVdhLob"
+            + "IkiyDAAAeHB3CQUAAAfoAwEJ4Xh0AAxXcml0ZSByZXBvcnR+cgAPVGFzayRUYXNrU3RhdHVzAAAAAAAAAAASAAB4cgAOamF2"
+            + "YS5sYW5nLkVudW0AAAAAAAAAABIAAHhwdAAHUEVORElOR3NxAH4AAgAAAAJ0AANib2J0AARIb21lc3EAfgAJdwkFAAAH6AMD"
+            + "CPB4c3EAfgAJdwgFAAAH6AMC7Xh0AAhCdXkgbWlsa35xAH4ADHQACUNPTVBMRVRFRHNxAH4AAgAAAAVxAH4AB3QAB0VycmFu"
+            + "ZHNwc3EAfgAJdwgFAAAH6AME83h0ABRDYWxsIMOcbsOvY8O4ZMOpIOKck3EAfgAOeA==";
+    private static final String USERS_SER = ""
+            + "rO0ABXNyABFqYXZhLnV0aWwuSGFzaE1hcAUH2sHDFmDRAwACRgAKbG9hZEZhY3RvckkACXRocmVzaG9sZHhwP0AAAAAAAAx3"
+            + "CAAAABAAAAADdAADYm9ic3IABFVzZXIAAAAAAAAAAQIAAUwACHVzZXJuYW1ldAASTGphdmEvbGFuZy9TdHJpbmc7eHBxAH4A"
+            + "AnQABUFsaWNlc3EAfgADcQB+AAZ0AAVDYXJvbHNxAH4AA3EAfgAIeA==";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void migratesTheOriginalSerializedFiles() throws IOException {
+        writeFixtures();
+        Path tasksFile = directory.resolve(TaskManager.TASKS_FILE);
+        Path usersFile = directory.resolve(TaskManager.USERS_FILE);
+        LegacyStoreMigrator.migrate(directory, tasksFile, usersFile);
+
+        assertFalse(Files.exists(directory.resolve(LegacyStoreMigrator.LEGACY_TASKS_FILE)));
+        assertFalse(Files.exists(directory.resolve(LegacyStoreMigrator.LEGACY_USERS_FILE)));
+        assertTrue(Files.exists(directory.resolve(LegacyStoreMigrator.LEGACY_TASKS_FILE + ".migrated")));
+        assertTrue(Files.exists(directory.resolve(LegacyStoreMigrator.LEGACY_USERS_FILE + ".migrated")));
+
+        List<Task> tasks = TaskCodec.readTasks(tasksFile);
+        assertEquals(List.of(1, 2, 5), tasks.stream().map(Task::getId).toList());
+        Task pending = tasks.get(0);
+        assertEquals("Write report", pending.getDescription());
+        assertEquals("Work", pending.getCategory());
+        assertEquals("Alice", pending.getAssignedUser());
+        assertEquals(Task.TaskStatus.PENDING, pending.getStatus());
+        assertEquals(LocalDateTime.of(2024, 3, 1, 9, 30), pending.getCreatedDate());
+        assertNull(pending.getCompletedDate());
+        assertEquals(1, pending.getVersion());
+
+        Task completed = tasks.get(1);
+        assertEquals(Task.TaskStatus.COMPLETED, completed.getStatus());
+        assertEquals("bob", completed.getAssignedUser());
+        assertEquals(LocalDateTime.of(2024, 3, 3, 8, 15), completed.getCompletedDate());
+        assertEquals("Call Ünïcødé ✓", tasks.get(2).getDescription());
+
+        assertEquals(List.of("Alice", "Carol", "bob"),
+                TaskCodec.readUsers(usersFile).stream().map(User::getUsername).sorted().toList());
+
+        // A second run finds nothing left to migrate
+        LegacyStoreMigrator.migrate(directory, tasksFile, usersFile);
+        assertEquals(3, TaskCodec.readTasks(tasksFile).size());
+    }
+
+    @Test
+    void managerOpensAMigratedDirectory() throws IOException {
+        writeFixtures();
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL)) {
+            assertEquals("Write report", manager.getTaskById(1).get().getDescription());
+            assertEquals(Task.TaskStatus.COMPLETED, manager.getTaskById(2).get().getStatus());
+            assertEquals("Carol", manager.getOrCreateUser("CAROL").getUsername());
+            // New ids continue after the highest migrated one
+            assertTrue(manager.addTask("New", "Work", "bob"));
+            assertTrue(manager.getTaskById(6).isPresent());
+        }
+    }
+
+    private void writeFixtures() throws IOException {
+        Files.write(directory.resolve(LegacyStoreMigrator.LEGACY_TASKS_FILE), Base64.getDecoder().decode(TASKS_SER));
+        Files.write(directory.resolve(LegacyStoreMigrator.LEGACY_USERS_FILE), Base64.getDecoder().decode(USERS_SER));
+    }
+}
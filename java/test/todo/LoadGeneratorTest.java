@@ -0,0 +1,36 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+    @Test
+    void operationMixRunsEvenTinyShares() {
+        Map<LoadGenerator.Operation, Integer> weights = new EnumMap<>(LoadGenerator.Operation.class);
+        weights.put(LoadGenerator.Operation.ADD, 1);
+        weights.put(LoadGenerator.Operation.LIST, 999);
+        weights.put(LoadGenerator.Operation.REMOVE, 0);
+        LoadGenerator.OperationMix mix = new LoadGenerator.OperationMix(weights);
+
+        Map<LoadGenerator.Operation, Integer> drawn = new EnumMap<>(LoadGenerator.Operation.class);
+        Random random = new Random(1);
+        for (int i = 0; i < 1_000_000; i++) {
+            drawn.merge(mix.sample(random), 1, Integer::sum);
+        }
+        assertEquals(1000, drawn.get(LoadGenerator.Operation.ADD), 150);
+        assertFalse(drawn.containsKey(LoadGenerator.Operation.REMOVE));
+        assertEquals(1_000_000, drawn.get(LoadGenerator.Operation.ADD) + drawn.get(LoadGenerator.Operation.LIST));
+    }
+
+    @Test
+    void operationMixNeedsAPositiveWeight() {
+        Map<LoadGenerator.Operation, Integer> weights = new EnumMap<>(LoadGenerator.Operation.class);
+        weights.put(LoadGenerator.Operation.ADD, 0);
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator.OperationMix(weights));
+    }
+}
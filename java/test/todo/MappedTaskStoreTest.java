@@ -0,0 +1,82 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedTaskStoreTest {
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storesAndIndexesTasksAcrossReopen() throws IOException {
+        try (MappedTaskStore store = MappedTaskStore.open(directory)) {
+            store.add(new Task(1, "Write report", "Work", "Alice", CREATED));
+            store.add(new Task(2, "Buy milk", "Home", "Bob", CREATED));
+            store.add(new Task(3, "Plan trip", "Home", "alice", CREATED));
+            store.markCompleted(2, CREATED.plusHours(1));
+            store.reassign(3, "Bob");
+            store.remove(1);
+            store.checkpoint();
+        }
+
+        try (MappedTaskStore store = MappedTaskStore.open(directory)) {
+            assertNull(store.get(1));
+            assertEquals(2, store.size());
+            assertEquals(3, store.maxId());
+
+            Task completed = store.get(2);
+            assertEquals("Buy milk", completed.getDescription());
+            assertEquals(Task.TaskStatus.COMPLETED, completed.getStatus());
+            assertEquals(CREATED.plusHours(1), completed.getCompletedDate());
+            assertEquals(2, completed.getVersion());
+
+            assertEquals(List.of(2, 3), ids(store.findByUser("BOB")));
+            assertEquals(List.of(2, 3), ids(store.findByCategory("home")));
+            assertEquals(List.of(3), ids(store.findByUserAndStatus("bob", Task.TaskStatus.PENDING)));
+            assertEquals(2, store.get(3).getVersion());
+        }
+    }
+
+    @Test
+    void addKeepsTheGivenVersion() throws IOException {
+        try (MappedTaskStore store = MappedTaskStore.open(directory)) {
+            store.add(new Task(5, "Imported", "Work", "Alice", TaskCodec.toEpochMillis(CREATED),
+                    Task.NOT_COMPLETED, 42));
+            assertEquals(42, store.get(5).getVersion());
+            assertEquals(43, store.reassign(5, "Bob").getVersion());
+        }
+    }
+
+    @Test
+    void managerSyncsTheLogBeforeChangingTheMapping() {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL,
+                TaskStore.Backend.MAPPED)) {
+            long syncs = manager.getMetrics().logSync().getCount();
+            for (int i = 0; i < 5; i++) {
+                assertTrue(manager.addTask("Task " + i, "Work", "Alice"));
+            }
+            assertTrue(manager.markTaskCompleted(1, "Alice"));
+            // Even under INTERVAL, each change waited for its own sync
+            assertTrue(manager.getMetrics().logSync().getCount() >= syncs + 6);
+        }
+
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL,
+                TaskStore.Backend.MAPPED)) {
+            assertEquals(5, manager.getUserTasks("Alice").size());
+            assertEquals(Task.TaskStatus.COMPLETED, manager.getTaskById(1).orElseThrow().getStatus());
+        }
+    }
+
+    private static List<Integer> ids(List<Task> tasks) {
+        return tasks.stream().map(Task::getId).toList();
+    }
+}
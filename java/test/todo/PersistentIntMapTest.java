@@ -0,0 +1,204 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentIntMapTest {
+    @Test
+    void matchesATreeMapThroughPutsAndRemovals() {
+        Random random = new Random(11);
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        NavigableMap<Integer, Integer> expected = new TreeMap<>();
+        // Earlier versions, which later changes must leave alone
+        List<PersistentIntMap<Integer>> versions = new ArrayList<>();
+        List<NavigableMap<Integer, Integer>> expectedVersions = new ArrayList<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            int key = key(random);
+            if (random.nextInt(3) == 0) {
+                map = map.remove(key);
+                expected.remove(key);
+            } else {
+                map = map.put(key, i);
+                expected.put(key, i);
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+            int from = random.nextBoolean() ? key(random) : key + random.nextInt(3) - 1;
+            Integer ceiling = expected.ceilingKey(Math.max(from, 0));
+            assertEquals(ceiling == null ? -1 : ceiling, map.ceilingKey(from), "ceiling of " + from);
+            if (i % 1000 == 0) {
+                versions.add(map);
+                expectedVersions.add(new TreeMap<>(expected));
+            }
+        }
+
+        assertSameEntries(expected, map);
+        for (int v = 0; v < versions.size(); v++) {
+            assertSameEntries(expectedVersions.get(v), versions.get(v));
+        }
+    }
+
+    @Test
+    void setOperationsMatchTheModel() {
+        Random random = new Random(5);
+        for (int round = 0; round < 200; round++) {
+            NavigableMap<Integer, Integer> a = randomModel(random);
+            NavigableMap<Integer, Integer> b = randomModel(random);
+            NavigableMap<Integer, Integer> c = randomModel(random);
+            PersistentIntMap<Integer> mapA = build(a);
+            PersistentIntMap<Integer> mapB = build(b);
+            PersistentIntMap<Integer> mapC = build(c);
+
+            NavigableMap<Integer, Integer> and = new TreeMap<>(a);
+            and.keySet().retainAll(b.keySet());
+            assertSameEntries(and, mapA.and(mapB));
+
+            NavigableMap<Integer, Integer> or = new TreeMap<>(b);
+            or.putAll(a);
+            assertSameEntries(or, mapA.or(mapB));
+
+            NavigableMap<Integer, Integer> andNot = new TreeMap<>(a);
+            andNot.keySet().removeAll(b.keySet());
+            assertSameEntries(andNot, mapA.andNot(mapB));
+
+            NavigableMap<Integer, Integer> even = new TreeMap<>(a);
+            even.values().removeIf(value -> value % 2 != 0);
+            assertSameEntries(even, mapA.filter(value -> value % 2 == 0));
+
+            NavigableMap<Integer, Integer> counted = new TreeMap<>(and);
+            counted.keySet().removeAll(c.keySet());
+            assertEquals(counted.size(), PersistentIntMap.intersectionSize(
+                    new PersistentIntMap<?>[]{mapA, mapB}, new PersistentIntMap<?>[]{mapC}));
+            assertEquals(and.size(), PersistentIntMap.intersectionSize(
+                    new PersistentIntMap<?>[]{mapA, mapB}, new PersistentIntMap<?>[0]));
+        }
+    }
+
+    @Test
+    void combiningWithItselfOrNothing() {
+        NavigableMap<Integer, Integer> model = randomModel(new Random(3));
+        PersistentIntMap<Integer> map = build(model);
+        PersistentIntMap<Integer> empty = PersistentIntMap.empty();
+
+        assertSameEntries(model, map.and(map));
+        assertSameEntries(model, map.or(empty));
+        assertSameEntries(model, map.andNot(empty));
+        assertTrue(map.andNot(map).isEmpty());
+        assertTrue(map.and(empty).isEmpty());
+        assertTrue(map.filter(value -> false).isEmpty());
+        assertEquals(0, PersistentIntMap.intersectionSize(
+                new PersistentIntMap<?>[]{map, empty}, new PersistentIntMap<?>[0]));
+        assertEquals(0, PersistentIntMap.intersectionSize(
+                new PersistentIntMap<?>[]{map}, new PersistentIntMap<?>[]{map}));
+    }
+
+    @Test
+    void removalsCollapseEmptyNodes() {
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        // Whole 32-key leaves, a leaf on each side of a 1024-key node boundary, and the top of the range
+        int[] keys = {0, 31, 32, 63, 1023, 1024, Integer.MAX_VALUE - 31, Integer.MAX_VALUE};
+        for (int key : keys) {
+            map = map.put(key, key);
+        }
+        PersistentIntMap<Integer> full = map;
+
+        map = map.remove(32).remove(63);
+        assertEquals(1023, map.ceilingKey(32));
+        map = map.remove(1023).remove(1024);
+        assertEquals(Integer.MAX_VALUE - 31, map.ceilingKey(32));
+        assertEquals(Integer.MAX_VALUE, map.lastKey());
+        map = map.remove(Integer.MAX_VALUE).remove(Integer.MAX_VALUE - 31);
+        assertEquals(31, map.lastKey());
+        assertEquals(-1, map.ceilingKey(32));
+        map = map.remove(0).remove(31);
+        assertTrue(map.isEmpty());
+        assertEquals(-1, map.ceilingKey(0));
+        assertEquals(-1, map.lastKey());
+        assertFalse(map.iterator().hasNext());
+        assertSame(map, map.remove(5));
+
+        assertEquals(keys.length, full.size());
+        assertEquals(Integer.MAX_VALUE, full.lastKey());
+        assertNotNull(full.andNot(full.remove(1024)).get(1024));
+        assertEquals(1, full.andNot(full.remove(1024)).size());
+    }
+
+    @Test
+    void fromSortedMatchesPuts() {
+        NavigableMap<Integer, Integer> model = randomModel(new Random(9));
+        int[] keys = new int[model.size() + 2];
+        Object[] values = new Object[keys.length];
+        int i = 1;
+        for (Map.Entry<Integer, Integer> entry : model.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i++] = entry.getValue();
+        }
+        assertSameEntries(model, PersistentIntMap.fromSorted(keys, values, 1, model.size() + 1));
+        assertTrue(PersistentIntMap.fromSorted(keys, values, 1, 1).isEmpty());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> PersistentIntMap.fromSorted(new int[]{2, 2}, new Object[]{1, 1}, 0, 2));
+        assertThrows(IllegalArgumentException.class, () -> PersistentIntMap.empty().put(-1, 1));
+        assertNull(PersistentIntMap.empty().get(-1));
+    }
+
+    // Keys on both sides of 32-key leaf boundaries, anywhere below 5000, and near the top of the range
+    private static int key(Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return 32 * random.nextInt(64) + (random.nextBoolean() ? 31 : random.nextInt(2));
+            case 1:
+                return Integer.MAX_VALUE - random.nextInt(100);
+            default:
+                return random.nextInt(5000);
+        }
+    }
+
+    private static NavigableMap<Integer, Integer> randomModel(Random random) {
+        NavigableMap<Integer, Integer> model = new TreeMap<>();
+        int count = random.nextInt(300);
+        for (int i = 0; i < count; i++) {
+            model.put(key(random), random.nextInt(1000));
+        }
+        return model;
+    }
+
+    private static PersistentIntMap<Integer> build(NavigableMap<Integer, Integer> model) {
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        for (Map.Entry<Integer, Integer> entry : model.entrySet()) {
+            map = map.put(entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+
+    private static void assertSameEntries(NavigableMap<Integer, Integer> expected, PersistentIntMap<Integer> map) {
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected.isEmpty() ? -1 : expected.lastKey(), map.lastKey());
+        Iterator<Integer> values = map.iterator();
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+            assertTrue(values.hasNext());
+            assertEquals(entry.getValue(), values.next());
+        }
+        assertFalse(values.hasNext());
+
+        if (!expected.isEmpty()) {
+            int middle = expected.firstKey() + (expected.lastKey() - expected.firstKey()) / 2;
+            Iterator<Integer> tail = map.valuesFrom(middle);
+            for (Integer value : expected.tailMap(middle, true).values()) {
+                assertEquals(value, tail.next());
+            }
+            assertFalse(tail.hasNext());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedSnapshotTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void checkpointRewritesOnlyDirtySegments() throws IOException {
+        Path tasksFile = directory.resolve(TaskManager.TASKS_FILE);
+        TaskIndex index = TaskIndex.load(tasksFile);
+        for (int id = 1; id <= 4 * SegmentedSnapshot.SEGMENT_SIZE; id++) {
+            index.add(new Task(id, "Task " + id, "Work", "Alice"));
+        }
+        long full = index.checkpoint();
+        assertEquals(5, segmentFiles().size());
+
+        index.markCompleted(SegmentedSnapshot.SEGMENT_SIZE + 1, LocalDateTime.now());
+        long one = index.checkpoint();
+        assertTrue(one < full / 3, "Rewrote " + one + " of " + full + " bytes");
+        assertEquals(0, index.checkpoint());
+        // The superseded generation of the segment is gone
+        assertEquals(5, segmentFiles().size());
+
+        TaskIndex reopened = TaskIndex.load(tasksFile);
+        assertEquals(4 * SegmentedSnapshot.SEGMENT_SIZE, reopened.size());
+        assertEquals(Task.TaskStatus.COMPLETED, reopened.get(SegmentedSnapshot.SEGMENT_SIZE + 1).getStatus());
+    }
+
+    @Test
+    void managerRestartsFromCompactedSnapshotAndLogTail() {
+        int added = 12_000; // Past the compaction threshold
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL)) {
+            for (int i = 0; i < added; i++) {
+                manager.addTask("Task " + i, i % 2 == 0 ? "Work" : "Home", i % 3 == 0 ? "Alice" : "Bob");
+            }
+            // After the compaction, so these come back from the log
+            manager.removeTask(5);
+            manager.markTaskCompleted(9_001, "Alice");
+            manager.reassignTask(11_999, "Bob", "Carol");
+        }
+        assertTrue(Files.exists(directory.resolve(SegmentedSnapshot.MANIFEST_FILE)));
+
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL)) {
+            assertEquals(added - 1, manager.getAllTasks().size());
+            assertFalse(manager.getTaskById(5).isPresent());
+            assertEquals(Task.TaskStatus.COMPLETED, manager.getTaskById(9_001).get().getStatus());
+            assertEquals("Carol", manager.getTaskById(11_999).get().getAssignedUser());
+            assertEquals(added / 3, manager.getUserTasks("Alice").size());
+            assertTrue(manager.addTask("After restart", "Work", "Alice"));
+            assertTrue(manager.getTaskById(added + 1).isPresent());
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve(SegmentedSnapshot.SEGMENT_DIRECTORY))) {
+            return files.collect(Collectors.toList());
+        }
+    }
+}
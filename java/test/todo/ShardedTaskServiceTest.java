@@ -0,0 +1,211 @@
+package todo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedTaskServiceTest {
+    private static final int SHARDS = 3;
+    private static final String[] USERS = {"alice", "Bob", "carol", "dave", "Eve", "frank", "grace"};
+    private static final String[] CATEGORIES = {"Work", "home", "Errands"};
+
+    @TempDir
+    Path directory;
+
+    private final List<TaskManager> shards = new ArrayList<>();
+    private TaskManager reference;
+
+    @BeforeEach
+    void open() {
+        for (int i = 0; i < SHARDS; i++) {
+            TaskManager shard = new TaskManager(directory.resolve("shard-" + i).toString(),
+                    TaskLog.FsyncPolicy.INTERVAL);
+            shard.setShard(i, SHARDS);
+            shards.add(shard);
+        }
+        reference = new TaskManager(directory.resolve("reference").toString(), TaskLog.FsyncPolicy.INTERVAL);
+    }
+
+    @AfterEach
+    void close() {
+        for (TaskManager shard : shards) {
+            shard.close();
+        }
+        reference.close();
+    }
+
+    @Test
+    void behavesLikeOneStore() {
+        try (ShardedTaskService router = new ShardedTaskService(shards)) {
+            Random random = new Random(1);
+            for (int i = 0; i < 300; i++) {
+                String user = USERS[random.nextInt(USERS.length)];
+                String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+                assertTrue(router.addTask("Task " + i, category, user));
+                assertTrue(reference.addTask("Task " + i, category, user));
+            }
+
+            // The ids differ between the two, so pair them up by description
+            Map<Integer, Integer> routerIds = new HashMap<>();
+            Map<String, Integer> byDescription = new HashMap<>();
+            for (String user : USERS) {
+                for (Task task : router.getUserTasks(user)) {
+                    byDescription.put(task.getDescription(), task.getId());
+                }
+            }
+            assertEquals(300, new HashSet<>(byDescription.values()).size());
+            for (Task task : reference.getAllTasks()) {
+                routerIds.put(task.getId(), byDescription.get(task.getDescription()));
+            }
+
+            for (int i = 0; i < 600; i++) {
+                int referenceId = 1 + random.nextInt(300);
+                int id = routerIds.get(referenceId);
+                String from = USERS[random.nextInt(USERS.length)];
+                String to = USERS[random.nextInt(USERS.length)];
+                switch (random.nextInt(4)) {
+                    case 0 -> assertEquals(reference.markTaskCompleted(referenceId, from),
+                            router.markTaskCompleted(id, from));
+                    case 1 -> assertEquals(reference.reassignTask(referenceId, from, to),
+                            router.reassignTask(id, from, to));
+                    case 2 -> assertEquals(reference.reassignTask(referenceId, null, to),
+                            router.reassignTask(id, null, to));
+                    default -> assertEquals(reference.removeTask(referenceId), router.removeTask(id));
+                }
+            }
+
+            for (String user : USERS) {
+                assertEquals(describe(reference.getUserTasks(user)), describe(router.getUserTasks(user)));
+                TaskSummary expected = reference.getUserSummary(user);
+                TaskSummary actual = router.getUserSummary(user);
+                assertEquals(expected.getPendingCount(), actual.getPendingCount());
+                assertEquals(expected.getCompletedCount(), actual.getCompletedCount());
+            }
+            for (String category : CATEGORIES) {
+                assertEquals(describe(reference.filterTasksByCategory(category)),
+                        describe(router.filterTasksByCategory(category)));
+            }
+            assertEquals(reference.getAllTasks().size(), countOnShards());
+        }
+    }
+
+    @Test
+    void versionCheckGuardsCrossShardReassign() {
+        String owner = USERS[0];
+        String elsewhere = userOnAnotherShard(owner);
+        try (ShardedTaskService router = new ShardedTaskService(shards)) {
+            router.addTask("Task", "Work", owner);
+            Task task = router.getUserTasks(owner).get(0);
+
+            assertFalse(router.reassignIfVersion(task.getId(), owner, elsewhere, task.getVersion() + 1));
+            assertEquals(owner, router.getTaskById(task.getId()).get().getAssignedUser());
+
+            assertTrue(router.reassignIfVersion(task.getId(), owner, elsewhere, task.getVersion()));
+            Task moved = router.getTaskById(task.getId()).get();
+            assertEquals(elsewhere, moved.getAssignedUser());
+            assertTrue(moved.getVersion() > task.getVersion());
+            assertEquals(1, countOnShards());
+        }
+    }
+
+    @Test
+    void nextRouterFinishesInterruptedHandoffs() {
+        String owner = USERS[0];
+        String elsewhere = userOnAnotherShard(owner);
+        TaskManager source = shards.get(ShardedTaskService.shardOf(owner, SHARDS));
+        TaskManager target = shards.get(ShardedTaskService.shardOf(elsewhere, SHARDS));
+        try (ShardedTaskService router = new ShardedTaskService(shards)) {
+            for (int i = 0; i < 3; i++) {
+                router.addTask("Task " + i, "Work", owner);
+            }
+        }
+        List<Task> tasks = source.getUserTasks(owner);
+
+        // The router stopped after the prepare phase of one handoff
+        assertTrue(source.reassignTask(tasks.get(0).getId(), owner, elsewhere));
+        // and after the import of another, before the removal from the source
+        assertTrue(source.reassignTask(tasks.get(1).getId(), owner, elsewhere));
+        assertTrue(target.importTask(source.getTaskById(tasks.get(1).getId()).get()));
+
+        try (ShardedTaskService router = new ShardedTaskService(shards)) {
+            assertEquals(2, router.getUserTasks(elsewhere).size());
+            assertEquals(1, router.getUserTasks(owner).size());
+            assertEquals(3, countOnShards());
+            assertTrue(source.getUserTasks(elsewhere).isEmpty());
+            assertEquals(0, router.recover());
+
+            // Ids stay unique when adding after the moves
+            router.addTask("Later", "Work", elsewhere);
+            Set<Integer> ids = new HashSet<>();
+            for (TaskManager shard : shards) {
+                for (Task task : shard.getAllTasks()) {
+                    assertTrue(ids.add(task.getId()));
+                }
+            }
+        }
+    }
+
+    @Test
+    void routerServesEachUsersChangesOverTheWire() throws Exception {
+        String owner = USERS[0];
+        String elsewhere = userOnAnotherShard(owner);
+        try (ShardedTaskService router = new ShardedTaskService(shards);
+             TaskServer server = new TaskServer(router, new InetSocketAddress("127.0.0.1", 0));
+             TaskClient client = TaskClient.connect("127.0.0.1", server.getPort())) {
+            client.addTask("Before", "Work", owner);
+            long start = client.getChangeSequence(owner);
+            assertEquals(shards.get(ShardedTaskService.shardOf(owner, SHARDS)).getChangeSequence(), start);
+
+            client.addTask("After", "Work", owner);
+            client.addTask("Other shard", "Work", elsewhere);
+            List<TaskEvent> events = TaskFeedTest.collect(
+                    client.changes(TaskFilter.all().assignedTo(owner), start), 1);
+            assertEquals("After", events.get(0).getTask().getDescription());
+            assertTrue(events.get(0).getSequence() > start);
+
+            // No one sequence covers every shard
+            assertThrows(UnsupportedOperationException.class, client::getChangeSequence);
+            assertThrows(IllegalArgumentException.class, () -> router.changes(TaskFilter.all(), 0));
+        }
+    }
+
+    private static String userOnAnotherShard(String user) {
+        int shard = ShardedTaskService.shardOf(user, SHARDS);
+        for (String other : USERS) {
+            if (ShardedTaskService.shardOf(other, SHARDS) != shard) {
+                return other;
+            }
+        }
+        throw new AssertionError("Every user hashes to shard " + shard);
+    }
+
+    private int countOnShards() {
+        int count = 0;
+        for (TaskManager shard : shards) {
+            count += shard.getAllTasks().size();
+        }
+        return count;
+    }
+
+    private static Set<String> describe(List<Task> tasks) {
+        Set<String> descriptions = new TreeSet<>();
+        for (Task task : tasks) {
+            descriptions.add(task.getDescription() + "|" + task.getStatus() + "|" + task.getAssignedUser());
+        }
+        return descriptions;
+    }
+}
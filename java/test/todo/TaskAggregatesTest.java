@@ -0,0 +1,76 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskAggregatesTest {
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 1, 1, 9, 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void countsByUserAndCategoryCaseInsensitively() {
+        Task first = new Task(1, "One", "Work", "Alice", CREATED);
+        Task second = new Task(2, "Two", "work", "alice", CREATED);
+        TaskAggregates aggregates = TaskAggregates.of(List.of(first, second.completed(CREATED)));
+
+        assertEquals(1, aggregates.user("ALICE").getPendingCount());
+        assertEquals(1, aggregates.user("ALICE").getCompletedCount());
+        assertEquals("Alice", aggregates.user("alice").getName());
+        assertEquals(2, aggregates.category("Work").getTotalCount());
+        assertEquals(1, aggregates.categories().size());
+    }
+
+    @Test
+    void reassigningAndRemovingMoveTheCounts() {
+        Task task = new Task(1, "One", "Work", "Alice", CREATED);
+        TaskAggregates aggregates = new TaskAggregates();
+        aggregates.added(task);
+        Task reassigned = task.withAssignedUser("Bob");
+        aggregates.replaced(task, reassigned);
+
+        assertEquals(0, aggregates.user("Alice").getTotalCount());
+        assertEquals(1, aggregates.user("Bob").getPendingCount());
+        assertEquals(Set.of("Bob"), aggregates.users());
+
+        aggregates.removed(reassigned);
+        assertTrue(aggregates.users().isEmpty());
+        assertTrue(aggregates.categories().isEmpty());
+    }
+
+    @Test
+    void changeAppliedBeforeItsAddStillCountsCorrectly() {
+        Task pending = new Task(1, "One", "Work", "Alice", CREATED);
+        Task completed = pending.completed(CREATED);
+        TaskAggregates aggregates = new TaskAggregates();
+
+        // Pending -1 and completed +1 sum to zero, but must not be dropped
+        aggregates.replaced(pending, completed);
+        aggregates.added(pending);
+
+        assertEquals(0, aggregates.user("Alice").getPendingCount());
+        assertEquals(1, aggregates.user("Alice").getCompletedCount());
+        assertEquals(0, aggregates.category("Work").getPendingCount());
+        assertEquals(1, aggregates.category("Work").getCompletedCount());
+    }
+
+    @Test
+    void missingNamesHaveEmptySummaries() {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL)) {
+            manager.addTask("Task", "Work", "Alice");
+            for (String name : new String[]{null, "", "  "}) {
+                assertEquals(0, manager.getUserSummary(name).getTotalCount());
+                assertEquals(0, manager.getCategorySummary(name).getTotalCount());
+            }
+            assertEquals(1, manager.getUserSummary("alice").getPendingCount());
+        }
+    }
+}
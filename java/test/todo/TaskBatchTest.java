@@ -0,0 +1,143 @@
+package todo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskBatchTest {
+    @TempDir
+    Path directory;
+
+    private TaskManager manager;
+
+    @BeforeEach
+    void open() {
+        manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.PER_OPERATION);
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(manager.addTask("Task " + i, "Work", "Alice"));
+        }
+    }
+
+    @AfterEach
+    void close() {
+        manager.close();
+    }
+
+    @Test
+    void oneInvalidMutationRejectsTheWholeBatch() {
+        long sequence = manager.getChangeSequence();
+        List<ConsoleUtils.Result<Task>> results = manager.applyBatch(List.of(
+                Mutation.complete(1, "Alice"),
+                Mutation.reassign(2, "Bob", "Carol"),
+                Mutation.add(" ", "Work", "Alice"),
+                Mutation.remove(3)));
+
+        assertEquals(4, results.size());
+        assertFalse(results.get(0).isSuccess());
+        assertTrue(results.get(0).getErrorMessage().startsWith("Batch rejected: Mutation 2 "),
+                results.get(0).getErrorMessage());
+        assertTrue(results.get(0).getErrorMessage().endsWith("Task #2 is not assigned to Bob"));
+        assertEquals("Task #2 is not assigned to Bob", results.get(1).getErrorMessage());
+        assertEquals("Description cannot be empty", results.get(2).getErrorMessage());
+        assertEquals(results.get(0).getErrorMessage(), results.get(3).getErrorMessage());
+
+        assertUnchanged();
+        assertEquals(sequence, manager.getChangeSequence());
+        restart();
+        assertUnchanged();
+    }
+
+    @Test
+    void validatesEachMutationAgainstTheEarlierOnes() {
+        List<ConsoleUtils.Result<Task>> results = manager.applyBatch(List.of(
+                Mutation.complete(1, "Alice"),
+                Mutation.reassign(1, "Alice", "Bob"),
+                Mutation.reassign(2, "Alice", "Bob"),
+                Mutation.complete(2, "Bob")));
+        for (ConsoleUtils.Result<Task> result : results) {
+            assertTrue(result.isSuccess(), result.getErrorMessage());
+        }
+        assertEquals("Bob", results.get(1).getValue().getAssignedUser());
+        assertEquals(Task.TaskStatus.COMPLETED, results.get(1).getValue().getStatus());
+        assertEquals(3, results.get(3).getValue().getVersion());
+
+        // Later mutations see a task the batch completed or removed
+        results = manager.applyBatch(List.of(Mutation.remove(3), Mutation.complete(3, "Alice")));
+        assertEquals("Task #3 not found", results.get(1).getErrorMessage());
+        results = manager.applyBatch(List.of(Mutation.reassign(3, null, "Carol"), Mutation.complete(3, "Alice")));
+        assertEquals("Task #3 is not assigned to Alice", results.get(1).getErrorMessage());
+        results = manager.completeTasks("Carol", 3, 3);
+        assertEquals("Task #3 is not assigned to Carol", results.get(0).getErrorMessage());
+        results = manager.completeTasks("Alice", 3, 3);
+        assertEquals("Task #3 is already completed", results.get(1).getErrorMessage());
+        assertEquals(Task.TaskStatus.PENDING, manager.getTaskById(3).get().getStatus());
+    }
+
+    @Test
+    void convenienceMethodsApplyOneBatchEach() {
+        List<ConsoleUtils.Result<Task>> added = manager.addTasks(List.of(
+                Mutation.add("Four", "Home", "Bob"), Mutation.add("Five", "", "Bob")));
+        assertEquals(List.of(4, 5), List.of(added.get(0).getValue().getId(), added.get(1).getValue().getId()));
+        assertEquals("General", added.get(1).getValue().getCategory());
+
+        assertTrue(manager.completeTasks("Bob", 4, 5).stream().allMatch(ConsoleUtils.Result::isSuccess));
+        assertEquals(Task.TaskStatus.COMPLETED, manager.getTaskById(5).get().getStatus());
+
+        // One id without a task keeps every other id in place
+        List<ConsoleUtils.Result<Task>> removed = manager.removeTasks(1, 99);
+        assertEquals("Task #99 not found", removed.get(1).getErrorMessage());
+        assertTrue(manager.getTaskById(1).isPresent());
+
+        assertTrue(manager.removeTask(3));
+        removed = manager.removeTaskRange(2, 4);
+        assertEquals(2, removed.size());
+        assertEquals(List.of(2, 4), List.of(removed.get(0).getValue().getId(), removed.get(1).getValue().getId()));
+        assertEquals(List.of(1, 5), ids(manager.getAllTasks()));
+        assertTrue(manager.removeTaskRange(6, 100).isEmpty());
+    }
+
+    @Test
+    void appliedBatchReplaysAfterRestart() {
+        List<ConsoleUtils.Result<Task>> results = manager.applyBatch(List.of(
+                Mutation.add("Four", "Home", "Bob"),
+                Mutation.complete(1, "Alice"),
+                Mutation.reassign(2, "Alice", "Carol"),
+                Mutation.remove(3)));
+        assertTrue(results.stream().allMatch(ConsoleUtils.Result::isSuccess));
+
+        restart();
+        assertEquals(List.of(1, 2, 4), ids(manager.getAllTasks()));
+        assertEquals("Four", manager.getTaskById(4).get().getDescription());
+        assertEquals(Task.TaskStatus.COMPLETED, manager.getTaskById(1).get().getStatus());
+        assertEquals(2, manager.getTaskById(1).get().getVersion());
+        assertEquals("Carol", manager.getTaskById(2).get().getAssignedUser());
+        assertEquals(1, manager.getUserSummary("Carol").getPendingCount());
+
+        assertTrue(manager.addTask("Five", "Work", "Alice"));
+        assertTrue(manager.getTaskById(5).isPresent());
+    }
+
+    private void assertUnchanged() {
+        assertEquals(List.of(1, 2, 3), ids(manager.getAllTasks()));
+        for (Task task : manager.getAllTasks()) {
+            assertEquals(Task.TaskStatus.PENDING, task.getStatus());
+            assertEquals("Alice", task.getAssignedUser());
+            assertEquals(1, task.getVersion());
+        }
+    }
+
+    private void restart() {
+        manager.close();
+        manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.PER_OPERATION);
+    }
+
+    private static List<Integer> ids(List<Task> tasks) {
+        return tasks.stream().map(Task::getId).sorted().toList();
+    }
+}
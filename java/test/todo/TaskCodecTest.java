@@ -0,0 +1,148 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskCodecTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void tasksRoundTrip() throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        tasks.add(new Task(1, "Plain", "Work", "Alice", 1_700_000_000_000L, Task.NOT_COMPLETED));
+        tasks.add(new Task(2, "Done", "Home", "Bob", 1_700_000_000_000L, 1_700_000_360_000L, 4));
+        tasks.add(new Task(Integer.MAX_VALUE, "Ünïcødé ✓ and a long tail ".repeat(5000), "Work", "Alice",
+                0, Task.NOT_COMPLETED));
+        Path file = directory.resolve("tasks.dat");
+        long size = TaskCodec.writeTasks(file, tasks);
+        assertEquals(Files.size(file), size);
+        assertFalse(Files.exists(directory.resolve("tasks.dat.tmp")));
+
+        List<Task> read = TaskCodec.readTasks(file);
+        assertEquals(tasks.size(), read.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            Task expected = tasks.get(i);
+            Task actual = read.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getCategory(), actual.getCategory());
+            assertEquals(expected.getAssignedUser(), actual.getAssignedUser());
+            assertEquals(expected.getCreatedMillis(), actual.getCreatedMillis());
+            assertEquals(expected.getCompletedMillis(), actual.getCompletedMillis());
+            assertEquals(expected.getStatus(), actual.getStatus());
+            assertEquals(expected.getVersion(), actual.getVersion());
+        }
+    }
+
+    @Test
+    void readsVersionOneTasksFilesAtTaskVersionOne() throws IOException {
+        Path file = directory.resolve("tasks.dat");
+        writeVersionOneTasks(file, new Task(7, "Old task", "Work", "Alice"));
+
+        List<Task> read = TaskCodec.readTasks(file);
+        assertEquals(1, read.size());
+        assertEquals(7, read.get(0).getId());
+        assertEquals("Old task", read.get(0).getDescription());
+        assertEquals(1, read.get(0).getVersion());
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[Integer.BYTES] = 3; // A version from the future
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> TaskCodec.readTasks(file));
+    }
+
+    @Test
+    void usersAndManifestRoundTrip() throws IOException {
+        Path users = directory.resolve("users.dat");
+        TaskCodec.writeUsers(users, Arrays.asList(new User("Alice"), new User("Bob")));
+        List<User> read = TaskCodec.readUsers(users);
+        assertEquals("Alice", read.get(0).getUsername());
+        assertEquals("Bob", read.get(1).getUsername());
+
+        NavigableMap<Integer, Long> segments = new TreeMap<>();
+        segments.put(0, 3L);
+        segments.put(524_287, Long.MAX_VALUE);
+        Path manifest = directory.resolve("tasks.manifest");
+        TaskCodec.writeManifest(manifest, segments);
+        assertEquals(segments, TaskCodec.readManifest(manifest));
+    }
+
+    @Test
+    void rejectsOtherFilesAndTruncation() throws IOException {
+        Path users = directory.resolve("users.dat");
+        TaskCodec.writeUsers(users, Arrays.asList(new User("Alice")));
+        // A users file is not a tasks file
+        assertThrows(IOException.class, () -> TaskCodec.readTasks(users));
+
+        Path tasks = directory.resolve("tasks.dat");
+        TaskCodec.writeTasks(tasks, Arrays.asList(new Task(1, "Task", "Work", "Alice")));
+        byte[] bytes = Files.readAllBytes(tasks);
+        Files.write(tasks, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(IOException.class, () -> TaskCodec.readTasks(tasks));
+    }
+
+    @Test
+    void rejectsLengthsAndIdsBeyondTheFile() throws IOException {
+        Path file = directory.resolve("tasks.dat");
+        // A string table of "Work", then one task with id 1 and description "T"
+        byte[] table = {1, 4, 'W', 'o', 'r', 'k', 1, 1, 1, 'T'};
+
+        Files.write(file, tasksFile(table, new byte[]{0, 0, 0, 0, 1}));
+        assertEquals("Work", TaskCodec.readTasks(file).get(0).getCategory());
+
+        // A category id past the table, then a negative one
+        Files.write(file, tasksFile(table, new byte[]{1, 0, 0, 0, 1}));
+        assertThrows(IOException.class, () -> TaskCodec.readTasks(file));
+        Files.write(file, tasksFile(table, new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F,
+                0, 0, 0, 1}));
+        assertThrows(IOException.class, () -> TaskCodec.readTasks(file));
+
+        // String lengths and table sizes near 2^31 and 2^32, which must not be allocated
+        byte[] large = {(byte) 0xF0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        byte[] negative = {(byte) 0xF0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+        for (byte[] length : Arrays.asList(large, negative)) {
+            Files.write(file, tasksFile(new byte[]{1}, length, new byte[]{'W'}));
+            assertThrows(IOException.class, () -> TaskCodec.readTasks(file));
+            Files.write(file, tasksFile(length, new byte[]{4, 'W', 'o', 'r', 'k'}));
+            assertThrows(IOException.class, () -> TaskCodec.readTasks(file));
+        }
+    }
+
+    // A current-version tasks file header followed by the given bytes
+    private static byte[] tasksFile(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.writeBytes(new byte[]{'T', 'D', 'O', 'T', 2});
+        for (byte[] part : parts) {
+            bytes.writeBytes(part);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a pending, version 1 task the way version 1 of the format did:
+     * the current layout without the trailing task version.
+     */
+    static void writeVersionOneTasks(Path file, Task task) throws IOException {
+        assertEquals(1, task.getVersion());
+        assertEquals(Task.TaskStatus.PENDING, task.getStatus());
+        TaskCodec.writeTasks(file, Arrays.asList(task));
+        byte[] bytes = Files.readAllBytes(file);
+        assertEquals(1, bytes[bytes.length - 1]); // The varint task version
+        byte[] versionOne = Arrays.copyOf(bytes, bytes.length - 1);
+        versionOne[Integer.BYTES] = 1;
+        Files.write(file, versionOne);
+    }
+}
@@ -0,0 +1,155 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskDurabilityTest {
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(value = TaskLog.FsyncPolicy.class, names = {"PER_OPERATION", "GROUP_COMMIT"})
+    void futuresCompleteOnceTheRecordIsForced(TaskLog.FsyncPolicy policy) throws Exception {
+        TaskMetrics metrics = new TaskMetrics();
+        try (TaskLog log = new TaskLog(directory.resolve("tasks.log"), policy, 60_000, metrics)) {
+            log.replay(new TaskLogTest.Recorder());
+            List<CompletableFuture<Long>> synced = new ArrayList<>();
+            List<Long> positions = new ArrayList<>();
+            for (int id = 1; id <= 50; id++) {
+                long position = log.appendAdd(new Task(id, "Task " + id, "Work", "Alice"));
+                positions.add(position);
+                // The synced position as the future completes
+                synced.add(log.whenDurable(position).thenApply(done -> log.getSyncedPosition()));
+            }
+            for (int i = 0; i < synced.size(); i++) {
+                assertTrue(synced.get(i).get(10, TimeUnit.SECONDS) >= positions.get(i));
+            }
+
+            long syncs = metrics.logSync().getCount();
+            if (policy == TaskLog.FsyncPolicy.PER_OPERATION) {
+                assertEquals(50, syncs);
+            } else {
+                assertTrue(syncs >= 1 && syncs <= 50, syncs + " syncs");
+            }
+            assertTrue(log.whenDurable(log.getAppendedPosition()).isDone());
+        }
+    }
+
+    @Test
+    void intervalPolicyWaitsForTheIntervalOrAnExplicitSync() throws Exception {
+        try (TaskLog log = new TaskLog(directory.resolve("tasks.log"), TaskLog.FsyncPolicy.INTERVAL, 60_000)) {
+            log.replay(new TaskLogTest.Recorder());
+            long position = log.appendAdd(new Task(1, "Task", "Work", "Alice"));
+            CompletableFuture<Void> durable = log.whenDurable(position);
+
+            // awaitDurable promises nothing under INTERVAL and returns at once
+            log.awaitDurable(position);
+            Thread.sleep(200);
+            assertFalse(durable.isDone());
+            assertTrue(log.getSyncedPosition() < position);
+
+            log.sync(position);
+            assertTrue(durable.isDone());
+            assertTrue(log.getSyncedPosition() >= position);
+        }
+    }
+
+    @Test
+    void futuresFailWhenTheWriterFails() throws Exception {
+        TaskLog log = new TaskLog(directory.resolve("tasks.log"), TaskLog.FsyncPolicy.GROUP_COMMIT, 60_000);
+        log.replay(new TaskLogTest.Recorder());
+        log.awaitDurable(log.appendAdd(new Task(1, "Written", "Work", "Alice")));
+
+        channel(log).close();
+        CompletableFuture<Void> durable = log.whenDurable(log.appendAdd(new Task(2, "Lost", "Work", "Alice")));
+        ExecutionException failed = assertThrows(ExecutionException.class, () -> durable.get(10, TimeUnit.SECONDS));
+        assertTrue(failed.getCause() instanceof IOException);
+
+        // Later appends and waits fail at once
+        assertThrows(IOException.class, () -> log.appendRemove(1));
+        assertTrue(log.whenDurable(Long.MAX_VALUE).isCompletedExceptionally());
+        assertThrows(IOException.class, log::close);
+    }
+
+    @Test
+    void asyncMutationsApplyAtOnceAndCompleteWhenDurable() throws Exception {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.GROUP_COMMIT)) {
+            TaskLog log = taskLog(manager);
+            AtomicLong syncedAtCompletion = new AtomicLong();
+            CompletableFuture<Boolean> added = manager.addTaskAsync("Task", "Work", "Alice");
+            long position = log.getAppendedPosition();
+            // Visible before the future completes
+            assertTrue(manager.getTaskById(1).isPresent());
+            assertTrue(added.thenApply(result -> {
+                syncedAtCompletion.set(log.getSyncedPosition());
+                return result;
+            }).get(10, TimeUnit.SECONDS));
+            assertTrue(syncedAtCompletion.get() >= position);
+
+            CompletableFuture<List<ConsoleUtils.Result<Task>>> batch = manager.applyBatchAsync(List.of(
+                    Mutation.add("Second", "Work", "Bob"), Mutation.complete(1, "Alice")));
+            assertTrue(manager.getTaskById(2).isPresent());
+            List<ConsoleUtils.Result<Task>> results = batch.get(10, TimeUnit.SECONDS);
+            assertTrue(results.get(0).isSuccess() && results.get(1).isSuccess());
+            assertTrue(log.getSyncedPosition() >= log.getAppendedPosition());
+
+            // Rejected mutations complete at once, with nothing logged
+            assertFalse(manager.addTaskAsync(" ", "Work", "Alice").get());
+            results = manager.applyBatchAsync(List.of(Mutation.remove(99))).get();
+            assertEquals("Task #99 not found", results.get(0).getErrorMessage());
+        }
+
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.GROUP_COMMIT)) {
+            assertEquals(Task.TaskStatus.COMPLETED, manager.getTaskById(1).get().getStatus());
+            assertEquals("Second", manager.getTaskById(2).get().getDescription());
+        }
+    }
+
+    @Test
+    void asyncMutationsFailWhenTheLogCannotBeWritten() throws Exception {
+        TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.GROUP_COMMIT);
+        try {
+            manager.addTask("Task", "Work", "Alice");
+            channel(taskLog(manager)).close();
+
+            CompletableFuture<Boolean> added = manager.addTaskAsync("Lost", "Work", "Alice");
+            ExecutionException failed = assertThrows(ExecutionException.class, () -> added.get(10, TimeUnit.SECONDS));
+            assertTrue(failed.getCause() instanceof IOException);
+            // The writer has failed, so the next mutation is refused before it is applied
+            assertFalse(manager.addTaskAsync("Refused", "Work", "Alice").get());
+            assertFalse(manager.removeTask(1));
+        } finally {
+            manager.close();
+        }
+    }
+
+    private static TaskLog taskLog(TaskManager manager) throws ReflectiveOperationException {
+        return (TaskLog) field(TaskManager.class, "taskLog").get(manager);
+    }
+
+    // Closing the channel underneath the writer makes its next write fail
+    private static FileChannel channel(TaskLog log) throws ReflectiveOperationException {
+        return (FileChannel) field(TaskLog.class, "channel").get(log);
+    }
+
+    private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+}
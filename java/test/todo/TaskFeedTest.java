@@ -0,0 +1,216 @@
+package todo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskFeedTest {
+    @TempDir
+    Path directory;
+
+    private TaskManager manager;
+
+    @BeforeEach
+    void open() {
+        manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL);
+    }
+
+    @AfterEach
+    void close() {
+        manager.close();
+    }
+
+    @Test
+    void eventsOfEachTaskComeInTheOrderTheyWereApplied() throws Exception {
+        int threads = 4;
+        int perThread = 300;
+        int total = threads * perThread;
+        long start = manager.getChangeSequence();
+
+        ExecutorService pool = Executors.newFixedThreadPool(2 * threads);
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String user = "User" + t;
+                running.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        manager.addTask("Task " + i, "Work", user);
+                    }
+                }));
+            }
+            // Complete and remove each task as soon as it can be read
+            AtomicInteger nextId = new AtomicInteger(1);
+            for (int t = 0; t < threads; t++) {
+                running.add(pool.submit(() -> {
+                    int id;
+                    while ((id = nextId.getAndIncrement()) <= total) {
+                        Task task;
+                        while ((task = manager.getTaskById(id).orElse(null)) == null) {
+                            Thread.onSpinWait();
+                        }
+                        assertTrue(manager.markTaskCompleted(id, task.getAssignedUser()));
+                        assertTrue(manager.removeTask(id));
+                    }
+                }));
+            }
+            for (Future<?> future : running) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<TaskEvent> events = collect(manager.changes(TaskFilter.all(), start), 3 * total);
+        Map<Integer, List<TaskEvent.Type>> byTask = new HashMap<>();
+        long previous = start;
+        for (TaskEvent event : events) {
+            assertTrue(event.getSequence() > previous, "sequences increase");
+            previous = event.getSequence();
+            byTask.computeIfAbsent(event.getTask().getId(), id -> new ArrayList<>()).add(event.getType());
+        }
+        assertEquals(total, byTask.size());
+        for (Map.Entry<Integer, List<TaskEvent.Type>> entry : byTask.entrySet()) {
+            assertEquals(List.of(TaskEvent.Type.ADDED, TaskEvent.Type.COMPLETED, TaskEvent.Type.REMOVED),
+                    entry.getValue(), "events of task #" + entry.getKey());
+        }
+    }
+
+    @Test
+    void userFilterSeesTasksReassignedAwayAndResumesAfterASequence() throws Exception {
+        long start = manager.getChangeSequence();
+        manager.addTask("Mine", "Work", "Alice");
+        manager.addTask("Theirs", "Work", "Bob");
+        long afterAdds = manager.getChangeSequence();
+        manager.reassignTask(1, "Alice", "Bob");
+        manager.markTaskCompleted(2, "Bob");
+
+        List<TaskEvent> alice = collect(manager.changes(TaskFilter.all().assignedTo("alice"), start), 2);
+        assertEquals(List.of(TaskEvent.Type.ADDED, TaskEvent.Type.REASSIGNED), types(alice));
+        assertEquals("Bob", alice.get(1).getTask().getAssignedUser());
+        assertEquals("Alice", alice.get(1).getPrevious().getAssignedUser());
+
+        List<TaskEvent> resumed = collect(manager.changes(TaskFilter.all(), afterAdds), 2);
+        assertEquals(List.of(TaskEvent.Type.REASSIGNED, TaskEvent.Type.COMPLETED), types(resumed));
+    }
+
+    @Test
+    void resumingAfterARestartReportsTheGap() throws Exception {
+        manager.addTask("Before restart", "Work", "Alice");
+        long saved = manager.getChangeSequence();
+        manager.close();
+        manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL);
+        manager.addTask("After restart", "Work", "Alice");
+
+        assertTrue(failure(manager.changes(TaskFilter.all(), saved)) instanceof IllegalStateException);
+        // As if the clock stepped back across the restart
+        long ahead = manager.getChangeSequence() + 5;
+        Throwable error = failure(manager.changes(TaskFilter.all(), ahead));
+        assertTrue(error instanceof IllegalStateException);
+        assertTrue(error.getMessage().contains("no longer retained"), error.getMessage());
+
+        long start = manager.getChangeSequence();
+        manager.addTask("Later", "Work", "Alice");
+        assertEquals("Later", collect(manager.changes(TaskFilter.all(), start), 1).get(0).getTask().getDescription());
+    }
+
+    private static List<TaskEvent.Type> types(List<TaskEvent> events) {
+        List<TaskEvent.Type> types = new ArrayList<>();
+        for (TaskEvent event : events) {
+            types.add(event.getType());
+        }
+        return types;
+    }
+
+    // Reads the first count events, asking for them in small batches
+    static List<TaskEvent> collect(Flow.Publisher<TaskEvent> publisher, int count)
+            throws InterruptedException {
+        List<TaskEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(64);
+            }
+
+            @Override
+            public void onNext(TaskEvent event) {
+                events.add(event);
+                if (events.size() == count) {
+                    subscription.cancel();
+                    done.countDown();
+                } else if (events.size() % 64 == 0) {
+                    subscription.request(64);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                errors.add(error);
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS), "received " + events.size() + " of " + count);
+        assertEquals(List.of(), errors);
+        return new ArrayList<>(events);
+    }
+
+    // The error a subscription ends with before delivering any event
+    private static Throwable failure(Flow.Publisher<TaskEvent> publisher) throws InterruptedException {
+        CompletableFuture<Throwable> error = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(TaskEvent event) {
+                error.complete(new AssertionError("Received " + event.getType()));
+            }
+
+            @Override
+            public void onError(Throwable failure) {
+                error.complete(failure);
+            }
+
+            @Override
+            public void onComplete() {
+                error.complete(new AssertionError("Completed"));
+            }
+        });
+        try {
+            return error.get(30, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskIndexTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void iteratorKeepsItsSnapshotWhileWritersCarryOn() throws IOException {
+        TaskIndex index = TaskIndex.load(directory.resolve("tasks.dat"));
+        for (int id = 1; id <= 100; id++) {
+            index.add(new Task(id, "Task " + id, "Work", "Alice"));
+        }
+
+        Iterator<Task> tasks = index.iterate(TaskFilter.all().assignedTo("alice"), 0);
+        for (int id = 1; id <= 100; id += 2) {
+            index.remove(id);
+        }
+        index.markCompleted(2, LocalDateTime.now());
+        index.add(new Task(101, "Late", "Work", "Alice"));
+
+        int count = 0;
+        while (tasks.hasNext()) {
+            Task task = tasks.next();
+            assertEquals(Task.TaskStatus.PENDING, task.getStatus());
+            count++;
+        }
+        assertEquals(100, count);
+        assertEquals(51, index.findByUser("ALICE").size());
+        assertEquals(Task.TaskStatus.COMPLETED, index.get(2).getStatus());
+    }
+
+    @Test
+    void applyAtomicallyPublishesAllChangesAtOnce() throws Exception {
+        TaskIndex index = TaskIndex.load(directory.resolve("tasks.dat"));
+        index.add(new Task(1, "First", "Work", "Alice"));
+
+        AtomicReference<Task> seenByReader = new AtomicReference<>();
+        index.applyAtomically(() -> {
+            index.add(new Task(2, "Second", "Work", "Alice"));
+            index.markCompleted(1, LocalDateTime.now());
+            // The batch sees its own changes
+            assertEquals(Task.TaskStatus.COMPLETED, index.get(1).getStatus());
+            assertNotNull(index.get(2));
+            // Another thread does not, until the batch ends
+            seenByReader.set(CompletableFuture.supplyAsync(() -> index.get(1)).join());
+            assertNull(CompletableFuture.supplyAsync(() -> index.get(2)).join());
+            assertEquals(1, CompletableFuture.supplyAsync(() -> index.size()).join());
+        });
+
+        assertEquals(Task.TaskStatus.PENDING, seenByReader.get().getStatus());
+        assertEquals(2, index.size());
+        assertEquals(Task.TaskStatus.COMPLETED, index.get(1).getStatus());
+        assertEquals(1, index.findByUserAndStatus("Alice", Task.TaskStatus.PENDING).size());
+    }
+
+    @Test
+    void readersNeverSeeHalfABatch() throws InterruptedException {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL)) {
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<String> failure = new AtomicReference<>();
+            Thread reader = new Thread(() -> {
+                while (!done.get()) {
+                    int size = manager.getUserTasks("Alice").size();
+                    if (size % 10 != 0) {
+                        failure.set("Saw " + size + " tasks");
+                    }
+                }
+            });
+            reader.start();
+
+            for (int round = 0; round < 200; round++) {
+                List<Mutation> batch = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    batch.add(Mutation.add("Task " + round + "." + i, "Work", "Alice"));
+                }
+                assertTrue(manager.applyBatch(batch).get(0).isSuccess());
+            }
+            done.set(true);
+            reader.join();
+
+            assertNull(failure.get());
+            assertEquals(2000, manager.getUserTasks("Alice").size());
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysRecordsInAppendOrder() throws IOException {
+        Path path = directory.resolve("tasks.log");
+        try (TaskLog log = new TaskLog(path, TaskLog.FsyncPolicy.PER_OPERATION, 100)) {
+            log.replay(new Recorder());
+            log.awaitDurable(log.appendAdd(new Task(1, "Write report", "Work", "Alice")));
+            log.awaitDurable(log.appendReassign(1, "Bob", 2));
+            log.awaitDurable(log.appendComplete(1, LocalDateTime.of(2024, 1, 2, 3, 4), 3));
+            log.awaitDurable(log.appendRemove(1));
+        }
+
+        Recorder recorder = new Recorder();
+        try (TaskLog log = new TaskLog(path, TaskLog.FsyncPolicy.PER_OPERATION, 100)) {
+            assertEquals(4, log.replay(recorder));
+        }
+        assertEquals(List.of("add 1 Write report Work Alice", "reassign 1 Bob v2", "complete 1 2024-01-02T03:04 v3",
+                "remove 1"), recorder.records);
+    }
+
+    @Test
+    void replaysBatchAsOneRecord() throws IOException {
+        Path path = directory.resolve("tasks.log");
+        try (TaskLog log = new TaskLog(path, TaskLog.FsyncPolicy.PER_OPERATION, 100)) {
+            log.replay(new Recorder());
+            TaskLog.Batch batch = new TaskLog.Batch();
+            batch.add(new Task(1, "One", "Work", "Alice"));
+            batch.add(new Task(2, "Two", "Work", "Alice"));
+            batch.remove(1);
+            log.awaitDurable(log.appendBatch(batch));
+        }
+
+        Recorder recorder = new Recorder();
+        try (TaskLog log = new TaskLog(path, TaskLog.FsyncPolicy.PER_OPERATION, 100)) {
+            assertEquals(3, log.replay(recorder));
+        }
+        assertEquals(List.of("add 1 One Work Alice", "add 2 Two Work Alice", "remove 1"), recorder.records);
+    }
+
+    @Test
+    void discardsTornTail() throws IOException {
+        Path path = directory.resolve("tasks.log");
+        try (TaskLog log = new TaskLog(path, TaskLog.FsyncPolicy.PER_OPERATION, 100)) {
+            log.replay(new Recorder());
+            log.awaitDurable(log.appendAdd(new Task(1, "Kept", "Work", "Alice")));
+            log.awaitDurable(log.appendAdd(new Task(2, "Torn", "Work", "Alice")));
+        }
+        long intact = intactLength(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        Recorder recorder = new Recorder();
+        try (TaskLog log = new TaskLog(path, TaskLog.FsyncPolicy.PER_OPERATION, 100)) {
+            assertEquals(1, log.replay(recorder));
+            assertEquals(intact, Files.size(path));
+
+            // Appends continue after the last intact record
+            log.awaitDurable(log.appendRemove(1));
+        }
+        assertEquals(List.of("add 1 Kept Work Alice"), recorder.records);
+
+        recorder = new Recorder();
+        try (TaskLog log = new TaskLog(path, TaskLog.FsyncPolicy.PER_OPERATION, 100)) {
+            log.replay(recorder);
+        }
+        assertEquals(List.of("add 1 Kept Work Alice", "remove 1"), recorder.records);
+    }
+
+    @Test
+    void discardsRecordWithBadChecksum() throws IOException {
+        Path path = directory.resolve("tasks.log");
+        try (TaskLog log = new TaskLog(path, TaskLog.FsyncPolicy.PER_OPERATION, 100)) {
+            log.replay(new Recorder());
+            log.awaitDurable(log.appendAdd(new Task(1, "Kept", "Work", "Alice")));
+            log.awaitDurable(log.appendAdd(new Task(2, "Corrupt", "Work", "Alice")));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), channel.size() - 1);
+        }
+
+        Recorder recorder = new Recorder();
+        try (TaskLog log = new TaskLog(path, TaskLog.FsyncPolicy.PER_OPERATION, 100)) {
+            assertEquals(1, log.replay(recorder));
+        }
+        assertEquals(List.of("add 1 Kept Work Alice"), recorder.records);
+    }
+
+    @Test
+    void readsCompletionsLoggedWithoutAVersion() throws IOException {
+        Path path = directory.resolve("tasks.log");
+        Files.createFile(path);
+        // A COMPLETE record as written before versions were logged
+        appendFrame(path, ByteBuffer.allocate(13).put((byte) 3).putInt(1)
+                .putLong(TaskCodec.toEpochMillis(LocalDateTime.of(2024, 1, 2, 3, 4))).array());
+
+        Recorder recorder = new Recorder();
+        try (TaskLog log = new TaskLog(path, TaskLog.FsyncPolicy.PER_OPERATION, 100)) {
+            assertEquals(1, log.replay(recorder));
+        }
+        assertEquals(List.of("complete 1 2024-01-02T03:04 v0"), recorder.records);
+    }
+
+    @Test
+    void readsStringsLoggedWithWriteUtf() throws IOException {
+        Path path = directory.resolve("tasks.log");
+        Files.createFile(path);
+        // ADD and REASSIGN records as written before strings were length-prefixed
+        ByteArrayOutputStream add = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(add);
+        out.writeByte(1);
+        out.writeInt(1);
+        out.writeUTF("Old task");
+        out.writeUTF("Work");
+        out.writeUTF("Alice");
+        out.writeLong(0);
+        appendFrame(path, add.toByteArray());
+        ByteArrayOutputStream reassign = new ByteArrayOutputStream();
+        out = new DataOutputStream(reassign);
+        out.writeByte(4 | 0x40);
+        out.writeInt(1);
+        out.writeUTF("Bob");
+        out.writeInt(2);
+        appendFrame(path, reassign.toByteArray());
+
+        Recorder recorder = new Recorder();
+        try (TaskLog log = new TaskLog(path, TaskLog.FsyncPolicy.PER_OPERATION, 100)) {
+            assertEquals(2, log.replay(recorder));
+        }
+        assertEquals(List.of("add 1 Old task Work Alice", "reassign 1 Bob v2"), recorder.records);
+    }
+
+    @Test
+    void managerKeepsStringsLongerThanWriteUtfAllows() {
+        String description = "Ünïcødé ✓ ".repeat(10_000); // Over 64 KB as UTF-8
+        String user = "U".repeat(70_000);
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.PER_OPERATION)) {
+            assertTrue(manager.addTask(description, "Work", "Alice"));
+            assertTrue(manager.importTask(new Task(10, description, "Home", "Alice", 1_700_000_000_000L,
+                    Task.NOT_COMPLETED, 3)));
+            List<ConsoleUtils.Result<Task>> results = manager.applyBatch(List.of(
+                    Mutation.add(description, "Errands", "Alice"), Mutation.reassign(1, "Alice", user)));
+            assertTrue(results.get(0).isSuccess());
+            assertTrue(results.get(1).isSuccess());
+        }
+
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.PER_OPERATION)) {
+            assertEquals(description, manager.getTaskById(1).get().getDescription());
+            assertEquals(user, manager.getTaskById(1).get().getAssignedUser());
+            assertEquals(description, manager.getTaskById(10).get().getDescription());
+            assertEquals(3, manager.getTaskById(10).get().getVersion());
+            assertEquals(description, manager.getTaskById(11).get().getDescription());
+        }
+    }
+
+    @Test
+    void managerRefusesToOpenWhenARecordIsMalformed() throws IOException {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.PER_OPERATION)) {
+            assertTrue(manager.addTask("Before", "Work", "Alice"));
+        }
+        // An add record cut short inside an intact frame
+        appendFrame(directory.resolve("tasks.log"), new byte[]{1, 0, 0, 0, 2});
+        assertThrows(IllegalStateException.class,
+                () -> new TaskManager(directory.toString(), TaskLog.FsyncPolicy.PER_OPERATION));
+    }
+
+    @Test
+    void managerRefusesToOpenWhenAnIntactRecordCannotBeApplied() throws IOException {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.PER_OPERATION)) {
+            assertTrue(manager.addTask("Before", "Work", "Alice"));
+        }
+        // A well-framed record with an unknown type, followed by one that was never replayed
+        appendFrame(directory.resolve("tasks.log"), new byte[]{99, 0, 0, 0, 1});
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.PER_OPERATION)) {
+            fail("Opened a store whose log could not be replayed");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("Unknown log record type"), expected.getMessage());
+        }
+    }
+
+    // Length of the log without its last record
+    private static long intactLength(Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        long position = 0;
+        long previous = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (position < channel.size()) {
+                header.clear();
+                channel.read(header, position);
+                previous = position;
+                position += 8 + header.getInt(0);
+            }
+        }
+        return previous;
+    }
+
+    private static void appendFrame(Path path, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(frame);
+        }
+    }
+
+    static final class Recorder implements TaskLog.Handler {
+        final List<String> records = new ArrayList<>();
+
+        @Override
+        public void onAdd(int id, String description, String category, String assignedUser,
+                          LocalDateTime createdDate) {
+            records.add("add " + id + " " + description + " " + category + " " + assignedUser);
+        }
+
+        @Override
+        public void onRemove(int id) {
+            records.add("remove " + id);
+        }
+
+        @Override
+        public void onComplete(int id, LocalDateTime completedDate, int version) {
+            records.add("complete " + id + " " + completedDate + " v" + version);
+        }
+
+        @Override
+        public void onReassign(int id, String assignedUser, int version) {
+            records.add("reassign " + id + " " + assignedUser + " v" + version);
+        }
+
+        @Override
+        public void onCreateUser(String username) {
+            records.add("user " + username);
+        }
+
+        @Override
+        public void onRestore(Task task) {
+            records.add("restore " + task.getId() + " v" + task.getVersion());
+        }
+    }
+}
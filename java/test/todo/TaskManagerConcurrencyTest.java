@@ -0,0 +1,142 @@
+package todo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskManagerConcurrencyTest {
+    private static final int THREADS = 4;
+    private static final int TASKS_PER_THREAD = 500;
+
+    @TempDir
+    Path directory;
+
+    private TaskManager manager;
+    private ExecutorService pool;
+
+    @BeforeEach
+    void open() {
+        manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL);
+        pool = Executors.newFixedThreadPool(2 * THREADS);
+    }
+
+    @AfterEach
+    void close() throws InterruptedException {
+        pool.shutdownNow();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        manager.close();
+    }
+
+    @Test
+    void completingTasksAsSoonAsTheyAppearKeepsCountsConsistent() throws Exception {
+        List<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            String user = "User" + t;
+            running.add(pool.submit(() -> {
+                for (int i = 0; i < TASKS_PER_THREAD; i++) {
+                    assertTrue(manager.addTask("Task " + i, "Work", user));
+                }
+            }));
+        }
+        // Chase the adders: complete each id the moment it becomes readable
+        AtomicInteger nextId = new AtomicInteger(1);
+        for (int t = 0; t < THREADS; t++) {
+            running.add(pool.submit(() -> {
+                int id;
+                while ((id = nextId.getAndIncrement()) <= THREADS * TASKS_PER_THREAD) {
+                    Task task;
+                    while ((task = manager.getTaskById(id).orElse(null)) == null) {
+                        Thread.onSpinWait();
+                    }
+                    assertTrue(manager.markTaskCompleted(id, task.getAssignedUser()));
+                }
+            }));
+        }
+        for (Future<?> future : running) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+
+        for (int t = 0; t < THREADS; t++) {
+            TaskSummary summary = manager.getUserSummary("User" + t);
+            assertEquals(TASKS_PER_THREAD, summary.getCompletedCount(), "completed for User" + t);
+            assertEquals(0, summary.getPendingCount(), "pending for User" + t);
+        }
+        TaskSummary work = manager.getCategorySummary("Work");
+        assertEquals(THREADS * TASKS_PER_THREAD, work.getCompletedCount());
+        assertEquals(0, work.getPendingCount());
+    }
+
+    @Test
+    void mutationsOfOneTaskAreSerialized() throws Exception {
+        assertTrue(manager.addTask("Shared", "Work", "User0"));
+        AtomicInteger moves = new AtomicInteger();
+        List<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < 2 * THREADS; t++) {
+            String from = "User" + t;
+            String to = "User" + ((t + 1) % (2 * THREADS));
+            running.add(pool.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    if (manager.reassignTask(1, from, to)) {
+                        moves.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : running) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+
+        Task task = manager.getTaskById(1).orElseThrow();
+        assertEquals(1 + moves.get(), task.getVersion());
+        int owners = 0;
+        for (int t = 0; t < 2 * THREADS; t++) {
+            int count = manager.getUserSummary("User" + t).getTotalCount();
+            assertEquals(("User" + t).equals(task.getAssignedUser()) ? 1 : 0, count, "tasks of User" + t);
+            owners += count;
+        }
+        assertEquals(1, owners);
+    }
+
+    @Test
+    void concurrentWritesSurviveRestart() throws Exception {
+        List<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            String user = "User" + t;
+            running.add(pool.submit(() -> {
+                for (int i = 0; i < TASKS_PER_THREAD; i++) {
+                    assertTrue(manager.addTask("Task " + i, "Work", user));
+                    if (i % 3 == 0) {
+                        int id = manager.getUserTasks(user).get(0).getId();
+                        manager.markTaskCompleted(id, user);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : running) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        List<Task> before = manager.getAllTasks();
+        manager.close();
+
+        manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL);
+        List<Task> after = manager.getAllTasks();
+        assertEquals(before.size(), after.size());
+        for (int i = 0; i < before.size(); i++) {
+            assertEquals(before.get(i).getId(), after.get(i).getId());
+            assertEquals(before.get(i).getStatus(), after.get(i).getStatus());
+            assertEquals(before.get(i).getAssignedUser(), after.get(i).getAssignedUser());
+        }
+    }
+}
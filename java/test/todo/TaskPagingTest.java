@@ -0,0 +1,185 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskPagingTest {
+    private static final long CREATED = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(TaskStore.Backend.class)
+    void idPagesReturnEveryMatchOnce(TaskStore.Backend backend) {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL, backend)) {
+            for (int i = 0; i < 500; i++) {
+                manager.addTask("Task " + i, "Work", i % 3 == 0 ? "Alice" : "Bob");
+            }
+            TaskFilter filter = TaskFilter.all().assignedTo("alice");
+            List<Integer> expected = ids(manager.getUserTasks("Alice"));
+            expected.sort(null);
+
+            List<Integer> paged = new ArrayList<>();
+            TaskPage.Cursor cursor = TaskPage.Cursor.first(TaskPage.Order.ID);
+            TaskPage page;
+            do {
+                page = manager.getTasksPage(filter, cursor, 37);
+                assertTrue(page.getTasks().size() <= 37);
+                paged.addAll(ids(page.getTasks()));
+                cursor = page.getNextCursor();
+                assertEquals(cursor != null, page.hasMore());
+            } while (cursor != null);
+            assertEquals(expected, paged);
+
+            // A page that ends exactly at the last match says so
+            TaskPage last = manager.getTasksPage(filter, expected.get(expected.size() - 3), 2);
+            assertEquals(expected.subList(expected.size() - 2, expected.size()), ids(last.getTasks()));
+            assertFalse(last.hasMore());
+            assertThrows(IllegalArgumentException.class,
+                    () -> manager.getTasksPage(filter, TaskPage.Cursor.first(TaskPage.Order.ID), 0));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(TaskStore.Backend.class)
+    void createdDatePagesBreakTiesById(TaskStore.Backend backend) {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL, backend)) {
+            // Ids out of creation order, with three tasks created at the same moment
+            int[] ids = {9, 2, 7, 4, 12, 1};
+            long[] created = {CREATED, CREATED + 5, CREATED + 1, CREATED + 1, CREATED + 1, CREATED + 9};
+            for (int i = 0; i < ids.length; i++) {
+                assertTrue(manager.importTask(new Task(ids[i], "Task " + ids[i], "Work", "Alice", created[i],
+                        Task.NOT_COMPLETED, 1)));
+            }
+
+            List<Integer> paged = new ArrayList<>();
+            TaskPage.Cursor cursor = TaskPage.Cursor.first(TaskPage.Order.CREATED_DATE);
+            while (cursor != null) {
+                TaskPage page = manager.getTasksPage(TaskFilter.all(), cursor, 2);
+                paged.addAll(ids(page.getTasks()));
+                cursor = page.getNextCursor();
+            }
+            assertEquals(List.of(9, 4, 7, 12, 2, 1), paged);
+
+            // Resuming between two tasks of the same moment
+            TaskPage.Cursor between = TaskPage.Cursor.after(TaskPage.Order.CREATED_DATE,
+                    manager.getTaskById(4).get());
+            assertEquals(List.of(7, 12), ids(manager.getTasksPage(TaskFilter.all(), between, 2).getTasks()));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(TaskStore.Backend.class)
+    void iterationNeverRepeatsATaskWhileOthersAreRemoved(TaskStore.Backend backend) throws Exception {
+        int count = 4 * PagingIterator.CHUNK + 10;
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL, backend)) {
+            for (int i = 0; i < count; i++) {
+                manager.addTask("Task " + i, "Work", "Alice");
+            }
+            Set<Integer> removed = ConcurrentHashMap.newKeySet();
+            Thread remover = new Thread(() -> {
+                Random random = new Random(17);
+                for (int i = 0; i < count / 2; i++) {
+                    int id = 1 + random.nextInt(count);
+                    if (manager.removeTask(id)) {
+                        removed.add(id);
+                    }
+                }
+            });
+
+            Iterator<Task> iterator = manager.iterateTasks(TaskFilter.all(), 0);
+            List<Integer> streamed = new ArrayList<>();
+            remover.start();
+            while (iterator.hasNext()) {
+                streamed.add(iterator.next().getId());
+            }
+            remover.join();
+
+            for (int i = 1; i < streamed.size(); i++) {
+                assertTrue(streamed.get(i) > streamed.get(i - 1), "ids increase at " + streamed.get(i));
+            }
+            // Every task that was never removed comes back
+            for (int id = 1; id <= count; id++) {
+                if (!removed.contains(id)) {
+                    assertTrue(streamed.contains(id), "missing #" + id);
+                }
+            }
+
+            List<Integer> remaining = new ArrayList<>();
+            for (int id = 101; id <= count; id++) {
+                if (!removed.contains(id)) {
+                    remaining.add(id);
+                }
+            }
+            assertEquals(remaining, manager.streamTasks(TaskFilter.all(), 100)
+                    .map(Task::getId).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void pagingIteratorStopsAtTheLastChunk() {
+        List<Task> tasks = new ArrayList<>();
+        for (int id = 1; id <= 2 * PagingIterator.CHUNK; id++) {
+            tasks.add(new Task(id, "Task " + id, "Work", "Alice"));
+        }
+        List<Integer> requestedAfter = new ArrayList<>();
+        PagingIterator iterator = new PagingIterator((afterId, limit) -> {
+            requestedAfter.add(afterId);
+            return tasks.stream().filter(task -> task.getId() > afterId).limit(limit).collect(Collectors.toList());
+        }, 10);
+
+        List<Integer> ids = new ArrayList<>();
+        while (iterator.hasNext()) {
+            ids.add(iterator.next().getId());
+        }
+        assertEquals(2 * PagingIterator.CHUNK - 10, ids.size());
+        assertEquals(11, ids.get(0));
+        // The second chunk came back short, so there was no third request
+        assertEquals(List.of(10, 10 + PagingIterator.CHUNK), requestedAfter);
+        assertFalse(iterator.hasNext());
+        assertThrows(NoSuchElementException.class, iterator::next);
+    }
+
+    @Test
+    void cursorsOrderTasksByTheirFields() {
+        Task early = new Task(5, "Early", "Work", "Alice", CREATED, Task.NOT_COMPLETED, 1);
+        Task tie = new Task(3, "Tie", "Work", "Alice", CREATED, Task.NOT_COMPLETED, 1);
+        Task late = new Task(1, "Late", "Work", "Alice", CREATED + 1, Task.NOT_COMPLETED, 1);
+
+        TaskPage.Cursor start = TaskPage.Cursor.first(TaskPage.Order.CREATED_DATE);
+        assertTrue(start.precedes(early) && start.precedes(late));
+        TaskPage.Cursor afterTie = TaskPage.Cursor.after(TaskPage.Order.CREATED_DATE, tie);
+        assertTrue(afterTie.precedes(early));
+        assertFalse(afterTie.precedes(tie));
+        assertTrue(afterTie.precedes(late));
+
+        TaskPage.Cursor byId = TaskPage.Cursor.afterId(3);
+        assertEquals(TaskPage.Order.ID, byId.getOrder());
+        assertTrue(byId.precedes(early));
+        assertFalse(byId.precedes(late));
+        assertEquals(5, TaskPage.Cursor.after(TaskPage.Order.ID, early).getAfterId());
+    }
+
+    private static List<Integer> ids(List<Task> tasks) {
+        List<Integer> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+}
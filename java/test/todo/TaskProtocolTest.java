@@ -0,0 +1,134 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskProtocolTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        Task task = new Task(7, "Write tests", "Work", "Alice", 1_700_000_000_000L, 0, 3);
+        Task done = task.completed();
+        TaskFilter filter = TaskFilter.all().assignedTo("Bob").withStatus(Task.TaskStatus.COMPLETED);
+        TaskPage.Cursor cursor = TaskPage.Cursor.of(TaskPage.Order.CREATED_DATE, 42, 1_700_000_000_123L);
+
+        TaskProtocol.FrameReader in = reader(new TaskProtocol.FrameWriter(1, TaskProtocol.STATUS_OK)
+                .writeTask(task)
+                .writeFilter(filter)
+                .writeCursor(cursor)
+                .writeEvent(new TaskEvent(99, TaskEvent.Type.COMPLETED, done, task))
+                .writeString(null));
+
+        assertSameTask(task, in.readTask());
+        TaskFilter readFilter = in.readFilter();
+        assertEquals("Bob", readFilter.getUsername());
+        assertNull(readFilter.getCategory());
+        assertEquals(Task.TaskStatus.COMPLETED, readFilter.getStatus());
+        TaskPage.Cursor readCursor = in.readCursor();
+        assertEquals(cursor.getOrder(), readCursor.getOrder());
+        assertEquals(42, readCursor.getAfterId());
+        assertEquals(cursor.getAfterCreated(), readCursor.getAfterCreated());
+        TaskEvent event = in.readEvent();
+        assertEquals(99, event.getSequence());
+        assertEquals(TaskEvent.Type.COMPLETED, event.getType());
+        assertSameTask(done, event.getTask());
+        assertSameTask(task, event.getPrevious());
+        assertNull(in.readString());
+    }
+
+    @Test
+    void rejectsEnumCodesOutOfRange() throws IOException {
+        byte[] filter = payload(new TaskProtocol.FrameWriter(1, TaskProtocol.STATUS_OK)
+                .writeFilter(TaskFilter.all().withStatus(Task.TaskStatus.PENDING)));
+        filter[filter.length - 1] = 99;
+        assertThrows(IOException.class, () -> new TaskProtocol.FrameReader(filter).readFilter());
+
+        byte[] cursor = payload(new TaskProtocol.FrameWriter(1, TaskProtocol.STATUS_OK)
+                .writeCursor(TaskPage.Cursor.of(TaskPage.Order.ID, 1, 0)));
+        cursor[0] = -2;
+        assertThrows(IOException.class, () -> new TaskProtocol.FrameReader(cursor).readCursor());
+
+        Task task = new Task(1, "Task", "Work", "Alice");
+        byte[] event = payload(new TaskProtocol.FrameWriter(1, TaskProtocol.STATUS_EVENT)
+                .writeEvent(new TaskEvent(1, TaskEvent.Type.ADDED, task, null)));
+        event[Long.BYTES] = 4;
+        assertThrows(IOException.class, () -> new TaskProtocol.FrameReader(event).readEvent());
+
+        assertThrows(IOException.class, () -> TaskProtocol.Opcode.of((byte) 120));
+    }
+
+    @Test
+    void rejectsTruncatedPayloads() throws IOException {
+        byte[] task = payload(new TaskProtocol.FrameWriter(1, TaskProtocol.STATUS_OK)
+                .writeTask(new Task(1, "Task", "Work", "Alice")));
+        for (int length = 0; length < task.length; length++) {
+            byte[] truncated = Arrays.copyOf(task, length);
+            assertThrows(IOException.class, () -> new TaskProtocol.FrameReader(truncated).readTask());
+        }
+    }
+
+    @Test
+    void serverDropsOnlyTheClientThatSentAMalformedFrame() throws IOException {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL);
+             TaskServer server = new TaskServer(manager, new InetSocketAddress("127.0.0.1", 0));
+             TaskClient client = TaskClient.connect("127.0.0.1", server.getPort())) {
+            assertTrue(client.addTask("Before", "Work", "Alice"));
+
+            byte[] filter = payload(new TaskProtocol.FrameWriter(1, TaskProtocol.STATUS_OK)
+                    .writeFilter(TaskFilter.all().withStatus(Task.TaskStatus.PENDING)));
+            filter[filter.length - 1] = 99;
+            try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+                socket.setSoTimeout(5000);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeInt(TaskProtocol.HEADER_SIZE - Integer.BYTES + filter.length);
+                out.writeInt(1);
+                out.writeByte(TaskProtocol.Opcode.SUBSCRIBE.ordinal());
+                out.write(filter);
+                out.flush();
+                InputStream in = socket.getInputStream();
+                assertEquals(-1, in.read(), "Server should close the malformed connection");
+            }
+
+            assertTrue(client.addTask("After", "Work", "Alice"));
+            List<Task> tasks = client.getUserTasks("Alice");
+            assertEquals(2, tasks.size());
+        }
+    }
+
+    private static void assertSameTask(Task expected, Task actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getAssignedUser(), actual.getAssignedUser());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getCreatedDate(), actual.getCreatedDate());
+        assertEquals(expected.getCompletedDate(), actual.getCompletedDate());
+        assertEquals(expected.getVersion(), actual.getVersion());
+    }
+
+    private static byte[] payload(TaskProtocol.FrameWriter writer) throws IOException {
+        ByteBuffer frame = writer.toBuffer();
+        frame.position(TaskProtocol.HEADER_SIZE);
+        byte[] payload = new byte[frame.remaining()];
+        frame.get(payload);
+        return payload;
+    }
+
+    private static TaskProtocol.FrameReader reader(TaskProtocol.FrameWriter writer) throws IOException {
+        return new TaskProtocol.FrameReader(payload(writer));
+    }
+}
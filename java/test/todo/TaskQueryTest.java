@@ -0,0 +1,128 @@
+package todo;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskQueryTest {
+    private static final String[] USERS = {"Alice", "bob", "Carol", "dave"};
+    private static final String[] CATEGORIES = {"Work", "home", "Errands"};
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(TaskStore.Backend.class)
+    void countAndSelectMatchABruteForceFilter(TaskStore.Backend backend) throws IOException {
+        try (TaskStore store = open(backend)) {
+            fill(store, new Random(21));
+            LocalDateTime middle = START.plusHours(300);
+
+            Map<TaskQuery, Predicate<Task>> queries = new LinkedHashMap<>();
+            queries.put(TaskQuery.where(), task -> true);
+            queries.put(TaskQuery.where().user("ALICE"), task -> task.getAssignedUser().equalsIgnoreCase("alice"));
+            queries.put(TaskQuery.where().category("work"), task -> task.getCategory().equalsIgnoreCase("work"));
+            queries.put(TaskQuery.where().status(Task.TaskStatus.COMPLETED),
+                    task -> task.getStatus() == Task.TaskStatus.COMPLETED);
+            queries.put(TaskQuery.where().user("Bob").category("Home").status(Task.TaskStatus.PENDING),
+                    task -> task.getAssignedUser().equalsIgnoreCase("bob")
+                            && task.getCategory().equalsIgnoreCase("home")
+                            && task.getStatus() == Task.TaskStatus.PENDING);
+            queries.put(TaskQuery.where().user("carol").or(TaskQuery.where().category("errands")),
+                    task -> task.getAssignedUser().equalsIgnoreCase("carol")
+                            || task.getCategory().equalsIgnoreCase("errands"));
+            queries.put(TaskQuery.where().user("dave").andNot(TaskQuery.where().status(Task.TaskStatus.COMPLETED)),
+                    task -> task.getAssignedUser().equalsIgnoreCase("dave")
+                            && task.getStatus() != Task.TaskStatus.COMPLETED);
+            queries.put(TaskQuery.where().category("Work").not(),
+                    task -> !task.getCategory().equalsIgnoreCase("work"));
+            queries.put(TaskQuery.where().user("Alice").createdAfter(middle),
+                    task -> task.getAssignedUser().equalsIgnoreCase("alice") && task.getCreatedDate().isAfter(middle));
+            queries.put(TaskQuery.where().status(Task.TaskStatus.PENDING).createdBefore(middle)
+                            .or(TaskQuery.where().user("bob").category("Work")),
+                    task -> task.getStatus() == Task.TaskStatus.PENDING && task.getCreatedDate().isBefore(middle)
+                            || task.getAssignedUser().equalsIgnoreCase("bob")
+                            && task.getCategory().equalsIgnoreCase("work"));
+            queries.put(TaskQuery.where().user("nobody"), task -> false);
+
+            List<Task> all = store.all();
+            for (Map.Entry<TaskQuery, Predicate<Task>> entry : queries.entrySet()) {
+                TaskQuery query = entry.getKey();
+                List<Integer> expected = new ArrayList<>();
+                for (Task task : all) {
+                    if (entry.getValue().test(task)) {
+                        expected.add(task.getId());
+                    }
+                }
+                expected.sort(null);
+
+                assertEquals(expected.size(), store.count(query), query.toString());
+                assertEquals(expected, ids(store.select(query, 0, Integer.MAX_VALUE)), query.toString());
+                assertEquals(expected, pageThrough(store, query, 7), query.toString());
+
+                int afterId = expected.isEmpty() ? 0 : expected.get(expected.size() / 2);
+                List<Integer> tail = expected.subList(expected.size() / 2 + (expected.isEmpty() ? 0 : 1),
+                        expected.size());
+                assertEquals(tail.subList(0, Math.min(5, tail.size())), ids(store.select(query, afterId, 5)),
+                        query + " after " + afterId);
+            }
+        }
+    }
+
+    private TaskStore open(TaskStore.Backend backend) throws IOException {
+        if (backend == TaskStore.Backend.HEAP) {
+            return TaskIndex.load(directory.resolve(TaskManager.TASKS_FILE));
+        }
+        return MappedTaskStore.open(directory);
+    }
+
+    // Tasks with gaps in their ids, some completed, reassigned or removed
+    private static void fill(TaskStore store, Random random) {
+        for (int id = 1; id <= 600; id++) {
+            if (random.nextInt(5) == 0) {
+                continue;
+            }
+            store.add(new Task(id, "Task " + id, CATEGORIES[random.nextInt(CATEGORIES.length)],
+                    USERS[random.nextInt(USERS.length)], START.plusHours(id)));
+            switch (random.nextInt(6)) {
+                case 0 -> store.markCompleted(id, START.plusHours(id + 1));
+                case 1 -> store.reassign(id, USERS[random.nextInt(USERS.length)].toUpperCase());
+                case 2 -> store.remove(id);
+                default -> { }
+            }
+        }
+    }
+
+    private static List<Integer> pageThrough(TaskStore store, TaskQuery query, int limit) {
+        List<Integer> ids = new ArrayList<>();
+        int afterId = 0;
+        List<Task> page;
+        while (!(page = store.select(query, afterId, limit)).isEmpty()) {
+            assertTrue(page.size() <= limit);
+            ids.addAll(ids(page));
+            afterId = page.get(page.size() - 1).getId();
+        }
+        return ids;
+    }
+
+    private static List<Integer> ids(List<Task> tasks) {
+        List<Integer> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,115 @@
+package todo;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskReplicaTest {
+    private static final String[] USERS = {"Alice", "Bob", "Carol"};
+
+    @TempDir
+    Path directory;
+
+    private TaskManager primary;
+    private TaskManager store;
+
+    @BeforeEach
+    void open() {
+        primary = new TaskManager(directory.resolve("primary").toString(), TaskLog.FsyncPolicy.INTERVAL);
+        store = new TaskManager(directory.resolve("replica").toString(), TaskLog.FsyncPolicy.INTERVAL);
+    }
+
+    @AfterEach
+    void close() {
+        store.close();
+        primary.close();
+    }
+
+    @Test
+    void copiesThePrimaryThenFollowsItsChanges() throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            primary.addTask("Task " + i, i % 2 == 0 ? "Work" : "Home", USERS[i % USERS.length]);
+        }
+        primary.markTaskCompleted(1, "Alice");
+
+        try (TaskReplica replica = TaskReplica.of(primary, store, 5000)) {
+            awaitSameTasks();
+
+            Random random = new Random(1);
+            for (int i = 0; i < 1000; i++) {
+                int id = 1 + random.nextInt(250);
+                switch (random.nextInt(4)) {
+                    case 0 -> primary.addTask("Live " + i, "Work", USERS[random.nextInt(USERS.length)]);
+                    case 1 -> primary.markTaskCompleted(id, USERS[random.nextInt(USERS.length)]);
+                    case 2 -> primary.reassignTask(id, null, USERS[random.nextInt(USERS.length)]);
+                    default -> primary.removeTask(id);
+                }
+            }
+            awaitSameTasks();
+            for (String user : USERS) {
+                assertEquals(primary.getUserSummary(user).getCompletedCount(),
+                        replica.getUserSummary(user).getCompletedCount());
+            }
+        }
+    }
+
+    @Test
+    void rejectsWrites() {
+        try (TaskReplica replica = TaskReplica.of(primary, store, 5000)) {
+            assertThrows(UnsupportedOperationException.class, () -> replica.addTask("Task", "Work", "Alice"));
+            assertThrows(UnsupportedOperationException.class, () -> replica.completeIfVersion(1, "Alice", 1));
+        }
+    }
+
+    @Test
+    void putTaskKeepsALaterVersion() {
+        primary.addTask("Task", "Work", "Alice");
+        Task added = primary.getTaskById(1).orElseThrow();
+        primary.markTaskCompleted(1, "Alice");
+        Task completed = primary.getTaskById(1).orElseThrow();
+
+        assertTrue(store.putTask(completed));
+        // The ADDED event replayed after a copy that already had the completion
+        store.putTask(added);
+        Task stored = store.getTaskById(1).orElseThrow();
+        assertEquals(Task.TaskStatus.COMPLETED, stored.getStatus());
+        assertEquals(completed.getVersion(), stored.getVersion());
+        assertEquals(1, store.getUserSummary("Alice").getCompletedCount());
+        assertEquals(0, store.getUserSummary("Alice").getPendingCount());
+    }
+
+    private void awaitSameTasks() throws InterruptedException {
+        await(() -> {
+            try {
+                return describe(primary.getAllTasks()).equals(describe(store.getAllTasks()));
+            } catch (IllegalStateException stale) {
+                return false;
+            }
+        });
+    }
+
+    private static String describe(List<Task> tasks) {
+        StringBuilder description = new StringBuilder();
+        for (Task task : tasks) {
+            description.append(task.getId()).append(task.getAssignedUser()).append(task.getStatus())
+                    .append(task.getVersion()).append(';');
+        }
+        return description.toString();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskSearchIndexTest {
+    @Test
+    void ranksByRelevanceThenId() {
+        TaskSearchIndex index = TaskSearchIndex.build(List.of(
+                new Task(1, "Buy milk", "Home", "Alice"),
+                new Task(2, "Milk milk", "Home", "Alice"),
+                new Task(3, "Write report", "Work", "Bob"),
+                new Task(4, "Buy milk", "Home", "Bob")));
+
+        assertArrayEquals(new int[] {2, 1, 4}, index.search("milk", 10));
+        assertArrayEquals(new int[] {2, 1}, index.search("MILK", 2));
+        assertArrayEquals(new int[] {3}, index.search("rep*", 10));
+        assertArrayEquals(new int[0], index.search("nothing", 10));
+    }
+
+    @Test
+    void followsAddsAndRemovalsAtSparseIds() {
+        List<Task> tasks = new ArrayList<>();
+        for (int id = 1; id <= 1000; id++) {
+            tasks.add(new Task(id * 1000, "Task number " + id, "Work", "Alice"));
+        }
+        TaskSearchIndex index = TaskSearchIndex.build(tasks);
+        assertArrayEquals(new int[] {7000}, index.search("7", 10));
+
+        Task far = new Task(Integer.MAX_VALUE - 1, "Far away task", "Work", "Alice");
+        index.add(far);
+        assertArrayEquals(new int[] {Integer.MAX_VALUE - 1}, index.search("far", 10));
+        // A description never changes, so a second add of the id is ignored
+        index.add(new Task(Integer.MAX_VALUE - 1, "Something else", "Work", "Alice"));
+        assertArrayEquals(new int[0], index.search("something", 10));
+
+        index.remove(far);
+        index.remove(tasks.get(6));
+        assertArrayEquals(new int[0], index.search("far", 10));
+        assertArrayEquals(new int[0], index.search("7", 10));
+        assertEquals(999, index.search("task", 2000).length);
+    }
+}
@@ -0,0 +1,100 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskVersionTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void versionChecksRejectStaleCallers() {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL)) {
+            manager.addTask("Task", "Work", "Alice");
+            assertEquals(1, version(manager, 1));
+
+            assertTrue(manager.reassignIfVersion(1, "Alice", "Bob", 1));
+            assertEquals(2, version(manager, 1));
+            // A caller that read version 1 lost the race
+            assertFalse(manager.reassignIfVersion(1, "Bob", "Carol", 1));
+            assertFalse(manager.completeIfVersion(1, "Bob", 1));
+            assertEquals("Bob", manager.getTaskById(1).get().getAssignedUser());
+
+            assertTrue(manager.completeIfVersion(1, "Bob", 2));
+            assertEquals(3, version(manager, 1));
+            assertEquals(Task.TaskStatus.COMPLETED, manager.getTaskById(1).get().getStatus());
+            assertFalse(manager.completeIfVersion(2, "Bob", 1));
+        }
+    }
+
+    @Test
+    void versionsSurviveRestartAndImport() {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL)) {
+            manager.addTask("Task", "Work", "Alice");
+            manager.reassignTask(1, "Alice", "Bob");
+            manager.markTaskCompleted(1, "Bob");
+            assertTrue(manager.importTask(new Task(50, "Imported", "Work", "Carol", 1_700_000_000_000L,
+                    Task.NOT_COMPLETED, 9)));
+        }
+
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL)) {
+            assertEquals(3, version(manager, 1));
+            assertEquals(9, version(manager, 50));
+            assertTrue(manager.reassignIfVersion(50, "Carol", "Alice", 9));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(TaskStore.Backend.class)
+    void replayAfterCompactionDoesNotBumpVersionsAgain(TaskStore.Backend backend) {
+        String path = directory.resolve(backend.name()).toString();
+        try (TaskManager manager = new TaskManager(path, TaskLog.FsyncPolicy.INTERVAL, backend)) {
+            // Past the compaction threshold, so the changes below are logged after a checkpoint
+            for (int i = 0; i < 10_001; i++) {
+                manager.addTask("Task " + i, "Work", "Alice");
+            }
+            assertTrue(manager.reassignTask(1, "Alice", "Bob"));
+            assertTrue(manager.completeIfVersion(2, "Alice", 1));
+            List<Mutation> batch = List.of(Mutation.complete(3, "Alice"), Mutation.reassign(3, "Alice", "Bob"));
+            assertTrue(manager.applyBatch(batch).get(1).isSuccess());
+            assertEquals(2, version(manager, 1));
+            assertEquals(3, version(manager, 3));
+        }
+
+        try (TaskManager manager = new TaskManager(path, TaskLog.FsyncPolicy.INTERVAL, backend)) {
+            assertEquals(2, version(manager, 1));
+            assertEquals(2, version(manager, 2));
+            assertEquals(3, version(manager, 3));
+            assertEquals(Task.TaskStatus.COMPLETED, manager.getTaskById(3).get().getStatus());
+            assertTrue(manager.reassignIfVersion(1, "Bob", "Carol", 2));
+        }
+    }
+
+    @Test
+    void tasksFromAVersionOneSnapshotStartAtVersionOne() throws IOException {
+        TaskCodecTest.writeVersionOneTasks(directory.resolve(TaskManager.TASKS_FILE),
+                new Task(7, "Old task", "Work", "Alice"));
+
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL)) {
+            assertEquals(1, version(manager, 7));
+            assertTrue(manager.completeIfVersion(7, "Alice", 1));
+            assertTrue(manager.addTask("New task", "Work", "Alice"));
+            assertTrue(manager.getTaskById(8).isPresent());
+        }
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL)) {
+            assertEquals(2, version(manager, 7));
+        }
+    }
+
+    private static int version(TaskManager manager, int id) {
+        return manager.getTaskById(id).get().getVersion();
+    }
+}
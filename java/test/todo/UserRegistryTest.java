@@ -0,0 +1,102 @@
+package todo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserRegistryTest {
+    private static final String[] SPELLINGS = {"Bob", "bob", "BOB", "bOb"};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void concurrentCallersCreateOneUserInAnyCase() throws Exception {
+        Path logFile = directory.resolve("tasks.log");
+        try (TaskLog log = new TaskLog(logFile, TaskLog.FsyncPolicy.INTERVAL, 100)) {
+            log.replay(new TaskLogTest.Recorder());
+            UserRegistry registry = UserRegistry.load(directory.resolve(TaskManager.USERS_FILE), log);
+
+            int threads = 8;
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<User>> created = new ArrayList<>();
+            try {
+                for (int t = 0; t < threads; t++) {
+                    String spelling = SPELLINGS[t % SPELLINGS.length];
+                    created.add(pool.submit(() -> {
+                        start.await();
+                        return registry.getOrCreate(spelling);
+                    }));
+                }
+                start.countDown();
+                User first = created.get(0).get(10, TimeUnit.SECONDS);
+                for (Future<User> user : created) {
+                    assertSame(first, user.get(10, TimeUnit.SECONDS));
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+
+            assertEquals(1, registry.size());
+            assertEquals(1, log.getRecordCount());
+            assertSame(registry.find("BoB"), registry.getOrCreate("bob"));
+            assertEquals(1, log.getRecordCount());
+            assertThrows(IllegalArgumentException.class, () -> registry.getOrCreate(" "));
+        }
+
+        TaskLogTest.Recorder recorder = new TaskLogTest.Recorder();
+        try (TaskLog log = new TaskLog(logFile, TaskLog.FsyncPolicy.INTERVAL, 100)) {
+            assertEquals(1, log.replay(recorder));
+        }
+        assertEquals(1, recorder.records.size());
+        assertTrue(recorder.records.get(0).equalsIgnoreCase("user bob"), recorder.records.get(0));
+    }
+
+    @Test
+    void createdUsersComeBackFromTheLog() {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.PER_OPERATION)) {
+            assertEquals("Alice", manager.getOrCreateUser("Alice").getUsername());
+            assertEquals("Alice", manager.getOrCreateUser("ALICE").getUsername());
+        }
+
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.PER_OPERATION)) {
+            // The first spelling survives the replay of its creation record
+            assertEquals("Alice", manager.getOrCreateUser("alice").getUsername());
+            assertTrue(manager.addTask("Task", "Work", "aLiCe"));
+            assertEquals("Alice", manager.getTaskById(1).get().getAssignedUser());
+        }
+    }
+
+    @Test
+    void usersSurviveACheckpointAndRestart() {
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL)) {
+            manager.getOrCreateUser("Alice");
+            manager.getOrCreateUser("Bob"); // Has no tasks, so only the registry keeps it
+            // Past the compaction threshold, which writes the users file and resets the log
+            for (int i = 0; i < 10_001; i++) {
+                manager.addTask("Task " + i, "Work", "alice");
+            }
+            manager.getOrCreateUser("Carol"); // Only in the log
+        }
+        assertTrue(Files.exists(directory.resolve(TaskManager.USERS_FILE)));
+
+        try (TaskManager manager = new TaskManager(directory.toString(), TaskLog.FsyncPolicy.INTERVAL)) {
+            assertEquals("Alice", manager.getOrCreateUser("ALICE").getUsername());
+            assertEquals("Bob", manager.getOrCreateUser("bob").getUsername());
+            assertEquals("Carol", manager.getOrCreateUser("carol").getUsername());
+            assertEquals("Alice", manager.getTaskById(10_001).get().getAssignedUser());
+        }
+    }
+}